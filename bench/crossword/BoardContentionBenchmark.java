@@ -0,0 +1,88 @@
+package crossword;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import crossword.Entry.Direction;
+
+/**
+ * Measures how many moves a second a board takes from more and more threads, each trying words that no other
+ * thread's words cross, as the players of a large match would. Compares the board as it is, whose moves only
+ * start again when another move has changed a cell they read, against the same board behind one lock for the
+ * whole board, the way every move used to wait for every other.
+ *
+ * Run from the project folder: java -cp bin:lib/parserlib.jar crossword.BoardContentionBenchmark [moves per thread]
+ */
+public class BoardContentionBenchmark {
+
+    private static final int WORDS = 256;
+    private static final List<String> TRIES = List.of("abcdefgh", "abcdefgx");
+
+    private interface Move {
+        void make(CrosswordBoard board, String wordID, String word, String playerID);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final int moves = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        System.out.println(Runtime.getRuntime().availableProcessors() + " processors");
+        for (int round = 0; round < 3; round++) {
+            for (int threads : List.of(1, 2, 4, 8)) {
+                run("board-wide lock", moves, threads, (board, wordID, word, playerID) -> {
+                    synchronized (board) {
+                        board.tryWord(wordID, word, playerID);
+                    }
+                });
+                run("optimistic     ", moves, threads, (board, wordID, word, playerID) -> {
+                    board.tryWord(wordID, word, playerID);
+                });
+            }
+        }
+    }
+
+    // a puzzle of WORDS across words, one to a row, so that no two of them cross, framed by a down word as tall
+    // as the board and an across word as wide, which only cross each other
+    private static CrosswordBoard largeBoard() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        for (int row = 0; row < WORDS; row++) {
+            entries.add(new Entry("abcdefgh", "\"first eight letters\"", Direction.ACROSS, row, 0));
+        }
+        entries.add(new Entry("a".repeat(WORDS + 1), "\"a long scream\"", Direction.DOWN, 0, 9));
+        entries.add(new Entry("zzzzzzzzza", "\"a short nap\"", Direction.ACROSS, WORDS, 0));
+        return new CrosswordBoard(new CrosswordFile("\"Large\"", "\"One word a row\"", entries));
+    }
+
+    private static void run(String name, int moves, int threadCount, Move move)
+            throws IOException, InterruptedException {
+        final CrosswordBoard board = largeBoard();
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            final int player = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                // thread t only tries the words on rows t, t + threadCount, ...
+                final int words = WORDS / threadCount;
+                for (int i = 0; i < moves; i++) {
+                    int row = (i % words) * threadCount + player;
+                    move.make(board, (row + 1) + "ACROSS", TRIES.get((i / words) % TRIES.size()), "P" + player);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        final long begin = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        final long nanos = System.nanoTime() - begin;
+        System.out.printf("%s %d threads %10.0f moves/s%n", name, threadCount,
+                (double) moves * threadCount / nanos * 1e9);
+    }
+}
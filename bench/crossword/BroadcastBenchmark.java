@@ -0,0 +1,104 @@
+package crossword;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import crossword.Match.MatchListener;
+
+/**
+ * Compares showing a move to every player in a match the way the server used to, serializing the PLAY response
+ * again for each player's stream, against serializing one frame per move and writing its bytes to each stream.
+ * Reports the time and bytes allocated per move, and the bytes written per player, for matches shown to
+ * 2 and 8 streams.
+ *
+ * Run from the project folder: java -cp bin:lib/parserlib.jar crossword.BroadcastBenchmark [moves]
+ */
+public class BroadcastBenchmark {
+
+    private static final List<String> WORDS = List.of("market", "marker");
+
+    /** Output stream that counts the bytes written to it and drops them */
+    private static class CountingOutputStream extends OutputStream {
+        private long count = 0;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    private interface Broadcast {
+        void send(Match match, List<FrameOutputStream> streams) throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException, Match.TooManyPlayersException {
+        final int moves = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        for (int round = 0; round < 3; round++) {
+            for (int streams : List.of(2, 8)) {
+                run("serialize per stream", moves, streams, BroadcastBenchmark::perStream);
+                run("shared frame        ", moves, streams, BroadcastBenchmark::shared);
+            }
+        }
+    }
+
+    private static void run(String name, int moves, int streamCount, Broadcast broadcast)
+            throws IOException, Match.TooManyPlayersException {
+        final Match match = new Match("BENCH", "BENCHMARK", new CrosswordBoard("puzzles/simple.puzzle"));
+        final MatchListener listener = new MatchListener() {
+            public void updateMatch(boolean firstCall) {return;}
+            public void endMatch(String message) {return;}
+        };
+        match.addPlayer("TIM", listener);
+        match.addPlayer("TUYET", listener);
+        final List<CountingOutputStream> sockets = new ArrayList<>();
+        final List<FrameOutputStream> streams = new ArrayList<>();
+        for (int i = 0; i < streamCount; i++) {
+            CountingOutputStream socket = new CountingOutputStream();
+            sockets.add(socket);
+            streams.add(new FrameOutputStream(socket));
+        }
+
+        final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long thread = Thread.currentThread().getId();
+        final long bytesBefore = threads.getThreadAllocatedBytes(thread);
+        final long start = System.nanoTime();
+        for (int i = 0; i < moves; i++) {
+            match.getBoard().tryWord("2down", WORDS.get(i % WORDS.size()), "TIM");
+            broadcast.send(match, streams);
+        }
+        final long nanos = System.nanoTime() - start;
+        final long bytes = threads.getThreadAllocatedBytes(thread) - bytesBefore;
+        long written = 0;
+        for (CountingOutputStream socket : sockets) {
+            written += socket.count;
+        }
+        System.out.printf("%s %d streams %8.1f ns/move %9.1f bytes allocated/move %7.1f bytes written/stream/move%n",
+                name, streamCount, (double) nanos / moves, (double) bytes / moves,
+                (double) written / streamCount / moves);
+    }
+
+    // what each player's listener used to do
+    private static void perStream(Match match, List<FrameOutputStream> streams) throws IOException {
+        for (ObjectOutputStream out : streams) {
+            out.writeObject(ServerResponse.createPlay(match.getBoard().getPlayView(), match.getClueLines(),
+                    match.getScoreLines()));
+        }
+    }
+
+    // the same with one frame per move
+    private static void shared(Match match, List<FrameOutputStream> streams) throws IOException {
+        for (FrameOutputStream out : streams) {
+            out.writeFrame(match.getPlayFrame());
+        }
+    }
+}
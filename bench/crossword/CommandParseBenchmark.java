@@ -0,0 +1,90 @@
+package crossword;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * Compares parsing client commands with Command.parse() against the way the server used to: a String.matches()
+ * per candidate command, which compiles a new Pattern each time, followed by split() to get the arguments.
+ * Reports the time and the bytes allocated per command, for a mix of moves like a match sends.
+ *
+ * Run from the project folder: java -cp bin:lib/parserlib.jar crossword.CommandParseBenchmark [commands]
+ */
+public class CommandParseBenchmark {
+
+    private static final String PLAY_REGEX = "PLAY [A-Z0-9]+";
+    private static final String NEW_REGEX = "NEW [A-Z0-9]+ [A-Z0-9_()]+ \"[A-Z0-9 ]+\"";
+    private static final String IDWORD_REGEX = "[0-9]+(ACROSS|DOWN) [A-Z\\-]+";
+
+    private static final List<String> INPUTS = List.of("TRY 1DOWN CAT", "TRY 12ACROSS CARPET", "CHALLENGE 3DOWN DOG",
+            "TRY 4ACROSS X", "PLAY MATCH1", "NEW MATCH2 SIMPLE_PUZZLE \"A QUICK GAME\"", "EXIT", "TRY 9DOWN ZEBRA");
+
+    // sink for the results, so the work can not be optimized away
+    private static long sink = 0;
+
+    public static void main(String[] args) {
+        final int commands = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        for (int round = 0; round < 3; round++) {
+            run("regex + split ", commands, CommandParseBenchmark::regex);
+            run("Command.parse ", commands, CommandParseBenchmark::parse);
+        }
+        System.out.println(sink == 42 ? "" : "done");
+    }
+
+    private interface Parser {
+        void parse(String input);
+    }
+
+    private static void run(String name, int commands, Parser parser) {
+        final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long thread = Thread.currentThread().getId();
+        final long bytesBefore = threads.getThreadAllocatedBytes(thread);
+        final long start = System.nanoTime();
+        for (int i = 0; i < commands; i++) {
+            parser.parse(INPUTS.get(i % INPUTS.size()));
+        }
+        final long nanos = System.nanoTime() - start;
+        final long bytes = threads.getThreadAllocatedBytes(thread) - bytesBefore;
+        System.out.printf("%s %7.1f ns/command %7.1f bytes/command%n", name, (double) nanos / commands,
+                (double) bytes / commands);
+    }
+
+    // what handleChoose and handlePlay used to do to find a command and its arguments
+    private static void regex(String input) {
+        if (input.matches("TRY " + IDWORD_REGEX) || input.matches("CHALLENGE " + IDWORD_REGEX)) {
+            String[] tokens = input.split(" ");
+            sink += tokens[1].length() + tokens[2].length();
+        } else if (input.matches(PLAY_REGEX)) {
+            sink += input.split(" ")[1].length();
+        } else if (input.matches(NEW_REGEX)) {
+            String[] descriptionSplit = input.split("\"");
+            String[] tokens = descriptionSplit[0].split(" ");
+            sink += tokens[1].length() + tokens[2].length() + descriptionSplit[1].length();
+        } else if (input.equals("EXIT")) {
+            sink++;
+        }
+    }
+
+    // the same with Command
+    private static void parse(String input) {
+        Command command = Command.parse(input);
+        switch (command.type()) {
+            case TRY:
+            case CHALLENGE:
+                sink += command.wordId().length() + command.word().length();
+                break;
+            case PLAY:
+                sink += command.matchId().length();
+                break;
+            case NEW:
+                sink += command.matchId().length() + command.boardId().length() + command.description().length();
+                break;
+            case EXIT:
+                sink++;
+                break;
+            default:
+                break;
+        }
+    }
+}
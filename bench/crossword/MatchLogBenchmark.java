@@ -0,0 +1,89 @@
+package crossword;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the match log: how many moves per second many connections can make durable when each waits
+ * for its own move (group commit shares the fsyncs between them), and how long a server takes to rebuild
+ * its matches from a long log, and from a snapshot of them.
+ *
+ * Run from the project folder: java -cp bin:lib/parserlib.jar crossword.MatchLogBenchmark [threads] [moves]
+ */
+public class MatchLogBenchmark {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        final int moves = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+
+        for (int t = 1; t <= threads; t *= 4) {
+            appendThroughput(t, 2_000);
+        }
+        recovery(moves);
+    }
+
+    // every thread appends a move then waits for it to be durable, like a connection handler does
+    private static void appendThroughput(int threads, int perThread) throws IOException, InterruptedException {
+        Path directory = Files.createTempDirectory("matchlog");
+        MatchLog log = new MatchLog(directory);
+        List<Thread> writers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            final String player = "player" + t;
+            Thread writer = new Thread(() -> {
+                try {
+                    for (int i = 0; i < perThread; i++) {
+                        log.append(MatchLog.Record.tryWord("match" + player, player, "1ACROSS", "word"));
+                        log.sync();
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            writers.add(writer);
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        long nanos = System.nanoTime() - start;
+        log.close();
+        long records = (long) threads * perThread;
+        System.out.printf("%2d threads: %8.0f durable moves/s, %6.1f moves per fsync%n",
+                threads, records * 1e9 / nanos, (double) records / log.commits());
+    }
+
+    // a log of many matches played on the simple puzzle, all of them still going on
+    private static void recovery(int moves) throws IOException {
+        Path directory = Files.createTempDirectory("matchlog");
+        MatchLog log = new MatchLog(directory);
+        int matches = moves / 10;
+        for (int m = 0; m < matches; m++) {
+            log.append(MatchLog.Record.newMatch("M" + m, "SIMPLE_PUZZLE", "benchmark", "A" + m));
+            log.append(MatchLog.Record.join("M" + m, "B" + m));
+            for (int i = 0; i < 8; i++) {
+                log.append(MatchLog.Record.challenge("M" + m, "B" + m, "1DOWN", "CAR"));
+            }
+        }
+        log.close();
+        long start = System.nanoTime();
+        Server server = new Server("puzzles", 0, ServerOptions.DEFAULT.withStateFolder(directory.toString()));
+        long nanos = System.nanoTime() - start;
+        System.out.printf("recovered %d matches from %d records in %.0f ms%n", matches, matches * 10, nanos / 1e6);
+
+        // snapshot the recovered matches, which trims the log, and recover again from the snapshot alone
+        start = System.nanoTime();
+        server.snapshot();
+        nanos = System.nanoTime() - start;
+        System.out.printf("snapshot of %d matches: %d bytes in %.0f ms, log trimmed to %d bytes%n", matches,
+                Files.size(directory.resolve(MatchSnapshot.SNAPSHOT_FILE)), nanos / 1e6,
+                Files.size(directory.resolve(MatchLog.LOG_FILE)));
+        start = System.nanoTime();
+        new Server("puzzles", 0, ServerOptions.DEFAULT.withStateFolder(directory.toString()));
+        nanos = System.nanoTime() - start;
+        System.out.printf("recovered %d matches from the snapshot in %.0f ms%n", matches, nanos / 1e6);
+    }
+}
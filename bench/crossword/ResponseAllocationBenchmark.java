@@ -0,0 +1,84 @@
+package crossword;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import crossword.Match.MatchListener;
+
+/**
+ * Compares building the PLAY responses for one move the way the server used to, copying the board, clues and
+ * scores for each player, against sharing the views the board and match keep until the next change.
+ * A move is followed by one response to each of the two players, as handlePlay and the opponent's listener do.
+ * Reports the time and the bytes allocated per move.
+ *
+ * Run from the project folder: java -cp bin:lib/parserlib.jar crossword.ResponseAllocationBenchmark [moves]
+ */
+public class ResponseAllocationBenchmark {
+
+    private static final List<String> PLAYERS = List.of("TIM", "TUYET");
+    private static final List<String> WORDS = List.of("market", "marker");
+
+    // sink for the results, so the work can not be optimized away
+    private static long sink = 0;
+
+    public static void main(String[] args) throws IOException, Match.TooManyPlayersException {
+        final int moves = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        final Match match = new Match("BENCH", "BENCHMARK", new CrosswordBoard("puzzles/simple.puzzle"));
+        final MatchListener listener = new MatchListener() {
+            public void updateMatch(boolean firstCall) {return;}
+            public void endMatch(String message) {return;}
+        };
+        for (String player : PLAYERS) {
+            match.addPlayer(player, listener);
+        }
+        for (int round = 0; round < 3; round++) {
+            run("copy per response ", moves, match, ResponseAllocationBenchmark::copying);
+            run("shared views      ", moves, match, ResponseAllocationBenchmark::shared);
+        }
+        System.out.println(sink == 42 ? "" : "done");
+    }
+
+    private interface Responder {
+        ServerResponse respond(Match match);
+    }
+
+    private static void run(String name, int moves, Match match, Responder responder) {
+        final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long thread = Thread.currentThread().getId();
+        final long bytesBefore = threads.getThreadAllocatedBytes(thread);
+        final long start = System.nanoTime();
+        for (int i = 0; i < moves; i++) {
+            // a player rewriting their own word changes the board every move, so every move makes new views
+            match.getBoard().tryWord("2down", WORDS.get(i % WORDS.size()), PLAYERS.get(0));
+            for (int p = 0; p < PLAYERS.size(); p++) {
+                sink += responder.respond(match).scores().size();
+            }
+        }
+        final long nanos = System.nanoTime() - start;
+        final long bytes = threads.getThreadAllocatedBytes(thread) - bytesBefore;
+        System.out.printf("%s %8.1f ns/move %9.1f bytes/move%n", name, (double) nanos / moves, (double) bytes / moves);
+    }
+
+    // what the server used to do for each response
+    private static ServerResponse copying(Match match) {
+        final CrosswordBoard board = match.getBoard();
+        final List<String> clues = new ArrayList<>();
+        for (Map.Entry<String, String> clue : board.getClues().entrySet()) {
+            clues.add(clue.getKey() + ": " + clue.getValue());
+        }
+        final List<String> scores = new ArrayList<>();
+        for (String id : match.getPlayerIds()) {
+            scores.add(id + ": " + board.showScore(id));
+        }
+        return ServerResponse.createPlay(board.getPlayBoard(), new ArrayList<>(clues), new ArrayList<>(scores));
+    }
+
+    // the same with the shared views
+    private static ServerResponse shared(Match match) {
+        return ServerResponse.createPlay(match.getBoard().getPlayView(), match.getClueLines(), match.getScoreLines());
+    }
+}
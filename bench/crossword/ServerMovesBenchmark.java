@@ -0,0 +1,170 @@
+package crossword;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how many moves a second a server answers end to end, from clients on sockets playing more and more
+ * matches at once, each client sending a TRY and waiting for its answer before the next. Runs each count of
+ * matches as it is, and again with another thread holding the lock on the server almost all the time, as a slow
+ * lobby or board reload would; moves do not take that lock, so they should not slow down.
+ *
+ * Run from the project folder: java -cp bin:lib/parserlib.jar crossword.ServerMovesBenchmark [millis per run]
+ */
+public class ServerMovesBenchmark {
+
+    private static final String LOCALHOST = "127.0.0.1";
+    // how long the other thread holds the lock on the server each time it takes it
+    private static final long LOCK_NANOS = 9_000_000;
+    // words that fit SIMPLE_PUZZLE but never solve it, so matches never end
+    private static final List<List<String>> TRIES = List.of(
+            List.of("TRY 1DOWN CAB", "TRY 1DOWN CAR"),
+            List.of("TRY 1ACROSS CAT", "TRY 1ACROSS CAR"));
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final long millis = args.length > 0 ? Long.parseLong(args[0]) : 2_000;
+        final PrintStream console = System.out;
+        // the server prints every command it is sent, and every connection closed under it at the end of a run
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+        console.println(Runtime.getRuntime().availableProcessors() + " processors");
+        final Server server = new Server("puzzles", 0);
+        final Thread serving = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        serving.setDaemon(true);
+        serving.start();
+        int next = 0;
+        for (int round = 0; round < 2; round++) {
+            for (int matches : List.of(1, 2, 4, 8, 16)) {
+                console.printf("%2d matches: %8.0f moves/s, %8.0f moves/s with the server locked%n", matches,
+                        run(server, "R" + next++, matches, millis, false),
+                        run(server, "R" + next++, matches, millis, true));
+            }
+        }
+    }
+
+    // moves a second answered to the two players of each of matches matches over millis
+    private static double run(Server server, String prefix, int matches, long millis, boolean locked)
+            throws IOException, InterruptedException {
+        final List<Socket> sockets = new ArrayList<>();
+        final List<Thread> players = new ArrayList<>();
+        final AtomicBoolean stop = new AtomicBoolean(false);
+        final AtomicLong moves = new AtomicLong(0);
+        final CountDownLatch start = new CountDownLatch(1);
+        for (int m = 0; m < matches; m++) {
+            final String matchId = prefix + "M" + m;
+            final Socket first = connect(server, sockets);
+            final Socket second = connect(server, sockets);
+            final ObjectInputStream firstIn = new ObjectInputStream(first.getInputStream());
+            final ObjectInputStream secondIn = new ObjectInputStream(second.getInputStream());
+            final PrintWriter firstOut = writer(first);
+            final PrintWriter secondOut = writer(second);
+            firstOut.println(matchId + "A");
+            firstOut.println("NEW " + matchId + " SIMPLE_PUZZLE \"BENCHMARK\"");
+            awaitState(firstIn, ServerResponse.State.WAIT);
+            secondOut.println(matchId + "B");
+            secondOut.println("PLAY " + matchId);
+            awaitState(secondIn, ServerResponse.State.PLAY);
+            awaitState(firstIn, ServerResponse.State.PLAY);
+            players.add(player(firstIn, firstOut, TRIES.get(0), start, stop, moves));
+            players.add(player(secondIn, secondOut, TRIES.get(1), start, stop, moves));
+        }
+        final Thread holder = new Thread(() -> {
+            while (!stop.get()) {
+                synchronized (server) {
+                    spin(LOCK_NANOS);
+                }
+                Thread.yield();
+            }
+        });
+        if (locked) {
+            holder.start();
+        }
+        final long begin = System.nanoTime();
+        start.countDown();
+        Thread.sleep(millis);
+        final long counted = moves.get();
+        final long end = System.nanoTime();
+        stop.set(true);
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        for (Thread player : players) {
+            player.join();
+        }
+        if (locked) {
+            holder.join();
+        }
+        return counted / ((end - begin) / 1e9);
+    }
+
+    // busy for nanos, the way work holding the lock would be
+    private static void spin(long nanos) {
+        final long until = System.nanoTime() + nanos;
+        while (System.nanoTime() < until) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private static Socket connect(Server server, List<Socket> sockets) throws IOException {
+        Socket socket = new Socket(LOCALHOST, server.port());
+        socket.setTcpNoDelay(true);
+        sockets.add(socket);
+        return socket;
+    }
+
+    private static PrintWriter writer(Socket socket) throws IOException {
+        return new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8), true);
+    }
+
+    // read responses until one in state
+    private static void awaitState(ObjectInputStream in, ServerResponse.State state) throws IOException {
+        try {
+            while (((ServerResponse) in.readObject()).state() != state) {
+                continue;
+            }
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    // a player sending tries in turn, each once the answer to the last has arrived, until stop
+    private static Thread player(ObjectInputStream in, PrintWriter out, List<String> tries, CountDownLatch start,
+            AtomicBoolean stop, AtomicLong moves) {
+        Thread thread = new Thread(() -> {
+            try {
+                start.await();
+                for (int i = 0; !stop.get(); i++) {
+                    out.println(tries.get(i % tries.size()));
+                    // the opponent's moves arrive as frames without a message
+                    ServerResponse response = (ServerResponse) in.readObject();
+                    while (!response.hasMessage()) {
+                        response = (ServerResponse) in.readObject();
+                    }
+                    moves.incrementAndGet();
+                }
+            } catch (IOException | ClassNotFoundException | InterruptedException e) {
+                // the socket was closed at the end of the run
+            }
+        });
+        thread.start();
+        return thread;
+    }
+}
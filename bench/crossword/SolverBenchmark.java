@@ -0,0 +1,165 @@
+package crossword;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import crossword.Entry.Direction;
+
+/**
+ * Measures how long PuzzleSolver takes to fill 21x21 boards from a 200,000 word dictionary, on a pool of one
+ * thread and on a pool of one thread per processor. Each board has black squares placed at random with the
+ * usual half-turn symmetry, and every run of 3 or more white squares is a word. One fill of random letters is
+ * planted in the dictionary so every board can be filled, and the rest of the dictionary is random words with
+ * the lengths and letter frequencies of English words, which the solver has to rule out.
+ *
+ * Run from the project folder: java -cp bin:lib/parserlib.jar crossword.SolverBenchmark [boards]
+ */
+public class SolverBenchmark {
+
+    private static final int SIZE = 21;
+    private static final int DICTIONARY = 200_000;
+    private static final double BLACK = 0.18;
+    private static final int LONGEST = 8;
+    private static final String VOWELS = "aeiouy";
+    // relative frequency of 'a' to 'z' in English text
+    private static final double[] LETTERS = {8.2, 1.5, 2.8, 4.3, 12.7, 2.2, 2.0, 6.1, 7.0, 0.2, 0.8, 4.0, 2.4,
+        6.7, 7.5, 1.9, 0.1, 6.0, 6.3, 9.1, 2.8, 1.0, 2.4, 0.2, 2.0, 0.1};
+    // relative frequency of English dictionary words of length 3 to 21
+    private static final double[] LENGTHS = {0.6, 2.3, 5, 8.8, 13.5, 16.5, 14.7, 11.8, 8.8, 6.5, 4.5, 2.9, 1.8, 1,
+        0.6, 0.3, 0.15, 0.07, 0.035};
+
+    public static void main(String[] args) throws IOException {
+        final int boards = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        System.out.println(Runtime.getRuntime().availableProcessors() + " processors");
+        final Random random = new Random(6031);
+        for (int b = 0; b < boards; b++) {
+            List<Entry> entries = new ArrayList<>();
+            Set<String> dictionary = new LinkedHashSet<>();
+            CrosswordBoard board = plantedBoard(random, entries, dictionary);
+            while (dictionary.size() < DICTIONARY) {
+                dictionary.add(randomWord(random, 3 + pick(random, LENGTHS)));
+            }
+            for (int threads : List.of(1, Runtime.getRuntime().availableProcessors())) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                PuzzleSolver solver = new PuzzleSolver(dictionary, pool);
+                PuzzleSolver.Result result = solver.solve(board);
+                pool.shutdown();
+                System.out.printf("board %d, %d words, %d threads: %s%n", b, entries.size(), threads, result);
+            }
+        }
+    }
+
+    // a random board whose answers are added to dictionary and whose entries are added to entries
+    private static CrosswordBoard plantedBoard(Random random, List<Entry> entries, Set<String> dictionary)
+            throws IOException {
+        while (true) {
+            entries.clear();
+            boolean[][] black = new boolean[SIZE][SIZE];
+            char[][] letters = new char[SIZE][SIZE];
+            for (int row = 0; row < SIZE; row++) {
+                for (int col = 0; col < SIZE; col++) {
+                    if (row * SIZE + col <= SIZE * SIZE / 2 && random.nextDouble() < BLACK) {
+                        black[row][col] = true;
+                        black[SIZE - 1 - row][SIZE - 1 - col] = true;
+                    }
+                    letters[row][col] = (char) ('a' + pick(random, LETTERS));
+                }
+            }
+            breakLongRuns(random, black);
+            for (int row = 0; row < SIZE; row++) {
+                for (int col = 0; col < SIZE; col++) {
+                    addRun(entries, black, letters, row, col, Direction.ACROSS);
+                    addRun(entries, black, letters, row, col, Direction.DOWN);
+                }
+            }
+            Set<String> answers = new HashSet<>();
+            entries.forEach(entry -> answers.add(entry.getWord()));
+            CrosswordFile puzzle = new CrosswordFile("\"Random\"", "\"a random 21x21 board\"", entries);
+            // every word distinct, and no word left off a board sized by words of the other direction
+            if (answers.size() == entries.size() && PuzzleValidator.validate(puzzle).isEmpty()) {
+                dictionary.addAll(answers);
+                return new CrosswordBoard(puzzle);
+            }
+        }
+    }
+
+    // black out squares, keeping the symmetry, until no run of white squares is longer than LONGEST
+    private static void breakLongRuns(Random random, boolean[][] black) {
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                for (int step = 0; step < 2; step++) {
+                    int rowStep = step, colStep = 1 - step;
+                    int length = 0;
+                    while (row + rowStep * length < SIZE && col + colStep * length < SIZE
+                            && !black[row + rowStep * length][col + colStep * length]) {
+                        length++;
+                    }
+                    if (length > LONGEST
+                            && (row - rowStep < 0 || col - colStep < 0 || black[row - rowStep][col - colStep])) {
+                        int at = 3 + random.nextInt(LONGEST - 3);
+                        black[row + rowStep * at][col + colStep * at] = true;
+                        black[SIZE - 1 - row - rowStep * at][SIZE - 1 - col - colStep * at] = true;
+                    }
+                }
+            }
+        }
+    }
+
+    // add the word going direction from (row, col), if a run of 3 or more white squares starts there
+    private static void addRun(List<Entry> entries, boolean[][] black, char[][] letters, int row, int col,
+            Direction direction) {
+        int rowStep = direction == Direction.DOWN ? 1 : 0;
+        int colStep = 1 - rowStep;
+        if (black[row][col] || (row - rowStep >= 0 && col - colStep >= 0
+                && !black[row - rowStep][col - colStep])) {
+            return;
+        }
+        StringBuilder word = new StringBuilder();
+        for (int r = row, c = col; r < SIZE && c < SIZE && !black[r][c]; r += rowStep, c += colStep) {
+            word.append(letters[r][c]);
+        }
+        if (word.length() >= 3) {
+            entries.add(new Entry(word.toString(), "\"planted\"", direction, row, col));
+        }
+    }
+
+    // a word of random letters that alternate between vowels and runs of at most two consonants, the way most
+    // English words do, so that the dictionary has the many near misses of a real one
+    private static String randomWord(Random random, int length) {
+        StringBuilder word = new StringBuilder();
+        int consonants = random.nextDouble() < 0.3 ? 2 : 0;
+        for (int i = 0; i < length; i++) {
+            boolean vowel = consonants == 2
+                    || (consonants == 1 ? random.nextDouble() < 0.6 : random.nextDouble() < 0.25);
+            char letter;
+            do {
+                letter = (char) ('a' + pick(random, LETTERS));
+            } while (VOWELS.indexOf(letter) >= 0 != vowel);
+            word.append(letter);
+            consonants = vowel ? 0 : consonants + 1;
+        }
+        return word.toString();
+    }
+
+    // index i with probability weights[i] / sum of weights
+    private static int pick(Random random, double[] weights) {
+        double total = 0;
+        for (double weight : weights) {
+            total += weight;
+        }
+        double r = random.nextDouble() * total;
+        for (int i = 0; i < weights.length - 1; i++) {
+            r -= weights[i];
+            if (r < 0) {
+                return i;
+            }
+        }
+        return weights.length - 1;
+    }
+}
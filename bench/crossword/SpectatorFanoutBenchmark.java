@@ -0,0 +1,82 @@
+package crossword;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import crossword.Match.MatchListener;
+
+/**
+ * Measures how long a move takes on the thread that makes it, from placing the word to returning from
+ * Match.updateGame(), for matches watched by more and more spectators. Each spectator writes the frames it is
+ * shown to its own stream, which drops them. Reports the median and 99th percentile move latency, how long after
+ * the last move every spectator has been shown it, and how many threads the feed has running for them.
+ *
+ * Run from the project folder: java -cp bin:lib/parserlib.jar crossword.SpectatorFanoutBenchmark [moves]
+ */
+public class SpectatorFanoutBenchmark {
+
+    private static final List<String> WORDS = List.of("market", "marker");
+
+    public static void main(String[] args) throws IOException, Match.TooManyPlayersException, InterruptedException {
+        final int moves = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        for (int round = 0; round < 2; round++) {
+            for (int spectators : List.of(0, 10, 100, 1000, 5000)) {
+                run(moves, spectators);
+            }
+        }
+    }
+
+    private static void run(int moves, int spectatorCount)
+            throws IOException, Match.TooManyPlayersException, InterruptedException {
+        final Match match = new Match("BENCH", "BENCHMARK", new CrosswordBoard("puzzles/simple.puzzle"));
+        // like the server's players, shown the PLAY frame the spectators are then handed after every move
+        final FrameOutputStream players = new FrameOutputStream(OutputStream.nullOutputStream());
+        final MatchListener listener = new MatchListener() {
+            public void updateMatch(boolean firstCall) {
+                try {
+                    players.writeFrame(match.getPlayFrame());
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            public void endMatch(String message) {return;}
+        };
+        match.addPlayer("TIM", listener);
+        match.addPlayer("TUYET", listener);
+        final AtomicReferenceArray<FrameOutputStream.Frame> lastShown = new AtomicReferenceArray<>(spectatorCount);
+        for (int i = 0; i < spectatorCount; i++) {
+            final int viewer = i;
+            FrameOutputStream out = new FrameOutputStream(OutputStream.nullOutputStream());
+            match.addSpectator("VIEWER" + i, frame -> {
+                synchronized (out) {
+                    out.writeFrame(frame);
+                }
+                lastShown.set(viewer, frame);
+            });
+        }
+
+        final long[] nanos = new long[moves];
+        for (int i = 0; i < moves; i++) {
+            final long start = System.nanoTime();
+            match.getBoard().tryWord("2down", WORDS.get(i % WORDS.size()), "TIM");
+            match.updateGame(false);
+            nanos[i] = System.nanoTime() - start;
+        }
+        final long moved = System.nanoTime();
+        final FrameOutputStream.Frame last = match.getSpectatorFrame();
+        for (int i = 0; i < spectatorCount; i++) {
+            while (lastShown.get(i) != last) {
+                Thread.onSpinWait();
+            }
+        }
+        final long caughtUp = System.nanoTime() - moved;
+        final long threads = Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().startsWith("spectator-")).count();
+        Arrays.sort(nanos);
+        System.out.printf("%5d spectators %8.1f us/move median %8.1f us/move p99 %8.1f ms to catch up %4d threads%n",
+                spectatorCount, nanos[moves / 2] / 1000.0, nanos[moves * 99 / 100] / 1000.0, caughtUp / 1e6, threads);
+    }
+}
@@ -0,0 +1,75 @@
+package crossword;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import crossword.Match.MatchListener;
+
+/**
+ * Times a whole tournament on one board: how long the first round, with a match for every two players, takes to
+ * make and start, and how long each round after it takes to start once its last match before it has ended.
+ * Every match is ended at once with the better seed winning, so the times are those of the tournament alone.
+ *
+ * Run from the project folder: java -cp bin:lib/parserlib.jar crossword.TournamentBenchmark [players] [puzzle]
+ */
+public class TournamentBenchmark {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final int players = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        final String puzzle = args.length > 1 ? args[1] : "puzzles/simple.puzzle";
+        final CrosswordBoard board = new CrosswordBoard(puzzle);
+        final List<String> seeds = new ArrayList<>();
+        for (int i = 0; i < players; i++) {
+            seeds.add("P" + i);
+        }
+        for (int run = 0; run < 5; run++) {
+            run(run, board, seeds);
+        }
+    }
+
+    private static void run(int run, CrosswordBoard board, List<String> seeds) throws InterruptedException {
+        final BlockingQueue<List<Match>> rounds = new LinkedBlockingQueue<>();
+        final BlockingQueue<String> winners = new LinkedBlockingQueue<>();
+        final MatchListener quiet = new MatchListener() {
+            public void updateMatch(boolean firstCall) {return;}
+            public void endMatch(String message) {return;}
+        };
+        final Metrics metrics = new Metrics();
+        final long start = System.nanoTime();
+        new Tournament("BENCH", "BENCH", board, seeds, metrics, new Tournament.Host() {
+            public MatchListener listener(String playerID, Match match) {
+                return quiet;
+            }
+
+            public void started(int round, List<Match> matches) {
+                rounds.add(matches);
+            }
+
+            public void finished(String winner) {
+                winners.add(winner);
+                rounds.add(List.of());
+            }
+        });
+        List<Match> first = rounds.take();
+        final long started = System.nanoTime();
+        long ending = 0;
+        // the round after the last is empty
+        for (List<Match> matches = first; !matches.isEmpty(); matches = rounds.take()) {
+            final long begin = System.nanoTime();
+            for (Match match : matches) {
+                match.endGame("");
+            }
+            ending += System.nanoTime() - begin;
+        }
+        final String winner = winners.take();
+        final long end = System.nanoTime();
+        System.out.printf("run %d: %d matches in round 1 started in %6.1f ms, %d rounds, %d matches, "
+                + "%6.1f ms ending them, %6.1f ms in all, %d ms starting rounds, won by %s%n",
+                run, first.size(), (started - start) / 1e6, metrics.get("tournament.rounds"),
+                metrics.get("tournament.matches"), ending / 1e6, (end - start) / 1e6,
+                metrics.get("tournament.start_millis"), winner);
+    }
+}
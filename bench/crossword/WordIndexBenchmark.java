@@ -0,0 +1,97 @@
+package crossword;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures WordIndex over a million random words: how long the index takes to build, how large its file is,
+ * how long mapping the file takes, and how long pattern queries take against the mapped index, compared with
+ * scanning every word of the pattern's length the way a plain list would be searched.
+ *
+ * Run from the project folder: java -cp bin:lib/parserlib.jar crossword.WordIndexBenchmark [queries]
+ */
+public class WordIndexBenchmark {
+
+    private static final int WORDS = 1_000_000;
+    private static final String LETTERS = "eeeeeeeeeeeetttttttttaaaaaaaaoooooooiiiiiiinnnnnnnssssssrrrrrrhhhhhlllldddcc"
+            + "uummwwffggyyppbbvkjxqz";
+
+    // sink for the results, so the work can not be optimized away
+    private static long sink = 0;
+
+    public static void main(String[] args) throws IOException {
+        final int queries = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        final Random random = new Random(6031);
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < WORDS; i++) {
+            words.add(randomWord(random, 3 + random.nextInt(10)));
+        }
+        long start = System.nanoTime();
+        WordIndex built = new WordIndex(words);
+        System.out.printf("built %d words in %.0f ms%n", built.size(), (System.nanoTime() - start) / 1e6);
+        Path file = Files.createTempFile("words", ".index");
+        built.write(file);
+        start = System.nanoTime();
+        WordIndex index = WordIndex.read(file);
+        System.out.printf("mapped %d bytes in %.2f ms%n", Files.size(file), (System.nanoTime() - start) / 1e6);
+        // patterns made from words in the list, so most have matches, with about half their letters unknown
+        List<String> patterns = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            char[] pattern = words.get(random.nextInt(words.size())).toCharArray();
+            for (int k = 0; k < pattern.length; k++) {
+                if (random.nextBoolean()) {
+                    pattern[k] = WordIndex.ANY;
+                }
+            }
+            patterns.add(new String(pattern));
+        }
+        for (int round = 0; round < 3; round++) {
+            long matches = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < queries; i++) {
+                matches += index.match(patterns.get(i % patterns.size())).size();
+            }
+            System.out.printf("index %8.2f us/query, %.1f words/query%n", (System.nanoTime() - start) / 1e3 / queries,
+                    (double) matches / queries);
+            sink += matches;
+            start = System.nanoTime();
+            for (int i = 0; i < queries / 100; i++) {
+                sink += scan(words, patterns.get(i % patterns.size()));
+            }
+            System.out.printf("scan  %8.2f us/query%n", (System.nanoTime() - start) / 1e3 / (queries / 100));
+        }
+        Files.delete(file);
+        System.out.println(sink == 42 ? "" : "done");
+    }
+
+    // the number of words matching pattern, found by checking every word
+    private static int scan(List<String> words, String pattern) {
+        int matches = 0;
+        for (String word : words) {
+            if (word.length() != pattern.length()) {
+                continue;
+            }
+            boolean match = true;
+            for (int i = 0; i < pattern.length() && match; i++) {
+                match = pattern.charAt(i) == WordIndex.ANY || pattern.charAt(i) == word.charAt(i);
+            }
+            if (match) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    // a word of letters in roughly the frequencies of English text
+    private static String randomWord(Random random, int length) {
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            word.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+        }
+        return word.toString();
+    }
+}
@@ -22,15 +22,21 @@ public class Client {
          */
         public void call();
     }
-    private final ObjectInputStream socketIn;
-    private final PrintWriter socketOut;
+    private static final int RECONNECT_ATTEMPTS = 10;
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+    private final String host;
+    private final int port;
+    private ObjectInputStream socketIn;
+    private PrintWriter socketOut;
     private ServerResponse resp;
+    private String token = null;
     
     /*
-     * AF(socketIn, socketOut, c, resp) = 
-     *      A client connected to a socket
+     * AF(host, port, socketIn, socketOut, c, resp, token) = 
+     *      A client connected to a socket on the server at host:port
      *      with an object input socketIn and a text output socketOut
-     *      With the current most recent response resp
+     *      With the current most recent response resp, and the session token token the server 
+     *      gave it to resume its session with after losing its connection, null if none yet
      * 
      * RI
      *      true
@@ -38,7 +44,8 @@ public class Client {
      *      No mutable inputs. All variables private. 
      *      return value of currentResponse immutable
      * Thread safety
-     *      sendCommand and startResponses are synchronized on socketOut & In respectively
+     *      sendCommand and reconnecting are synchronized on this, and only the responses thread reads 
+     *      socketIn or reconnects
      *      currentResponse is an accessor to an immutable always valid object
      */
     
@@ -51,11 +58,18 @@ public class Client {
      * @throws IOException throws IOException if unable to connect to the server
      */
     public Client(String host, int port) throws IOException {
+        this.host = host;
+        this.port = port;
+        connect();
+        resp = ServerResponse.createStart();
+        checkrep();
+    }
+    
+    // open a new connection to the server
+    private synchronized void connect() throws IOException {
         Socket socket = new Socket(host, port);
         socketIn = new ObjectInputStream(socket.getInputStream());
         socketOut = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8), true);
-        resp = ServerResponse.createStart();
-        checkrep();
     }
     
     private void checkrep() {
@@ -70,7 +84,7 @@ public class Client {
      * @param command the command to send to the server
      */
     public void sendCommand(String command)  {
-        synchronized (socketOut) {
+        synchronized (this) {
             checkrep();
             System.out.println(command.toUpperCase());
             socketOut.println(command.toUpperCase());
@@ -97,20 +111,47 @@ public class Client {
     }
     
     private void responsesLoop(CallBack c) {
-        synchronized (socketIn) {
-            while (true) {
-                checkrep();
-                try {
-                    resp = (ServerResponse)socketIn.readObject();
-                    System.out.println(resp);
-                    c.call();
+        while (true) {
+            checkrep();
+            try {
+                resp = (ServerResponse)socketIn.readObject();
+                System.out.println(resp);
+                if (resp.hasToken()) {
+                    token = resp.token();
                 }
-                catch (ClassNotFoundException | IOException e) {
-                    System.out.println("Server disconnected. Game Exiting");
-                    System.exit(0);
-                    return;
+                c.call();
+            }
+            catch (ClassNotFoundException | IOException e) {
+                if (token != null && reconnect()) {
+                    continue;
                 }
+                System.out.println("Server disconnected. Game Exiting");
+                System.exit(0);
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Try to connect to the server again and resume the session with token. The server sends the 
+     * current state of the session once it has been resumed.
+     * @return true iff a new connection was made and the session resume was requested
+     */
+    private boolean reconnect() {
+        for (int attempt = 0; attempt < RECONNECT_ATTEMPTS; attempt++) {
+            System.out.println("Lost connection to the server, reconnecting...");
+            try {
+                Thread.sleep(RECONNECT_DELAY_MILLIS);
+                connect();
+                socketIn.readObject(); // the START response every new connection gets
+                sendCommand("RESUME " + token);
+                return true;
+            } catch (IOException | ClassNotFoundException e) {
+                // try again
+            } catch (InterruptedException e) {
+                return false;
             }
         }
+        return false;
     }
 }
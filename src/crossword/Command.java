@@ -0,0 +1,581 @@
+package crossword;
+
+/**
+ * An immutable command sent by a client, parsed in one pass over the line without regular expressions.
+ * The commands are those of spec/clientCommandsGrammar.txt as the server accepts them from the client,
+ * which sends them in upper case:
+ *
+ *      PLAY ::= "PLAY " ID
+ *      SPECTATE ::= "SPECTATE " ID
+ *      NEW ::= "NEW " ID " " BOARD_ID " \"" DESCRIPTION "\"" (" PLAYERS " COUNT (" TEAMS " COUNT)?)?
+ *      QUICKPLAY ::= "QUICKPLAY" (" " BOARD_ID)?
+ *      LIST ::= "LIST" (" " PAGE)? (" \"" FILTER "\"")?
+ *      LOBBY ::= "LOBBY" (" " SECRET)?
+ *      TRY ::= "TRY " WORD_ID " " WORD
+ *      CHALLENGE ::= "CHALLENGE " WORD_ID " " WORD
+ *      HINT ::= "HINT " WORD_ID
+ *      NEW_MATCH ::= "NEW MATCH"
+ *      EXIT ::= "EXIT"
+ *      RESUME ::= "RESUME " TOKEN
+ *      MIGRATE ::= "MIGRATE " ID " " HOST ":" PORT " " SECRET
+ *      ADOPT ::= "ADOPT " BYTES " " SECRET
+ *      ID ::= [A-Z0-9]+
+ *      BOARD_ID ::= [A-Z0-9_()]+
+ *      DESCRIPTION ::= [A-Z0-9 ]+
+ *      WORD_ID ::= [0-9]+ ("ACROSS" | "DOWN")
+ *      WORD ::= [A-Z\-]+
+ *      TOKEN ::= [0-9A-F]+
+ *      COUNT ::= [0-9]{1,2}
+ *      PAGE ::= [1-9][0-9]{0,3}
+ *      FILTER ::= [A-Z0-9_() ]+
+ *      HOST ::= [A-Za-z0-9.\-]+
+ *      PORT ::= [0-9]{1,5}
+ *      BYTES ::= [0-9]{1,9}
+ *      SECRET ::= [A-Za-z0-9+/=]+
+ *
+ * LOBBY is sent by a Router, not by players, to follow every line of a node's lobby; in the START state it
+ * carries the SECRET the Router shares with its nodes, and logs the Router in. MIGRATE, which a Router
+ * sends, and ADOPT, which the server handing a match over sends, are sent in the START state to move a match
+ * to the server at HOST:PORT, and to give a server a match encoded by MatchSnapshot.encode(), whose BYTES bytes
+ * follow the line as they are, not as a line (see CommandReader.readBytes()). Both end with the SECRET the nodes of a Router share, which a server checks before it acts on either.
+ * Any other line is an UNKNOWN command. Independently of its type, a line is a player ID if it matches ID,
+ * which is what a client sends in the START state.
+ *
+ * Parsing only allocates the command itself: arguments are kept as positions in the line, and only copied
+ * out when they are asked for.
+ */
+public class Command {
+
+    /** Kinds of command */
+    public enum Type { PLAY, SPECTATE, NEW, QUICKPLAY, LIST, LOBBY, TRY, CHALLENGE, HINT, NEW_MATCH, EXIT, RESUME, MIGRATE, ADOPT,
+        UNKNOWN }
+
+    private static final String ACROSS = "ACROSS";
+    private static final String DOWN = "DOWN";
+
+    private final String input;
+    private final Type type;
+    private final boolean playerId;
+    private final int firstStart;
+    private final int firstEnd;
+    private final int secondStart;
+    private final int secondEnd;
+    private final int thirdStart;
+    private final int thirdEnd;
+    private final int players;
+    private final int teams;
+
+    /*
+     * AF(input, type, playerId, firstStart, firstEnd, secondStart, secondEnd, thirdStart, thirdEnd, players, teams) =
+     *      the command input of kind type, whose arguments are input[firstStart..firstEnd),
+     *      input[secondStart..secondEnd) and input[thirdStart..thirdEnd), as many as type has:
+     *          PLAY, SPECTATE: match ID
+     *          NEW: match ID, board ID, description, and the most players and number of teams of the match 
+     *               in players and teams, 2 and 0 if input does not give them
+     *          QUICKPLAY: board ID as the second argument, which is empty if input does not give one
+     *          LIST: page number and filter, each empty if input does not give it
+     *          TRY, CHALLENGE: word ID, word
+     *          HINT: word ID
+     *          RESUME: token
+     *          MIGRATE: match ID, host, port, and the secret after the last space of input
+     *          ADOPT: number of bytes of the encoded match, and the secret after the last space of input
+     *          LOBBY: none, and the secret after the space of input if it has one
+     *          NEW_MATCH, EXIT, UNKNOWN: none
+     *      input is a player ID iff playerId
+     * RI:
+     *  - input matches the grammar of type, and the arguments are where the grammar puts them
+     *  - the positions of arguments type does not have are 0
+     *  - players and teams are 0 unless type is NEW
+     * SRE: all fields are private, final and immutable
+     * Thread Safety: immutable
+     */
+
+    private Command(String input, Type type, boolean playerId, int firstStart, int firstEnd, int secondStart,
+            int secondEnd, int thirdStart, int thirdEnd) {
+        this(input, type, playerId, firstStart, firstEnd, secondStart, secondEnd, thirdStart, thirdEnd, 0, 0);
+    }
+
+    private Command(String input, Type type, boolean playerId, int firstStart, int firstEnd, int secondStart,
+            int secondEnd, int thirdStart, int thirdEnd, int players, int teams) {
+        this.input = input;
+        this.type = type;
+        this.playerId = playerId;
+        this.firstStart = firstStart;
+        this.firstEnd = firstEnd;
+        this.secondStart = secondStart;
+        this.secondEnd = secondEnd;
+        this.thirdStart = thirdStart;
+        this.thirdEnd = thirdEnd;
+        this.players = players;
+        this.teams = teams;
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert input != null && type != null;
+        assert 0 <= firstStart && firstStart <= firstEnd && firstEnd <= input.length();
+        assert 0 <= secondStart && secondStart <= secondEnd && secondEnd <= input.length();
+        assert 0 <= thirdStart && thirdStart <= thirdEnd && thirdEnd <= input.length();
+        assert type == Type.NEW || (players == 0 && teams == 0);
+    }
+
+    /**
+     * Parse a line sent by a client
+     *
+     * @param input  line sent by the client, without its line ending
+     * @return the command input is, of type UNKNOWN if it is not a command
+     */
+    public static Command parse(String input) {
+        final int length = input.length();
+        final boolean playerId = length > 0 && scanId(input, 0) == length;
+        if (playerId) {
+            Type type = input.equals("EXIT") ? Type.EXIT : input.equals("QUICKPLAY") ? Type.QUICKPLAY
+                    : input.equals("LIST") ? Type.LIST : input.equals("LOBBY") ? Type.LOBBY : Type.UNKNOWN;
+            return new Command(input, type, true, 0, 0, 0, 0, 0, 0);
+        }
+        if (input.startsWith("PLAY ")) {
+            int idEnd = scanId(input, 5);
+            if (idEnd > 5 && idEnd == length) {
+                return new Command(input, Type.PLAY, false, 5, idEnd, 0, 0, 0, 0);
+            }
+        } else if (input.startsWith("SPECTATE ")) {
+            int idEnd = scanId(input, 9);
+            if (idEnd > 9 && idEnd == length) {
+                return new Command(input, Type.SPECTATE, false, 9, idEnd, 0, 0, 0, 0);
+            }
+        } else if (input.equals("NEW MATCH")) {
+            return new Command(input, Type.NEW_MATCH, false, 0, 0, 0, 0, 0, 0);
+        } else if (input.startsWith("NEW ")) {
+            int idEnd = scanId(input, 4);
+            int boardStart = idEnd + 1;
+            if (idEnd > 4 && at(input, idEnd, ' ')) {
+                int boardEnd = scanBoardId(input, boardStart);
+                int descriptionStart = boardEnd + 2;
+                if (boardEnd > boardStart && at(input, boardEnd, ' ') && at(input, boardEnd + 1, '"')) {
+                    int descriptionEnd = scanDescription(input, descriptionStart);
+                    if (descriptionEnd > descriptionStart && at(input, descriptionEnd, '"')) {
+                        return parseRules(input, descriptionEnd + 1, idEnd, boardStart, boardEnd,
+                                descriptionStart, descriptionEnd);
+                    }
+                }
+            }
+        } else if (input.startsWith("QUICKPLAY ")) {
+            int boardEnd = scanBoardId(input, 10);
+            if (boardEnd > 10 && boardEnd == length) {
+                return new Command(input, Type.QUICKPLAY, false, 0, 0, 10, boardEnd, 0, 0);
+            }
+        } else if (input.startsWith("LIST ")) {
+            return parseList(input);
+        } else if (input.startsWith("TRY ")) {
+            return parseMove(input, Type.TRY, 4);
+        } else if (input.startsWith("CHALLENGE ")) {
+            return parseMove(input, Type.CHALLENGE, 10);
+        } else if (input.startsWith("HINT ")) {
+            int wordIdEnd = scanWordId(input, 5);
+            if (wordIdEnd > 5 && wordIdEnd == input.length()) {
+                return new Command(input, Type.HINT, false, 5, wordIdEnd, 0, 0, 0, 0);
+            }
+        } else if (input.startsWith("RESUME ")) {
+            int tokenEnd = scanToken(input, 7);
+            if (tokenEnd > 7 && tokenEnd == length) {
+                return new Command(input, Type.RESUME, false, 7, tokenEnd, 0, 0, 0, 0);
+            }
+        } else if (input.startsWith("LOBBY ")) {
+            int secretEnd = scanBase64(input, 6);
+            if (secretEnd > 6 && secretEnd == length) {
+                return new Command(input, Type.LOBBY, false, 0, 0, 0, 0, 0, 0);
+            }
+        } else if (input.startsWith("MIGRATE ")) {
+            return parseMigrate(input);
+        } else if (input.startsWith("ADOPT ")) {
+            int bytesEnd = 6;
+            while (bytesEnd < length && isDigit(input.charAt(bytesEnd))) {
+                bytesEnd++;
+            }
+            if (bytesEnd > 6 && bytesEnd - 6 <= 9 && at(input, bytesEnd, ' ')) {
+                int secretEnd = scanBase64(input, bytesEnd + 1);
+                if (secretEnd > bytesEnd + 1 && secretEnd == length) {
+                    return new Command(input, Type.ADOPT, false, 6, bytesEnd, 0, 0, 0, 0);
+                }
+            }
+        }
+        return unknown(input);
+    }
+
+    // parse the optional players and teams of a NEW command, which start at start of input
+    private static Command parseRules(String input, int start, int idEnd, int boardStart, int boardEnd,
+            int descriptionStart, int descriptionEnd) {
+        int players = 2;
+        int teams = 0;
+        int i = start;
+        if (input.startsWith(" PLAYERS ", i)) {
+            int countEnd = scanCount(input, i + 9);
+            if (countEnd < 0) {
+                return unknown(input);
+            }
+            players = Integer.parseInt(input.substring(i + 9, countEnd));
+            i = countEnd;
+            if (input.startsWith(" TEAMS ", i)) {
+                countEnd = scanCount(input, i + 7);
+                if (countEnd < 0) {
+                    return unknown(input);
+                }
+                teams = Integer.parseInt(input.substring(i + 7, countEnd));
+                i = countEnd;
+            }
+        }
+        if (i != input.length()) {
+            return unknown(input);
+        }
+        return new Command(input, Type.NEW, false, 4, idEnd, boardStart, boardEnd, descriptionStart, descriptionEnd,
+                players, teams);
+    }
+
+    // parse a LIST command that has a page number, a filter or both
+    private static Command parseList(String input) {
+        int pageEnd = 5;
+        while (pageEnd < input.length() && isDigit(input.charAt(pageEnd))) {
+            pageEnd++;
+        }
+        boolean page = pageEnd > 5;
+        if (page && (input.charAt(5) == '0' || pageEnd > 9)) {
+            return unknown(input);
+        }
+        if (pageEnd == input.length()) {
+            return page ? new Command(input, Type.LIST, false, 5, pageEnd, 0, 0, 0, 0) : unknown(input);
+        }
+        int quote = page ? pageEnd + 1 : pageEnd;
+        if ((page && !at(input, pageEnd, ' ')) || !at(input, quote, '"')) {
+            return unknown(input);
+        }
+        int filterStart = quote + 1;
+        int filterEnd = scanFilter(input, filterStart);
+        if (filterEnd == filterStart || !at(input, filterEnd, '"') || filterEnd + 1 != input.length()) {
+            return unknown(input);
+        }
+        return new Command(input, Type.LIST, false, page ? 5 : 0, page ? pageEnd : 0, filterStart, filterEnd, 0, 0);
+    }
+
+    // parse a MIGRATE command, whose match ID starts after "MIGRATE "
+    private static Command parseMigrate(String input) {
+        int idEnd = scanId(input, 8);
+        if (idEnd == 8 || !at(input, idEnd, ' ')) {
+            return unknown(input);
+        }
+        int hostStart = idEnd + 1;
+        int hostEnd = hostStart;
+        while (hostEnd < input.length()) {
+            char c = input.charAt(hostEnd);
+            if (!(isUpper(c) || ('a' <= c && c <= 'z') || isDigit(c) || c == '.' || c == '-')) {
+                break;
+            }
+            hostEnd++;
+        }
+        if (hostEnd == hostStart || !at(input, hostEnd, ':')) {
+            return unknown(input);
+        }
+        int portStart = hostEnd + 1;
+        int portEnd = portStart;
+        while (portEnd < input.length() && isDigit(input.charAt(portEnd))) {
+            portEnd++;
+        }
+        if (portEnd == portStart || portEnd > portStart + 5 || !at(input, portEnd, ' ')) {
+            return unknown(input);
+        }
+        int secretEnd = scanBase64(input, portEnd + 1);
+        if (secretEnd == portEnd + 1 || secretEnd != input.length()) {
+            return unknown(input);
+        }
+        return new Command(input, Type.MIGRATE, false, 8, idEnd, hostStart, hostEnd, portStart, portEnd);
+    }
+
+    // parse the WORD_ID " " WORD that starts at start of input
+    private static Command parseMove(String input, Type type, int start) {
+        int wordIdEnd = scanWordId(input, start);
+        if (wordIdEnd == start || !at(input, wordIdEnd, ' ')) {
+            return unknown(input);
+        }
+        int wordStart = wordIdEnd + 1;
+        int wordEnd = wordStart;
+        while (wordEnd < input.length() && (isUpper(input.charAt(wordEnd)) || input.charAt(wordEnd) == '-')) {
+            wordEnd++;
+        }
+        if (wordEnd == wordStart || wordEnd != input.length()) {
+            return unknown(input);
+        }
+        return new Command(input, type, false, start, wordIdEnd, wordStart, wordEnd, 0, 0);
+    }
+
+    private static Command unknown(String input) {
+        return new Command(input, Type.UNKNOWN, false, 0, 0, 0, 0, 0, 0);
+    }
+
+    private static boolean at(String input, int i, char c) {
+        return i < input.length() && input.charAt(i) == c;
+    }
+
+    private static boolean isDigit(char c) {
+        return '0' <= c && c <= '9';
+    }
+
+    private static boolean isUpper(char c) {
+        return 'A' <= c && c <= 'Z';
+    }
+
+    // end of the ID starting at start of input
+    private static int scanId(String input, int start) {
+        int i = start;
+        while (i < input.length() && (isUpper(input.charAt(i)) || isDigit(input.charAt(i)))) {
+            i++;
+        }
+        return i;
+    }
+
+    // end of the WORD_ID starting at start of input, or start if there is none
+    private static int scanWordId(String input, int start) {
+        int i = start;
+        while (i < input.length() && isDigit(input.charAt(i))) {
+            i++;
+        }
+        if (i > start && input.startsWith(ACROSS, i)) {
+            return i + ACROSS.length();
+        } else if (i > start && input.startsWith(DOWN, i)) {
+            return i + DOWN.length();
+        }
+        return start;
+    }
+
+    // end of the BOARD_ID starting at start of input
+    private static int scanBoardId(String input, int start) {
+        int i = start;
+        while (i < input.length()) {
+            char c = input.charAt(i);
+            if (!(isUpper(c) || isDigit(c) || c == '_' || c == '(' || c == ')')) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    // end of the DESCRIPTION starting at start of input
+    private static int scanDescription(String input, int start) {
+        int i = start;
+        while (i < input.length() && (isUpper(input.charAt(i)) || isDigit(input.charAt(i)) || input.charAt(i) == ' ')) {
+            i++;
+        }
+        return i;
+    }
+
+    // end of the FILTER starting at start of input
+    private static int scanFilter(String input, int start) {
+        int i = start;
+        while (i < input.length()) {
+            char c = input.charAt(i);
+            if (!(isUpper(c) || isDigit(c) || c == '_' || c == '(' || c == ')' || c == ' ')) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    // end of the COUNT starting at start of input, or -1 if there is none
+    private static int scanCount(String input, int start) {
+        int i = start;
+        while (i < input.length() && i < start + 2 && isDigit(input.charAt(i))) {
+            i++;
+        }
+        return i > start && !(i < input.length() && isDigit(input.charAt(i))) ? i : -1;
+    }
+
+    // end of the TOKEN starting at start of input
+    private static int scanToken(String input, int start) {
+        int i = start;
+        while (i < input.length() && (isDigit(input.charAt(i)) || ('A' <= input.charAt(i) && input.charAt(i) <= 'F'))) {
+            i++;
+        }
+        return i;
+    }
+
+    // end of the Base64 SECRET starting at start of input
+    private static int scanBase64(String input, int start) {
+        int i = start;
+        while (i < input.length()) {
+            char c = input.charAt(i);
+            if (!(isUpper(c) || ('a' <= c && c <= 'z') || isDigit(c) || c == '+' || c == '/' || c == '=')) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return the line this command was parsed from
+     */
+    public String input() {
+        return input;
+    }
+
+    /**
+     * @return the kind of command
+     */
+    public Type type() {
+        return type;
+    }
+
+    /**
+     * @return true iff the line is a valid player ID
+     */
+    public boolean isPlayerId() {
+        return playerId;
+    }
+
+    /**
+     * @return the match ID of a PLAY, SPECTATE, NEW or MIGRATE command
+     * @throws IllegalStateException if the command is not PLAY, SPECTATE, NEW or MIGRATE
+     */
+    public String matchId() {
+        if (type != Type.PLAY && type != Type.SPECTATE && type != Type.NEW && type != Type.MIGRATE)
+            throw new IllegalStateException("Not a PLAY, SPECTATE, NEW or MIGRATE command");
+        return input.substring(firstStart, firstEnd);
+    }
+
+    /**
+     * @return the board ID of a NEW or QUICKPLAY command, which is empty for a QUICKPLAY command that does not 
+     *         give one
+     * @throws IllegalStateException if the command is not NEW or QUICKPLAY
+     */
+    public String boardId() {
+        if (type != Type.NEW && type != Type.QUICKPLAY)
+            throw new IllegalStateException("Not a NEW or QUICKPLAY command");
+        return input.substring(secondStart, secondEnd);
+    }
+
+    /**
+     * @return the page of the lobby a LIST command asks for, 1 if the command does not say
+     * @throws IllegalStateException if the command is not LIST
+     */
+    public int page() {
+        if (type != Type.LIST)
+            throw new IllegalStateException("Not a LIST command");
+        return firstEnd > firstStart ? Integer.parseInt(input.substring(firstStart, firstEnd)) : 1;
+    }
+
+    /**
+     * @return the filter, without quotes, of a LIST command, "" if the command does not give one
+     * @throws IllegalStateException if the command is not LIST
+     */
+    public String filter() {
+        if (type != Type.LIST)
+            throw new IllegalStateException("Not a LIST command");
+        return input.substring(secondStart, secondEnd);
+    }
+
+    /**
+     * @return the description, without quotes, of a NEW command
+     * @throws IllegalStateException if the command is not NEW
+     */
+    public String description() {
+        if (type != Type.NEW)
+            throw new IllegalStateException("Not a NEW command");
+        return input.substring(thirdStart, thirdEnd);
+    }
+
+    /**
+     * @return the most players that can join the match a NEW command makes, 2 if the command does not say
+     * @throws IllegalStateException if the command is not NEW
+     */
+    public int maxPlayers() {
+        if (type != Type.NEW)
+            throw new IllegalStateException("Not a NEW command");
+        return players;
+    }
+
+    /**
+     * @return the number of teams the players of the match a NEW command makes are split into, 0 if every
+     *         player plays for themselves, which they do if the command does not say
+     * @throws IllegalStateException if the command is not NEW
+     */
+    public int teams() {
+        if (type != Type.NEW)
+            throw new IllegalStateException("Not a NEW command");
+        return teams;
+    }
+
+    /**
+     * @return the word ID of a TRY, CHALLENGE or HINT command
+     * @throws IllegalStateException if the command is not TRY, CHALLENGE or HINT
+     */
+    public String wordId() {
+        if (type != Type.TRY && type != Type.CHALLENGE && type != Type.HINT)
+            throw new IllegalStateException("Not a TRY, CHALLENGE or HINT command");
+        return input.substring(firstStart, firstEnd);
+    }
+
+    /**
+     * @return the word of a TRY or CHALLENGE command
+     * @throws IllegalStateException if the command is not TRY or CHALLENGE
+     */
+    public String word() {
+        if (type != Type.TRY && type != Type.CHALLENGE)
+            throw new IllegalStateException("Not a TRY or CHALLENGE command");
+        return input.substring(secondStart, secondEnd);
+    }
+
+    /**
+     * @return the session token of a RESUME command
+     * @throws IllegalStateException if the command is not RESUME
+     */
+    public String token() {
+        if (type != Type.RESUME)
+            throw new IllegalStateException("Not a RESUME command");
+        return input.substring(firstStart, firstEnd);
+    }
+
+    /**
+     * @return the host of the server a MIGRATE command moves its match to
+     * @throws IllegalStateException if the command is not MIGRATE
+     */
+    public String host() {
+        if (type != Type.MIGRATE)
+            throw new IllegalStateException("Not a MIGRATE command");
+        return input.substring(secondStart, secondEnd);
+    }
+
+    /**
+     * @return the port of the server a MIGRATE command moves its match to
+     * @throws IllegalStateException if the command is not MIGRATE
+     */
+    public int port() {
+        if (type != Type.MIGRATE)
+            throw new IllegalStateException("Not a MIGRATE command");
+        return Integer.parseInt(input.substring(thirdStart, thirdEnd));
+    }
+
+    /**
+     * @return number of bytes of the encoded match that follow an ADOPT command
+     * @throws IllegalStateException if the command is not ADOPT
+     */
+    public int matchBytes() {
+        if (type != Type.ADOPT)
+            throw new IllegalStateException("Not an ADOPT command");
+        return Integer.parseInt(input.substring(firstStart, firstEnd));
+    }
+
+    /**
+     * @return the secret a MIGRATE, ADOPT or LOBBY command ends with
+     * @throws IllegalStateException if the command is not MIGRATE, ADOPT or a LOBBY with a secret
+     */
+    public String secret() {
+        if (type != Type.MIGRATE && type != Type.ADOPT && !(type == Type.LOBBY && !playerId))
+            throw new IllegalStateException("Not a MIGRATE, ADOPT or LOBBY command with a secret");
+        return input.substring(input.lastIndexOf(' ') + 1);
+    }
+
+    @Override
+    public String toString() {
+        return type + ": " + input;
+    }
+}
@@ -0,0 +1,187 @@
+package crossword;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads the lines a client sends as commands, in batches: every complete command that has already arrived is
+ * returned together, so that a client sending many commands back to back can have them applied at once.
+ * Reading never waits for a command that has only partly arrived, unless no complete command is available.
+ *
+ * Lines end with "\n" or "\r\n" and are decoded as UTF-8. A command can be followed by bytes that are not
+ * lines, like the encoded match after ADOPT; the command is then read on its own, with readLine(), so that
+ * none of those bytes are taken for commands, and they are read with readBytes() or skipped with skipBytes().
+ */
+public class CommandReader implements Closeable {
+
+    public static final int MAX_LINE_BYTES = 64 * 1024;
+    private static final int READ_BYTES = 8 * 1024;
+
+    private final InputStream in;
+    private byte[] buffer = new byte[READ_BYTES];
+    private int start = 0;
+    private int end = 0;
+    private boolean eof = false;
+
+    /*
+     * AF(in, buffer, start, end, eof) = the commands sent on in, of which buffer[start..end) have been read but
+     *      not returned, and all bytes were read iff eof
+     * RI: 0 <= start <= end <= buffer.length, buffer[start..end) holds at most one partial line of less than
+     *     MAX_LINE_BYTES bytes after a batch of fewer than max commands has been read
+     * SRE: all fields are private, and lines are returned as new Strings
+     * Thread Safety: not threadsafe, a reader must only be used by the thread handling its connection
+     */
+
+    /**
+     * Make a reader for the commands sent on in
+     *
+     * @param in  stream the client sends commands on
+     */
+    public CommandReader(InputStream in) {
+        this.in = in;
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert 0 <= start && start <= end && end <= buffer.length;
+    }
+
+    /**
+     * Wait until at least one complete command has arrived, then read it and every other complete command that
+     * has already arrived, up to max commands. A last line without a line ending is only returned once the
+     * client has closed its side of the connection.
+     *
+     * @param max  most commands to return, > 0
+     * @return the commands read, in the order they were sent, empty iff the client closed the connection
+     * @throws IOException if the connection fails, or a command is longer than MAX_LINE_BYTES
+     */
+    public List<String> readBatch(int max) throws IOException {
+        List<String> batch = new ArrayList<>();
+        while (batch.size() < max) {
+            String line = nextLine();
+            if (line != null) {
+                batch.add(line);
+            } else if (eof) {
+                if (start < end && batch.isEmpty()) {
+                    batch.add(decode(start, end));
+                    start = end;
+                }
+                break;
+            } else if (batch.isEmpty() || in.available() > 0) {
+                fill(); // blocks only when there is nothing to return yet
+            } else {
+                break;
+            }
+        }
+        checkRep();
+        return batch;
+    }
+
+    /**
+     * Wait for the next command
+     *
+     * @return the next command, or null if the client closed the connection
+     * @throws IOException if the connection fails, or the command is longer than MAX_LINE_BYTES
+     */
+    public String readLine() throws IOException {
+        List<String> batch = readBatch(1);
+        return batch.isEmpty() ? null : batch.get(0);
+    }
+
+    // remove and return the first complete line in the buffer, or null if there is none
+    private String nextLine() throws IOException {
+        for (int i = start; i < end; i++) {
+            if (buffer[i] == '\n') {
+                int lineEnd = i > start && buffer[i - 1] == '\r' ? i - 1 : i;
+                String line = decode(start, lineEnd);
+                start = i + 1;
+                return line;
+            }
+        }
+        if (end - start >= MAX_LINE_BYTES) {
+            throw new IOException("command longer than " + MAX_LINE_BYTES + " bytes");
+        }
+        return null;
+    }
+
+    /**
+     * Wait for the next length bytes the client sends, which follow the last command returned by readLine()
+     *
+     * @param length  number of bytes to read, >= 0
+     * @return the bytes, as they were sent
+     * @throws IOException if the connection fails, or the client closes it before sending length bytes
+     */
+    public byte[] readBytes(int length) throws IOException {
+        byte[] bytes = new byte[length];
+        int read = Math.min(length, end - start);
+        System.arraycopy(buffer, start, bytes, 0, read);
+        start += read;
+        while (read < length) {
+            int more = in.read(bytes, read, length - read);
+            if (more < 0) {
+                eof = true;
+                throw new EOFException("connection closed after " + read + " of " + length + " bytes");
+            }
+            read += more;
+        }
+        checkRep();
+        return bytes;
+    }
+
+    /**
+     * Wait for the next length bytes the client sends, which follow the last command returned by readLine(),
+     * and drop them without keeping them all in memory
+     *
+     * @param length  number of bytes to skip, >= 0
+     * @throws IOException if the connection fails, or the client closes it before sending length bytes
+     */
+    public void skipBytes(long length) throws IOException {
+        long left = length;
+        while (true) {
+            int skipped = (int) Math.min(left, end - start);
+            start += skipped;
+            left -= skipped;
+            if (left == 0) {
+                break;
+            } else if (eof) {
+                throw new EOFException("connection closed " + left + " bytes short of " + length);
+            }
+            fill();
+        }
+        checkRep();
+    }
+
+    private String decode(int from, int to) {
+        return new String(buffer, from, to - from, UTF_8);
+    }
+
+    // read more bytes from in, blocking until some arrive, making room in the buffer first
+    private void fill() throws IOException {
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            end -= start;
+            start = 0;
+        }
+        if (end == buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, MAX_LINE_BYTES + READ_BYTES));
+        }
+        int read = in.read(buffer, end, buffer.length - end);
+        if (read < 0) {
+            eof = true;
+        } else {
+            end += read;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
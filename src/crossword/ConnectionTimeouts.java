@@ -0,0 +1,124 @@
+package crossword;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import crossword.ServerResponse.State;
+
+/**
+ * Immutable settings for when a server gives up on a client: how long a client may send nothing while in
+ * each state, and how long a single write to a client may be stuck because the client is not reading.
+ * A time of 0 means never.
+ */
+public class ConnectionTimeouts {
+
+    public static final ConnectionTimeouts NONE = new ConnectionTimeouts(new EnumMap<>(State.class), 0);
+    public static final ConnectionTimeouts DEFAULT = NONE
+            .withIdle(State.START, 60 * 1000)
+            .withIdle(State.CHOOSE, 10 * 60 * 1000)
+            .withIdle(State.WAIT, 10 * 60 * 1000)
+            .withIdle(State.PLAY, 5 * 60 * 1000)
+            .withIdle(State.SCORE, 2 * 60 * 1000)
+            .withWriteStall(10 * 1000);
+
+    private final Map<State, Long> idleMillis;
+    private final long writeStallMillis;
+
+    /*
+     * AF(idleMillis, writeStallMillis) = a client in state s is disconnected after sending nothing for
+     *      idleMillis[s] (never if 0 or missing), and when a write to it has not finished after
+     *      writeStallMillis (never if 0)
+     * RI: all times >= 0
+     * SRE: idleMillis is an unmodifiable copy, all fields are private and final
+     * Thread Safety: immutable
+     */
+
+    private ConnectionTimeouts(Map<State, Long> idleMillis, long writeStallMillis) {
+        Map<State, Long> copy = new EnumMap<>(State.class);
+        copy.putAll(idleMillis);
+        this.idleMillis = Collections.unmodifiableMap(copy);
+        this.writeStallMillis = writeStallMillis;
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert writeStallMillis >= 0;
+        for (long millis : idleMillis.values()) {
+            assert millis >= 0;
+        }
+    }
+
+    /**
+     * @param state   state of a client
+     * @param millis  how long a client in state may send nothing before it is disconnected, 0 for never
+     * @return the same timeouts, except for clients in state
+     */
+    public ConnectionTimeouts withIdle(State state, long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("timeout must not be negative");
+        }
+        Map<State, Long> idle = new EnumMap<>(State.class);
+        idle.putAll(idleMillis);
+        idle.put(state, millis);
+        return new ConnectionTimeouts(idle, writeStallMillis);
+    }
+
+    /**
+     * @param millis  how long a client in any state may send nothing before it is disconnected, 0 for never
+     * @return the same write stall timeout, with the same idle timeout for every state
+     */
+    public ConnectionTimeouts withIdle(long millis) {
+        ConnectionTimeouts timeouts = this;
+        for (State state : State.values()) {
+            timeouts = timeouts.withIdle(state, millis);
+        }
+        return timeouts;
+    }
+
+    /**
+     * @param millis  how long a write to a client may be stuck before it is disconnected, 0 for never
+     * @return the same timeouts, except for stuck writes
+     */
+    public ConnectionTimeouts withWriteStall(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("timeout must not be negative");
+        }
+        return new ConnectionTimeouts(idleMillis, millis);
+    }
+
+    /**
+     * @param state  state of a client
+     * @return how long a client in state may send nothing before it is disconnected, 0 for never
+     */
+    public long idleMillis(State state) {
+        return idleMillis.getOrDefault(state, 0L);
+    }
+
+    /**
+     * @return how long a write to a client may be stuck before it is disconnected, 0 for never
+     */
+    public long writeStallMillis() {
+        return writeStallMillis;
+    }
+
+    /**
+     * @return true iff no client is ever disconnected by these timeouts
+     */
+    public boolean isNone() {
+        if (writeStallMillis > 0) {
+            return false;
+        }
+        for (long millis : idleMillis.values()) {
+            if (millis > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "idle " + idleMillis + " ms, write stall " + writeStallMillis + " ms";
+    }
+}
@@ -1,22 +1,40 @@
 package crossword;
 
 import java.awt.Dimension;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import crossword.Entry.Direction;
 import edu.mit.eecs.parserlib.UnableToParseException;
 
 /**
- * A threadsafe, mutable crossword puzzle board game that is playable for two
- * players.
+ * A threadsafe, mutable crossword puzzle board game that is playable for up to
+ * Match.MAX_PLAYERS players, or teams of players. Moves are made without
+ * locks: a move reads the cells it depends on, then commits its changes only if
+ * none of those cells changed in the meantime, and otherwise tries again, so
+ * moves that do not share a cell never wait for each other. A copy of a board
+ * shares the puzzle itself, which never changes once the board is made, and
+ * only copies what has been played on it, so many matches can be started on
+ * the same loaded board cheaply.
  */
 public class CrosswordBoard {
 
@@ -41,35 +59,66 @@ public class CrosswordBoard {
         CONFIRMED, WORD_OWNED, CONFLICT, SUCCESS, FAILED, WRONG_LENGTH, NONEXISTENT, SAME_WORD, FINISHED, CANT_CHALLENGE
     }
 
-    // correct board
-    private final List<List<CrosswordCharacter>> finalBoard = Collections.synchronizedList(new ArrayList<>());
-    // play board
-    private final List<List<CrosswordCharacter>> playBoard = Collections.synchronizedList(new ArrayList<>());
-    private final List<Dimension> startLocations = Collections.synchronizedList(new ArrayList<>());
+    // failed attempts a move spins through before it yields the processor
+    private static final int SPINS = 64;
+    private static final char BLACK = ' ';
+    private static final char EMPTY = '_';
+    // number of rows and columns
+    private final int height;
+    private final int width;
+    // correct board: solution[row * width + col] = the letter at (row, col), BLACK if no word covers it
+    private final char[] solution;
+    // play board: letters[row * width + col] = the letter played at (row, col), EMPTY if none, BLACK if black
+    private final char[] letters;
+    private final List<Dimension> startLocations;
+    // startIDs[row * width + col] = id number of the word(s) starting at (row, col), 0 if none
+    private final int[] startIDs;
 
-    private final Map<String, String> words = Collections.synchronizedMap(new HashMap<>());
-    private final Map<String, String> clues = Collections.synchronizedMap(new HashMap<>());
+    private final Map<String, String> words;
+    private final Map<String, String> clues;
+    // wordCells[wordID] = the cells of wordID, as row * width + col, in order
+    private final Map<String, List<Integer>> wordCells;
 
     private final Map<String, Integer> scores = Collections.synchronizedMap(new HashMap<>());
-    private boolean finished = false;
+    private volatile boolean finished = false;
     private String name;
     private String desc;
+    private final String puzzleId;
+    private final AtomicLong version = new AtomicLong(0);
+    private long viewVersion = -1;
+    private List<List<CrosswordCharacter>> view = null;
+    // footprints[wordID] = the cells of wordID and of every word crossing it, as indexes into stamps, ascending
+    private final Map<String, int[]> footprints;
+    private final AtomicLongArray stamps;
+    private final AtomicInteger wrongCells = new AtomicInteger(0);
+    // wordStates[wordID] = the owner, confirmation and crossings of wordID
+    private final Map<String, WordState> wordStates;
+    // acrossAt[row * width + col], downAt[row * width + col] = the word of wordStates going ACROSS, DOWN over 
+    // (row, col), null if none
+    private final WordState[] acrossAt;
+    private final WordState[] downAt;
 
     /*
-     * AF(finalBoard, playBoard, startLocations, words, clues,scores, finished)-
-     * finalBoard represents what the finished board should look like, and once
-     * playBoard reaches this state, then the game will end and points will be
+     * AF(height, width, solution, letters, startLocations, startIDs, words, clues,scores, finished)-
+     * the board has height rows and width columns, and the cell at (row, col) is
+     * solution[row * width + col] and letters[row * width + col] of the two boards.
+     * solution represents what the finished board should look like, and once
+     * letters reaches this state, then the game will end and points will be
      * accumulated based on which player input which words in the puzzle. finished
-     * represents if this crossword game is finished. playBoard can reach finalBoard
+     * represents if this crossword game is finished. letters can reach solution
      * through moves made by two players.
      * 
-     * playBoard shows the player's current progress within the game, including
+     * letters shows the player's current progress within the game, including
      * empty tiles, black tiles, and words that may/may not have been confirmed
      * already.
      * 
      * startLocation[i] represents the starting location of a word in this puzzle
      * with id number i.
      * 
+     * startIDs[row * width + col] is the id number i of the words starting at
+     * (row, col), so startLocations[i - 1] is (row, col), or 0 if no word starts
+     * there.
+     * 
      * words["NumberDirection"] represents the word in this puzzle
      * that is going Direction, either ACROSS or DOWN, with id number Number, 0 <
      * Number < startLocations.size.
@@ -81,37 +130,107 @@ public class CrosswordBoard {
      * scores[playerID] will give the current score of the player with this
      * playerID.
      * 
+     * version counts the changes made to letters, scores and finished, and
+     * view is a copy of the play board made when version was viewVersion.
+     * 
+     * wrongCells is the number of cells of letters that differ from
+     * solution. stamps[row * width + col] is the version stamp of the cell at
+     * (row, col) of letters: even while nobody is changing the cell, odd while
+     * a commit owns it, and increased by 2 by every commit that owned it.
+     * footprints[wordID] are the cells a move on wordID reads or changes, and
+     * wordCells[wordID] the cells of wordID, in order.
+     * 
+     * puzzleId is where the puzzle was loaded from ("" if it was not loaded
+     * from anywhere), "#", and the SHA-256 of its name, description and
+     * entries in hex.
+     * 
+     * wordStates[wordID] is the word wordID of letters: its cells, the words
+     * crossing it, the player that owns it ("" if nobody does) and whether it is
+     * confirmed, and acrossAt and downAt are the words over each cell. A cell is
+     * confirmed iff one of its words is. The CrosswordCharacters of getPlayBoard
+     * are made from letters, startIDs and the words over each cell.
+     * 
      * RI - words.size == clues.size
-     * scores.size = 2
+     * scores.size <= Match.MAX_PLAYERS
+     * footprints.keys() == words.keys(), footprints[id] is sorted and holds
+     * the cells of id and of every word crossing it
+     * wordCells.keys() == words.keys()
+     * wordStates.keys() == words.keys(), wordStates[id].answer == words[id]
+     * solution.length == letters.length == stamps.length == startIDs.length ==
+     * acrossAt.length == downAt.length == height * width
+     * letters[i] == BLACK iff solution[i] == BLACK
+     * viewVersion <= version, view != null iff viewVersion >= 0
      * 
      * RE -
      * - we return void or immutable objects in most of our functions, except for
      * our constructors, getPlayBoard, and getClues.
-     * - when we do give out playBoard and clues in getPlayBoard and getClues
+     * - when we do give out the play board and clues in getPlayBoard and getClues
      * respectively, we make a deep defensive copy and then give out the copy.
-     * - canPlace, confirmedWord, and checkValidity are a private methods and only
-     * take in Dimension (mutable), but only reads its int values.
+     * - startLocations holds Dimensions (mutable), but we only read their int
+     * values.
+     * - wordStates and the WordStates in it are private and never given out.
      * - during initialization, we use CrosswordParser.parse(), giving an immutable
      * CrosswordFile which we use to create the game.
      * - It is ok when we take in Entry because the Entry class is immutable.
      * - all of our rep, except for finished, is private and final. we never give
      * out any direct references to our rep.
      * - finished is still private can only be changed by our private functions.
+     * - letters is copied by every copy of the board, and getPlayBoard and
+     * getPlayView make new CrosswordCharacters from it.
+     * - getPlayView gives out view, which is unmodifiable and never changed, but
+     * shares its CrosswordCharacters with every caller until the next change, so
+     * callers must not change them.
+     * - solution, startLocations, startIDs, words, clues, footprints,
+     * wordCells and puzzleId are the puzzle. They are only changed while the board is parsed,
+     * and then shared with every copy of the board, never with a client, and
+     * only wordCells, which is unmodifiable, is given out.
      * 
      * TSE -
      * - all of the maps are wrapped in a Collections.synchronizedMap so that the
-     * two threads that do access this board can perform concurrently.
-     * - all of the lists and lists inside of a list are wrapped in a
-     * Collections.synchronizedList so that the two threads that do access this
-     * board can perform concurrently.
-     * - tryWord and tryChallenge are the only public mutator functions, so we will
-     * wrap those functions with synchronized so that if both players try at the
-     * same word, there will be no race condition
+     * threads that do access this board can perform concurrently.
+     * - the letters of a cell are only changed by commits that own the cell, which
+     * give it back with a volatile write of its stamp, so a move that validates its
+     * stamps saw the letters of its cells as they were at that moment.
+     * - tryWord and tryChallenge are the only public mutator functions. A move on
+     * a word only reads and changes the cells of footprints[word]. It reads their
+     * stamps, decides its outcome, and then either checks the stamps are unchanged
+     * (if it changes nothing) or takes ownership of every cell by moving its stamp
+     * from the value it read to the next odd value with compareAndSet, in
+     * ascending order. If any stamp was odd or has changed, another commit has
+     * touched a cell the move read, so it gives back the cells it took and starts
+     * again. A move that owns its cells sees them as they were when it read them,
+     * and nobody else changes them until it gives them back with new even stamps,
+     * so every move acts as if it was made alone, at the moment its stamps were
+     * checked. Moves never wait while owning cells, so they can not deadlock.
+     * - scores is only changed with merge, which is atomic.
+     * - wrongCells is only changed by commits that own the cell whose letter
+     * changed, so it is exact whenever no commit is in progress. finished,
+     * getPlayView, writeState and readState take ownership of every cell,
+     * waiting for each in ascending order, so they see or change the board
+     * between commits, and moves that read the board before them start again. A
+     * move that brings wrongCells to 0 only finishes the game if it is still 0
+     * once it owns every cell, so finished is only set when the board is solved.
+     * - finished is volatile, and only set while owning every cell, so a move
+     * that validates its stamps saw the value it had at that moment
      * - the rest are observer functions
-     * - CrosswordCharacter is also threadsafe
      * - startLocations is created in initialization and only used to access
      * Dimension and read its width and height, never using any of its mutator
      * functions so startLocations is threadsafe.
+     * - startIDs is only written during initialization and only read after.
+     * - version is atomic, and viewVersion and view are only accessed in
+     * synchronized methods.
+     * - footprints is only written during initialization and only read after,
+     * and stamps is atomic.
+     * - height, width, solution, startLocations, startIDs, words, clues,
+     * footprints and wordCells are only written while the board that parsed them
+     * is made, and only read after, by it and by every copy of it, which is made
+     * after it.
+     * - wordStates, acrossAt, downAt and the cells and crossings of each word
+     * are only written during initialization. The owner and confirmation of a word are volatile,
+     * and only changed by commits that own every cell of the word, which are in
+     * the footprint of the word and of every word crossing it, so a move that
+     * validates its stamps saw the owners and confirmations of its word and the
+     * words crossing it as they were at that moment.
      * - String, int, boolean is also threadsafe because it is immutable.
      */
 
@@ -120,37 +239,48 @@ public class CrosswordBoard {
      */
     private void checkRep() {
         assert words.size() == clues.size();
-        assert scores.keySet().size() <= 2;
+        assert scores.keySet().size() <= Match.MAX_PLAYERS;
+        assert solution.length == height * width && letters.length == solution.length;
+        assert startIDs.length == height * width;
+        assert footprints.keySet().equals(words.keySet());
+        assert wordCells.keySet().equals(words.keySet());
+        assert stamps.length() == height * width;
+        assert acrossAt.length == height * width && downAt.length == height * width;
+        assert wordStates.keySet().equals(words.keySet());
     }
 
     /**
-     * makes a new copy of the other CrosswordBoard instance.
+     * makes a new copy of the other CrosswordBoard instance, sharing its puzzle,
+     * which never changes, and copying what has been played on it.
      * 
      * @param other the other board to copy to this instance
      */
     public CrosswordBoard(CrosswordBoard other) {
-        for (int i = 0; i < other.finalBoard.size(); i++) {
-            List<CrosswordCharacter> finalrow = Collections.synchronizedList(new ArrayList<>());
-            List<CrosswordCharacter> playRow = Collections.synchronizedList(new ArrayList<>());
-            for (int j = 0; j < other.finalBoard.get(0).size(); j++) {
-                finalrow.add(new CrosswordCharacter(other.finalBoard.get(i).get(j)));
-                playRow.add(new CrosswordCharacter(other.playBoard.get(i).get(j)));
-            }
-            finalBoard.add(finalrow);
-            playBoard.add(playRow);
-        }
-        for (String wordID : other.words.keySet()) {
-            words.put(wordID, other.words.get(wordID));
-            clues.put(wordID, other.clues.get(wordID));
-        }
-        for (Dimension d : other.startLocations) {
-            startLocations.add(new Dimension(d));
-        }
+        this.height = other.height;
+        this.width = other.width;
+        this.solution = other.solution;
+        this.letters = other.letters.clone();
+        this.startLocations = other.startLocations;
+        this.startIDs = other.startIDs;
+        this.words = other.words;
+        this.clues = other.clues;
+        this.footprints = other.footprints;
+        this.wordCells = other.wordCells;
         for (String player : other.scores.keySet()) {
             scores.put(player, other.scores.get(player));
         }
         this.name = other.name;
         this.desc = other.desc;
+        this.puzzleId = other.puzzleId;
+        this.acrossAt = new WordState[letters.length];
+        this.downAt = new WordState[letters.length];
+        this.wordStates = makeWordStates();
+        for (WordState state : wordStates.values()) {
+            state.owner = other.wordStates.get(state.id).owner;
+            state.confirmed = other.wordStates.get(state.id).confirmed;
+        }
+        this.stamps = new AtomicLongArray(letters.length);
+        wrongCells.set(countWrongCells());
     }
 
     /**
@@ -158,64 +288,95 @@ public class CrosswordBoard {
      * 
      * @param filename file to read the board from
      * @throws IOException when the file could not be parsed or the file has an
-     *                     incorrect crossword format
+     *                     incorrect crossword format, in which case the message
+     *                     lists every problem found by PuzzleValidator
      */
     public CrosswordBoard(String filename) throws IOException {
-        // get the file contents
-        String fileContents = "";
-        try {
-            fileContents = new String(Files.readAllBytes(Paths.get(filename)));
-        } catch (FileNotFoundException fnfe) {
-            throw new IOException("file does not exist");
-        }
-        // parse file contents using ParseLib
-        CrosswordFile parsedFile;
-        try {
-            parsedFile = CrosswordParser.parse(fileContents.substring(0, fileContents.length() - 1));
-        } catch (UnableToParseException e) {
-            throw new IOException("could not be parsed");
+        this(parseFile(filename), Paths.get(filename).getFileName().toString());
+    }
+
+    /**
+     * create a board for the client from an already parsed puzzle
+     * 
+     * @param parsedFile the parsed puzzle to build the board from
+     * @throws IOException when the puzzle has an incorrect crossword format, in
+     *                     which case the message lists every problem found by
+     *                     PuzzleValidator
+     */
+    public CrosswordBoard(CrosswordFile parsedFile) throws IOException {
+        this(parsedFile, "");
+    }
+
+    /**
+     * create a board for the client from an already parsed puzzle, remembering
+     * where it was loaded from
+     * 
+     * @param parsedFile the parsed puzzle to build the board from
+     * @param source     where the puzzle was loaded from, such as the name of its
+     *                   file, or "" if it was not loaded from anywhere
+     * @throws IOException when the puzzle has an incorrect crossword format, in
+     *                     which case the message lists every problem found by
+     *                     PuzzleValidator
+     */
+    public CrosswordBoard(CrosswordFile parsedFile, String source) throws IOException {
+        // report every problem with the puzzle at once, before building any of the board
+        List<String> problems = PuzzleValidator.validate(parsedFile);
+        if (!problems.isEmpty()) {
+            throw new IOException("incorrect crossword format:\n" + String.join("\n", problems));
         }
+        this.startLocations = Collections.synchronizedList(new ArrayList<>());
+        this.words = Collections.synchronizedMap(new HashMap<>());
+        this.clues = Collections.synchronizedMap(new HashMap<>());
         this.name = parsedFile.getName();
         this.desc = parsedFile.getDescription();
+        this.puzzleId = source + "#" + hash(parsedFile);
         List<Entry> entries = parsedFile.getEntries();
-        createEmptyBoard(entries);
-        // add the characters to finalBoard iff they are correctly formatted (inserted
-        // at a black tile/tile with the same character) and an empty one for playBoard
+        // find the word that goes the furthest left and furthest down
+        int rows = 0;
+        int columns = 0;
         for (Entry entry : entries) {
-            for (int i = 0; i < entry.getWord().length(); i++) {
-                CrosswordCharacter currentChar;
-                boolean starting = false;
-                if (i == 0) {
-                    giveID(entry);
-                    starting = true;
-                }
-                int index = startLocations.indexOf(new Dimension(entry.getRow(), entry.getCol()));
-                CrosswordCharacter playChar = new CrosswordCharacter('_', index + 1, entry.getDirection(), starting);
-                if (entry.getDirection() == Direction.DOWN) {
-                    currentChar = finalBoard.get(entry.getRow() + i).get(entry.getCol());
-                    if (currentChar.isBlack()) {
-                        currentChar.changeChar(entry.getWord().charAt(i));
-                        playBoard.get(entry.getRow() + i).set(entry.getCol(), playChar);
-                    } else if (currentChar.getChar() == entry.getWord().charAt(i)) {
-                        playBoard.get(entry.getRow() + i).get(entry.getCol()).addWordID(index + 1, entry.getDirection(),
-                                starting);
-                    } else {
-                        throw new IOException("board entries conflict with one another");
-                    }
-                } else if (entry.getDirection() == Direction.ACROSS) {
-                    currentChar = finalBoard.get(entry.getRow()).get(entry.getCol() + i);
-                    if (currentChar.isBlack()) {
-                        currentChar.changeChar(entry.getWord().charAt(i));
-                        playBoard.get(entry.getRow()).set(entry.getCol() + i, playChar);
-                    } else if (currentChar.getChar() == entry.getWord().charAt(i)) {
-                        playBoard.get(entry.getRow()).get(entry.getCol() + i).addWordID(index + 1, entry.getDirection(),
-                                starting);
-                    } else {
-                        throw new IOException("board entries conflict with one another");
-                    }
+            if (entry.getDirection() == Direction.DOWN && entry.getWord().length() + entry.getRow() > rows) {
+                rows = entry.getWord().length() + entry.getRow();
+            } else if (entry.getDirection() == Direction.ACROSS && entry.getWord().length() + entry.getCol() > columns) {
+                columns = entry.getWord().length() + entry.getCol();
+            }
+        }
+        this.height = rows;
+        this.width = columns;
+        this.solution = new char[height * width];
+        Arrays.fill(solution, BLACK);
+        this.startIDs = new int[solution.length];
+        // covered[square] has bit 1 set if an ACROSS word covers the square, bit 2 if a DOWN word does
+        final byte[] covered = new byte[solution.length];
+        // add the letters to solution iff they are correctly formatted (inserted
+        // at a black tile/tile with the same letter)
+        for (Entry entry : entries) {
+            giveID(entry);
+            String word = entry.getWord();
+            int bit = entry.getDirection() == Direction.ACROSS ? 1 : 2;
+            int step = entry.getDirection() == Direction.ACROSS ? 1 : width;
+            int square = entry.getRow() * width + entry.getCol();
+            for (int i = 0; i < word.length(); i++, square += step) {
+                if ((covered[square] & bit) != 0) {
+                    throw new IOException("overlapping words in the same direction");
+                } else if (solution[square] != BLACK && solution[square] != word.charAt(i)) {
+                    throw new IOException("board entries conflict with one another");
                 }
+                covered[square] |= bit;
+                solution[square] = word.charAt(i);
             }
         }
+        this.letters = new char[solution.length];
+        for (int i = 0; i < letters.length; i++) {
+            letters[i] = solution[i] == BLACK ? BLACK : EMPTY;
+        }
+        this.acrossAt = new WordState[letters.length];
+        this.downAt = new WordState[letters.length];
+        this.wordStates = makeWordStates();
+        this.footprints = makeFootprints();
+        this.wordCells = makeWordCells();
+        this.stamps = new AtomicLongArray(letters.length);
+        wrongCells.set(countWrongCells());
         checkRep();
     }
 
@@ -236,6 +397,16 @@ public class CrosswordBoard {
         return desc;
     }
 
+    /**
+     * @return the identity of the puzzle: where it was loaded from, "#", and a
+     *         hash of its name, description and entries, so a board loaded again
+     *         from the same unchanged puzzle has the same identity whatever ID it
+     *         is loaded under, and copies have the identity of the board they copy
+     */
+    public String getPuzzleId() {
+        return puzzleId;
+    }
+
     /**
      * clients will use this to try putting the word at a number on the board
      * 
@@ -245,43 +416,72 @@ public class CrosswordBoard {
      * @param playerID    the player that made the move
      * @return true iff word was put into the crossword puzzle board
      */
-    public synchronized Outcome tryWord(String wordID, String wordEntered, String playerID) {
-        // VALIDITY CHECK
+    public Outcome tryWord(String wordID, String wordEntered, String playerID) {
         String word = wordEntered.toLowerCase();
         String correctWordID = wordID.toUpperCase();
-        Outcome valid = checkValidity(word, correctWordID, playerID, true);
-        if (valid != Outcome.SUCCESS) {
-            checkRep();
-            return valid;
+        if (!words.containsKey(correctWordID)) {
+            return Outcome.NONEXISTENT;
         }
-
-        Dimension startLocation = startLocations.get(getWordNum(correctWordID) - 1);
-        Direction direction = getWordDirect(correctWordID);
-        if (canPlace(direction, correctWordID, startLocation, word, playerID)) {
-            for (int i = 0; i < words.get(correctWordID).length(); i++) {
-                CrosswordCharacter currChar = getPlayChar(i, direction, startLocation);
-                String other = currChar.other(correctWordID);
-                // clear the current word there and place the new one there
-                if (other != correctWordID && !currChar.isEmpty() && currChar.getChar() != word.charAt(i)) {
-                    clearWord(playerID, other);
+        int[] cells = footprints.get(correctWordID);
+        long[] seen = new long[cells.length];
+        for (int attempt = 0;; attempt++) {
+            if (!readStamps(cells, seen)) {
+                backOff(attempt);
+                continue;
+            }
+            Outcome outcome = checkTry(word, correctWordID, playerID);
+            if (outcome != Outcome.SUCCESS) {
+                if (stampsUnchanged(cells, seen)) {
+                    checkRep();
+                    return outcome;
                 }
-                currChar.changeChar(word.charAt(i));
-                currChar.setOwnerOf(playerID, correctWordID);
+                backOff(attempt);
+                continue;
+            }
+            if (!acquire(cells, seen)) {
+                backOff(attempt);
+                continue;
+            }
+            try {
+                placeWord(word, correctWordID, playerID);
+            } finally {
+                release(cells, seen);
             }
-        } else {
             checkRep();
-            return Outcome.CONFLICT;
+            return finishIfSolved(outcome);
         }
+    }
 
-        if (isFinished()) {
-            accumulateWhenFinished();
-            checkRep();
-            return Outcome.FINISHED;
+    // the outcome of trying word at correctWordID without changing the board, SUCCESS if it can be placed
+    private Outcome checkTry(String word, String correctWordID, String playerID) {
+        // VALIDITY CHECK
+        Outcome valid = checkValidity(word, correctWordID, playerID, true);
+        if (valid != Outcome.SUCCESS) {
+            return valid;
+        }
+        if (!canPlace(wordStates.get(correctWordID), word, playerID)) {
+            return Outcome.CONFLICT;
         }
-        checkRep();
         return Outcome.SUCCESS;
     }
 
+    // place word at correctWordID, after checkTry, while owning the cells of correctWordID
+    private void placeWord(String word, String correctWordID, String playerID) {
+        WordState state = wordStates.get(correctWordID);
+        // clear the crossing words that conflict, then place the new one
+        for (int i : state.crossed) {
+            char current = letters[state.squares[i]];
+            if (current != EMPTY && current != word.charAt(i)) {
+                clearWord(state.crossings[i]);
+            }
+        }
+        for (int i = 0; i < word.length(); i++) {
+            changeLetter(state, i, word.charAt(i));
+        }
+        state.owner = playerID;
+        version.incrementAndGet();
+    }
+
     /**
      * clients will use this to challenge a word that is already on the board with
      * their own word
@@ -292,60 +492,96 @@ public class CrosswordBoard {
      * @param playerID the player that made the challenge
      * @return true iff the challenge was won
      */
-    public synchronized Outcome tryChallenge(String wordID, String newWord, String playerID) {
-        // VALIDITY CHECK
+    public Outcome tryChallenge(String wordID, String newWord, String playerID) {
         String word = newWord.toLowerCase();
         String correctWordID = wordID.toUpperCase();
-        Outcome valid = checkValidity(word, correctWordID, playerID, false);
-        if (valid != Outcome.SUCCESS) {
+        if (!words.containsKey(correctWordID)) {
+            return Outcome.NONEXISTENT;
+        }
+        int[] cells = footprints.get(correctWordID);
+        long[] seen = new long[cells.length];
+        for (int attempt = 0;; attempt++) {
+            if (!readStamps(cells, seen)) {
+                backOff(attempt);
+                continue;
+            }
+            Outcome outcome = checkChallenge(word, correctWordID, playerID);
+            if (outcome != Outcome.SUCCESS) {
+                if (stampsUnchanged(cells, seen)) {
+                    checkRep();
+                    return outcome;
+                }
+                backOff(attempt);
+                continue;
+            }
+            if (!acquire(cells, seen)) {
+                backOff(attempt);
+                continue;
+            }
+            try {
+                outcome = challengeWord(word, correctWordID, playerID);
+            } finally {
+                release(cells, seen);
+            }
             checkRep();
-            return valid;
+            return outcome == Outcome.SUCCESS ? finishIfSolved(outcome) : outcome;
         }
+    }
 
-        Dimension startLocation = startLocations.get(getWordNum(correctWordID) - 1);
-        Direction direction = getWordDirect(correctWordID);
-        String currentWord = "";
-        for (int i = 0; i < word.length(); i++) {
-            currentWord += Character.toString(getPlayChar(i, direction, startLocation).getChar());
+    // the outcome of challenging correctWordID with word without changing the board, SUCCESS if the challenge
+    // can be made
+    private Outcome checkChallenge(String word, String correctWordID, String playerID) {
+        // VALIDITY CHECK
+        Outcome valid = checkValidity(word, correctWordID, playerID, false);
+        if (valid != Outcome.SUCCESS) {
+            return valid;
         }
-        if (currentWord.equals(word)) {
+        if (currentWord(wordStates.get(correctWordID)).equals(word)) {
             return Outcome.SAME_WORD;
         }
-        if (words.get(correctWordID).equals(currentWord)) {
+        return Outcome.SUCCESS;
+    }
+
+    // challenge correctWordID with word, after checkChallenge, while owning the cells of correctWordID
+    private Outcome challengeWord(String word, String correctWordID, String playerID) {
+        WordState state = wordStates.get(correctWordID);
+        String currentWord = currentWord(state);
+        version.incrementAndGet();
+        if (state.answer.equals(currentWord)) {
             // confirms entire word since original word was correct
-            for (int i = 0; i < words.get(correctWordID).length(); i++) {
-                getPlayChar(i, direction, startLocation).setConfirmed(correctWordID);
-            }
-        } else if (words.get(correctWordID).equals(word)) {
+            confirm(state);
+        } else if (state.answer.equals(word)) {
             // clear the current word there, place the new one, and then confirm because the
             // new word is correct
-            for (int i = 0; i < words.get(correctWordID).length(); i++) {
-                CrosswordCharacter currChar = getPlayChar(i, direction, startLocation);
-                String other = currChar.other(correctWordID);
-                if (other != correctWordID && currChar.getChar() != word.charAt(i)) {
-                    clearWord(playerID, other);
+            for (int i : state.crossed) {
+                if (letters[state.squares[i]] != word.charAt(i)) {
+                    clearWord(state.crossings[i]);
                 }
-                currChar.changeChar(word.charAt(i));
-                currChar.setOwnerOf(playerID, correctWordID);
-                currChar.setConfirmed(correctWordID);
             }
-            addPoints(playerID, 2);
-            if (isFinished()) {
-                accumulateWhenFinished();
-                checkRep();
-                return Outcome.FINISHED;
+            for (int i = 0; i < word.length(); i++) {
+                changeLetter(state, i, word.charAt(i));
             }
-            checkRep();
+            state.owner = playerID;
+            confirm(state);
+            addPoints(playerID, 2);
             return Outcome.SUCCESS;
         } else {
             // neither are correct, so clear word
-            clearWord("", correctWordID);
+            clearWord(state);
         }
         addPoints(playerID, -1);
-        checkRep();
         return Outcome.FAILED;
     }
 
+    // the letters of word on the play board
+    private String currentWord(WordState word) {
+        char[] current = new char[word.squares.length];
+        for (int i = 0; i < current.length; i++) {
+            current[i] = letters[word.squares[i]];
+        }
+        return new String(current);
+    }
+
     /**
      * 
      * @param playerID the playerID that's trying to access their score.
@@ -360,15 +596,15 @@ public class CrosswordBoard {
      * prints out each row followed by '\n'
      */
     @Override public String toString() {
-        String output = "";
-        for (int i = 0; i < playBoard.size(); i++) {
-            for (int j = 0; j < playBoard.get(0).size(); j++) {
-                output += Character.toString(playBoard.get(i).get(j).getChar()) + ' ';
+        StringBuilder output = new StringBuilder();
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                output.append(letters[i * width + j]).append(' ');
             }
-            output += '\n';
+            output.append('\n');
         }
         checkRep();
-        return output;
+        return output.toString();
     }
 
     /**
@@ -377,11 +613,11 @@ public class CrosswordBoard {
      * @return a look at the current play board
      */
     public List<List<CrosswordCharacter>> getPlayBoard() {
-        List<List<CrosswordCharacter>> copy = new ArrayList<>();
-        for (List<CrosswordCharacter> row : playBoard) {
-            List<CrosswordCharacter> currentRow = new ArrayList<>();
-            for (CrosswordCharacter element : row) {
-                currentRow.add(new CrosswordCharacter(element));
+        List<List<CrosswordCharacter>> copy = new ArrayList<>(height);
+        for (int i = 0; i < height; i++) {
+            List<CrosswordCharacter> currentRow = new ArrayList<>(width);
+            for (int j = 0; j < width; j++) {
+                currentRow.add(playChar(i * width + j));
             }
             copy.add(currentRow);
         }
@@ -389,6 +625,53 @@ public class CrosswordBoard {
         return copy;
     }
 
+    // the cell at square of the play board, with the words over it, their owners and confirmations
+    private CrosswordCharacter playChar(int square) {
+        WordState across = acrossAt[square];
+        WordState down = downAt[square];
+        if (across == null && down == null) {
+            return new CrosswordCharacter();
+        }
+        WordState first = across != null ? across : down;
+        WordState second = across != null ? down : null;
+        return new CrosswordCharacter(letters[square], startIDs[square], first.id, first.owner, first.confirmed,
+                second == null ? null : second.id, second == null ? null : second.owner,
+                second != null && second.confirmed);
+    }
+
+    /**
+     * A view of the play board as it is now, which is shared by every caller until the board changes, so
+     * that showing the same board to many players does not copy it for each of them.
+     * 
+     * @return an unmodifiable copy of the current play board, whose characters must not be changed
+     */
+    public synchronized List<List<CrosswordCharacter>> getPlayView() {
+        if (viewVersion != version.get()) {
+            // copy the board between moves
+            acquireAll();
+            try {
+                List<List<CrosswordCharacter>> rows = new ArrayList<>();
+                for (List<CrosswordCharacter> row : getPlayBoard()) {
+                    rows.add(List.copyOf(row));
+                }
+                view = List.copyOf(rows);
+                viewVersion = version.get();
+            } finally {
+                releaseAll();
+            }
+        }
+        checkRep();
+        return view;
+    }
+
+    /**
+     * @return the number of moves that have changed the play board, scores or whether the game is 
+     *         finished, which changes whenever getPlayView() or showScore() could
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
     /**
      * @return the clues associated with its respective word id = "idNum direction"
      */
@@ -398,56 +681,222 @@ public class CrosswordBoard {
         return copy;
     }
 
+    /**
+     * @return for each word id = "idNum direction", the cells the word covers from its first letter to its last,
+     *         each numbered row * width + col where width is the number of columns of the board; two words cross
+     *         exactly where their lists share a cell
+     */
+    public Map<String, List<Integer>> getWordCells() {
+        return wordCells;
+    }
+
+    // for each word, its cells in order, from wordStates
+    private Map<String, List<Integer>> makeWordCells() {
+        Map<String, List<Integer>> cells = new HashMap<>();
+        for (WordState state : wordStates.values()) {
+            List<Integer> word = new ArrayList<>(state.squares.length);
+            for (int square : state.squares) {
+                word.add(square);
+            }
+            cells.put(state.id, Collections.unmodifiableList(word));
+        }
+        return Collections.unmodifiableMap(cells);
+    }
+
+    /**
+     * Write the play state of this board (letters, owners, confirmations, scores and whether it is finished)
+     * in a compact binary form, which readState() can apply to another copy of the same puzzle.
+     * 
+     * @param out where to write the play state
+     * @throws IOException if out can not be written
+     */
+    public synchronized void writeState(DataOutput out) throws IOException {
+        acquireAll();
+        try {
+            writeBoardState(out);
+        } finally {
+            releaseAll();
+        }
+    }
+
+    // writeState while no move is in progress
+    private void writeBoardState(DataOutput out) throws IOException {
+        out.writeInt(height);
+        out.writeInt(width);
+        for (int i = 0; i < height; i++) {
+            out.writeUTF(new String(letters, i * width, width));
+        }
+        // owners and confirmations are the same in every cell of a word, so are written once per word
+        List<String> players = new ArrayList<>(new TreeSet<>(scores.keySet()));
+        List<String> wordIDs = new ArrayList<>(new TreeSet<>(words.keySet()));
+        for (String wordID : wordIDs) {
+            String owner = wordStates.get(wordID).owner;
+            if (!owner.equals("") && !players.contains(owner)) {
+                players.add(owner);
+            }
+        }
+        assert players.size() < 0x80;
+        out.writeByte(players.size());
+        for (String player : players) {
+            out.writeUTF(player);
+            out.writeBoolean(scores.containsKey(player));
+            out.writeInt(scores.getOrDefault(player, 0));
+        }
+        out.writeInt(wordIDs.size());
+        for (String wordID : wordIDs) {
+            WordState state = wordStates.get(wordID);
+            // owner index + 1, or 0 if nobody owns the word, with the top bit set if it is confirmed
+            int owner = players.indexOf(state.owner) + 1;
+            out.writeByte(owner | (state.confirmed ? 0x80 : 0));
+        }
+        out.writeBoolean(finished);
+    }
+
+    /**
+     * Replace the play state of this board with one written by writeState() for a board of the same puzzle.
+     * Should only be called on a board no moves have been made on.
+     * 
+     * @param in where to read the play state from
+     * @throws IOException if in can not be read, or the play state is for a different puzzle
+     */
+    public synchronized void readState(DataInput in) throws IOException {
+        acquireAll();
+        try {
+            readBoardState(in);
+        } finally {
+            releaseAll();
+        }
+        checkRep();
+    }
+
+    // readState while no move is in progress
+    private void readBoardState(DataInput in) throws IOException {
+        if (in.readInt() != height || in.readInt() != width) {
+            throw new IOException("play state is for a board of a different size");
+        }
+        List<String> rows = new ArrayList<>();
+        for (int i = 0; i < height; i++) {
+            rows.add(in.readUTF());
+        }
+        int numPlayers = in.readUnsignedByte();
+        List<String> players = new ArrayList<>();
+        Map<String, Integer> newScores = new HashMap<>();
+        for (int i = 0; i < numPlayers; i++) {
+            String player = in.readUTF();
+            boolean scored = in.readBoolean();
+            int score = in.readInt();
+            players.add(player);
+            if (scored) {
+                newScores.put(player, score);
+            }
+        }
+        List<String> wordIDs = new ArrayList<>(new TreeSet<>(words.keySet()));
+        if (in.readInt() != wordIDs.size()) {
+            throw new IOException("play state is for a puzzle with different words");
+        }
+        for (int i = 0; i < height; i++) {
+            if (rows.get(i).length() != width) {
+                throw new IOException("play state is for a board of a different size");
+            }
+            for (int j = 0; j < width; j++) {
+                if ((letters[i * width + j] == BLACK) != (rows.get(i).charAt(j) == BLACK)) {
+                    throw new IOException("play state has letters where the puzzle has none");
+                }
+            }
+        }
+        for (int i = 0; i < height; i++) {
+            rows.get(i).getChars(0, width, letters, i * width);
+        }
+        for (String wordID : wordIDs) {
+            int state = in.readUnsignedByte();
+            int owner = (state & 0x7f) - 1;
+            if (owner >= players.size()) {
+                throw new IOException("play state has an owner that is not a player");
+            }
+            WordState word = wordStates.get(wordID);
+            word.owner = owner < 0 ? "" : players.get(owner);
+            if ((state & 0x80) != 0) {
+                word.confirmed = true;
+            }
+        }
+        scores.clear();
+        scores.putAll(newScores);
+        finished = in.readBoolean();
+        wrongCells.set(countWrongCells());
+        version.incrementAndGet();
+    }
+
     /* --------------------------- PRIVATE METHODS ------------------------------ */
 
+    /**
+     * read and parse a puzzle file
+     * 
+     * @param filename file to read the puzzle from
+     * @return the parsed puzzle
+     * @throws IOException when the file could not be read or parsed
+     */
+    private static CrosswordFile parseFile(String filename) throws IOException {
+        // get the file contents
+        String fileContents = "";
+        try {
+            fileContents = new String(Files.readAllBytes(Paths.get(filename)));
+        } catch (FileNotFoundException fnfe) {
+            throw new IOException("file does not exist");
+        }
+        // parse file contents using ParseLib
+        try {
+            return CrosswordParser.parse(fileContents.substring(0, fileContents.length() - 1));
+        } catch (UnableToParseException e) {
+            throw new IOException("could not be parsed");
+        }
+    }
+
     /**
      * give the current entry an id in the crossword board that doesn't conflict.
      * 
      * @param entry that we are giving an id to
+     * @return the id number given to entry
      * @throws IOException when more than one word is going in the same direction
      *                     at the same starting location
      */
-    private void giveID(Entry entry) throws IOException {
+    private int giveID(Entry entry) throws IOException {
         // if there are two words that are starting at the same location going in a
         // different direction, then give it a different id with the same id number
-        if (startLocations.contains(new Dimension(entry.getRow(), entry.getCol()))) {
-            int index = startLocations.indexOf(new Dimension(entry.getRow(), entry.getCol()));
-            if (!clues.containsKey((index + 1) + entry.getDirection().toString())) {
-                clues.put((index + 1) + entry.getDirection().toString(), entry.getClue());
-                words.put((index + 1) + entry.getDirection().toString(), entry.getWord());
-                return;
-            } else {
-                throw new IOException("more than one word in the same direction and starting location");
-            }
-        } else {
+        int start = entry.getRow() * width + entry.getCol();
+        int id = startIDs[start];
+        if (id == 0) {
             startLocations.add(new Dimension(entry.getRow(), entry.getCol()));
-            clues.put(startLocations.size() + entry.getDirection().toString(), entry.getClue());
-            words.put(startLocations.size() + entry.getDirection().toString(), entry.getWord());
+            id = startLocations.size();
+            startIDs[start] = id;
+        }
+        String wordID = id + entry.getDirection().toString();
+        if (clues.putIfAbsent(wordID, entry.getClue()) != null) {
+            throw new IOException("more than one word in the same direction and starting location");
         }
+        words.put(wordID, entry.getWord());
+        return id;
     }
 
-    // creates an empty crossword board with the correct width and length
-    private void createEmptyBoard(List<Entry> entries) {
-        int width = 0;
-        int height = 0;
-        // find the word that goes the furthest left and furthest down
-        for (Entry entry : entries) {
-            if (entry.getDirection() == Direction.DOWN && entry.getWord().length() + entry.getRow() > height) {
-                height = entry.getWord().length() + entry.getRow();
-            } else if (entry.getDirection() == Direction.ACROSS && entry.getWord().length() + entry.getCol() > width) {
-                width = entry.getWord().length() + entry.getCol();
-            }
+    // the SHA-256 of the name, description and entries of puzzle, in hex
+    private static String hash(CrosswordFile puzzle) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("every JVM supports SHA-256", e);
         }
-        // create our empty board with width and height
-        for (int i = 0; i < height; i++) {
-            List<CrosswordCharacter> newRow = new ArrayList<>();
-            for (int j = 0; j < width; j++) {
-                newRow.add(new CrosswordCharacter());
-            }
-            finalBoard.add(Collections.synchronizedList(newRow));
-            playBoard.add(Collections.synchronizedList(new ArrayList<>(newRow)));
+        List<String> fields = new ArrayList<>(List.of(puzzle.getName(), puzzle.getDescription()));
+        for (Entry entry : puzzle.getEntries()) {
+            fields.addAll(List.of(entry.getWord(), entry.getClue(), entry.getDirection().toString(),
+                    String.valueOf(entry.getRow()), String.valueOf(entry.getCol())));
         }
-        checkRep();
+        for (String field : fields) {
+            // each field is preceded by its length, so no two puzzles hash the same fields
+            byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+            digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+            digest.update(bytes);
+        }
+        return HexFormat.of().formatHex(digest.digest());
     }
 
     // parse unparsedWordID and return the id number associated with the word
@@ -472,10 +921,158 @@ public class CrosswordBoard {
 
     // add points to playerID's current score
     private void addPoints(String playerID, int points) {
-        if (!scores.containsKey(playerID)) {
-            scores.put(playerID, 0);
+        scores.merge(playerID, points, Integer::sum);
+    }
+
+    // for each word, the cells of the word and of every word crossing it, ascending, from wordStates
+    private Map<String, int[]> makeFootprints() {
+        Map<String, int[]> cells = new HashMap<>();
+        for (WordState state : wordStates.values()) {
+            int size = state.squares.length;
+            for (int i : state.crossed) {
+                size += state.crossings[i].squares.length;
+            }
+            int[] footprint = Arrays.copyOf(state.squares, size);
+            int next = state.squares.length;
+            for (int i : state.crossed) {
+                int[] squares = state.crossings[i].squares;
+                System.arraycopy(squares, 0, footprint, next, squares.length);
+                next += squares.length;
+            }
+            Arrays.sort(footprint);
+            // each crossing cell is in both words, so keep only the first of each run of equal cells
+            int distinct = 0;
+            for (int i = 0; i < footprint.length; i++) {
+                if (i == 0 || footprint[i] != footprint[i - 1]) {
+                    footprint[distinct++] = footprint[i];
+                }
+            }
+            cells.put(state.id, Arrays.copyOf(footprint, distinct));
+        }
+        return Collections.unmodifiableMap(cells);
+    }
+
+    // read the stamps of cells into seen, returning false if a commit owns one of them
+    private boolean readStamps(int[] cells, long[] seen) {
+        for (int i = 0; i < cells.length; i++) {
+            seen[i] = stamps.get(cells[i]);
+            if ((seen[i] & 1) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // true iff no commit has owned any of cells since their stamps were read into seen
+    private boolean stampsUnchanged(int[] cells, long[] seen) {
+        for (int i = 0; i < cells.length; i++) {
+            if (stamps.get(cells[i]) != seen[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // take ownership of cells if none has changed since their stamps were read into seen, returning false and
+    // owning none of them otherwise
+    private boolean acquire(int[] cells, long[] seen) {
+        for (int i = 0; i < cells.length; i++) {
+            if (!stamps.compareAndSet(cells[i], seen[i], seen[i] + 1)) {
+                for (int j = i - 1; j >= 0; j--) {
+                    stamps.set(cells[j], seen[j]);
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // give back cells taken by acquire, with new stamps
+    private void release(int[] cells, long[] seen) {
+        for (int i = cells.length - 1; i >= 0; i--) {
+            stamps.set(cells[i], seen[i] + 2);
+        }
+    }
+
+    // take ownership of every cell, waiting for commits that own them
+    private void acquireAll() {
+        for (int i = 0; i < stamps.length(); i++) {
+            for (int attempt = 0;; attempt++) {
+                long stamp = stamps.get(i);
+                if ((stamp & 1) == 0 && stamps.compareAndSet(i, stamp, stamp + 1)) {
+                    break;
+                }
+                backOff(attempt);
+            }
+        }
+    }
+
+    // wait a little before trying again after attempt failed, giving up the processor once spinning has not
+    // been enough, since the commit in the way may not be running
+    private static void backOff(int attempt) {
+        if (attempt < SPINS) {
+            Thread.onSpinWait();
+        } else {
+            Thread.yield();
+        }
+    }
+
+    // give back every cell taken by acquireAll, with new stamps
+    private void releaseAll() {
+        for (int i = stamps.length() - 1; i >= 0; i--) {
+            stamps.incrementAndGet(i);
+        }
+    }
+
+    // number of cells of letters that are not the same as solution
+    private int countWrongCells() {
+        int wrong = 0;
+        for (int i = 0; i < letters.length; i++) {
+            if (letters[i] != solution[i]) {
+                wrong++;
+            }
+        }
+        return wrong;
+    }
+
+    // change the letter at index of word, whose cell is owned by the caller, keeping wrongCells up to date
+    private void changeLetter(WordState word, int index, char letter) {
+        int square = word.squares[index];
+        char current = letters[square];
+        if (current == letter) {
+            return;
+        }
+        char correct = solution[square];
+        letters[square] = letter;
+        if ((current == correct) != (letter == correct)) {
+            wrongCells.addAndGet(letter == correct ? -1 : 1);
+        }
+    }
+
+    // confirm word, whose cells are owned by the caller
+    private static void confirm(WordState word) {
+        word.confirmed = true;
+    }
+
+    // finish the game if a move that returned outcome solved the board
+    private Outcome finishIfSolved(Outcome outcome) {
+        if (finished || wrongCells.get() != 0) {
+            return outcome;
         }
-        scores.put(playerID, scores.get(playerID) + points);
+        // finish between moves, so the board is still solved and only one move finishes it
+        acquireAll();
+        try {
+            if (finished || wrongCells.get() != 0) {
+                return outcome;
+            }
+            finished = true;
+            accumulateWhenFinished();
+            version.incrementAndGet();
+        } finally {
+            releaseAll();
+        }
+        checkRep();
+        return Outcome.FINISHED;
     }
 
     // check the validity of the word before trying/challenging
@@ -485,16 +1082,16 @@ public class CrosswordBoard {
         } else if (!words.containsKey(correctWordID)) {
             return Outcome.NONEXISTENT;
         }
-        Dimension startLocation = startLocations.get(getWordNum(correctWordID) - 1);
-        Direction direction = getWordDirect(correctWordID);
-        CrosswordCharacter startingCell = playBoard.get(startLocation.width).get(startLocation.height);
-        if (words.get(correctWordID).length() != word.length()) {
+        WordState state = wordStates.get(correctWordID);
+        String owner = state.owner;
+        boolean ownerOrNobody = owner.equals("") || owner.equals(playerID);
+        if (state.answer.length() != word.length()) {
             return Outcome.WRONG_LENGTH;
-        } else if (confirmedWord(correctWordID, direction, startLocation)) {
+        } else if (state.confirmed) {
             return Outcome.CONFIRMED;
-        } else if (tryWord && !startingCell.canTry(playerID, correctWordID)) {
+        } else if (tryWord && !ownerOrNobody) {
             return Outcome.WORD_OWNED;
-        } else if (!tryWord && !startingCell.canChallenge(playerID, correctWordID)) {
+        } else if (!tryWord && ownerOrNobody) {
             return Outcome.CANT_CHALLENGE;
         } else {
             return Outcome.SUCCESS;
@@ -503,80 +1100,119 @@ public class CrosswordBoard {
 
     // if the game is finished, add the number of words they own to their score
     private void accumulateWhenFinished() {
-        for (String key : words.keySet()) {
-            Dimension location = startLocations.get(getWordNum(key) - 1);
-            String thisOwner = playBoard.get(location.width).get(location.height).getOwnerOf(key);
+        for (WordState state : wordStates.values()) {
+            String thisOwner = state.owner;
             if (!thisOwner.equals("")) {
                 addPoints(thisOwner, 1);
             }
         }
     }
 
-    // checks if the entire word has been confirmed
-    private boolean confirmedWord(String wordID, Direction direction, Dimension startLocation) {
-        for (int i = 0; i < words.get(wordID).length(); i++) {
-            if (!getPlayChar(i, direction, startLocation).isWordConfirmed(wordID)) {
-                return false;
+    // take word away from its owner, emptying the cells of word that are not confirmed and whose crossing
+    // word, if any, is owned by nobody, while owning the cells of word
+    private void clearWord(WordState word) {
+        word.owner = "";
+        for (int i = 0; i < word.squares.length; i++) {
+            WordState crossing = word.crossings[i];
+            // a cell is confirmed iff one of its words is
+            if (!word.confirmed && (crossing == null || (!crossing.confirmed && crossing.owner.equals("")))) {
+                changeLetter(word, i, EMPTY);
             }
         }
-        return true;
-    }
-
-    // clear the word at wordID that conflicts with what playerID wants to put in
-    private void clearWord(String playerID, String wordID) {
-        Direction direction = getWordDirect(wordID);
-        Dimension location = startLocations.get(getWordNum(wordID) - 1);
-        for (int i = 0; i < words.get(wordID).length(); i++) {
-            getPlayChar(i, direction, location).removeOwner(wordID);
-        }
-    }
-
-    // get the character from playBoard
-    private CrosswordCharacter getPlayChar(int index, Direction direction, Dimension startLocation) {
-        if (direction == Direction.ACROSS) {
-            return playBoard.get(startLocation.width).get(startLocation.height + index);
-        } else {
-            return playBoard.get(startLocation.width + index).get(startLocation.height);
-        }
     }
 
-    // check first to see if the player can enter word or not at wordID
-    private boolean canPlace(Direction direction, String wordID, Dimension startLocation, String word,
-            String playerID) {
-        for (int i = 0; i < word.length(); i++) {
-            CrosswordCharacter currChar = getPlayChar(i, direction, startLocation);
+    // check first to see if the player can enter word or not at state, after checkValidity; only the cells
+    // where another word crosses can conflict, since the player may try state, which is not confirmed
+    private boolean canPlace(WordState state, String word, String playerID) {
+        for (int i : state.crossed) {
+            WordState crossing = state.crossings[i];
+            char current = letters[state.squares[i]];
+            String owner = crossing.owner;
             // can only place a conflicting word if player owns the entire cell
-            if (currChar.isOwner(playerID)) {
+            if (owner.equals("") || owner.equals(playerID)) {
                 // and if the word is not already confirmed
-                if (currChar.isConfirmed() && currChar.getChar() != word.charAt(i)) {
+                if (crossing.confirmed && current != word.charAt(i)) {
                     return false;
                 }
                 continue;
             }
             // must not conflict with what is already on the board
-            if (!(currChar.isEmpty() || (currChar.getChar() == word.charAt(i)))) {
+            if (!(current == EMPTY || current == word.charAt(i))) {
                 return false;
             }
         }
         return true;
     }
 
-    /**
-     * Check if the game has ended or not based if the current board is the same as
-     * the solution.
-     * 
-     * @return true iff the game has finished
-     */
-    private boolean isFinished() {
-        // check that all cells in playBoard are the same as finalBoard, the solution
-        for (int i = 0; i < finalBoard.size(); i++) {
-            for (int j = 0; j < finalBoard.get(0).size(); j++) {
-                if (finalBoard.get(i).get(j).getChar() != playBoard.get(i).get(j).getChar()) {
-                    return false;
+    // for each word, its cells and the words crossing it, owned by nobody and not confirmed, filling acrossAt
+    // and downAt; the crossings are found from which word of each direction covers each cell
+    private Map<String, WordState> makeWordStates() {
+        Map<String, WordState> states = new HashMap<>();
+        for (Map.Entry<String, String> word : words.entrySet()) {
+            String wordID = word.getKey();
+            Direction direction = getWordDirect(wordID);
+            Dimension location = startLocations.get(getWordNum(wordID) - 1);
+            int[] squares = new int[word.getValue().length()];
+            for (int i = 0; i < squares.length; i++) {
+                squares[i] = direction == Direction.ACROSS
+                        ? location.width * width + location.height + i
+                        : (location.width + i) * width + location.height;
+            }
+            WordState state = new WordState(wordID, word.getValue(), squares);
+            for (int square : squares) {
+                (direction == Direction.ACROSS ? acrossAt : downAt)[square] = state;
+            }
+            states.put(wordID, state);
+        }
+        for (WordState state : states.values()) {
+            WordState[] others = getWordDirect(state.id) == Direction.ACROSS ? downAt : acrossAt;
+            int crossed = 0;
+            for (int i = 0; i < state.squares.length; i++) {
+                state.crossings[i] = others[state.squares[i]];
+                if (state.crossings[i] != null) {
+                    crossed++;
+                }
+            }
+            state.crossed = new int[crossed];
+            for (int i = 0, next = 0; i < state.squares.length; i++) {
+                if (state.crossings[i] != null) {
+                    state.crossed[next++] = i;
                 }
             }
         }
-        finished = true;
-        return true;
+        return Collections.unmodifiableMap(states);
+    }
+
+    /**
+     * A word of the play board, with what a move needs to know about it, so that a move reads and changes only the
+     * word and the cells it crosses instead of looking each cell up.
+     */
+    private static class WordState {
+        private final String id;
+        private final String answer;
+        private final int[] squares;
+        private final WordState[] crossings;
+        private int[] crossed = new int[0];
+        private volatile String owner = "";
+        private volatile boolean confirmed = false;
+
+        /*
+         * AF(id, answer, squares, crossings, crossed, owner, confirmed) = the word id of a board, whose
+         *    correct letters are answer and whose i-th letter is in the cell at row * width + col ==
+         *    squares[i] of the board, crossed at position i by crossings[i], or by no word if crossings[i] is
+         *    null; crossed are the positions i where crossings[i] is not null, in order. owner is the player
+         *    that owns the word, "" if nobody does, and confirmed is whether the word has been confirmed.
+         * RI: squares.length == crossings.length == answer.length()
+         * SRE: used only by CrosswordBoard, which never gives it out
+         * Thread Safety: see CrosswordBoard; crossings and crossed are only written while the board is made
+         */
+
+        private WordState(String id, String answer, int[] squares) {
+            this.id = id;
+            this.answer = answer;
+            this.squares = squares;
+            this.crossings = new WordState[squares.length];
+            assert squares.length == answer.length();
+        }
     }
 }
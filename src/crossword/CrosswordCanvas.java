@@ -159,9 +159,14 @@ class CrosswordCanvas extends JComponent {
         println("Enter one of the following commands", g);
         println("TRY [id] [word]", g);
         println("CHALLENGE [id] [word]", g);
+        println("HINT [id]", g);
         println("EXIT", g);
         
-        if (resp.hasMessage())
+        if (!resp.results().isEmpty()) {
+            for (String result : resp.results()) {
+                println(result, g, true);
+            }
+        } else if (resp.hasMessage())
             println(resp.message(), g, true);
         
         println("", g);
@@ -191,7 +196,10 @@ class CrosswordCanvas extends JComponent {
     private void paintChoose(ServerResponse resp, Graphics g) {
         println("Enter one of the following commands", g);
         println("PLAY [Match_ID]", g);
-        println("NEW [Match_ID] [Puzzle_ID] \"[Description]\"", g);
+        println("SPECTATE [Match_ID]", g);
+        println("NEW [Match_ID] [Puzzle_ID] \"[Description]\" [PLAYERS [2-32] [TEAMS [Teams]]]", g);
+        println("QUICKPLAY [Puzzle_ID]", g);
+        println("LIST [Page] \"[Filter]\"", g);
         println("EXIT", g);
         if (resp.hasMessage())
             println(resp.message(), g, true);
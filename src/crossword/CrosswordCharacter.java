@@ -2,9 +2,6 @@ package crossword;
 
 import java.io.IOException;
 import java.io.Serializable;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
 
 import crossword.Entry.Direction;
 
@@ -17,11 +14,16 @@ public class CrosswordCharacter implements Serializable {
     private char character;
     private boolean confirmed = false;
     private int startingBlock;
-    private final Map<String, String> wordIDs;
-    private final Map<String, Boolean> confirmedWords;
+    private String firstID;
+    private String firstOwner;
+    private boolean firstConfirmed;
+    private String secondID;
+    private String secondOwner;
+    private boolean secondConfirmed;
 
     /*
-     * AF(character,confirmed,startingBlock,wordIDs,confirmedWords)-
+     * AF(character,confirmed,startingBlock,firstID,firstOwner,firstConfirmed,
+     * secondID,secondOwner,secondConfirmed)-
      * character is the current character that was inputed in this tile.
      * 
      * confirmed represents if this crossword block has been confirmed in the game
@@ -30,37 +32,36 @@ public class CrosswordCharacter implements Serializable {
      * startingBlock is 0 if it is not a starting block, otherwise it is the
      * starting block of the wordID with idNum = startingBlock.
      * 
-     * wordIDs maps which two wordIDs this tile belongs to and if which player has
-     * control to which wordID, "" if no player has control to a wordID.
+     * firstID and secondID are the wordIDs this tile belongs to, null if it
+     * belongs to fewer than two. firstOwner and secondOwner are the players that
+     * have control of them, "" if no player has control of a wordID, and
+     * firstConfirmed and secondConfirmed whether that word specifically has been
+     * confirmed, else it is possible for players to confirm.
      * 
-     * confirmedWords maps which two wordIDs this tile belongs to and if that word
-     * specifically has been confirmed, else it is possible for players to confirm.
-     * 
-     * RI - wordIDs.keys.size <= 2
-     * confirmedWords.keys.size <= 2
+     * RI - secondID is null if firstID is
+     * firstID != secondID
+     * the owner of a wordID is not null iff the wordID is not null
      * 
      * RE -
-     * -all of our rep is private. wordID and startingBlock is final.
-     * confirmed, character, startingBlock can only be changed with the functions in
-     * the class.
-     * -we only take in a mutable CrosswordCharacter, however, we still make a deep,
-     * defensive copy to the new instance of CrosswordCharacter.
+     * -all of our rep is private.
+     * confirmed, character, startingBlock and the words can only be changed with
+     * the functions in the class.
+     * -we only take in a mutable CrosswordCharacter, however, we still copy its
+     * fields to the new instance of CrosswordCharacter.
      * -everything else takes in and feeds back only void or immutable objects, such
      * as enums, String, and boolean
-     * -we never release a direct reference to wordIDs and confirmedWords.
      * 
      * TSE -
-     * -we wrap wordID and confirmedWords with Collections.SynchronizedMap, and we
-     * only put new pairs in setOwnerOf, removeOwner, and addWordID, which we wrap
-     * with synchronized, making them threadsafe
-     * -startingBlock, character, and confirmed are all primitive values and can
-     * only be changed through changeChar, setConfirmed, and addWordID, which are
-     * all synchronized
+     * -every field is only read or written in synchronized methods, except
+     * character and confirmed, which are primitive values and can only be changed
+     * through changeChar and setConfirmed, which are synchronized
      */
 
     private void checkRep() {
-        assert wordIDs.keySet().size() <= 2;
-        assert confirmedWords.keySet().size() <= 2;
+        assert firstID != null || secondID == null;
+        assert secondID == null || !secondID.equals(firstID);
+        assert (firstID == null) == (firstOwner == null);
+        assert (secondID == null) == (secondOwner == null);
     }
 
     /**
@@ -69,8 +70,6 @@ public class CrosswordCharacter implements Serializable {
     public CrosswordCharacter() {
         this.character = ' ';
         this.startingBlock = 0;
-        this.wordIDs = Collections.synchronizedMap(new HashMap<>());
-        this.confirmedWords = Collections.synchronizedMap(new HashMap<>());
         checkRep();
     }
 
@@ -89,10 +88,36 @@ public class CrosswordCharacter implements Serializable {
         } else {
             this.startingBlock = 0;
         }
-        this.wordIDs = Collections.synchronizedMap(new HashMap<>());
-        this.wordIDs.put(id + direction.toString(), "");
-        this.confirmedWords = Collections.synchronizedMap(new HashMap<>());
-        this.confirmedWords.put(id + direction.toString(), false);
+        this.firstID = id + direction.toString();
+        this.firstOwner = "";
+        checkRep();
+    }
+
+    /**
+     * a block of a board as CrosswordBoard shows it, in the word wordID and, if
+     * otherID is not null, the word otherID.
+     * 
+     * @param character     currently associated to this crossword block
+     * @param startingBlock id number of the words starting at this block, 0 if none
+     * @param wordID        a word this tile is in
+     * @param owner         player that has control of wordID, "" if none
+     * @param wordConfirmed true iff wordID is confirmed
+     * @param otherID       the other word this tile is in, or null if none
+     * @param otherOwner    player that has control of otherID, "" if none, null
+     *                      if otherID is null
+     * @param otherConfirmed true iff otherID is confirmed
+     */
+    CrosswordCharacter(char character, int startingBlock, String wordID, String owner, boolean wordConfirmed,
+            String otherID, String otherOwner, boolean otherConfirmed) {
+        this.character = character;
+        this.startingBlock = startingBlock;
+        this.firstID = wordID;
+        this.firstOwner = owner;
+        this.firstConfirmed = wordConfirmed;
+        this.secondID = otherID;
+        this.secondOwner = otherOwner;
+        this.secondConfirmed = otherConfirmed;
+        this.confirmed = wordConfirmed || otherConfirmed;
         checkRep();
     }
 
@@ -102,14 +127,30 @@ public class CrosswordCharacter implements Serializable {
      * @param cc block to be made a copy of
      */
     public CrosswordCharacter(CrosswordCharacter cc) {
-        this.character = cc.character;
-        this.startingBlock = cc.startingBlock;
-        this.confirmed = cc.confirmed;
-        this.wordIDs = Collections.synchronizedMap(new HashMap<>(cc.wordIDs));
-        this.confirmedWords = Collections.synchronizedMap(new HashMap<>(cc.confirmedWords));
+        synchronized (cc) {
+            this.character = cc.character;
+            this.startingBlock = cc.startingBlock;
+            this.confirmed = cc.confirmed;
+            this.firstID = cc.firstID;
+            this.firstOwner = cc.firstOwner;
+            this.firstConfirmed = cc.firstConfirmed;
+            this.secondID = cc.secondID;
+            this.secondOwner = cc.secondOwner;
+            this.secondConfirmed = cc.secondConfirmed;
+        }
         checkRep();
     }
 
+    // 1 if wordID is firstID, 2 if it is secondID, 0 if this tile is not in wordID
+    private int slot(String wordID) {
+        if (wordID.equals(firstID)) {
+            return 1;
+        } else if (wordID.equals(secondID)) {
+            return 2;
+        }
+        return 0;
+    }
+
     /* ------------------ CONFIRMATION FUNCTIONS ----------------- */
 
     /**
@@ -127,7 +168,12 @@ public class CrosswordCharacter implements Serializable {
      */
     public synchronized void setConfirmed(String wordID) {
         confirmed = true;
-        confirmedWords.replace(wordID, true);
+        int slot = slot(wordID);
+        if (slot == 1) {
+            firstConfirmed = true;
+        } else if (slot == 2) {
+            secondConfirmed = true;
+        }
         checkRep();
     }
 
@@ -135,9 +181,13 @@ public class CrosswordCharacter implements Serializable {
      * @param wordID to check
      * @return true iff the wordID at this block is confirmed
      */
-    public boolean isWordConfirmed(String wordID) {
+    public synchronized boolean isWordConfirmed(String wordID) {
         checkRep();
-        return confirmedWords.get(wordID);
+        int slot = slot(wordID);
+        if (slot == 0) {
+            throw new IllegalArgumentException("is not a part of this word id:" + wordID);
+        }
+        return slot == 1 ? firstConfirmed : secondConfirmed;
     }
 
     /* ------------------ STARTING BLOCK FUNCTIONS ------------------ */
@@ -145,7 +195,7 @@ public class CrosswordCharacter implements Serializable {
     /**
      * @return if this letter is the start of a word
      */
-    public boolean startOfWord() {
+    public synchronized boolean startOfWord() {
         checkRep();
         return startingBlock != 0;
     }
@@ -154,7 +204,7 @@ public class CrosswordCharacter implements Serializable {
      * @return id of word
      * @throws NoSuchFieldError if not start of word
      */
-    public String getID() {
+    public synchronized String getID() {
         if (!startOfWord()) {
             throw new NoSuchFieldError("Not a starting block");
         }
@@ -242,8 +292,22 @@ public class CrosswordCharacter implements Serializable {
         if (starting) {
             this.startingBlock = id;
         }
-        wordIDs.put(wordID, "");
-        confirmedWords.put(wordID, false);
+        int slot = slot(wordID);
+        if (slot == 1) {
+            firstOwner = "";
+            firstConfirmed = false;
+        } else if (slot == 2) {
+            secondOwner = "";
+            secondConfirmed = false;
+        } else if (firstID == null) {
+            firstID = wordID;
+            firstOwner = "";
+        } else if (secondID == null) {
+            secondID = wordID;
+            secondOwner = "";
+        } else {
+            throw new IOException("a tile can only be in two words");
+        }
         checkRep();
     }
 
@@ -252,13 +316,13 @@ public class CrosswordCharacter implements Serializable {
      * @return the other wordID that this tile is associated with that is not the
      *         one given, but return wordID if it is the only wordID here.
      */
-    public String other(String wordID) {
-        for (String key : wordIDs.keySet()) {
-            if (!key.equals(wordID)) {
-                return key;
-            }
-        }
+    public synchronized String other(String wordID) {
         checkRep();
+        if (firstID != null && !firstID.equals(wordID)) {
+            return firstID;
+        } else if (secondID != null && !secondID.equals(wordID)) {
+            return secondID;
+        }
         return wordID;
     }
 
@@ -267,14 +331,9 @@ public class CrosswordCharacter implements Serializable {
      * @return true iff playerID is the current owner of all wordIDs that this tile
      *         is associated with
      */
-    public boolean isOwner(String playerID) {
-        for (String wordID : wordIDs.keySet()) {
-            if (!canTry(playerID, wordID)) {
-                return false;
-            }
-        }
+    public synchronized boolean isOwner(String playerID) {
         checkRep();
-        return true;
+        return (firstID == null || canTry(playerID, firstID)) && (secondID == null || canTry(playerID, secondID));
     }
 
     /**
@@ -282,8 +341,11 @@ public class CrosswordCharacter implements Serializable {
      * @param setWordID wordID to set the new owner to
      */
     public synchronized void setOwnerOf(String playerID, String setWordID) {
-        if (wordIDs.containsKey(setWordID)) {
-            wordIDs.replace(setWordID, playerID);
+        int slot = slot(setWordID);
+        if (slot == 1) {
+            firstOwner = playerID;
+        } else if (slot == 2) {
+            secondOwner = playerID;
         } else {
             throw new IllegalArgumentException("is not a part of this word id:" + setWordID);
         }
@@ -297,11 +359,10 @@ public class CrosswordCharacter implements Serializable {
      * @param wordID the wordID's owner will be removed
      */
     public synchronized void removeOwner(String wordID) {
-        wordIDs.put(wordID, "");
-        for (String key : wordIDs.keySet()) {
-            if (isConfirmed() || !getOwnerOf(key).equals("")) {
-                return;
-            }
+        setOwnerOf("", wordID);
+        if (isConfirmed() || (firstID != null && !firstOwner.equals(""))
+                || (secondID != null && !secondOwner.equals(""))) {
+            return;
         }
         changeChar('_');
         checkRep();
@@ -313,9 +374,12 @@ public class CrosswordCharacter implements Serializable {
      * @param wordID we want the owner of
      * @return the owner of wordID
      */
-    public String getOwnerOf(String wordID) {
-        if (wordIDs.containsKey(wordID)) {
-            return wordIDs.get(wordID);
+    public synchronized String getOwnerOf(String wordID) {
+        int slot = slot(wordID);
+        if (slot == 1) {
+            return firstOwner;
+        } else if (slot == 2) {
+            return secondOwner;
         } else {
             throw new IllegalArgumentException("is not a part of this word id:" + wordID);
         }
@@ -0,0 +1,106 @@
+package crossword;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * An object output stream that can also send a response encoded ahead of time, so that a response sent to many
+ * clients is serialized once and the same bytes are written to each of them.
+ *
+ * A Frame is a response serialized on its own, as a fresh stream would send it. Before and after writing one,
+ * the stream is reset, which makes the client forget every object it was sent before, so the frame refers to
+ * nothing that came before it and nothing after it refers to the frame. An ObjectInputStream reads the frame as
+ * an ordinary object. Resetting also keeps the table of objects already sent from growing for as long as the
+ * client is connected.
+ */
+public class FrameOutputStream extends ObjectOutputStream {
+
+    // length of the header a new ObjectOutputStream writes before any object
+    private static final int STREAM_HEADER_BYTES = 4;
+
+    /**
+     * An immutable response serialized once, to be written to any number of streams
+     */
+    public static class Frame {
+        private final ServerResponse response;
+        private final byte[] bytes;
+
+        /*
+         * AF(response, bytes) = response, serialized as bytes[STREAM_HEADER_BYTES..] of a new object stream
+         * RI: bytes.length > STREAM_HEADER_BYTES
+         * SRE: all fields are private and final, bytes is never given out
+         * Thread Safety: immutable
+         */
+
+        private Frame(ServerResponse response, byte[] bytes) {
+            this.response = response;
+            this.bytes = bytes;
+            assert bytes.length > STREAM_HEADER_BYTES;
+        }
+
+        /**
+         * Serialize a response
+         *
+         * @param response  response to send
+         * @return a frame that sends response
+         */
+        public static Frame encode(ServerResponse response) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(response);
+            } catch (IOException e) {
+                throw new AssertionError("writing to memory can not fail", e);
+            }
+            return new Frame(response, bytes.toByteArray());
+        }
+
+        /**
+         * @return the response this frame sends
+         */
+        public ServerResponse response() {
+            return response;
+        }
+
+        /**
+         * @return number of bytes the frame takes on a stream, not counting the resets around it
+         */
+        public int size() {
+            return bytes.length - STREAM_HEADER_BYTES;
+        }
+    }
+
+    private final OutputStream out;
+
+    /*
+     * AF(out) = a stream of serialized objects written to out
+     * RI: true
+     * SRE: out is private and final and never given out
+     * Thread Safety: not threadsafe, like ObjectOutputStream; writes must not interleave
+     */
+
+    /**
+     * Make a stream of objects written to out. Like ObjectOutputStream, writes the stream header.
+     *
+     * @param out  stream to write to
+     * @throws IOException if writing the header fails
+     */
+    public FrameOutputStream(OutputStream out) throws IOException {
+        super(out);
+        this.out = out;
+    }
+
+    /**
+     * Send the response of a frame, without serializing it again
+     *
+     * @param frame  frame to send
+     * @throws IOException if writing fails
+     */
+    public void writeFrame(Frame frame) throws IOException {
+        // reset() writes its marker straight through to out, so nothing is left buffered ahead of the frame
+        reset();
+        out.write(frame.bytes, STREAM_HEADER_BYTES, frame.size());
+        reset();
+    }
+}
@@ -0,0 +1,101 @@
+package crossword;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Suggests words for a word of a board being played: the words of a WordIndex that agree with the letters
+ * already on the board in the word's squares, and that leave every word crossing it with at least one word of
+ * the index agreeing with the letters already in its own squares. The board's answers are never looked at.
+ */
+public class HintEngine {
+
+    /**
+     * most words suggested for a word at once
+     */
+    public static final int MAX_HINTS = 10;
+
+    private final WordIndex index;
+
+    /*
+     * AF(index) = suggests words from index
+     * RI: true
+     * SRE: index is private, final and immutable
+     * Thread Safety: index is immutable, and hints() only uses local state, so any number of hints may be
+     *                found at once, without holding any lock
+     */
+
+    /**
+     * @param index  words to suggest
+     */
+    public HintEngine(WordIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Suggest words for a word of a board.
+     *
+     * @param view       the play board, as CrosswordBoard.getPlayView() shows it, with ANY in empty squares
+     * @param wordCells  the squares of every word of the board, as CrosswordBoard.getWordCells() gives them
+     * @param wordID     word to suggest words for, one of wordCells.keySet()
+     * @return at most MAX_HINTS words, in upper case and alphabetical order, that agree with the letters in the
+     *         squares of wordID and leave a word of the index for every word crossing it
+     */
+    public List<String> hints(List<List<CrosswordCharacter>> view, Map<String, List<Integer>> wordCells,
+            String wordID) {
+        int width = view.get(0).size();
+        List<Integer> cells = wordCells.get(wordID);
+        char[] pattern = pattern(view, width, cells);
+        int[] allowed = new int[pattern.length];
+        Arrays.fill(allowed, WordIndex.ALL_LETTERS);
+        for (Map.Entry<String, List<Integer>> other : wordCells.entrySet()) {
+            if (other.getKey().equals(wordID)) {
+                continue;
+            }
+            for (int i = 0; i < pattern.length; i++) {
+                int j = other.getValue().indexOf(cells.get(i));
+                if (j >= 0 && pattern[i] == WordIndex.ANY) {
+                    allowed[i] &= crossingLetters(pattern(view, width, other.getValue()), j);
+                }
+            }
+        }
+        List<String> hints = new ArrayList<>();
+        for (String word : index.match(new String(pattern), allowed, MAX_HINTS)) {
+            hints.add(word.toUpperCase());
+        }
+        return List.copyOf(hints);
+    }
+
+    // the letters in the squares cells of view, ANY where a square is empty
+    private static char[] pattern(List<List<CrosswordCharacter>> view, int width, List<Integer> cells) {
+        char[] pattern = new char[cells.size()];
+        for (int i = 0; i < pattern.length; i++) {
+            char letter = view.get(cells.get(i) / width).get(cells.get(i) % width).getChar();
+            pattern[i] = Character.isLetter(letter) ? Character.toLowerCase(letter) : WordIndex.ANY;
+        }
+        return pattern;
+    }
+
+    // the letters that may go at position j of a crossing word with pattern, where j is empty: any letter if
+    // the crossing word has no letters yet, otherwise those that leave it a word of the index
+    private int crossingLetters(char[] pattern, int j) {
+        boolean empty = true;
+        for (char letter : pattern) {
+            empty &= letter == WordIndex.ANY;
+        }
+        if (empty) {
+            return WordIndex.ALL_LETTERS;
+        }
+        int letters = 0;
+        for (char c = 'a'; c <= 'z'; c++) {
+            pattern[j] = c;
+            if (!index.match(new String(pattern), 1).isEmpty()) {
+                letters |= 1 << (c - 'a');
+            }
+        }
+        pattern[j] = WordIndex.ANY;
+        return letters;
+    }
+}
@@ -0,0 +1,257 @@
+package crossword;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * A threadsafe sorted index of what a player in the CHOOSE state can pick: open matches, live matches and loaded
+ * boards, each shown as one line. Lines are kept in order of their kind (open matches, then live matches, then
+ * boards) and then of their ID, and are read a page of PAGE_SIZE lines at a time, optionally only those whose ID
+ * starts with a filter or whose description contains it, ignoring case.
+ *
+ * Every line that is added, changed or removed is remembered as a change until drainChanges() is called, so that
+ * a caller can tell which of the pages its players are viewing a change shows up on, with Page.affectedBy(), and
+ * send new pages only to those players.
+ */
+public class LobbyIndex {
+
+    /** Most lines of the index on one page */
+    public static final int PAGE_SIZE = 20;
+
+    /** Number of the page that has every line of the index, for a Router collecting the lobbies of its nodes */
+    public static final int EVERY_LINE = 0;
+
+    /** Kinds of line, in the order they are listed */
+    public enum Kind { OPEN, LIVE, BOARD }
+
+    /**
+     * One line of the index
+     */
+    public static class Listing {
+        private final String key;
+        private final String id;
+        private final String description;
+        private final String line;
+
+        /*
+         * AF(key, id, description, line) = the line of the thing with ID id, described by description in upper
+         *      case, listed at key in the index
+         * RI: key is the kind's ordinal followed by id
+         * SRE: all fields are private, final and immutable
+         * Thread Safety: immutable
+         */
+
+        private Listing(Kind kind, String id, String description, String line) {
+            this.key = kind.ordinal() + id;
+            this.id = id.toUpperCase(Locale.ROOT);
+            this.description = description.toUpperCase(Locale.ROOT);
+            this.line = line;
+        }
+
+        /**
+         * @param filter  a filter in upper case, "" for none
+         * @return true iff the listing is on pages with filter
+         */
+        private boolean matches(String filter) {
+            return filter.isEmpty() || id.startsWith(filter) || description.contains(filter);
+        }
+    }
+
+    /**
+     * One page of the index, as it was when it was read
+     */
+    public static class Page {
+        private final String filter;
+        private final int number;
+        private final List<String> lines;
+        private final String lastKey;
+        private final boolean more;
+
+        /*
+         * AF(filter, number, lines, lastKey, more) = page number of the lines whose listing matches filter,
+         *      shown as lines; the key of its last listing is lastKey, or null if it has none, and more is
+         *      true iff there were listings matching filter after it
+         * RI: number >= 1 or number == EVERY_LINE, filter is in upper case, lines.size() <= PAGE_SIZE + 1 unless
+         *     number == EVERY_LINE
+         * SRE: all fields are private, final and immutable
+         * Thread Safety: immutable
+         */
+
+        private Page(String filter, int number, List<String> lines, String lastKey, boolean more) {
+            this.filter = filter;
+            this.number = number;
+            this.lines = List.copyOf(lines);
+            this.lastKey = lastKey;
+            this.more = more;
+        }
+
+        /**
+         * @return the filter the page was read with, "" for none
+         */
+        public String filter() {
+            return filter;
+        }
+
+        /**
+         * @return the number of the page, starting at 1, or EVERY_LINE
+         */
+        public int number() {
+            return number;
+        }
+
+        /**
+         * @return the lines of the page, in order, followed by a line saying which page it is if the listings
+         *         matching its filter do not fit on one page
+         */
+        public List<String> lines() {
+            return lines;
+        }
+
+        /**
+         * @param changes  listings added, changed or removed since the page was read
+         * @return true iff reading the page again could give different lines: a change matches the filter of
+         *         the page, and comes before the end of the page or there was nothing after the page
+         */
+        public boolean affectedBy(List<Listing> changes) {
+            for (Listing change : changes) {
+                if (change.matches(filter) && (!more || change.key.compareTo(lastKey) <= 0)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final ConcurrentNavigableMap<String, Listing> listings = new ConcurrentSkipListMap<>();
+    private final ConcurrentLinkedQueue<Listing> changes = new ConcurrentLinkedQueue<>();
+
+    /*
+     * AF(listings, changes) = the lines of listings.values(), in order of their keys; the listings of changes
+     *      were added, changed or removed since changes were last drained
+     * RI: listings[k].key == k
+     * SRE: both fields are private and final, and only immutable listings and pages are given out
+     * Thread Safety: listings is a concurrent sorted map and changes a concurrent queue, so lines can be
+     *      changed and pages read from any thread without a lock. A page read while lines are changing shows
+     *      each line as it was either before or after its change, and the change is drained afterwards, so a
+     *      caller that checks its pages against the drained changes reads them again
+     */
+
+    private void checkRep() {
+        for (Map.Entry<String, Listing> listing : listings.entrySet()) {
+            assert listing.getKey().equals(listing.getValue().key);
+        }
+    }
+
+    /**
+     * Add a line to the index, or replace the line that has the same kind and ID
+     *
+     * @param kind         kind of line
+     * @param id           ID of the match or board
+     * @param description  description of the match or board
+     * @param line         line shown for it
+     */
+    public void put(Kind kind, String id, String description, String line) {
+        Listing listing = new Listing(kind, id, description, line);
+        Listing previous = listings.put(listing.key, listing);
+        if (previous == null || !previous.line.equals(line)) {
+            changes.add(listing);
+        }
+    }
+
+    /**
+     * Remove a line from the index, if it has one
+     *
+     * @param kind  kind of line
+     * @param id    ID of the match or board
+     */
+    public void remove(Kind kind, String id) {
+        Listing previous = listings.remove(kind.ordinal() + id);
+        if (previous != null) {
+            changes.add(previous);
+        }
+    }
+
+    /**
+     * @param kind  a kind of line
+     * @return the IDs of the lines of kind in the index, in order
+     */
+    public Set<String> ids(Kind kind) {
+        String from = String.valueOf(kind.ordinal());
+        String to = String.valueOf(kind.ordinal() + 1);
+        Set<String> ids = new TreeSet<>();
+        for (String key : listings.subMap(from, to).keySet()) {
+            ids.add(key.substring(from.length()));
+        }
+        return ids;
+    }
+
+    /**
+     * @return the number of lines in the index
+     */
+    public int size() {
+        return listings.size();
+    }
+
+    /**
+     * Read a page of the index
+     *
+     * @param filter  only list lines whose ID starts with filter or whose description contains it, ignoring
+     *                case; "" for every line
+     * @param number  number of the page, >= 1, or EVERY_LINE
+     * @return the lines (number - 1) * PAGE_SIZE to number * PAGE_SIZE of those listed, as many of them as there
+     *         are, or all of them for EVERY_LINE
+     */
+    public Page page(String filter, int number) {
+        if (number < 1 && number != EVERY_LINE) {
+            throw new IllegalArgumentException("pages start at 1");
+        }
+        String upper = filter.toUpperCase(Locale.ROOT);
+        long skip = number == EVERY_LINE ? 0 : (long) (number - 1) * PAGE_SIZE;
+        int size = number == EVERY_LINE ? Integer.MAX_VALUE : PAGE_SIZE;
+        List<String> lines = new ArrayList<>();
+        String lastKey = null;
+        boolean more = false;
+        for (Listing listing : listings.values()) {
+            if (!listing.matches(upper)) {
+                continue;
+            }
+            if (skip > 0) {
+                skip--;
+            } else if (lines.size() < size) {
+                lines.add(listing.line);
+                lastKey = listing.key;
+            } else {
+                more = true;
+                break;
+            }
+        }
+        if (more || number > 1) {
+            String next = more ? ", LIST " + (number + 1) + (upper.isEmpty() ? "" : " \"" + upper + "\"")
+                    + " for the next" : "";
+            lines.add("Page " + number + next);
+        }
+        checkRep();
+        return new Page(upper, number, lines, lastKey, more);
+    }
+
+    /**
+     * Take the changes made to the index since the last call
+     *
+     * @return the listings added, changed or removed since the last call, in the order they were changed, with
+     *         each listing as it was after it was added or changed, or before it was removed
+     */
+    public List<Listing> drainChanges() {
+        List<Listing> drained = new ArrayList<>();
+        for (Listing change = changes.poll(); change != null; change = changes.poll()) {
+            drained.add(change);
+        }
+        return drained;
+    }
+}
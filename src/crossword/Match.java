@@ -1,23 +1,47 @@
 package crossword;
 
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Mutable class that represents a crossword match
+ * Mutable class that represents a crossword match between two or more players, each playing for themselves or 
+ * split into teams
  */
 public class Match {
+    /**
+     * most players any match can have
+     */
+    public static final int MAX_PLAYERS = 32;
+    
     /*
-     * AF(matchID, description, playerIDs, board) = 
+     * AF(matchID, boardID, description, maxPlayers, teams, playerIDs, board, logSeq, ended, clueLines, 
+     *    scoreLines, scoreVersion, playFrame, frameVersion, endFrame, spectators, wordCells, hints) = 
      *      A crossword match with match ID matchID, description description, 
-     *      board board, and containing players playerIDs.keys(). playerIDs.values()
-     *      are the callback functions to update player screens
+     *      board board copied from the loaded board boardID, and containing players playerIDs.keys(), in the 
+     *      order they joined, out of at most maxPlayers. If teams is 0 every player plays for themselves, 
+     *      otherwise the i-th player to join plays for team "TEAM" + (i % teams + 1), and the board knows 
+     *      each team as one player. playerIDs.values() are the callback functions to update player screens. 
+     *      logSeq is the seq of the last MatchLog record applied to the match, -1 if none. ended is true iff endGame() has been 
+     *      called. clueLines are the board's clues as shown to players, null until first asked for, and 
+     *      scoreLines the players' scores as shown to them when the board was at version scoreVersion, -1 if 
+     *      they have not been made for the current players. playFrame is the PLAY response without a message 
+     *      sent to every player when the board was at version frameVersion, -1 if it has not been made for 
+     *      the current players. endFrame is the SCORE response shown to spectators once the match has ended, 
+     *      null until it is first asked for. spectators are the read-only viewers the match is shown to 
+     *      after every change. wordCells are the squares of each word of board, and hints[wordID] the words 
+     *      last suggested for wordID, with the version of board they were suggested for
      *      
      * RI: 
      *  - matchID is not an empty string
-     *  - playerIDs can never contain more than 2 array elements
+     *  - 2 <= maxPlayers <= MAX_PLAYERS
+     *  - teams == 0 or 2 <= teams <= maxPlayers
+     *  - playerIDs can never contain more than maxPlayers elements
      *  
      * SRE: 
      *  - fields are private and final
@@ -26,10 +50,18 @@ public class Match {
      *    a client will never be able to call getBoard() to have access to the crossword board
      *    
      * Thread Safety:
-     *  - matchID and description are both immutable
+     *  - matchID, boardID, description, maxPlayers and teams are all immutable
+     *  - logSeq, ended, clueLines, scoreLines, scoreVersion, playFrame, frameVersion and endFrame are only 
+     *    accessed in synchronized methods
+     *  - wordCells is immutable, and hints is a thread safe data type whose entries are immutable, so hints 
+     *    are found without holding the lock on this match
+     *  - spectators is a thread safe data type. It is handed the frame of each change while the lock on this 
+     *    match is held, and shows it on its own threads, which never take the lock
      *  - board is a thread safe data type
      *  - playerIDs is a thread safe data type
-     *  - Methods updating or viewing playerIDs or board are synchronized, so there can not be bad interleavings
+     *  - Methods updating or viewing playerIDs or board are synchronized, so there can not be bad interleavings, 
+     *    except for tryWord and tryChallenge, which only read playerIDs and leave the board to make moves on 
+     *    different words in parallel
      * 
      */
     
@@ -62,9 +94,34 @@ public class Match {
     }
     
     private final String matchID;
+    private final String boardID;
     private final String description;
+    private final int maxPlayers;
+    private final int teams;
     private final Map<String, MatchListener> playerIDs;
     private final CrosswordBoard board;
+    private long logSeq = -1;
+    private boolean ended = false;
+    private List<String> clueLines = null;
+    private List<String> scoreLines = null;
+    private long scoreVersion = -1;
+    private FrameOutputStream.Frame playFrame = null;
+    private long frameVersion = -1;
+    private FrameOutputStream.Frame endFrame = null;
+    private final SpectatorFeed spectators = new SpectatorFeed();
+    private final Map<String, List<Integer>> wordCells;
+    private final Map<String, Hints> hints = new ConcurrentHashMap<>();
+    
+    // words suggested for a word when the board was at version
+    private static class Hints {
+        private final long version;
+        private final List<String> words;
+        
+        private Hints(long version, List<String> words) {
+            this.version = version;
+            this.words = words;
+        }
+    }
     
     /**
      * 
@@ -73,10 +130,39 @@ public class Match {
      * @param board        object describing the crossword board
      */
     public Match(String matchID, String description, CrosswordBoard board) {
+        this(matchID, board.getName(), description, board);
+    }
+    
+    /**
+     * 
+     * @param matchID      ID of Crossword Extravaganza Match
+     * @param boardID      ID the server loaded board under
+     * @param description  description of match
+     * @param board        object describing the crossword board
+     */
+    public Match(String matchID, String boardID, String description, CrosswordBoard board) {
+        this(matchID, boardID, description, board, 2, 0);
+    }
+    
+    /**
+     * 
+     * @param matchID      ID of Crossword Extravaganza Match
+     * @param boardID      ID the server loaded board under
+     * @param description  description of match
+     * @param board        object describing the crossword board
+     * @param maxPlayers   most players that can join the match, 2 <= maxPlayers <= MAX_PLAYERS
+     * @param teams        number of teams the players are split into, 2 <= teams <= maxPlayers, or 0 if every 
+     *                     player plays for themselves
+     */
+    public Match(String matchID, String boardID, String description, CrosswordBoard board, int maxPlayers, int teams) {
         this.matchID = matchID;
+        this.boardID = boardID;
         this.description = description;
-        this.playerIDs = Collections.synchronizedMap(new HashMap<String, MatchListener>());
+        this.maxPlayers = maxPlayers;
+        this.teams = teams;
+        this.playerIDs = Collections.synchronizedMap(new LinkedHashMap<String, MatchListener>());
         this.board = new CrosswordBoard(board);
+        this.wordCells = this.board.getWordCells();
         checkRep();
     }
     
@@ -85,27 +171,46 @@ public class Match {
      */
     private void checkRep() {
         assert !matchID.equals("");
-        assert playerIDs.size() <= 2;
+        assert 2 <= maxPlayers && maxPlayers <= MAX_PLAYERS;
+        assert teams == 0 || (2 <= teams && teams <= maxPlayers);
+        assert playerIDs.size() <= maxPlayers;
     }
     
     /**
-     * add a player to the match. a maximum of two players can be added to any match. This also calls the 
-     * updateGame() if the player being added is the second player, along with boolean true signifying 
-     * this is the first transition from CHOOSE or WAIT state (when the match had only one player)
-     * to the PLAY state.
+     * add a player to the match. a maximum of getMaxPlayers() players can be added to any match. This also 
+     * calls the updateGame(), along with boolean true signifying this is the first transition from CHOOSE or 
+     * WAIT state (when the match had only one player) to the PLAY state.
      * 
      * @param playerID   ID representing the new player added to the board
      * @param listener   listener that can be used to update the board when either player makes a change
-     * @throws TooManyPlayersException  throws when method is called on match already containing two players 
+     * @throws TooManyPlayersException  throws when method is called on a full match 
      */
     public synchronized void addPlayer(String playerID, MatchListener listener) throws TooManyPlayersException {
-        if (playerIDs.size() < 2 ) {
+        if (playerIDs.size() < maxPlayers) {
             playerIDs.put(playerID, listener);
+            scoreVersion = -1;
+            frameVersion = -1;
             updateGame(true);
         }
         else {
-            throw new TooManyPlayersException("trying to add additional player to full match or two players");
+            throw new TooManyPlayersException("trying to add additional player to full match of " + maxPlayers + " players");
+        }
+        checkRep();
+    }
+    
+    /**
+     * replace the listener of a player already in the match, for when the player's screen has moved to a 
+     * new connection. Other players are not updated.
+     * 
+     * @param playerID   ID of a player in the match
+     * @param listener   listener that will be used to update playerID's screen from now on
+     * @throws IllegalArgumentException  if playerID is not in the match
+     */
+    public synchronized void setListener(String playerID, MatchListener listener) {
+        if (!playerIDs.containsKey(playerID)) {
+            throw new IllegalArgumentException(playerID + " is not in match " + matchID);
         }
+        playerIDs.put(playerID, listener);
         checkRep();
     }
     
@@ -120,8 +225,24 @@ public class Match {
         for (MatchListener listener : playerIDs.values()) {
             listener.updateMatch(firstCall);
         }
+        publishToSpectators();
     }
-    
+
+    /**
+     * calls the callbacks of every player except one to update their PLAY state boards in the client, for when
+     * the player who made the moves is sent their own response
+     *
+     * @param playerID  ID of the player whose screen is not updated
+     */
+    public synchronized void updateOpponents(String playerID) {
+        for (Map.Entry<String, MatchListener> player : playerIDs.entrySet()) {
+            if (!player.getKey().equals(playerID)) {
+                player.getValue().updateMatch(false);
+            }
+        }
+        publishToSpectators();
+    }
+
     /**
      * calls the callbacks for both players so, after one player has exited the match, both move on to SCORE state
      * 
@@ -129,9 +250,60 @@ public class Match {
      *                  message to be shown on the screen 
      */
     public synchronized void endGame(String message) {
+        ended = true;
         for (MatchListener listener : playerIDs.values()) {
             listener.endMatch(message);
         }
+        publishToSpectators();
+    }
+    
+    /**
+     * add a read-only spectator to the match, who is shown the match as it is now and then after every change 
+     * to it, without the players waiting for them. Replaces a spectator already added with the same ID.
+     * 
+     * @param spectatorID  ID of the spectator
+     * @param spectator    shows the match to the spectator
+     */
+    public synchronized void addSpectator(String spectatorID, SpectatorFeed.Spectator spectator) {
+        spectators.add(spectatorID, spectator, getSpectatorFrame());
+    }
+    
+    // hand the spectators the match as it is now, made while holding the lock on the match, so the feed's 
+    // threads never need it
+    private synchronized void publishToSpectators() {
+        if (spectators.size() > 0) {
+            spectators.publish(getSpectatorFrame());
+        }
+    }
+    
+    /**
+     * stop showing the match to a spectator
+     * 
+     * @param spectatorID  ID of the spectator
+     */
+    public void removeSpectator(String spectatorID) {
+        spectators.remove(spectatorID);
+    }
+    
+    /**
+     * @return  number of spectators watching the match
+     */
+    public int getNumSpectators() {
+        return spectators.size();
+    }
+    
+    /**
+     * @return  the response shown to spectators: the PLAY frame while the match is going on, and the final 
+     *          scores once it has ended
+     */
+    public synchronized FrameOutputStream.Frame getSpectatorFrame() {
+        if (!ended) {
+            return getPlayFrame();
+        }
+        if (endFrame == null) {
+            endFrame = FrameOutputStream.Frame.encode(ServerResponse.createScore("The match has ended", getScoreLines()));
+        }
+        return endFrame;
     }
     
     /**
@@ -141,6 +313,106 @@ public class Match {
         return playerIDs.size();
     }
     
+    /**
+     * @return  most players that can join the match
+     */
+    public int getMaxPlayers() {
+        return maxPlayers;
+    }
+    
+    /**
+     * @return  number of teams the players are split into, or 0 if every player plays for themselves
+     */
+    public int getTeams() {
+        return teams;
+    }
+    
+    /**
+     * @return  true iff no more players can join the match
+     */
+    public synchronized boolean isFull() {
+        return playerIDs.size() >= maxPlayers;
+    }
+    
+    /**
+     * @param playerID  ID of a player in the match
+     * @return  the ID the board knows playerID by: their team, or themselves if there are no teams
+     */
+    public String getSide(String playerID) {
+        if (teams == 0) {
+            return playerID;
+        }
+        int index = 0;
+        synchronized (playerIDs) {
+            for (String id : playerIDs.keySet()) {
+                if (id.equals(playerID)) {
+                    return "TEAM" + (index % teams + 1);
+                }
+                index++;
+            }
+        }
+        throw new IllegalArgumentException(playerID + " is not in match " + matchID);
+    }
+    
+    /**
+     * try putting a word on the board for a player in the match, or their team. Moves on words that do not 
+     * cross are made in parallel, so this does not hold the lock on the match.
+     * 
+     * @param playerID  ID of a player in the match
+     * @param wordID    word to put the word at, in format "idNum direction"
+     * @param word      word the player is trying to put in
+     * @return  the outcome of CrosswordBoard.tryWord
+     */
+    public CrosswordBoard.Outcome tryWord(String playerID, String wordID, String word) {
+        return board.tryWord(wordID, word, getSide(playerID));
+    }
+    
+    /**
+     * challenge a word on the board for a player in the match, or their team, in parallel with other moves 
+     * like tryWord
+     * 
+     * @param playerID  ID of a player in the match
+     * @param wordID    word to challenge, in format "idNum direction"
+     * @param word      word the player is challenging with
+     * @return  the outcome of CrosswordBoard.tryChallenge
+     */
+    public CrosswordBoard.Outcome tryChallenge(String playerID, String wordID, String word) {
+        return board.tryChallenge(wordID, word, getSide(playerID));
+    }
+    
+    /**
+     * @param wordID  word ID, in format "idNum direction"
+     * @return  true iff the board has a word wordID
+     */
+    public boolean hasWord(String wordID) {
+        return wordCells.containsKey(wordID);
+    }
+    
+    /**
+     * suggest words for a word of the board. Suggestions are made once per version of the board and shared 
+     * by every player who asks for the same word, and are found without holding the lock on the match, so 
+     * no move waits for them.
+     * 
+     * @param wordID  word of the board, in format "idNum direction"
+     * @param engine  finds the words to suggest
+     * @return  the words engine suggests for wordID with the board as it is now
+     * @throws IllegalArgumentException  if the board has no word wordID
+     */
+    public List<String> getHints(String wordID, HintEngine engine) {
+        if (!hasWord(wordID)) {
+            throw new IllegalArgumentException(wordID + " is not a word of match " + matchID);
+        }
+        // a move made while the hints are found makes the version they are cached under out of date, so 
+        // they are found again for the next request instead of being shown for a board they were not made for
+        long version = board.getVersion();
+        Hints cached = hints.get(wordID);
+        if (cached == null || cached.version != version) {
+            cached = new Hints(version, engine.hints(board.getPlayView(), wordCells, wordID));
+            hints.put(wordID, cached);
+        }
+        return cached.words;
+    }
+    
     /**
      * @return  Board used in this match
      */
@@ -156,10 +428,68 @@ public class Match {
     }
     
     /**
-     * @return list of the player ids of those int his match
+     * @return list of the player ids of those int his match, in the order they joined
      */
     public synchronized Set<String> getPlayerIds(){
-        return playerIDs.keySet();
+        return new LinkedHashSet<>(playerIDs.keySet());
+    }
+    
+    /**
+     * @return  the clues of the board in the format [word_ID : clue], made once and shared by every response
+     */
+    public synchronized List<String> getClueLines() {
+        if (clueLines == null) {
+            List<String> clues = new ArrayList<>();
+            for (Map.Entry<String, String> clue : board.getClues().entrySet()) {
+                clues.add(clue.getKey() + ": " + clue.getValue());
+            }
+            clueLines = List.copyOf(clues);
+        }
+        return clueLines;
+    }
+    
+    /**
+     * @return  the scores of the players in the format [player : score], or of the teams in the format 
+     *          [team (player, ...) : score], shared by every response until a move changes the board or a 
+     *          player joins
+     */
+    public synchronized List<String> getScoreLines() {
+        long version = board.getVersion();
+        if (scoreVersion != version) {
+            List<String> scores = new ArrayList<>();
+            if (teams == 0) {
+                for (String id : playerIDs.keySet()) {
+                    scores.add(id + ": " + board.showScore(id));
+                }
+            } else {
+                List<String> players = new ArrayList<>(playerIDs.keySet());
+                for (int team = 0; team < Math.min(teams, players.size()); team++) {
+                    List<String> members = new ArrayList<>();
+                    for (int i = team; i < players.size(); i += teams) {
+                        members.add(players.get(i));
+                    }
+                    String teamID = "TEAM" + (team + 1);
+                    scores.add(teamID + " (" + String.join(", ", members) + "): " + board.showScore(teamID));
+                }
+            }
+            scoreLines = List.copyOf(scores);
+            scoreVersion = version;
+        }
+        return scoreLines;
+    }
+    
+    /**
+     * @return  the PLAY response, without a message, that shows every player the match as it is now. It is 
+     *          serialized once per move and shared by every player it is sent to
+     */
+    public synchronized FrameOutputStream.Frame getPlayFrame() {
+        long version = board.getVersion();
+        if (frameVersion != version) {
+            playFrame = FrameOutputStream.Frame.encode(
+                    ServerResponse.createPlay(board.getPlayView(), getClueLines(), getScoreLines()));
+            frameVersion = version;
+        }
+        return playFrame;
     }
     
     /**
@@ -168,5 +498,33 @@ public class Match {
     public String getMatchId() {
         return matchID;
     }
+    
+    /**
+     * @return  id of the loaded board this match is played on
+     */
+    public String getBoardId() {
+        return boardID;
+    }
+    
+    /**
+     * @return  true iff endGame() has been called, so the match is over
+     */
+    public synchronized boolean isEnded() {
+        return ended;
+    }
+    
+    /**
+     * @return  seq of the last MatchLog record applied to this match, -1 if none
+     */
+    public synchronized long getLogSeq() {
+        return logSeq;
+    }
+    
+    /**
+     * @param seq  seq of a MatchLog record that has just been applied to this match
+     */
+    public synchronized void setLogSeq(long seq) {
+        logSeq = seq;
+    }
 
 }
@@ -0,0 +1,590 @@
+package crossword;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A threadsafe write-ahead log of the moves accepted in every match on a server, used to rebuild the
+ * matches after the server restarts.
+ *
+ * Records are appended without waiting for the disk. A single writer thread collects every record appended
+ * since its last write and makes them durable together with one write and one fsync (group commit), so
+ * the cost of an fsync is shared by all the matches that made a move while the previous one was running.
+ * Callers that need a record to be durable before they continue call sync().
+ *
+ * Once the effect of the records before some seq has been saved elsewhere (in a MatchSnapshot), trim()
+ * drops them so the log only holds the records made after it.
+ */
+public class MatchLog {
+
+    /**
+     * Immutable record of one accepted action in a match
+     */
+    public static class Record {
+        public enum Type {NEW, JOIN, TRY, CHALLENGE, EXIT}
+
+        private final Type type;
+        private final long seq;
+        private final String matchID;
+        private final String playerID;
+        private final String first;
+        private final String second;
+        private final int maxPlayers;
+        private final int teams;
+        private final String puzzle;
+
+        /*
+         * AF(type, seq, matchID, playerID, first, second, maxPlayers, teams, puzzle) = player playerID doing 
+         *      type in match matchID as the seq-th record in the log (-1 if not yet appended), where for
+         *          NEW        first is the ID of the board, second is the description of the match, the 
+         *                     match is for at most maxPlayers players split into teams teams, 0 if none, and 
+         *                     is played on the puzzle whose CrosswordBoard.getPuzzleId() is puzzle, "" if the 
+         *                     record was made before matches recorded their puzzle
+         *          TRY        first is the word ID and second is the word tried
+         *          CHALLENGE  first is the word ID and second is the word challenged with
+         *          JOIN, EXIT first and second are ""
+         * RI: no field is null, maxPlayers is 2, teams is 0 and puzzle is "" unless type is NEW
+         * SRE: all fields are private, final and immutable
+         * Thread Safety: immutable
+         */
+
+        private Record(Type type, long seq, String matchID, String playerID, String first, String second) {
+            this(type, seq, matchID, playerID, first, second, 2, 0, "");
+        }
+
+        private Record(Type type, long seq, String matchID, String playerID, String first, String second,
+                int maxPlayers, int teams, String puzzle) {
+            this.type = type;
+            this.seq = seq;
+            this.matchID = matchID;
+            this.playerID = playerID;
+            this.first = first;
+            this.second = second;
+            this.maxPlayers = maxPlayers;
+            this.teams = teams;
+            this.puzzle = puzzle;
+        }
+
+        /**
+         * @param matchID      ID of the new match
+         * @param boardID      ID of the loaded board the match is played on
+         * @param description  description of the match
+         * @param playerID     player that created the match
+         * @return record of playerID creating a match
+         */
+        public static Record newMatch(String matchID, String boardID, String description, String playerID) {
+            return new Record(Type.NEW, -1, matchID, playerID, boardID, description);
+        }
+
+        /**
+         * @param matchID      ID of the new match
+         * @param boardID      ID of the loaded board the match is played on
+         * @param description  description of the match
+         * @param playerID     player that created the match
+         * @param maxPlayers   most players that can join the match
+         * @param teams        number of teams the players are split into, 0 if every player plays for themselves
+         * @return record of playerID creating a match for more than two players or for teams
+         */
+        public static Record newMatch(String matchID, String boardID, String description, String playerID,
+                int maxPlayers, int teams) {
+            return newMatch(matchID, boardID, "", description, playerID, maxPlayers, teams);
+        }
+
+        /**
+         * @param matchID      ID of the new match
+         * @param boardID      ID of the loaded board the match is played on
+         * @param puzzle       CrosswordBoard.getPuzzleId() of that board, so the match is only rebuilt on the 
+         *                     same puzzle, whatever ID it is loaded under by then
+         * @param description  description of the match
+         * @param playerID     player that created the match
+         * @param maxPlayers   most players that can join the match
+         * @param teams        number of teams the players are split into, 0 if every player plays for themselves
+         * @return record of playerID creating a match on puzzle
+         */
+        public static Record newMatch(String matchID, String boardID, String puzzle, String description,
+                String playerID, int maxPlayers, int teams) {
+            return new Record(Type.NEW, -1, matchID, playerID, boardID, description, maxPlayers, teams, puzzle);
+        }
+
+        /**
+         * @param matchID   ID of the match
+         * @param playerID  player that joined the match
+         * @return record of playerID joining a match
+         */
+        public static Record join(String matchID, String playerID) {
+            return new Record(Type.JOIN, -1, matchID, playerID, "", "");
+        }
+
+        /**
+         * @param matchID   ID of the match
+         * @param playerID  player that tried the word
+         * @param wordID    ID of the word in the format "idNum direction"
+         * @param word      word tried
+         * @return record of playerID trying a word
+         */
+        public static Record tryWord(String matchID, String playerID, String wordID, String word) {
+            return new Record(Type.TRY, -1, matchID, playerID, wordID, word);
+        }
+
+        /**
+         * @param matchID   ID of the match
+         * @param playerID  player that made the challenge
+         * @param wordID    ID of the word in the format "idNum direction"
+         * @param word      word challenged with
+         * @return record of playerID challenging a word
+         */
+        public static Record challenge(String matchID, String playerID, String wordID, String word) {
+            return new Record(Type.CHALLENGE, -1, matchID, playerID, wordID, word);
+        }
+
+        /**
+         * @param matchID   ID of the match
+         * @param playerID  player that left the match, ending it
+         * @return record of playerID leaving a match
+         */
+        public static Record exit(String matchID, String playerID) {
+            return new Record(Type.EXIT, -1, matchID, playerID, "", "");
+        }
+
+        /**
+         * @return what was done
+         */
+        public Type type() {
+            return type;
+        }
+
+        /**
+         * @return position of this record in the log, -1 if it has not been appended
+         */
+        public long seq() {
+            return seq;
+        }
+
+        /**
+         * @return ID of the match
+         */
+        public String matchID() {
+            return matchID;
+        }
+
+        /**
+         * @return ID of the player
+         */
+        public String playerID() {
+            return playerID;
+        }
+
+        /**
+         * @return board ID for NEW, word ID for TRY and CHALLENGE, "" otherwise
+         */
+        public String first() {
+            return first;
+        }
+
+        /**
+         * @return description for NEW, word for TRY and CHALLENGE, "" otherwise
+         */
+        public String second() {
+            return second;
+        }
+
+        /**
+         * @return most players that can join the match for NEW, 2 otherwise
+         */
+        public int maxPlayers() {
+            return maxPlayers;
+        }
+
+        /**
+         * @return number of teams in the match for NEW, 0 if every player plays for themselves or otherwise
+         */
+        public int teams() {
+            return teams;
+        }
+
+        /**
+         * @return CrosswordBoard.getPuzzleId() of the board of the match for NEW, "" if it was not recorded or 
+         *         otherwise
+         */
+        public String puzzle() {
+            return puzzle;
+        }
+
+        @Override
+        public String toString() {
+            return seq + " " + type + " " + matchID + " " + playerID + " " + first + " " + second;
+        }
+    }
+
+    public static final String LOG_FILE = "matches.log";
+    private static final String TRIM_FILE = "matches.log.tmp";
+
+    private final Path file;
+    private FileChannel channel;
+    private final List<byte[]> pending = new ArrayList<>();
+    private final List<Record> recovered;
+    private long nextSeq;
+    private long durableSeq;
+    private long commits = 0;
+    private long trimSeq = 0;
+    private long trimmedSeq = 0;
+    private boolean closed = false;
+    private IOException failure = null;
+
+    /*
+     * AF(file, channel, pending, recovered, nextSeq, durableSeq, commits, trimSeq, trimmedSeq, closed, failure) =
+     *      A log whose file, open on channel, holds the records with trimmedSeq <= seq < durableSeq. Records
+     *      with seq < trimSeq are waiting to be dropped from the file. pending holds the
+     *      encoded records with durableSeq <= seq < nextSeq, in order, waiting to be written. recovered
+     *      are the records that were already in the file when it was opened. commits is the number of
+     *      fsyncs made so far. The log accepts no more records once closed, or once writing has failed
+     *      with failure.
+     *
+     * RI:
+     *  - durableSeq <= nextSeq
+     *  - trimmedSeq <= trimSeq <= nextSeq
+     *  - durableSeq + pending.size() == nextSeq, except while the writer thread is writing a batch
+     *
+     * SRE:
+     *  - all fields are private, recovered is unmodifiable and holds immutable records
+     *
+     * Thread Safety:
+     *  - pending, nextSeq, durableSeq, commits, trimSeq, trimmedSeq, closed and failure are only accessed
+     *    while holding the lock on this
+     *  - channel is only used by the writer thread after the constructor returns, which is also the only
+     *    thread that replaces file when trimming it, and closes channel once the log is closed
+     */
+
+    /**
+     * Open the log in directory, creating it if it does not exist, and start its writer thread. A record
+     * that was only partly written when the server stopped is dropped.
+     *
+     * @param directory  directory holding the log file
+     * @throws IOException if the log can not be read or opened for writing
+     */
+    public MatchLog(Path directory) throws IOException {
+        this(directory, 0);
+    }
+
+    /**
+     * Open the log in directory, creating it if it does not exist, and start its writer thread. A record
+     * that was only partly written when the server stopped is dropped. Records appended to the log get a seq
+     * of at least firstSeq, even if the log was trimmed to nothing.
+     *
+     * @param directory  directory holding the log file
+     * @param firstSeq   lowest seq to give an appended record, usually MatchSnapshot.read() of directory
+     * @throws IOException if the log can not be read or opened for writing
+     */
+    public MatchLog(Path directory, long firstSeq) throws IOException {
+        Files.createDirectories(directory);
+        this.file = directory.resolve(LOG_FILE);
+        List<Record> records = new ArrayList<>();
+        long end = Files.exists(file) ? read(file, records) : 0;
+        this.recovered = Collections.unmodifiableList(records);
+        this.nextSeq = Math.max(firstSeq, records.isEmpty() ? 0 : records.get(records.size() - 1).seq() + 1);
+        this.durableSeq = nextSeq;
+        this.trimSeq = records.isEmpty() ? nextSeq : records.get(0).seq();
+        this.trimmedSeq = trimSeq;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.READ);
+        channel.truncate(end);
+        channel.position(end);
+        Thread writer = new Thread(this::writeLoop, "match-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        checkRep();
+    }
+
+    private synchronized void checkRep() {
+        assert durableSeq <= nextSeq;
+        assert trimmedSeq <= trimSeq && trimSeq <= nextSeq;
+    }
+
+    /**
+     * @return the records that were in the log when it was opened, in the order they were appended
+     */
+    public List<Record> recovered() {
+        return recovered;
+    }
+
+    /**
+     * Append a record to the log without waiting for it to be written
+     *
+     * @param record  record to append
+     * @return the seq of the appended record
+     * @throws IOException if the log is closed or a previous write failed
+     */
+    public synchronized long append(Record record) throws IOException {
+        if (failure != null) {
+            throw failure;
+        } else if (closed) {
+            throw new IOException("log is closed");
+        }
+        long seq = nextSeq++;
+        pending.add(encode(new Record(record.type, seq, record.matchID, record.playerID, record.first, record.second,
+                record.maxPlayers, record.teams, record.puzzle)));
+        notifyAll();
+        return seq;
+    }
+
+    /**
+     * Wait until every record appended so far is durable
+     *
+     * @throws IOException if writing the records failed
+     */
+    public synchronized void sync() throws IOException {
+        long target = nextSeq;
+        while (durableSeq < target && failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while waiting for the log", e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @return the seq the next appended record will get
+     */
+    public synchronized long nextSeq() {
+        return nextSeq;
+    }
+
+    /**
+     * Drop every record with seq < seq from the log file, waiting until the smaller file has replaced it.
+     * Records can be appended while the log is being trimmed.
+     *
+     * @param seq  seq of the first record to keep, at most nextSeq()
+     * @throws IOException if the log could not be trimmed
+     */
+    public synchronized void trim(long seq) throws IOException {
+        if (seq > nextSeq) {
+            throw new IllegalArgumentException("can not trim records that have not been appended");
+        }
+        trimSeq = Math.max(trimSeq, seq);
+        notifyAll();
+        while (trimmedSeq < seq && failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while waiting for the log", e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        checkRep();
+    }
+
+    /**
+     * @return the number of fsyncs made so far, each one making a batch of records durable
+     */
+    public synchronized long commits() {
+        return commits;
+    }
+
+    /**
+     * Write every record appended so far, then close the log file
+     *
+     * @throws IOException if writing the records failed
+     */
+    public void close() throws IOException {
+        sync();
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+    }
+
+    // writer thread: write and fsync everything pending as one batch, and trim the file when asked, until closed
+    private void writeLoop() {
+        try {
+            while (true) {
+                List<byte[]> batch;
+                long trimTo;
+                boolean trim;
+                synchronized (this) {
+                    while (pending.isEmpty() && trimSeq == trimmedSeq && !closed) {
+                        wait();
+                    }
+                    if (pending.isEmpty() && trimSeq == trimmedSeq) {
+                        channel.close();
+                        return;
+                    }
+                    batch = new ArrayList<>(pending);
+                    pending.clear();
+                    trimTo = trimSeq;
+                    trim = trimSeq > trimmedSeq;
+                }
+                if (!batch.isEmpty()) {
+                    int size = 0;
+                    for (byte[] record : batch) {
+                        size += record.length;
+                    }
+                    ByteBuffer buffer = ByteBuffer.allocate(size);
+                    for (byte[] record : batch) {
+                        buffer.put(record);
+                    }
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    channel.force(false);
+                    synchronized (this) {
+                        durableSeq += batch.size();
+                        commits++;
+                        notifyAll();
+                    }
+                }
+                // every record before trimTo has been written by now, since it was appended before trim() was called
+                if (trim) {
+                    trimFile(trimTo);
+                    synchronized (this) {
+                        trimmedSeq = trimTo;
+                        notifyAll();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                failure = e;
+                notifyAll();
+            }
+        } catch (InterruptedException e) {
+            return;
+        }
+    }
+
+    /**
+     * Copy the records with seq >= seq into a new file, then atomically replace the log file with it.
+     * Only called by the writer thread, once every record it has written is durable.
+     */
+    private void trimFile(long seq) throws IOException {
+        long start = 0;
+        long end = channel.position();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (start < end) {
+                int length = in.readInt();
+                in.readByte();
+                if (in.readLong() >= seq) {
+                    break;
+                }
+                in.skipNBytes(length - Byte.BYTES - Long.BYTES + Integer.BYTES);
+                start += Integer.BYTES + length + Integer.BYTES;
+            }
+        }
+        Path trimmed = file.resolveSibling(TRIM_FILE);
+        try (FileChannel copy = FileChannel.open(trimmed, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long copied = 0;
+            while (copied < end - start) {
+                copied += channel.transferTo(start + copied, end - start - copied, copy);
+            }
+            copy.force(false);
+        }
+        Files.move(trimmed, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        channel.close();
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        channel.position(end - start);
+    }
+
+    /**
+     * Encode a record as its length, its fields, and a CRC32 of its fields
+     *
+     * @param record  record to encode
+     * @return the encoded record
+     */
+    private static byte[] encode(Record record) {
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(body);
+            data.writeByte(record.type.ordinal());
+            data.writeLong(record.seq);
+            data.writeUTF(record.matchID);
+            data.writeUTF(record.playerID);
+            data.writeUTF(record.first);
+            data.writeUTF(record.second);
+            // written only when they are not the defaults, so logs of two player matches read the same as before
+            if (record.maxPlayers != 2 || record.teams != 0 || !record.puzzle.isEmpty()) {
+                data.writeByte(record.maxPlayers);
+                data.writeByte(record.teams);
+            }
+            if (!record.puzzle.isEmpty()) {
+                data.writeUTF(record.puzzle);
+            }
+            byte[] bytes = body.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            ByteBuffer encoded = ByteBuffer.allocate(Integer.BYTES + bytes.length + Integer.BYTES);
+            encoded.putInt(bytes.length).put(bytes).putInt((int) crc.getValue());
+            return encoded.array();
+        } catch (IOException e) {
+            throw new AssertionError("writing to memory can not fail", e);
+        }
+    }
+
+    /**
+     * Read every complete record in a log file, stopping at the first record that is incomplete or whose
+     * CRC32 does not match
+     *
+     * @param file     log file to read
+     * @param records  list the records are added to, in order
+     * @return the position in file just after the last complete record
+     * @throws IOException if the file can not be read
+     */
+    public static long read(Path file, List<Record> records) throws IOException {
+        long end = 0;
+        long size = Files.size(file);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                int length = in.readInt();
+                if (length <= 0 || length > size - end) {
+                    break;
+                }
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                int expected = in.readInt();
+                CRC32 crc = new CRC32();
+                crc.update(bytes);
+                if ((int) crc.getValue() != expected) {
+                    break;
+                }
+                DataInputStream body = new DataInputStream(new ByteArrayInputStream(bytes));
+                Record.Type type = Record.Type.values()[body.readByte()];
+                long seq = body.readLong();
+                String matchID = body.readUTF();
+                String playerID = body.readUTF();
+                String first = body.readUTF();
+                String second = body.readUTF();
+                int maxPlayers = body.available() > 0 ? body.readUnsignedByte() : 2;
+                int teams = body.available() > 0 ? body.readUnsignedByte() : 0;
+                String puzzle = body.available() > 0 ? body.readUTF() : "";
+                records.add(new Record(type, seq, matchID, playerID, first, second, maxPlayers, teams, puzzle));
+                end += Integer.BYTES + length + Integer.BYTES;
+            }
+        } catch (EOFException e) {
+            // the last record was cut off part way through
+        }
+        return end;
+    }
+}
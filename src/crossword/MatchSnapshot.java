@@ -0,0 +1,254 @@
+package crossword;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import crossword.Match.MatchListener;
+import crossword.Match.TooManyPlayersException;
+
+/**
+ * Compact binary snapshots of the matches being played on a server, so that a restarted server only has to
+ * replay the MatchLog records made after the latest snapshot.
+ *
+ * A snapshot covers the records with seq < its seq: every match that was live when those records were
+ * made is either in the snapshot, with the state it had after the record Match.getLogSeq(), or has ended.
+ * Matches are encoded one at a time, so moves can keep being made in other matches while a snapshot is
+ * taken; records made while it was being taken may already be reflected in the snapshot, which is why each
+ * match keeps its own log seq.
+ *
+ * The snapshot file ends with a CRC32 of its contents, and replaces the previous one atomically once it is
+ * durable, so there is always one complete snapshot.
+ *
+ * The same encoding of a single match is what a server sends with ADOPT to hand a live match over to another
+ * server, which rebuilds it with decode().
+ */
+public class MatchSnapshot {
+
+    public static final String SNAPSHOT_FILE = "matches.snapshot";
+    private static final String TEMP_FILE = "matches.snapshot.tmp";
+    private static final int MAGIC = 0x43575332;
+    // snapshots written before matches recorded the identity of their puzzle
+    private static final int LEGACY_MAGIC = 0x43575331;
+
+    /*
+     * Static utility class, no rep.
+     *
+     * Thread Safety:
+     *  - encode() only holds the lock on the board while copying its play state; callers must make sure no
+     *    other move is applied to the match and logged at the same time
+     *  - findBoard() holds the lock on boards, which must be a synchronized map, while looking through it
+     *  - write() and read() only use local state, and callers must not write snapshots to the same
+     *    directory concurrently
+     */
+
+    private MatchSnapshot() {
+        throw new AssertionError("not instantiable");
+    }
+
+    /**
+     * Encode the state of a match in a compact binary form
+     *
+     * @param match  match to encode
+     * @return the match ID, board ID, puzzle identity (CrosswordBoard.getPuzzleId()), description, log seq, 
+     *         players in the order they joined, play state, and most players and number of teams of match
+     */
+    public static byte[] encode(Match match) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeUTF(match.getMatchId());
+            out.writeUTF(match.getBoardId());
+            out.writeUTF(match.getBoard().getPuzzleId());
+            out.writeUTF(match.getDescription());
+            out.writeLong(match.getLogSeq());
+            List<String> players = List.copyOf(match.getPlayerIds());
+            out.writeByte(players.size());
+            for (String player : players) {
+                out.writeUTF(player);
+            }
+            match.getBoard().writeState(out);
+            out.writeByte(match.getMaxPlayers());
+            out.writeByte(match.getTeams());
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new AssertionError("writing to memory can not fail", e);
+        }
+    }
+
+    /**
+     * Write a snapshot to directory, replacing the previous one once it is durable
+     *
+     * @param directory  directory holding the snapshot, which must exist
+     * @param seq        seq of the first MatchLog record that is not covered by the snapshot
+     * @param matches    matches encoded by encode()
+     * @throws IOException if the snapshot could not be written
+     */
+    public static void write(Path directory, long seq, List<byte[]> matches) throws IOException {
+        Path temp = directory.resolve(TEMP_FILE);
+        try (FileOutputStream file = new FileOutputStream(temp.toFile())) {
+            DataOutputStream raw = new DataOutputStream(new BufferedOutputStream(file));
+            CRC32 crc = new CRC32();
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(raw, crc));
+            out.writeInt(MAGIC);
+            out.writeLong(seq);
+            out.writeInt(matches.size());
+            for (byte[] match : matches) {
+                out.writeInt(match.length);
+                out.write(match);
+            }
+            out.flush();
+            raw.writeInt((int) crc.getValue());
+            raw.flush();
+            file.getChannel().force(false);
+        }
+        Files.move(temp, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Read the snapshot in directory, rebuilding its matches on copies of the loaded boards. Matches whose
+     * puzzle is no longer loaded, or whose board no longer has the same shape, are dropped.
+     *
+     * @param directory  directory holding the snapshot
+     * @param boards     loaded boards by board ID
+     * @param listener   listener given to every player of the rebuilt matches
+     * @param matches    list the rebuilt matches are added to
+     * @return seq of the first MatchLog record not covered by the snapshot, 0 if there is no snapshot
+     * @throws IOException if the snapshot can not be read or is corrupt
+     */
+    public static long read(Path directory, Map<String, CrosswordBoard> boards, MatchListener listener,
+            List<Match> matches) throws IOException {
+        Path file = directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        long size = Files.size(file);
+        CRC32 crc = new CRC32();
+        try (DataInputStream raw = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            DataInputStream in = new DataInputStream(new CheckedInputStream(raw, crc));
+            int magic = size < Integer.BYTES * 3 + Long.BYTES ? 0 : in.readInt();
+            if (magic != MAGIC && magic != LEGACY_MAGIC) {
+                throw new IOException(file + " is not a match snapshot");
+            }
+            long seq = in.readLong();
+            int count = in.readInt();
+            byte[][] encoded = new byte[count][];
+            for (int i = 0; i < count; i++) {
+                int length = in.readInt();
+                if (length < 0 || length > size) {
+                    throw new IOException(file + " is corrupt");
+                }
+                encoded[i] = new byte[length];
+                in.readFully(encoded[i]);
+            }
+            if (raw.readInt() != (int) crc.getValue()) {
+                throw new IOException(file + " is corrupt");
+            }
+            for (byte[] match : encoded) {
+                try {
+                    matches.add(decode(match, magic == MAGIC, boards, listener));
+                } catch (IOException e) {
+                    System.out.println("Can't recover " + e.getMessage());
+                }
+            }
+            return seq;
+        }
+    }
+
+    /**
+     * Rebuild a match encoded by encode() on a copy of the loaded board of its puzzle, for a snapshot being read
+     * or a match handed over by another server
+     *
+     * @param encoded   match encoded by encode()
+     * @param boards    loaded boards by board ID
+     * @param listener  listener given to every player of the rebuilt match
+     * @return the rebuilt match, with the log seq it was encoded with, on the board findBoard() finds for it
+     * @throws IOException if the match can not be rebuilt, because it is corrupt, its puzzle is not loaded or
+     *         its board no longer has the same shape; the message names the match and says why
+     */
+    public static Match decode(byte[] encoded, Map<String, CrosswordBoard> boards, MatchListener listener)
+            throws IOException {
+        return decode(encoded, true, boards, listener);
+    }
+
+    /**
+     * Find the loaded board a match recorded as played on boardID and puzzle should be rebuilt on. Board IDs
+     * depend on the order boards were loaded in and change when puzzles are reloaded, so the board is found by
+     * its puzzle, preferring boardID if several boards have the same puzzle.
+     *
+     * @param boards   loaded boards by board ID
+     * @param boardID  ID the match's board had when the match was recorded
+     * @param puzzle   CrosswordBoard.getPuzzleId() of the match's board, "" if it was not recorded
+     * @return ID of the loaded board whose puzzle is puzzle, or boardID if puzzle is "" and boardID is loaded,
+     *         or null if there is no such board
+     */
+    public static String findBoard(Map<String, CrosswordBoard> boards, String boardID, String puzzle) {
+        CrosswordBoard board = boards.get(boardID);
+        if (puzzle.isEmpty() || (board != null && board.getPuzzleId().equals(puzzle))) {
+            return board == null ? null : boardID;
+        }
+        synchronized (boards) {
+            return boards.entrySet().stream()
+                    .filter(entry -> entry.getValue().getPuzzleId().equals(puzzle))
+                    .map(Map.Entry::getKey)
+                    .min(Comparator.naturalOrder())
+                    .orElse(null);
+        }
+    }
+
+    // decode a match encoded by encode(), or before matches recorded their puzzle if not withPuzzle
+    private static Match decode(byte[] encoded, boolean withPuzzle, Map<String, CrosswordBoard> boards,
+            MatchListener listener) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded));
+        String matchID = in.readUTF();
+        String recordedBoardID = in.readUTF();
+        String puzzle = withPuzzle ? in.readUTF() : "";
+        String description = in.readUTF();
+        long logSeq = in.readLong();
+        int numPlayers = in.readUnsignedByte();
+        String[] players = new String[numPlayers];
+        for (int i = 0; i < numPlayers; i++) {
+            players[i] = in.readUTF();
+        }
+        String boardID = findBoard(boards, recordedBoardID, puzzle);
+        CrosswordBoard board = boardID == null ? null : boards.get(boardID);
+        if (board == null) {
+            throw new IOException("match " + matchID + ", puzzle " + (puzzle.isEmpty() ? recordedBoardID : puzzle)
+                    + " of board " + recordedBoardID + " is not loaded");
+        }
+        Match match;
+        try {
+            // the most players and teams come after the play state, which has to be read first to find them
+            in.mark(encoded.length);
+            new CrosswordBoard(board).readState(in);
+            int maxPlayers = in.available() > 0 ? in.readUnsignedByte() : 2;
+            int teams = in.available() > 0 ? in.readUnsignedByte() : 0;
+            in.reset();
+            match = new Match(matchID, boardID, description, board, maxPlayers, teams);
+            match.getBoard().readState(in);
+            for (String player : players) {
+                match.addPlayer(player, listener);
+            }
+        } catch (IOException | TooManyPlayersException e) {
+            throw new IOException("match " + matchID + ", " + e.getMessage(), e);
+        }
+        match.setLogSeq(logSeq);
+        return match;
+    }
+}
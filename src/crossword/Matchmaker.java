@@ -0,0 +1,320 @@
+package crossword;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A threadsafe matchmaking queue for players who want to play without choosing a match. A player waits for a
+ * match on one board, or on any board. Two players waiting for the same board are paired with each other, a
+ * player waiting for a board that nobody else wants is paired with a player waiting for any board, and players
+ * waiting for any board are paired with each other, in the order they joined.
+ *
+ * Joining and leaving the queue take constant time and never wait for pairing. The matchmaker's thread
+ * collects everyone who joins within batchMillis of each other, pairs them in constant time per pair, and
+ * hands the whole batch of pairs over at once, so the caller starts many matches for the cost of one call.
+ * The thread sleeps while nobody has joined since the last batch.
+ */
+public class Matchmaker {
+
+    /**
+     * Receives the pairs the matchmaker makes
+     */
+    public interface Pairing {
+        /**
+         * Start matches for the pairs of a batch. Called on the matchmaker's thread, once per batch.
+         *
+         * @param pairs  pairs of players who are no longer in the queue; a player who left the queue while
+         *               the batch was being made may still be in one of them
+         */
+        void paired(List<Pair> pairs);
+    }
+
+    /**
+     * Two players paired for a match
+     */
+    public static class Pair {
+        private final Ticket first;
+        private final Ticket second;
+        private final String board;
+
+        /*
+         * AF(first, second, board) = the player of first paired with the player of second, for a match on
+         *      board, or on any board if board is null
+         * RI: first and second are for different players; board is null iff both are for any board, and
+         *     otherwise the board of first, or of second if first is for any board
+         * SRE: all fields are private, final and immutable, except the tickets, which are never given out
+         * Thread Safety: the fields read here are final
+         */
+
+        private Pair(Ticket first, Ticket second, String board) {
+            this.first = first;
+            this.second = second;
+            this.board = board;
+            assert !first.player.equals(second.player);
+        }
+
+        /**
+         * @return the player who joined the queue first
+         */
+        public String first() {
+            return first.player;
+        }
+
+        /**
+         * @return the other player
+         */
+        public String second() {
+            return second.player;
+        }
+
+        /**
+         * @return the board both players can play, null if both wanted any board
+         */
+        public String board() {
+            return board;
+        }
+
+        /**
+         * @param player  first() or second()
+         * @return the board player waited for, null if they waited for any board
+         */
+        public String boardOf(String player) {
+            return player.equals(first.player) ? first.board : second.board;
+        }
+    }
+
+    /** A player's place in the queue */
+    private static class Ticket {
+        private final String player;
+        private final String board;
+        private final long since = System.nanoTime();
+
+        Ticket(String player, String board) {
+            this.player = player;
+            this.board = board;
+        }
+    }
+
+    // key of the queue of players waiting for any board, which no board ID can be
+    private static final String ANY = "";
+
+    private final long batchMillis;
+    private final Metrics metrics;
+    private final Pairing pairing;
+    private final Map<String, Deque<Ticket>> queues = new ConcurrentHashMap<>();
+    private final Map<String, Ticket> tickets = new ConcurrentHashMap<>();
+    private final AtomicInteger arrivals = new AtomicInteger(0);
+    private final Thread thread;
+    private volatile boolean stopped = false;
+
+    /*
+     * AF(batchMillis, metrics, pairing, queues, tickets, arrivals, thread, stopped) = the players tickets.keys(),
+     *      each waiting for the board tickets[p].board, or any board if it is null, in the order they joined,
+     *      which is the order of their tickets in queues[board], or queues[ANY] for any board. Pairs are made
+     *      on thread every batchMillis after someone joins, and given to pairing, until stopped. arrivals
+     *      players have joined since the last batch started, and what the matchmaker has done is counted
+     *      in metrics
+     * RI: batchMillis > 0, queues[ANY] exists, tickets[p].player == p, every ticket in tickets is in its
+     *     queue; tickets in the queues that are not in tickets were cancelled, replaced by a later ticket of
+     *     the same player, or are about to be paired
+     * SRE: all fields are private and final except stopped, and tickets are never given out except inside
+     *      pairs, which do not let them be changed
+     * Thread Safety: queues and tickets are concurrent maps, and queues are concurrent deques. Players join
+     *     and leave from any thread, but only the matchmaker's thread takes tickets out of the queues, and
+     *     empty queues are only removed with computeIfPresent, while joining adds with compute, so no ticket
+     *     is added to a queue that has been removed. A player can leave after their ticket was taken for a
+     *     pair but before the pair is handed over, which Pairing tells the caller to check. A player can also
+     *     join again after their ticket was taken out of its queue to be paired, so a ticket is only paired
+     *     while it is still the player's ticket in tickets, and never with a later ticket of the same
+     *     player, which replaces it. arrivals is
+     *     atomic, and the thread is woken with unpark after an arrival, which is never lost even if it
+     *     comes before the thread parks.
+     */
+
+    /**
+     * Make a matchmaker and start its thread, which is a daemon so it does not keep the program running
+     *
+     * @param batchMillis  how long to collect players who join before pairing them, > 0
+     * @param metrics      where to count what the matchmaker does, see Server.metrics()
+     * @param pairing      receives the pairs made
+     */
+    public Matchmaker(long batchMillis, Metrics metrics, Pairing pairing) {
+        if (batchMillis <= 0) {
+            throw new IllegalArgumentException("batch must be positive");
+        }
+        this.batchMillis = batchMillis;
+        this.metrics = metrics;
+        this.pairing = pairing;
+        queues.put(ANY, new ConcurrentLinkedDeque<>());
+        this.thread = new Thread(this::run, "matchmaker");
+        thread.setDaemon(true);
+        thread.start();
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert batchMillis > 0;
+        assert queues.containsKey(ANY);
+    }
+
+    /**
+     * Put a player at the back of the queue, in place of their earlier place in it, if any
+     *
+     * @param player  the player
+     * @param board   ID of the board the player wants to play, or null for any board
+     */
+    public void enqueue(String player, String board) {
+        Ticket ticket = new Ticket(player, board);
+        if (tickets.put(player, ticket) == null) {
+            metrics.add("matchmaking.depth", 1);
+        }
+        queues.compute(board == null ? ANY : board, (key, queue) -> {
+            Deque<Ticket> added = queue == null ? new ConcurrentLinkedDeque<>() : queue;
+            added.offerLast(ticket);
+            return added;
+        });
+        metrics.increment("matchmaking.queued");
+        if (arrivals.getAndIncrement() == 0) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Take a player out of the queue
+     *
+     * @param player  the player
+     * @return true iff the player was waiting and has not been taken for a pair
+     */
+    public boolean cancel(String player) {
+        if (tickets.remove(player) == null) {
+            return false;
+        }
+        metrics.add("matchmaking.depth", -1);
+        metrics.increment("matchmaking.cancelled");
+        return true;
+    }
+
+    /**
+     * @param player  a player
+     * @return true iff player is waiting in the queue
+     */
+    public boolean isWaiting(String player) {
+        return tickets.containsKey(player);
+    }
+
+    /**
+     * @return the number of players waiting
+     */
+    public int size() {
+        return tickets.size();
+    }
+
+    /**
+     * Stop the matchmaker's thread. Players still waiting are never paired.
+     */
+    public void stop() {
+        stopped = true;
+        LockSupport.unpark(thread);
+    }
+
+    // matchmaker's thread: wait for players to join, give them batchMillis for others to join too, and pair them
+    private void run() {
+        while (!stopped) {
+            if (arrivals.get() == 0) {
+                LockSupport.park(this);
+                continue;
+            }
+            try {
+                Thread.sleep(batchMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            arrivals.set(0);
+            List<Pair> pairs = pair();
+            if (pairs.isEmpty()) {
+                continue;
+            }
+            metrics.increment("matchmaking.batches");
+            try {
+                pairing.paired(pairs);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // pair every player that can be paired, leaving the rest at the front of their queues
+    private List<Pair> pair() {
+        List<Pair> pairs = new ArrayList<>();
+        Deque<Ticket> any = queues.get(ANY);
+        for (String board : queues.keySet()) {
+            if (board.equals(ANY)) {
+                continue;
+            }
+            Deque<Ticket> queue = queues.get(board);
+            for (Ticket first = next(queue); first != null; first = next(queue)) {
+                Deque<Ticket> from = queue;
+                Ticket second = next(queue);
+                if (second == null) {
+                    from = any;
+                    second = next(any);
+                }
+                if (second == null) {
+                    queue.offerFirst(first);
+                    break;
+                }
+                if (second.player.equals(first.player)) {
+                    // the player joined again after first was taken out of the queue, so only second is theirs
+                    from.offerFirst(second);
+                    continue;
+                }
+                pairs.add(take(first, second, board));
+            }
+            queues.computeIfPresent(board, (key, waiting) -> waiting.isEmpty() ? null : waiting);
+        }
+        for (Ticket first = next(any); first != null; first = next(any)) {
+            Ticket second = next(any);
+            if (second == null) {
+                any.offerFirst(first);
+                break;
+            }
+            if (second.player.equals(first.player)) {
+                // the player joined again after first was taken out of the queue, so only second is theirs
+                any.offerFirst(second);
+                continue;
+            }
+            pairs.add(take(first, second, null));
+        }
+        return pairs;
+    }
+
+    // the first ticket of queue that is still its player's ticket, taken out of queue, or null if there is none;
+    // the tickets before it were cancelled or replaced, and are dropped
+    private Ticket next(Deque<Ticket> queue) {
+        Ticket ticket = queue.pollFirst();
+        while (ticket != null && tickets.get(ticket.player) != ticket) {
+            ticket = queue.pollFirst();
+        }
+        return ticket;
+    }
+
+    // take the players of first and second out of the queue, and pair them for a match on board
+    private Pair take(Ticket first, Ticket second, String board) {
+        long now = System.nanoTime();
+        for (Ticket ticket : List.of(first, second)) {
+            if (tickets.remove(ticket.player, ticket)) {
+                metrics.add("matchmaking.depth", -1);
+            }
+            metrics.add("matchmaking.wait_millis", TimeUnit.NANOSECONDS.toMillis(now - ticket.since));
+        }
+        metrics.add("matchmaking.paired", 2);
+        return new Pair(first, second, board);
+    }
+}
@@ -0,0 +1,66 @@
+package crossword;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A threadsafe set of named counters describing what a server has done, such as how many connections
+ * it has timed out. Counters start at 0 and can be incremented from many threads without contending.
+ */
+public class Metrics {
+
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    /*
+     * AF(counters) = counter name n has the value counters[n].sum(), or 0 if n is not a key
+     * RI: true
+     * SRE: counters is private and final, and values are returned as longs
+     * Thread Safety: counters is a concurrent map of LongAdders, which are threadsafe
+     */
+
+    /**
+     * Add one to a counter
+     *
+     * @param name  name of the counter
+     */
+    public void increment(String name) {
+        add(name, 1);
+    }
+
+    /**
+     * Add to a counter
+     *
+     * @param name   name of the counter
+     * @param delta  amount to add
+     */
+    public void add(String name, long delta) {
+        counters.computeIfAbsent(name, key -> new LongAdder()).add(delta);
+    }
+
+    /**
+     * @param name  name of a counter
+     * @return the current value of the counter
+     */
+    public long get(String name) {
+        LongAdder counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * @return the current value of every counter that has been added to, by name in sorted order
+     */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+            snapshot.put(counter.getKey(), counter.getValue().sum());
+        }
+        return snapshot;
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+}
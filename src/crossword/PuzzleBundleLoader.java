@@ -0,0 +1,175 @@
+package crossword;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+
+/**
+ * Loads puzzle bundles: files holding many puzzles one after another, each starting with its ">>" header
+ * line, or zip archives of such files and single puzzle files. A bundle is read one line at a time and
+ * split into puzzles as it is read, and each puzzle is parsed, validated and built into a CrosswordBoard
+ * on a pool of worker threads. At most MAX_PENDING puzzles wait for a worker at any time (the reading
+ * thread builds puzzles itself while the queue is full), so memory use is bounded by the size of the
+ * largest puzzles rather than the size of the bundle.
+ */
+public class PuzzleBundleLoader {
+
+    public interface BundleListener {
+        /**
+         * Called on a worker thread for each puzzle in the bundle that was built successfully
+         *
+         * @param source  where the puzzle is in the bundle, in the format "file:line"
+         * @param board   the board built from the puzzle
+         */
+        void loaded(String source, CrosswordBoard board);
+
+        /**
+         * Called for each puzzle in the bundle that could not be built, usually on a worker thread
+         *
+         * @param source   where the puzzle is in the bundle, in the format "file:line"
+         * @param problem  why the puzzle could not be built
+         */
+        void failed(String source, String problem);
+    }
+
+    public static final String BUNDLE_EXTENSION = ".bundle";
+    public static final String ARCHIVE_EXTENSION = ".zip";
+    private static final String HEADER = ">>";
+    private static final int MAX_PENDING = 64;
+    private static final int MAX_PUZZLE_CHARS = 1 << 24;
+
+    /*
+     * Static utility class, no rep.
+     *
+     * Thread Safety:
+     *  - each call to load() reads its bundle on the calling thread and owns its worker pool; workers only
+     *    share the immutable puzzle text handed to them and the listener, which must be threadsafe
+     */
+
+    private PuzzleBundleLoader() {
+        throw new AssertionError("not instantiable");
+    }
+
+    /**
+     * @param file  file to check
+     * @return true iff file has the extension of a bundle or of an archive of bundles
+     */
+    public static boolean isBundle(Path file) {
+        String fileName = file.getFileName().toString();
+        return fileName.endsWith(BUNDLE_EXTENSION) || fileName.endsWith(ARCHIVE_EXTENSION);
+    }
+
+    /**
+     * Load every puzzle in a bundle, or in every file of a zip archive, calling listener once per puzzle.
+     * Returns once all puzzles have been built or have failed.
+     *
+     * @param bundle    bundle file, or archive if its name ends in ARCHIVE_EXTENSION
+     * @param workers   number of threads to build puzzles on, at least 1
+     * @param listener  threadsafe listener told about each puzzle
+     * @return the number of puzzles found in the bundle
+     * @throws IOException if the bundle can not be read
+     */
+    public static int load(Path bundle, int workers, BundleListener listener) throws IOException {
+        ExecutorService pool = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_PENDING), new ThreadPoolExecutor.CallerRunsPolicy());
+        int puzzles = 0;
+        try (InputStream in = Files.newInputStream(bundle)) {
+            String name = bundle.getFileName().toString();
+            if (name.endsWith(ARCHIVE_EXTENSION)) {
+                ZipInputStream zip = new ZipInputStream(in, UTF_8);
+                for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                    if (!entry.isDirectory()) {
+                        // the reader is not closed, since that would close the rest of the archive
+                        BufferedReader reader = new BufferedReader(new InputStreamReader(zip, UTF_8));
+                        puzzles += split(name + "!" + entry.getName(), reader, pool, listener);
+                    }
+                }
+            } else {
+                puzzles += split(name, new BufferedReader(new InputStreamReader(in, UTF_8)), pool, listener);
+            }
+        } finally {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return puzzles;
+    }
+
+    /**
+     * Split the text read from reader into puzzles, submitting each one to pool as soon as its last line
+     * has been read. Lines before the first header are ignored.
+     *
+     * @return the number of puzzles found
+     */
+    private static int split(String name, BufferedReader reader, ExecutorService pool, BundleListener listener)
+            throws IOException {
+        int puzzles = 0;
+        int lineNumber = 0;
+        StringBuilder puzzle = null;
+        String source = null;
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            lineNumber++;
+            if (line.trim().startsWith(HEADER)) {
+                if (puzzle != null) {
+                    submit(source, puzzle, pool, listener);
+                }
+                puzzles++;
+                source = name + ":" + lineNumber;
+                puzzle = new StringBuilder();
+            }
+            if (puzzle == null) {
+                continue;
+            }
+            if (puzzle.length() + line.length() >= MAX_PUZZLE_CHARS) {
+                listener.failed(source, "puzzle is longer than " + MAX_PUZZLE_CHARS + " characters");
+                puzzle = null;
+                continue;
+            }
+            puzzle.append(line).append('\n');
+        }
+        if (puzzle != null) {
+            submit(source, puzzle, pool, listener);
+        }
+        return puzzles;
+    }
+
+    // hand the puzzle text to a worker to be parsed, validated and built
+    private static void submit(String source, StringBuilder puzzle, ExecutorService pool, BundleListener listener) {
+        // the grammar does not allow newlines after the last entry
+        int end = puzzle.length();
+        while (end > 0 && Character.isWhitespace(puzzle.charAt(end - 1))) {
+            end--;
+        }
+        final String text = puzzle.substring(0, end);
+        pool.execute(() -> {
+            final CrosswordFile parsed;
+            try {
+                parsed = CrosswordParser.parse(text);
+            } catch (UnableToParseException | RuntimeException e) {
+                listener.failed(source, "could not be parsed: " + e.getMessage());
+                return;
+            }
+            try {
+                listener.loaded(source, new CrosswordBoard(parsed, source));
+            } catch (IOException e) {
+                listener.failed(source, e.getMessage());
+            }
+        });
+    }
+}
@@ -0,0 +1,381 @@
+package crossword;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import crossword.Entry.Direction;
+
+/**
+ * Generates new puzzles from a list of words and their clues. Each puzzle is a random choice of words laid out
+ * into one interlocking grid that CrosswordBoard accepts: every word after the first crosses a word already
+ * placed, crossing words agree on their shared letter, no two words going the same direction overlap or start
+ * at the same location, and no word touches another except where they cross, so the board shows no run of
+ * letters that is not a word. Many layouts of the chosen words are tried in parallel on a fork-join pool, and
+ * the one that places the most words, with the most crossings, on the smallest board is kept.
+ *
+ * Can also be run from the command line to write many puzzle files in the puzzle file grammar.
+ */
+public class PuzzleGenerator {
+
+    // layouts of the chosen words tried for each puzzle
+    private static final int LAYOUTS = 32;
+    // no layout is more than this many rows or columns
+    private static final int MAX_SIDE = 21;
+    private static final String WORD = "[a-z\\-]+";
+    private static final String TEXT = "[^\"\r\n\t\\\\]+";
+
+    private final List<String> words;
+    private final Map<String, String> clues;
+    private final ForkJoinPool pool;
+
+    /*
+     * Abstraction function:
+     *  AF(words, clues, pool) = a generator of puzzles whose words are chosen from words, each with the clue
+     *                           clues.get(word), whose layouts are searched on pool
+     * Rep invariant:
+     *  - words holds the keys of clues, each once, in a fixed order
+     *  - every word matches WORD and every clue matches TEXT, so both can be written in a puzzle file
+     * Safety from rep exposure:
+     *  - all fields are private and final; words and clues are unmodifiable copies that are never returned
+     * Thread Safety:
+     *  - words and clues are never mutated after construction, and each layout keeps its own grid, so any
+     *    number of puzzles may be generated at once
+     */
+
+    /**
+     * Make a generator that searches layouts on the common fork-join pool.
+     *
+     * @param clues  the words puzzles may use, each with its clue; case of the words is ignored, and words or
+     *               clues that can not be written in a puzzle file (words with characters other than letters
+     *               and '-', clues with quotation marks, backslashes, tabs or line breaks) are skipped
+     */
+    public PuzzleGenerator(Map<String, String> clues) {
+        this(clues, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Make a generator.
+     *
+     * @param clues  the words puzzles may use, each with its clue; case of the words is ignored, and words or
+     *               clues that can not be written in a puzzle file (words with characters other than letters
+     *               and '-', clues with quotation marks, backslashes, tabs or line breaks) are skipped
+     * @param pool   the pool layouts are searched on
+     */
+    public PuzzleGenerator(Map<String, String> clues, ForkJoinPool pool) {
+        Map<String, String> usable = new TreeMap<>();
+        for (Map.Entry<String, String> clue : clues.entrySet()) {
+            String word = clue.getKey().toLowerCase();
+            if (word.matches(WORD) && clue.getValue().matches(TEXT)) {
+                usable.putIfAbsent(word, clue.getValue());
+            }
+        }
+        this.words = Collections.unmodifiableList(new ArrayList<>(usable.keySet()));
+        this.clues = Collections.unmodifiableMap(usable);
+        this.pool = pool;
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert words.size() == clues.size();
+        for (String word : words) {
+            assert word.matches(WORD);
+            assert clues.get(word).matches(TEXT);
+        }
+    }
+
+    /**
+     * @return the number of words puzzles may be made from
+     */
+    public int size() {
+        return words.size();
+    }
+
+    /**
+     * Generate a puzzle from words chosen at random. The same seed always chooses the same words.
+     *
+     * @param name         name of the puzzle, without quotation marks, backslashes, tabs or line breaks
+     * @param description  description of the puzzle, without quotation marks, backslashes, tabs or line breaks
+     * @param count        the number of words to choose, at least 2; every word is chosen if there are fewer
+     * @param seed         seed of the random choice of words and of the layouts tried
+     * @return a puzzle that CrosswordBoard accepts, holding as many of the chosen words as could be laid out
+     * @throws IllegalArgumentException if name or description can not be written in a puzzle file, fewer than 2
+     *                                  words are chosen, or no two of the chosen words could be laid out crossing
+     *                                  each other
+     */
+    public CrosswordFile generate(String name, String description, int count, long seed) {
+        if (!name.matches(TEXT) || !description.matches(TEXT)) {
+            throw new IllegalArgumentException("name and description must not be empty or have quotation marks, "
+                    + "backslashes, tabs or line breaks");
+        }
+        Random random = new Random(seed);
+        List<String> chosen = new ArrayList<>(words);
+        Collections.shuffle(chosen, random);
+        chosen = chosen.subList(0, Math.min(count, chosen.size()));
+        if (chosen.size() < 2) {
+            throw new IllegalArgumentException("a puzzle needs at least 2 words");
+        }
+        List<Callable<Layout>> layouts = new ArrayList<>();
+        for (int i = 0; i < LAYOUTS; i++) {
+            final long layoutSeed = random.nextLong();
+            final List<String> layoutWords = chosen;
+            layouts.add(() -> new Layout(layoutWords, new Random(layoutSeed)));
+        }
+        Layout best = null;
+        try {
+            for (Future<Layout> layout : pool.invokeAll(layouts)) {
+                if (best == null || Layout.BEST_FIRST.compare(layout.get(), best) < 0) {
+                    best = layout.get();
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new RuntimeException("layout failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while laying out " + name, e);
+        }
+        if (best.placed.size() < 2) {
+            throw new IllegalArgumentException("no two of the chosen words cross each other");
+        }
+        CrosswordFile puzzle = new CrosswordFile(name, description, best.entries(clues));
+        assert PuzzleValidator.validate(puzzle).isEmpty() : PuzzleValidator.validate(puzzle);
+        checkRep();
+        return puzzle;
+    }
+
+    /**
+     * Write a puzzle in the puzzle file grammar, so that CrosswordParser reads back the same puzzle.
+     *
+     * @param puzzle  the puzzle to write, whose name, description and clues have no quotation marks,
+     *                backslashes, tabs or line breaks
+     * @return the contents of a puzzle file for puzzle, ending with a line break
+     */
+    public static String format(CrosswordFile puzzle) {
+        StringBuilder text = new StringBuilder();
+        text.append(">> \"").append(puzzle.getName()).append("\" \"").append(puzzle.getDescription()).append("\"\n\n");
+        for (Entry entry : puzzle.getEntries()) {
+            text.append('(').append(entry.getWord()).append(", \"").append(entry.getClue()).append("\", ")
+                    .append(entry.getDirection()).append(", ").append(entry.getRow()).append(", ")
+                    .append(entry.getCol()).append(")\n");
+        }
+        return text.toString();
+    }
+
+    // a word placed in a layout, whose row and column may be negative until the layout is finished
+    private static class Placement {
+        private final String word;
+        private final Direction direction;
+        private final int row;
+        private final int col;
+
+        private Placement(String word, Direction direction, int row, int col) {
+            this.word = word;
+            this.direction = direction;
+            this.row = row;
+            this.col = col;
+        }
+    }
+
+    // one layout of some words, placed one at a time where each crosses the most words already placed
+    private static class Layout {
+        // more words placed, then more crossings, then a smaller board
+        private static final Comparator<Layout> BEST_FIRST = Comparator
+                .comparingInt((Layout layout) -> -layout.placed.size())
+                .thenComparingInt(layout -> -layout.crossings)
+                .thenComparingInt(layout -> (layout.maxRow - layout.minRow + 1) * (layout.maxCol - layout.minCol + 1));
+
+        // cells.get(cell(row, col)) = {letter, 1 if an ACROSS word covers it, 1 if a DOWN word covers it}
+        private final Map<Long, int[]> cells = new HashMap<>();
+        // the cells holding each letter, so a word only looks where it could cross
+        private final Map<Character, List<Long>> byLetter = new HashMap<>();
+        // placed words in the order they were placed
+        private final List<Placement> placed = new ArrayList<>();
+        private int crossings = 0;
+        private int minRow = 0;
+        private int maxRow = -1;
+        private int minCol = 0;
+        private int maxCol = -1;
+
+        // place as many of words as possible, trying them in an order chosen by random
+        private Layout(List<String> words, Random random) {
+            List<String> left = new ArrayList<>(words);
+            Collections.shuffle(left, random);
+            // start from one of the longer words, in the middle of the board
+            left.sort(Comparator.comparingInt(word -> -word.length()));
+            String first = left.remove(random.nextInt(Math.min(3, left.size())));
+            place(first, Direction.ACROSS, 0, 0, 0);
+            Collections.shuffle(left, random);
+            // words that cross nothing yet may cross words placed after them
+            boolean progress = true;
+            while (progress && !left.isEmpty()) {
+                progress = false;
+                for (int k = 0; k < left.size(); k++) {
+                    if (placeCrossing(left.get(k), random)) {
+                        left.remove(k--);
+                        progress = true;
+                    }
+                }
+            }
+        }
+
+        // packed coordinates of a cell
+        private static long cell(int row, int col) {
+            return ((long) row << 32) ^ (col & 0xffffffffL);
+        }
+
+        // place word where it crosses the most placed words, choosing at random between equals; returns false iff
+        // it fits nowhere
+        private boolean placeCrossing(String word, Random random) {
+            Direction bestDirection = null;
+            int bestRow = 0;
+            int bestCol = 0;
+            int bestCrossings = 0;
+            int ties = 0;
+            for (int i = 0; i < word.length(); i++) {
+                for (long at : byLetter.getOrDefault(word.charAt(i), List.of())) {
+                    int row = (int) (at >> 32);
+                    int col = (int) at;
+                    int[] letter = cells.get(at);
+                    // cross the word already here, going the other way
+                    Direction direction = letter[1] == 0 ? Direction.ACROSS : Direction.DOWN;
+                    int startRow = direction == Direction.DOWN ? row - i : row;
+                    int startCol = direction == Direction.ACROSS ? col - i : col;
+                    int crossed = fits(word, direction, startRow, startCol);
+                    if (crossed < bestCrossings || crossed <= 0) {
+                        continue;
+                    }
+                    ties = crossed > bestCrossings ? 1 : ties + 1;
+                    if (crossed > bestCrossings || random.nextInt(ties) == 0) {
+                        bestDirection = direction;
+                        bestRow = startRow;
+                        bestCol = startCol;
+                        bestCrossings = crossed;
+                    }
+                }
+            }
+            if (bestDirection == null) {
+                return false;
+            }
+            place(word, bestDirection, bestRow, bestCol, bestCrossings);
+            return true;
+        }
+
+        // the number of placed words word would cross going direction from (row, col), or -1 if it can not go
+        // there
+        private int fits(String word, Direction direction, int row, int col) {
+            int rowStep = direction == Direction.DOWN ? 1 : 0;
+            int colStep = 1 - rowStep;
+            int lastRow = row + rowStep * (word.length() - 1);
+            int lastCol = col + colStep * (word.length() - 1);
+            if (Math.max(maxRow, lastRow) - Math.min(minRow, row) >= MAX_SIDE
+                    || Math.max(maxCol, lastCol) - Math.min(minCol, col) >= MAX_SIDE) {
+                return -1;
+            }
+            // nothing just before or just after the word, which would read as part of it
+            if (cells.containsKey(cell(row - rowStep, col - colStep))
+                    || cells.containsKey(cell(lastRow + rowStep, lastCol + colStep))) {
+                return -1;
+            }
+            int crossed = 0;
+            for (int i = 0; i < word.length(); i++) {
+                int r = row + rowStep * i;
+                int c = col + colStep * i;
+                int[] letter = cells.get(cell(r, c));
+                if (letter == null) {
+                    // a new letter may not sit beside another, which would make a run that is not a word
+                    if (cells.containsKey(cell(r + colStep, c + rowStep))
+                            || cells.containsKey(cell(r - colStep, c - rowStep))) {
+                        return -1;
+                    }
+                } else if (letter[0] != word.charAt(i) || letter[1 + direction.ordinal()] != 0) {
+                    return -1;
+                } else {
+                    crossed++;
+                }
+            }
+            return crossed;
+        }
+
+        // place word going direction from (row, col), where fits() allows it and it crosses crossed words
+        private void place(String word, Direction direction, int row, int col, int crossed) {
+            int rowStep = direction == Direction.DOWN ? 1 : 0;
+            int colStep = 1 - rowStep;
+            for (int i = 0; i < word.length(); i++) {
+                long at = cell(row + rowStep * i, col + colStep * i);
+                int[] letter = cells.get(at);
+                if (letter == null) {
+                    letter = new int[] {word.charAt(i), 0, 0};
+                    cells.put(at, letter);
+                    byLetter.computeIfAbsent(word.charAt(i), c -> new ArrayList<>()).add(at);
+                }
+                letter[1 + direction.ordinal()] = 1;
+            }
+            placed.add(new Placement(word, direction, row, col));
+            crossings += crossed;
+            minRow = Math.min(minRow, row);
+            minCol = Math.min(minCol, col);
+            maxRow = Math.max(maxRow, row + rowStep * (word.length() - 1));
+            maxCol = Math.max(maxCol, col + colStep * (word.length() - 1));
+        }
+
+        // the placed words with their clues, moved so the board starts at row 0 and column 0
+        private List<Entry> entries(Map<String, String> clues) {
+            List<Entry> entries = new ArrayList<>();
+            for (Placement word : placed) {
+                entries.add(new Entry(word.word, clues.get(word.word), word.direction, word.row - minRow,
+                        word.col - minCol));
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * Generate puzzle files from the command line. Writes each puzzle to its own file in the output folder and
+     * prints how many puzzles were written and how long it took.
+     *
+     * @param args  a file of words and clues, one word per line followed by a tab and its clue (empty lines and
+     *              lines starting with "//" are skipped), then the output folder, the number of puzzles to
+     *              write, and optionally the number of words to choose for each puzzle (20 by default)
+     * @throws IOException if the words can not be read or a puzzle can not be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3 || args.length > 4) {
+            throw new IllegalArgumentException("expected a word list, an output folder, a number of puzzles "
+                    + "and optionally a number of words per puzzle");
+        }
+        Map<String, String> clues = new HashMap<>();
+        for (String line : Files.readAllLines(Paths.get(args[0]))) {
+            int tab = line.indexOf('\t');
+            if (!line.isEmpty() && !line.startsWith("//") && tab > 0) {
+                clues.put(line.substring(0, tab).trim(), line.substring(tab + 1).trim());
+            }
+        }
+        PuzzleGenerator generator = new PuzzleGenerator(clues);
+        Path folder = Files.createDirectories(Paths.get(args[1]));
+        int puzzles = Integer.parseInt(args[2]);
+        int count = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        final long start = System.nanoTime();
+        for (int i = 1; i <= puzzles; i++) {
+            CrosswordFile puzzle = generator.generate("Generated " + i, "made from " + generator.size() + " words",
+                    count, i);
+            Files.writeString(folder.resolve(String.format("generated-%05d%s", i, Server.PUZZLE_EXTENSION)),
+                    format(puzzle));
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("wrote %d puzzles to %s in %.1f s (%.0f puzzles an hour)%n", puzzles, folder, seconds,
+                puzzles / seconds * 3600);
+    }
+}
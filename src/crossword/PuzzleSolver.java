@@ -0,0 +1,573 @@
+package crossword;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Fills every word of a crossword board from a dictionary, using only the geometry of the board (where each
+ * word starts, its direction and length, and where it crosses other words) and never its answers. Used to
+ * check that a puzzle can be filled at all.
+ *
+ * Each word may be any dictionary word of its length, no word is used twice, and crossing words must agree on
+ * the letter they share. The solver keeps the words each slot may still hold, removes words that no word of a
+ * crossing slot agrees with after every choice (constraint propagation), always chooses next the slot with the
+ * fewest words left, and backtracks when a slot has none. The first few levels of choices are searched in
+ * parallel on a fork-join pool, stopping every branch once any of them has filled the board.
+ *
+ * Can also be run from the command line to check puzzle files against a word list.
+ */
+public class PuzzleSolver {
+
+    /**
+     * Immutable outcome of one solve
+     */
+    public static class Result {
+        private final boolean solved;
+        private final Map<String, String> words;
+        private final long nodes;
+        private final long nanos;
+
+        /*
+         * AF(solved, words, nodes, nanos) = a solve that took nanos nanoseconds and made nodes choices, and
+         *      filled the board with words (word id -> word) if solved, or found no fill otherwise
+         * RI: nodes >= 0, nanos >= 0, words is empty unless solved
+         * SRE: all fields are private, final and immutable (words is an unmodifiable copy)
+         * Thread Safety: immutable
+         */
+
+        private Result(boolean solved, Map<String, String> words, long nodes, long nanos) {
+            this.solved = solved;
+            this.words = Collections.unmodifiableMap(new HashMap<>(words));
+            this.nodes = nodes;
+            this.nanos = nanos;
+            checkRep();
+        }
+
+        private void checkRep() {
+            assert nodes >= 0;
+            assert nanos >= 0;
+            assert solved || words.isEmpty();
+        }
+
+        /**
+         * @return true iff the board was filled
+         */
+        public boolean isSolved() {
+            return solved;
+        }
+
+        /**
+         * @return the word chosen for each word id = "idNum direction" of the board, empty if it was not solved
+         */
+        public Map<String, String> getWords() {
+            return words;
+        }
+
+        /**
+         * @return the number of choices of a word for a slot the search made, across every thread
+         */
+        public long getNodes() {
+            return nodes;
+        }
+
+        /**
+         * @return how long the solve took in milliseconds
+         */
+        public double getMillis() {
+            return nanos / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return (isSolved() ? "solved" : "no fill found") + String.format(" in %.1f ms, ", getMillis())
+                    + nodes + " nodes";
+        }
+    }
+
+    // the words of one length
+    private static class Lexicon {
+        private final String[] words;
+        // byLetter[i][c] = the indices of the words whose i-th letter is 'a' + c
+        private final BitSet[][] byLetter;
+
+        private Lexicon(List<String> words, int length) {
+            this.words = words.toArray(new String[0]);
+            this.byLetter = new BitSet[length][ALPHABET];
+            for (int i = 0; i < length; i++) {
+                for (int c = 0; c < ALPHABET; c++) {
+                    byLetter[i][c] = new BitSet(this.words.length);
+                }
+            }
+            for (int w = 0; w < this.words.length; w++) {
+                for (int i = 0; i < length; i++) {
+                    byLetter[i][this.words[w].charAt(i) - 'a'].set(w);
+                }
+            }
+        }
+    }
+
+    private static final int ALPHABET = 26;
+    private static final int ALL_LETTERS = (1 << ALPHABET) - 1;
+    // levels of choices whose branches are forked onto the pool
+    private static final int PARALLEL_DEPTH = 2;
+    // domains at most this large are scanned word by word instead of letter by letter
+    private static final int SMALL_DOMAIN = 64;
+    // choices the first search may make before restarting
+    private static final long FIRST_BUDGET = 100;
+
+    private final Map<Integer, Lexicon> lexicons;
+    private final ForkJoinPool pool;
+
+    /*
+     * Abstraction function:
+     *  AF(lexicons, pool) = a solver that may fill a word of length n with any of lexicons.get(n).words, and
+     *                       searches on pool
+     * Rep invariant:
+     *  - every word of lexicons.get(n) has length n and only the letters a to z, with no word twice
+     *  - lexicons.get(n).byLetter[i][c] holds w iff the i-th letter of lexicons.get(n).words[w] is 'a' + c
+     * Safety from rep exposure:
+     *  - all fields are private and final, and no part of a lexicon is ever returned
+     * Thread Safety:
+     *  - the lexicons are never mutated after construction, so any number of solves may share them
+     *  - each solve keeps its own slots, result and node count; the domains a branch hands to its children
+     *    are never mutated again, and a child copies any domain before narrowing it, so branches running
+     *    on different threads never write to state another branch reads
+     *  - the first fill found is published through an AtomicReference, which also tells every other branch
+     *    to stop, and nodes are counted in a LongAdder
+     */
+
+    /**
+     * Make a solver that searches on the common fork-join pool.
+     *
+     * @param dictionary  the words a board may be filled with; case is ignored, and words with characters
+     *                    other than letters are skipped
+     */
+    public PuzzleSolver(Collection<String> dictionary) {
+        this(dictionary, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Make a solver.
+     *
+     * @param dictionary  the words a board may be filled with; case is ignored, and words with characters
+     *                    other than letters are skipped
+     * @param pool        the pool the branches of each solve run on
+     */
+    public PuzzleSolver(Collection<String> dictionary, ForkJoinPool pool) {
+        Map<Integer, Set<String>> byLength = new HashMap<>();
+        for (String entry : dictionary) {
+            String word = entry.toLowerCase();
+            if (!word.isEmpty() && word.chars().allMatch(c -> c >= 'a' && c <= 'z')) {
+                byLength.computeIfAbsent(word.length(), length -> new LinkedHashSet<>()).add(word);
+            }
+        }
+        Map<Integer, Lexicon> lexicons = new HashMap<>();
+        for (Map.Entry<Integer, Set<String>> words : byLength.entrySet()) {
+            lexicons.put(words.getKey(), new Lexicon(new ArrayList<>(words.getValue()), words.getKey()));
+        }
+        this.lexicons = Collections.unmodifiableMap(lexicons);
+        this.pool = pool;
+        checkRep();
+    }
+
+    private void checkRep() {
+        for (Map.Entry<Integer, Lexicon> lexicon : lexicons.entrySet()) {
+            assert lexicon.getValue().byLetter.length == lexicon.getKey();
+            for (String word : lexicon.getValue().words) {
+                assert word.length() == lexicon.getKey();
+            }
+        }
+    }
+
+    /**
+     * Fill every word of a board from the dictionary, ignoring the board's answers.
+     *
+     * @param board  the board whose words to fill
+     * @return the first fill found, or an unsolved result if no fill exists, with the time taken and the number
+     *         of choices made
+     */
+    public Result solve(CrosswordBoard board) {
+        final long start = System.nanoTime();
+        Search search = new Search(board.getWordCells());
+        State initial = search.initialState();
+        // restart with a larger budget of choices each time, keeping what failed, until a search finishes
+        for (long budget = FIRST_BUDGET; initial != null && search.solution.get() == null; budget += budget / 2) {
+            search.restart(budget);
+            pool.invoke(search.new Branch(initial, 0));
+            if (!search.outOfBudget) {
+                break;
+            }
+        }
+        String[] fill = search.solution.get();
+        Map<String, String> words = new HashMap<>();
+        for (int s = 0; fill != null && s < fill.length; s++) {
+            words.put(search.slotIDs[s], fill[s]);
+        }
+        checkRep();
+        return new Result(fill != null, words, search.nodes.sum(), System.nanoTime() - start);
+    }
+
+    // the words each slot may still hold at one node of the search
+    private static class State {
+        // domains[s] = the indices of the words slot s may still hold
+        private final BitSet[] domains;
+        // sent[m] = the letters the m-th crossing's partner has been narrowed to
+        private final int[] sent;
+        // owned[s] = true iff domains[s] was made for this state and may still be narrowed in place
+        private final boolean[] owned;
+
+        private State(BitSet[] domains, int[] sent, boolean[] owned) {
+            this.domains = domains;
+            this.sent = sent;
+            this.owned = owned;
+        }
+
+        // a copy sharing every domain, which it copies before narrowing
+        private State child() {
+            return new State(domains.clone(), sent.clone(), new boolean[domains.length]);
+        }
+
+        // domains[s], copied first if this state does not own it yet
+        private BitSet narrow(int s) {
+            if (!owned[s]) {
+                domains[s] = (BitSet) domains[s].clone();
+                owned[s] = true;
+            }
+            return domains[s];
+        }
+    }
+
+    // the state of one solve: the slots of the board and how they cross, and the first fill found
+    private class Search {
+        private final String[] slotIDs;
+        private final Lexicon[] slotWords;
+        // crossings[s] = {t, i, j, m, ...}: the i-th letter of slot s is the j-th letter of slot t, and m numbers
+        // this crossing (from s to t) among every crossing of the board
+        private final int[][] crossings;
+        private final int crossingCount;
+        // sameLength[s] = the other slots with as many letters as s
+        private final int[][] sameLength;
+        private final AtomicReference<String[]> solution = new AtomicReference<>();
+        private final LongAdder nodes = new LongAdder();
+        // failures[s] = how often propagation has left a slot empty because of s, or left s empty
+        private final AtomicIntegerArray failures;
+        // the search in progress gives up once nodes reaches budgetEnd, setting outOfBudget
+        private volatile long budgetEnd;
+        private volatile boolean outOfBudget;
+
+        private Search(Map<String, List<Integer>> wordCells) {
+            List<String> ids = new ArrayList<>(new TreeMap<>(wordCells).keySet());
+            int slots = ids.size();
+            this.slotIDs = ids.toArray(new String[0]);
+            this.slotWords = new Lexicon[slots];
+            this.failures = new AtomicIntegerArray(slots);
+            // cell -> {slot, position, slot, position}
+            Map<Integer, List<Integer>> cells = new HashMap<>();
+            for (int s = 0; s < slots; s++) {
+                List<Integer> slotCells = wordCells.get(slotIDs[s]);
+                slotWords[s] = lexicons.get(slotCells.size());
+                for (int i = 0; i < slotCells.size(); i++) {
+                    List<Integer> cell = cells.computeIfAbsent(slotCells.get(i), c -> new ArrayList<>());
+                    cell.add(s);
+                    cell.add(i);
+                }
+            }
+            List<List<Integer>> crossing = new ArrayList<>();
+            for (int s = 0; s < slots; s++) {
+                crossing.add(new ArrayList<>());
+            }
+            int count = 0;
+            for (List<Integer> cell : cells.values()) {
+                if (cell.size() == 4) {
+                    crossing.get(cell.get(0)).addAll(List.of(cell.get(2), cell.get(1), cell.get(3), count++));
+                    crossing.get(cell.get(2)).addAll(List.of(cell.get(0), cell.get(3), cell.get(1), count++));
+                }
+            }
+            this.crossingCount = count;
+            this.crossings = new int[slots][];
+            this.sameLength = new int[slots][];
+            for (int s = 0; s < slots; s++) {
+                crossings[s] = crossing.get(s).stream().mapToInt(Integer::intValue).toArray();
+                List<Integer> same = new ArrayList<>();
+                for (int t = 0; t < slots; t++) {
+                    if (t != s && wordCells.get(slotIDs[t]).size() == wordCells.get(slotIDs[s]).size()) {
+                        same.add(t);
+                    }
+                }
+                sameLength[s] = same.stream().mapToInt(Integer::intValue).toArray();
+            }
+        }
+
+        // every word of each slot's length, narrowed until the crossings agree, or null if some slot has none
+        private State initialState() {
+            BitSet[] domains = new BitSet[slotIDs.length];
+            Deque<Integer> queue = new ArrayDeque<>();
+            for (int s = 0; s < domains.length; s++) {
+                if (slotWords[s] == null) {
+                    return null;
+                }
+                domains[s] = new BitSet(slotWords[s].words.length);
+                domains[s].set(0, slotWords[s].words.length);
+                queue.add(s);
+            }
+            int[] sent = new int[crossingCount];
+            Arrays.fill(sent, ALL_LETTERS);
+            boolean[] owned = new boolean[domains.length];
+            Arrays.fill(owned, true);
+            State state = new State(domains, sent, owned);
+            return propagate(state, queue) ? state : null;
+        }
+
+        // the state that follows from choosing word w for slot s, or null if some slot would be left empty
+        private State choose(State parent, int s, int w) {
+            State child = parent.child();
+            child.narrow(s).clear();
+            child.domains[s].set(w);
+            Deque<Integer> queue = new ArrayDeque<>();
+            queue.add(s);
+            return propagate(child, queue) ? child : null;
+        }
+
+        // narrow state until every crossing of the slots on queue agrees and no two slots of one length hold the
+        // same word alone; returns false iff some slot is left empty
+        private boolean propagate(State state, Deque<Integer> queue) {
+            BitSet[] domains = state.domains;
+            boolean[] queued = new boolean[domains.length];
+            for (int s : queue) {
+                queued[s] = true;
+            }
+            while (!queue.isEmpty()) {
+                int s = queue.poll();
+                queued[s] = false;
+                BitSet domain = domains[s];
+                if (domain.cardinality() == 1) {
+                    int w = domain.nextSetBit(0);
+                    for (int t : sameLength[s]) {
+                        if (domains[t].get(w)) {
+                            state.narrow(t).clear(w);
+                            if (domains[t].isEmpty()) {
+                                failed(s, t);
+                                return false;
+                            }
+                            if (!queued[t]) {
+                                queued[t] = true;
+                                queue.add(t);
+                            }
+                        }
+                    }
+                }
+                int[] crossing = crossings[s];
+                for (int k = 0; k < crossing.length; k += 4) {
+                    // only letters s has lost since t was last narrowed need to be taken from t
+                    int t = crossing[k];
+                    int j = crossing[k + 2];
+                    int sent = state.sent[crossing[k + 3]];
+                    int allowed = letters(slotWords[s], domain, crossing[k + 1], sent);
+                    if (allowed == sent) {
+                        continue;
+                    }
+                    state.sent[crossing[k + 3]] = allowed;
+                    boolean narrowed = false;
+                    for (int c = 0; c < ALPHABET; c++) {
+                        if ((sent & ~allowed & (1 << c)) != 0 && domains[t].intersects(slotWords[t].byLetter[j][c])) {
+                            state.narrow(t).andNot(slotWords[t].byLetter[j][c]);
+                            narrowed = true;
+                        }
+                    }
+                    if (!narrowed) {
+                        continue;
+                    }
+                    if (domains[t].isEmpty()) {
+                        failed(s, t);
+                        return false;
+                    }
+                    if (!queued[t]) {
+                        queued[t] = true;
+                        queue.add(t);
+                    }
+                }
+            }
+            return true;
+        }
+
+        // start a search that may make budget more choices
+        private void restart(long budget) {
+            budgetEnd = nodes.sum() + budget;
+            outOfBudget = false;
+        }
+
+        // slot s left slot t empty
+        private void failed(int s, int t) {
+            failures.incrementAndGet(s);
+            failures.incrementAndGet(t);
+        }
+
+        // bit c set iff some word of domain has 'a' + c as its i-th letter, where only the letters of possible
+        // can be
+        private int letters(Lexicon lexicon, BitSet domain, int i, int possible) {
+            int letters = 0;
+            if (domain.cardinality() <= SMALL_DOMAIN) {
+                for (int w = domain.nextSetBit(0); w >= 0; w = domain.nextSetBit(w + 1)) {
+                    letters |= 1 << (lexicon.words[w].charAt(i) - 'a');
+                }
+            } else {
+                for (int c = 0; c < ALPHABET; c++) {
+                    if ((possible & (1 << c)) != 0 && domain.intersects(lexicon.byLetter[i][c])) {
+                        letters |= 1 << c;
+                    }
+                }
+            }
+            return letters;
+        }
+
+        // search below state, which propagate() has left consistent
+        private void search(State state, int depth) {
+            if (solution.get() != null || outOfBudget) {
+                return;
+            }
+            if (nodes.sum() >= budgetEnd) {
+                outOfBudget = true;
+                return;
+            }
+            nodes.increment();
+            BitSet[] domains = state.domains;
+            // the open slot with the fewest words left for each failure it has been part of, so the search
+            // turns to the slots that have been hardest to fill
+            int best = -1;
+            long bestSize = 0;
+            long bestWeight = 1;
+            for (int s = 0; s < domains.length; s++) {
+                long size = domains[s].cardinality();
+                long weight = 1 + failures.get(s);
+                if (size > 1 && (best < 0 || size * bestWeight < bestSize * weight)) {
+                    best = s;
+                    bestSize = size;
+                    bestWeight = weight;
+                }
+            }
+            if (best < 0) {
+                String[] fill = new String[domains.length];
+                for (int s = 0; s < fill.length; s++) {
+                    fill[s] = slotWords[s].words[domains[s].nextSetBit(0)];
+                }
+                solution.compareAndSet(null, fill);
+                return;
+            }
+            // words in a different order on every search, so a restart does not repeat the choices before it
+            int[] candidates = domains[best].stream().toArray();
+            Random random = ThreadLocalRandom.current();
+            for (int i = candidates.length - 1; i > 0; i--) {
+                int k = random.nextInt(i + 1);
+                int w = candidates[k];
+                candidates[k] = candidates[i];
+                candidates[i] = w;
+            }
+            if (depth < PARALLEL_DEPTH) {
+                List<Branch> branches = new ArrayList<>();
+                for (int w : candidates) {
+                    branches.add(new Branch(state, best, w, depth + 1));
+                }
+                RecursiveAction.invokeAll(branches);
+                return;
+            }
+            for (int w : candidates) {
+                if (solution.get() != null || outOfBudget) {
+                    return;
+                }
+                State child = choose(state, best, w);
+                if (child != null) {
+                    search(child, depth + 1);
+                }
+            }
+        }
+
+        // one branch of the search, forked onto the pool
+        private class Branch extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            private final State state;
+            private final int slot;
+            private final int word;
+            private final int depth;
+
+            // search below state
+            private Branch(State state, int depth) {
+                this(state, -1, -1, depth);
+            }
+
+            // choose word for slot, then search below the result
+            private Branch(State state, int slot, int word, int depth) {
+                this.state = state;
+                this.slot = slot;
+                this.word = word;
+                this.depth = depth;
+            }
+
+            @Override
+            protected void compute() {
+                if (solution.get() != null || outOfBudget) {
+                    return;
+                }
+                State child = slot < 0 ? state : choose(state, slot, word);
+                if (child != null) {
+                    search(child, depth);
+                }
+            }
+        }
+    }
+
+    /**
+     * Check puzzle files against a word list from the command line. Prints whether each puzzle could be filled,
+     * how long it took and how many choices were made, followed by a summary, and exits with status 1 if any
+     * puzzle could not be filled.
+     *
+     * @param args  a word list with one word per line, followed by puzzle files or folders; folders are searched
+     *              recursively for files ending in Server.PUZZLE_EXTENSION
+     * @throws IOException if the word list or a puzzle can not be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("expected a word list followed by puzzle files or folders");
+        }
+        PuzzleSolver solver = new PuzzleSolver(Files.readAllLines(Paths.get(args[0])));
+        List<Path> files = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            try (Stream<Path> paths = Files.walk(Paths.get(args[i]))) {
+                paths.filter(path -> path.toString().endsWith(Server.PUZZLE_EXTENSION)).sorted().forEach(files::add);
+            }
+        }
+        int unsolved = 0;
+        for (Path file : files) {
+            Result result = solver.solve(new CrosswordBoard(file.toString()));
+            System.out.println(file + ": " + result);
+            if (!result.isSolved()) {
+                unsolved++;
+            }
+        }
+        System.out.println((files.size() - unsolved) + " of " + files.size() + " puzzles can be filled");
+        System.exit(unsolved == 0 ? 0 : 1);
+    }
+}
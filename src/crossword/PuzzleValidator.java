@@ -0,0 +1,170 @@
+package crossword;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import crossword.Entry.Direction;
+import edu.mit.eecs.parserlib.UnableToParseException;
+
+/**
+ * Checks crossword puzzles for every problem that would stop CrosswordBoard from building them:
+ * words that run off the board, overlapping words with different letters, words that overlap
+ * another word going the same direction, and words that share a starting location and direction.
+ * All problems in a puzzle are reported at once, each naming the entries involved.
+ *
+ * Can also be run from the command line to check many puzzle files in parallel.
+ */
+public class PuzzleValidator {
+    /*
+     * Static utility class, no rep.
+     *
+     * Thread Safety:
+     *  - all methods are static and only use local state, so puzzles can be validated on many threads
+     *    at once (CrosswordParser.parse() is also safe to call concurrently)
+     */
+
+    private PuzzleValidator() {
+        throw new AssertionError("not instantiable");
+    }
+
+    /**
+     * Check puzzle files from the command line. Prints every problem found in each file, followed by
+     * a summary, and exits with status 1 if any puzzle is invalid.
+     *
+     * @param args  puzzle files or folders; folders are searched recursively for files ending in
+     *              Server.PUZZLE_EXTENSION
+     * @throws IOException if a folder can not be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            throw new IllegalArgumentException("missing puzzle files or folders");
+        }
+        List<Path> files = new ArrayList<>();
+        for (String arg : args) {
+            try (Stream<Path> paths = Files.walk(Paths.get(arg))) {
+                paths.filter(path -> path.toString().endsWith(Server.PUZZLE_EXTENSION)).sorted().forEach(files::add);
+            }
+        }
+        Map<Path, List<String>> results = files.parallelStream()
+                .collect(Collectors.toConcurrentMap(path -> path, PuzzleValidator::validateFile));
+        int invalid = 0;
+        for (Path file : files) {
+            List<String> problems = results.get(file);
+            if (problems.isEmpty()) {
+                continue;
+            }
+            invalid++;
+            System.out.println(file + ":");
+            for (String problem : problems) {
+                System.out.println("    " + problem);
+            }
+        }
+        System.out.println((files.size() - invalid) + " of " + files.size() + " puzzles are valid");
+        System.exit(invalid == 0 ? 0 : 1);
+    }
+
+    /**
+     * Read, parse and validate a puzzle file
+     *
+     * @param file  puzzle file to check
+     * @return every problem found in the file, empty iff the file holds a valid puzzle
+     */
+    public static List<String> validateFile(Path file) {
+        String fileContents;
+        try {
+            fileContents = new String(Files.readAllBytes(file));
+        } catch (IOException e) {
+            return List.of("could not be read: " + e.getMessage());
+        }
+        try {
+            return validate(CrosswordParser.parse(fileContents.substring(0, fileContents.length() - 1)));
+        } catch (UnableToParseException | RuntimeException e) {
+            return List.of("could not be parsed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Find every problem in a parsed puzzle. Runs in time linear in the total length of the words.
+     *
+     * @param puzzle  the puzzle to check
+     * @return every problem found in the puzzle in entry order, empty iff CrosswordBoard can build it
+     */
+    public static List<String> validate(CrosswordFile puzzle) {
+        List<Entry> entries = puzzle.getEntries();
+        List<String> problems = new ArrayList<>();
+        // the board is sized the same way CrosswordBoard sizes it
+        int width = 0;
+        int height = 0;
+        for (Entry entry : entries) {
+            if (entry.getDirection() == Direction.DOWN) {
+                height = Math.max(height, entry.getRow() + entry.getWord().length());
+            } else {
+                width = Math.max(width, entry.getCol() + entry.getWord().length());
+            }
+        }
+        // cells[row * width + col] = {letter, 1 + index of ACROSS entry, 1 + index of DOWN entry}, 0 if none
+        Map<Integer, int[]> cells = new HashMap<>();
+        // starts[2 * (row * width + col) + direction] = index of the entry starting there
+        Map<Integer, Integer> starts = new HashMap<>();
+        for (int k = 0; k < entries.size(); k++) {
+            Entry entry = entries.get(k);
+            String word = entry.getWord();
+            int dir = entry.getDirection().ordinal();
+            int rowStep = entry.getDirection() == Direction.DOWN ? 1 : 0;
+            int colStep = 1 - rowStep;
+            int lastRow = entry.getRow() + rowStep * (word.length() - 1);
+            int lastCol = entry.getCol() + colStep * (word.length() - 1);
+            if (lastRow >= height || lastCol >= width) {
+                problems.add(describe(k, entry) + " runs off the " + height + "x" + width + " board at ("
+                        + lastRow + ", " + lastCol + ")");
+                continue;
+            }
+            // entries this entry has already been reported against
+            Set<Integer> reported = new HashSet<>();
+            Integer sameStart = starts.putIfAbsent(2 * (entry.getRow() * width + entry.getCol()) + dir, k);
+            if (sameStart != null) {
+                problems.add(describe(k, entry) + " starts at the same location and direction as "
+                        + describe(sameStart, entries.get(sameStart)));
+                reported.add(sameStart);
+            }
+            for (int i = 0; i < word.length(); i++) {
+                int row = entry.getRow() + rowStep * i;
+                int col = entry.getCol() + colStep * i;
+                int[] cell = cells.get(row * width + col);
+                if (cell == null) {
+                    cell = new int[] {word.charAt(i), 0, 0};
+                    cells.put(row * width + col, cell);
+                }
+                int sameDirection = cell[1 + dir] - 1;
+                int other = cell[2 - dir] - 1;
+                if (sameDirection >= 0 && reported.add(sameDirection)) {
+                    problems.add(describe(k, entry) + " overlaps " + describe(sameDirection, entries.get(sameDirection))
+                            + " going the same direction at (" + row + ", " + col + ")");
+                } else if (sameDirection < 0 && other >= 0 && cell[0] != word.charAt(i)) {
+                    problems.add(describe(k, entry) + " has '" + word.charAt(i) + "' at (" + row + ", " + col
+                            + ") but " + describe(other, entries.get(other)) + " has '" + (char) cell[0] + "'");
+                }
+                if (sameDirection < 0) {
+                    cell[1 + dir] = k + 1;
+                }
+            }
+        }
+        return problems;
+    }
+
+    // human readable description of the k-th entry, in the same format as the puzzle file
+    private static String describe(int k, Entry entry) {
+        return "entry " + (k + 1) + " (" + entry.getWord() + ", " + entry.getDirection() + ", "
+                + entry.getRow() + ", " + entry.getCol() + ")";
+    }
+}
@@ -0,0 +1,841 @@
+package crossword;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import crossword.Command.Type;
+import crossword.ServerResponse.State;
+
+/**
+ * A front end for several Server nodes, each running as its own process with the option --shard=I/N, that
+ * together act as one server. Clients connect to the router and talk to it exactly as they would to a server.
+ *
+ * The router handles the START and CHOOSE states itself. It keeps a connection to every node that follows the
+ * node's whole lobby with LOBBY, and merges them into one LobbyIndex, from which it serves its players the pages
+ * they LIST, sending a player a new page only when a change shows up on it. Each match lives on the node
+ * owner() gives its ID to. When a player in CHOOSE sends PLAY, SPECTATE or NEW, the router connects them to the
+ * node that owns the match, as the same player ID, and from then on relays their commands to the node and the
+ * node's responses to them, until the node puts them back in the CHOOSE state. QUICKPLAY players are sent to the
+ * node owner() gives the board to, or node 0 for any board, so the players it pairs are the ones on that node.
+ *
+ * A live match can be moved to another node with migrate(), and every match of a node with drain(), for instance
+ * before the node is stopped for a deploy, or to take matches off a node that has too many. The node hands the
+ * match over to the other node itself, and then sends its players a MOVED response; the router stops sending
+ * their commands to it, collects the ones it sent before the match moved, which the node sends back, connects
+ * them to the other node, which puts them back in the match and shows it to them as it is, and sends it those
+ * commands, so no move is lost. Players joining or watching a moved match later are sent where it is now.
+ *
+ * The router neither holds matches nor times out clients; the nodes do both for the players relayed to them.
+ * RESUME is not relayed, since session tokens belong to the node that gave them out.
+ */
+public class Router {
+
+    /** Player ID the router follows the lobbies of its nodes as, which nodes only give to the router */
+    public static final String LOBBY_ID = "ROUTER";
+
+    private static final long RECONNECT_MILLIS = 1000;
+    private static final long LOBBY_KEEPALIVE_MILLIS = 60 * 1000;
+    private static final long TICK_MILLIS = 100;
+    private static final int WHEEL_SLOTS = 512;
+
+    /**
+     * @param matchId  a match ID, or a board ID for QUICKPLAY
+     * @param nodes    number of nodes, >= 1
+     * @return the number of the node that owns matchId, 0 <= owner < nodes
+     */
+    public static int owner(String matchId, int nodes) {
+        return Math.floorMod(matchId.hashCode(), nodes);
+    }
+
+    private final ServerSocket serverSocket;
+    private final List<InetSocketAddress> nodes;
+    private final String peerSecret;
+    private final Set<String> players = ConcurrentHashMap.newKeySet();
+    private final LobbyIndex lobby = new LobbyIndex();
+    private final List<Map<String, String[]>> nodeLobbies = new ArrayList<>();
+    private final Map<Session, LobbyIndex.Page> choosing = new ConcurrentHashMap<>();
+    private final Map<String, Integer> placements = new ConcurrentHashMap<>();
+    private final List<Set<String>> unreported = new ArrayList<>();
+    private final TimerWheel timers = new TimerWheel("router-timers", TICK_MILLIS, WHEEL_SLOTS);
+    private final Metrics metrics = new Metrics();
+
+    /*
+     * AF(serverSocket, nodes, peerSecret, players, lobby, nodeLobbies, choosing, placements, unreported, timers,
+     *    metrics) =
+     *      A router accepting clients on serverSocket for the nodes, where node i is reached at nodes[i], with the
+     *      players players connected to it, following the nodes' lobbies and moving matches between them by
+     *      sending them peerSecret. nodeLobbies[i] is the lobby node i last sent, each line as its kind,
+     *      ID, description and line keyed by kind and ID, and lobby merges them. The players in the CHOOSE state
+     *      are choosing.keys(), each last shown the page choosing[s] of lobby. The matches placements.keys() were
+     *      moved by migrate() to the node placements[id] instead of the one owner() gives them; unreported[i] are
+     *      those node i listed when the router lost its lobby, which node i has not sent a lobby since. The
+     *      connections following the nodes' lobbies are kept alive on timers, and what the router has done is
+     *      counted in metrics
+     * RI: nodes.size() >= 1, nodeLobbies.size() == unreported.size() == nodes.size(), LOBBY_ID is in players,
+     *     0 <= placements[id] < nodes.size() and placements[id] != owner(id), peerSecret != null
+     * SRE: all fields are private and final, and no mutable object is given out except metrics, which is
+     *      threadsafe
+     * Thread Safety: players, choosing and placements are concurrent, and metrics and timers are threadsafe.
+     *      Each node's lobby is followed on its own thread. Merging it into lobby and draining the changes holds
+     *      the lock on this router, which guards nodeLobbies and unreported, as does reading a page for a
+     *      player, so the changes drained after a merge are checked against every page read before it, and any
+     *      page read after it already shows them. Each
+     *      session is used by the thread reading its client and, while relayed, the thread reading its node;
+     *      both hold the lock on the session to change its state or write to its client, and the thread
+     *      following a moved match to another node does not hold it while it waits for either node. A thread
+     *      holding the lock on a session may take the lock on the router, but never the other way around, so
+     *      pages are sent after the router's lock is released. migrate() and drain() hold no lock while they
+     *      wait for a node
+     */
+
+    /**
+     * Make a router for nodes. Call serve() to start accepting clients. The router sends the nodes peerSecret
+     * to follow their lobbies and to move matches between them.
+     *
+     * @param port        port to accept clients on, 0 for any free port
+     * @param nodes       addresses of the nodes, where the node at nodes[i] was started with --shard=i/nodes.size()
+     * @param peerSecret  the secret every node was started with as --peer-secret
+     * @throws IOException if the port can not be listened on
+     */
+    public Router(int port, List<InetSocketAddress> nodes, String peerSecret) throws IOException {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("a router needs at least one node");
+        }
+        if (peerSecret == null) {
+            throw new IllegalArgumentException("a router needs the peer secret of its nodes");
+        }
+        this.serverSocket = new ServerSocket(port);
+        this.nodes = List.copyOf(nodes);
+        this.peerSecret = peerSecret;
+        players.add(LOBBY_ID);
+        for (int i = 0; i < nodes.size(); i++) {
+            nodeLobbies.add(new HashMap<>());
+            unreported.add(new HashSet<>());
+        }
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert nodes.size() >= 1;
+        assert nodeLobbies.size() == nodes.size();
+        assert unreported.size() == nodes.size();
+        assert players.contains(LOBBY_ID);
+        assert peerSecret != null;
+        for (Map.Entry<String, Integer> placement : placements.entrySet()) {
+            assert 0 <= placement.getValue() && placement.getValue() < nodes.size();
+            assert placement.getValue() != owner(placement.getKey(), nodes.size());
+        }
+    }
+
+    /**
+     * Start a router. Once it is running, an operator can type MIGRATE MATCH_ID NODE to move a match to node
+     * number NODE with migrate(), and DRAIN NODE to move every match off node number NODE with drain().
+     * @param args the port to accept clients on, followed by the address of each node as HOST:PORT or just
+     *             PORT for a node on this machine, in the order of their --shard numbers, and the option
+     *             --peer-secret=SECRET giving the secret the nodes were started with.
+     * @throws IOException if the port can not be listened on
+     */
+    public static void main(String[] args) throws IOException {
+        final List<String> arguments = new ArrayList<>();
+        String peerSecret = null;
+        for (String arg : args) {
+            if (arg.startsWith("--peer-secret=")) {
+                peerSecret = arg.substring("--peer-secret=".length());
+            } else {
+                arguments.add(arg);
+            }
+        }
+        if (arguments.size() < 2 || peerSecret == null) {
+            throw new IllegalArgumentException("usage: Router --peer-secret=SECRET PORT NODE...");
+        }
+        List<InetSocketAddress> nodes = new ArrayList<>();
+        for (String node : arguments.subList(1, arguments.size())) {
+            int colon = node.lastIndexOf(':');
+            nodes.add(colon < 0 ? new InetSocketAddress("localhost", Integer.parseInt(node))
+                    : new InetSocketAddress(node.substring(0, colon), Integer.parseInt(node.substring(colon + 1))));
+        }
+        Router router = new Router(Integer.parseInt(arguments.get(0)), nodes, peerSecret);
+        Thread console = new Thread(() -> router.console(new BufferedReader(new InputStreamReader(System.in, UTF_8))),
+                "router-console");
+        console.setDaemon(true);
+        console.start();
+        router.serve();
+    }
+
+    // carry out the MIGRATE and DRAIN commands an operator types on in, printing what they did
+    private void console(BufferedReader in) {
+        try {
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                String[] words = line.trim().split(" +");
+                try {
+                    if (words.length == 3 && words[0].equals("MIGRATE")) {
+                        boolean moved = migrate(words[1], Integer.parseInt(words[2]));
+                        System.out.println((moved ? "Moved " : "Couldn't move ") + words[1] + " to node " + words[2]);
+                    } else if (words.length == 2 && words[0].equals("DRAIN")) {
+                        int moved = drain(Integer.parseInt(words[1]));
+                        System.out.println("Moved " + moved + " matches off node " + words[1]);
+                    } else {
+                        System.out.println("Commands: MIGRATE MATCH_ID NODE, DRAIN NODE");
+                    }
+                } catch (IOException | IllegalArgumentException e) {
+                    System.out.println("Failed: " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            // no console
+        }
+    }
+
+    /**
+     * @return the port on which this router is accepting clients
+     */
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return counters of what this router has done: clients accepted ("router.connections"), players sent to a
+     *         node ("router.relayed") and brought back to the lobby ("router.returned"), lobbies received from
+     *         nodes ("router.lobbies"), and pages sent to players in the CHOOSE state because they changed
+     *         ("lobby.updates") or not sent because the changes were not on them ("lobby.unchanged"), matches moved
+     *         between nodes ("router.migrations") and players followed to the node their match moved to
+     *         ("router.followed")
+     */
+    public Metrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Follow the lobby of every node and accept clients, handling each on its own thread. Never returns.
+     *
+     * @throws IOException if the router's socket stops working
+     */
+    public void serve() throws IOException {
+        for (int i = 0; i < nodes.size(); i++) {
+            final int node = i;
+            Thread follower = new Thread(() -> followLobby(node), "lobby-" + node);
+            follower.setDaemon(true);
+            follower.start();
+        }
+        while (true) {
+            Socket socket = serverSocket.accept();
+            metrics.increment("router.connections");
+            new Thread(() -> {
+                try {
+                    new Session(socket).run();
+                } catch (IOException e) {
+                    // the client or its node went away
+                } finally {
+                    try {
+                        socket.close();
+                    } catch (IOException e) {}
+                }
+            }).start();
+        }
+    }
+
+    // follow the lobby of node for as long as the router runs, connecting again whenever the node goes away
+    private void followLobby(int node) {
+        while (true) {
+            try (Socket socket = new Socket(nodes.get(node).getHostString(), nodes.get(node).getPort())) {
+                PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8), true);
+                ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+                out.println("LOBBY " + peerSecret);
+                keepAlive(socket, out);
+                while (true) {
+                    ServerResponse response = readResponse(in);
+                    if (response.state() != State.CHOOSE) {
+                        throw new IOException(response.message());
+                    }
+                    // pages are only sent to the router before it asks for the whole lobby
+                    if (isWholeLobby(response.availGames())) {
+                        mergeLobby(node, response.availGames(), true);
+                    }
+                }
+            } catch (IOException e) {
+                System.out.println("Lost the lobby of node " + node + ": " + e.getMessage());
+            }
+            // the matches it listed are not shown while it is away, but they may still be there
+            mergeLobby(node, List.of(), false);
+            try {
+                Thread.sleep(RECONNECT_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    // ask for the lobby again every LOBBY_KEEPALIVE_MILLIS while socket is open, since a node disconnects
+    // clients that send nothing for too long
+    private void keepAlive(Socket socket, PrintWriter out) {
+        timers.schedule(() -> {
+            if (!socket.isClosed()) {
+                out.println("LOBBY");
+                keepAlive(socket, out);
+            }
+        }, LOBBY_KEEPALIVE_MILLIS);
+    }
+
+    // true iff lines are a whole lobby, not a page of one, which ends with the line saying which page it is
+    private static boolean isWholeLobby(List<String> lines) {
+        return lines.isEmpty() || !lines.get(lines.size() - 1).startsWith("Page ");
+    }
+
+    /**
+     * Replace the lines node listed in its lobby, and send new pages to the players in CHOOSE they change. A
+     * match moved to node by migrate() is only forgotten as being there once node itself leaves it out of its
+     * lobby, not when the router loses the connection to node.
+     *
+     * @param node      number of a node
+     * @param lines     every line of the node's lobby, as LobbyIndex lists them
+     * @param reported  true if node sent lines, false if the router lost its lobby and lines are empty
+     */
+    private void mergeLobby(int node, List<String> lines, boolean reported) {
+        List<Session> changed = new ArrayList<>();
+        synchronized (this) {
+            if (reported) {
+                metrics.increment("router.lobbies");
+            }
+            Map<String, String[]> previous = nodeLobbies.get(node);
+            Map<String, String[]> current = new HashMap<>();
+            for (String line : lines) {
+                String[] listing = parseLine(line);
+                if (listing != null) {
+                    current.put(listing[0] + listing[1], listing);
+                }
+            }
+            nodeLobbies.set(node, current);
+            for (Map.Entry<String, String[]> listing : previous.entrySet()) {
+                if (!current.containsKey(listing.getKey())) {
+                    String[] elsewhere = listedElsewhere(listing.getKey());
+                    if (elsewhere == null) {
+                        lobby.remove(LobbyIndex.Kind.valueOf(listing.getValue()[0]), listing.getValue()[1]);
+                    } else {
+                        put(elsewhere);
+                    }
+                    if (reported) {
+                        forgetPlacement(node, listing.getValue()[1]);
+                    } else if (Integer.valueOf(node).equals(placements.get(listing.getValue()[1]))) {
+                        unreported.get(node).add(listing.getValue()[1]);
+                    }
+                }
+            }
+            if (reported) {
+                for (String matchId : unreported.get(node)) {
+                    forgetPlacement(node, matchId);
+                }
+                unreported.get(node).clear();
+            }
+            for (String[] listing : current.values()) {
+                put(listing);
+            }
+            List<LobbyIndex.Listing> changes = lobby.drainChanges();
+            for (Map.Entry<Session, LobbyIndex.Page> player : choosing.entrySet()) {
+                if (changes.isEmpty()) {
+                    break;
+                } else if (player.getValue().affectedBy(changes)) {
+                    changed.add(player.getKey());
+                } else {
+                    metrics.increment("lobby.unchanged");
+                }
+            }
+        }
+        for (Session session : changed) {
+            metrics.increment("lobby.updates");
+            session.lobbyChanged();
+        }
+    }
+
+    // forget that a match was moved to node once node no longer lists it, since it has ended
+    private void forgetPlacement(int node, String matchId) {
+        final String open = LobbyIndex.Kind.OPEN.name() + matchId;
+        final String live = LobbyIndex.Kind.LIVE.name() + matchId;
+        if (Integer.valueOf(node).equals(placements.get(matchId))
+                && !nodeLobbies.get(node).containsKey(open) && !nodeLobbies.get(node).containsKey(live)) {
+            placements.remove(matchId);
+        }
+    }
+
+    // the node a match is on
+    private int nodeOf(String matchId) {
+        return placements.getOrDefault(matchId, owner(matchId, nodes.size()));
+    }
+
+    // HOST:PORT of node, as MIGRATE and MOVED give it
+    private String address(int node) {
+        return nodes.get(node).getHostString() + ":" + nodes.get(node).getPort();
+    }
+
+    // the number of the node at address, as MOVED gives it, or -1 if it is not one of the nodes
+    private int nodeAt(String address) {
+        for (int i = 0; i < nodes.size(); i++) {
+            if (address(i).equals(address)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Move a live match to another node. Its players and spectators are moved with it, and carry on where they
+     * were without losing any move they made; players who have lost their connection can only get back into it
+     * on the other node.
+     *
+     * @param matchId  ID of a match
+     * @param node     number of the node to move it to
+     * @return true iff the match was moved, false if the node it is on does not have it as a live match, or the
+     *         other node did not take it, in which case it stays where it is
+     * @throws IOException if the node the match is on can not be reached
+     */
+    public boolean migrate(String matchId, int node) throws IOException {
+        if (node < 0 || node >= nodes.size()) {
+            throw new IllegalArgumentException("there is no node " + node);
+        }
+        final int from = nodeOf(matchId);
+        if (from == node) {
+            return false;
+        }
+        try (Socket socket = new Socket(nodes.get(from).getHostString(), nodes.get(from).getPort())) {
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8), true);
+            ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+            out.println("MIGRATE " + matchId + " " + address(node) + " " + peerSecret);
+            ServerResponse response = readResponse(in);
+            if (response.state() != State.MOVED) {
+                System.out.println(response.hasMessage() ? response.message() : "Couldn't move match " + matchId);
+                return false;
+            }
+        }
+        if (node == owner(matchId, nodes.size())) {
+            placements.remove(matchId);
+        } else {
+            placements.put(matchId, node);
+        }
+        metrics.increment("router.migrations");
+        checkRep();
+        return true;
+    }
+
+    /**
+     * Move every live match of a node that its lobby lists to the other nodes, each to the node listing the
+     * fewest matches, so that the node can be stopped without ending them. Matches held for players who have
+     * lost their connection are not moved, and matches whose ID the node owns are still started on it.
+     *
+     * @param node  number of a node
+     * @return the number of matches moved
+     * @throws IOException if a node can not be reached
+     */
+    public int drain(int node) throws IOException {
+        if (node < 0 || node >= nodes.size() || nodes.size() < 2) {
+            throw new IllegalArgumentException("there is no other node to move the matches of node " + node + " to");
+        }
+        final Set<String> matchIds = new TreeSet<>();
+        final int[] load = new int[nodes.size()];
+        synchronized (this) {
+            for (int i = 0; i < nodes.size(); i++) {
+                for (String[] listing : nodeLobbies.get(i).values()) {
+                    if (listing[0].equals(LobbyIndex.Kind.BOARD.name())) {
+                        continue;
+                    } else if (i == node) {
+                        matchIds.add(listing[1]);
+                    } else {
+                        load[i]++;
+                    }
+                }
+            }
+        }
+        int moved = 0;
+        for (String matchId : matchIds) {
+            int target = node == 0 ? 1 : 0;
+            for (int i = 0; i < nodes.size(); i++) {
+                if (i != node && load[i] < load[target]) {
+                    target = i;
+                }
+            }
+            if (migrate(matchId, target)) {
+                moved++;
+                load[target]++;
+            }
+        }
+        return moved;
+    }
+
+    // put a line parsed by parseLine() in lobby
+    private void put(String[] listing) {
+        lobby.put(LobbyIndex.Kind.valueOf(listing[0]), listing[1], listing[2], listing[3]);
+    }
+
+    // the line some node lists under key, parsed, or null if none does
+    private String[] listedElsewhere(String key) {
+        for (Map<String, String[]> nodeLobby : nodeLobbies) {
+            if (nodeLobby.containsKey(key)) {
+                return nodeLobby.get(key);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param line  a line of a node's lobby, "Match: ID "DESCRIPTION"...", "Live: ID "DESCRIPTION"..." or
+     *              "Board: ID "DESCRIPTION""
+     * @return the name of its LobbyIndex.Kind, its ID, its description and the line itself, or null if it is
+     *         not a line of those kinds
+     */
+    private static String[] parseLine(String line) {
+        final String kind;
+        if (line.startsWith("Match: ")) {
+            kind = LobbyIndex.Kind.OPEN.name();
+        } else if (line.startsWith("Live: ")) {
+            kind = LobbyIndex.Kind.LIVE.name();
+        } else if (line.startsWith("Board: ")) {
+            kind = LobbyIndex.Kind.BOARD.name();
+        } else {
+            return null;
+        }
+        int idStart = line.indexOf(' ') + 1;
+        int idEnd = line.indexOf(' ', idStart);
+        int descriptionEnd = line.indexOf('"', idEnd + 2);
+        if (idEnd < 0 || descriptionEnd < 0) {
+            return null;
+        }
+        return new String[] { kind, line.substring(idStart, idEnd), line.substring(idEnd + 2, descriptionEnd), line };
+    }
+
+    // a page of the lobby for a player in CHOOSE, remembered as the page they are shown
+    private synchronized LobbyIndex.Page page(Session session, String filter, int number) {
+        LobbyIndex.Page page = lobby.page(filter, number);
+        choosing.put(session, page);
+        return page;
+    }
+
+    /**
+     * One client connected to the router
+     */
+    private class Session {
+        private final Socket socket;
+        private final CommandReader in;
+        private final FrameOutputStream out;
+        private String playerID = null;
+        private Socket nodeSocket = null;
+        private PrintWriter nodeOut = null;
+        private int node = -1;
+        private String watching = null;
+        private boolean moving = false;
+        private final List<String> pending = new ArrayList<>();
+
+        /*
+         * AF(socket, in, out, playerID, nodeSocket, nodeOut, node, watching, moving, pending) = a client
+         *      connected on socket, sending commands on in and shown responses on out, as the player playerID,
+         *      or still in START if playerID is null; while the player is relayed to a node, they are connected
+         *      to node number node on nodeSocket, and their commands are sent on nodeOut, and they are watching
+         *      the match watching, or playing if it is null; while moving, their match is moving to another
+         *      node, and the commands pending are sent to it once they are connected to it
+         * RI: nodeSocket is null iff nodeOut is, playerID is not null if nodeSocket is not, pending is empty
+         *     unless moving, and moving only if nodeSocket is not null
+         * SRE: all fields are private, and nothing is given out
+         * Thread Safety: guarded by the lock on the session, see Router
+         */
+
+        /**
+         * @param socket  socket a client has connected on
+         * @throws IOException if the socket is not connected
+         */
+        Session(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new CommandReader(socket.getInputStream());
+            this.out = new FrameOutputStream(socket.getOutputStream());
+        }
+
+        // read the client's commands until they leave, then let go of their player ID and node
+        void run() throws IOException {
+            try {
+                out.writeObject(ServerResponse.createStart());
+                for (String line = in.readLine(); line != null; line = in.readLine()) {
+                    if (!handle(Command.parse(line))) {
+                        break;
+                    }
+                }
+            } finally {
+                synchronized (this) {
+                    choosing.remove(this);
+                    if (nodeSocket != null) {
+                        nodeSocket.close();
+                        nodeSocket = null;
+                        nodeOut = null;
+                    }
+                    if (playerID != null) {
+                        players.remove(playerID);
+                    }
+                }
+            }
+        }
+
+        // handle one command from the client, returning false if they are leaving
+        private synchronized boolean handle(Command command) throws IOException {
+            if (nodeOut != null && moving) {
+                pending.add(command.input());
+                return true;
+            } else if (nodeOut != null) {
+                nodeOut.println(command.input());
+                return true;
+            }
+            if (playerID == null) {
+                if (!command.isPlayerId()) {
+                    out.writeObject(ServerResponse.createStart("Invalid player ID. ID must be alphanumeric"));
+                } else if (!players.add(command.input())) {
+                    out.writeObject(ServerResponse.createStart(command.input() + " player ID already in use"));
+                } else {
+                    playerID = command.input();
+                    showLobby("");
+                }
+                return true;
+            }
+            switch (command.type()) {
+            case EXIT:
+                return false;
+            case LIST:
+                out.writeObject(ServerResponse.createChoose(page(this, command.filter(), command.page()).lines()));
+                return true;
+            case NEW:
+                if (placements.containsKey(command.matchId())) {
+                    // a match moved here from its owner has the ID
+                    showLobby("Please specify a unique Match ID");
+                    return true;
+                }
+                relay(owner(command.matchId(), nodes.size()), command);
+                return true;
+            case PLAY:
+            case SPECTATE:
+                relay(nodeOf(command.matchId()), command);
+                return true;
+            case QUICKPLAY:
+                relay(command.boardId().isEmpty() ? 0 : owner(command.boardId(), nodes.size()), command);
+                return true;
+            default:
+                showLobby("Couldn't understand command");
+                return true;
+            }
+        }
+
+        // show the client their page of the lobby again, if they are still in CHOOSE
+        synchronized void lobbyChanged() {
+            if (choosing.containsKey(this)) {
+                showLobby("");
+            }
+        }
+
+        /**
+         * Show the client the page of the lobby they last asked for, or the first page if they have not asked
+         *
+         * @param message  message to show with it, "" for none
+         */
+        private synchronized void showLobby(String message) {
+            LobbyIndex.Page viewing = choosing.get(this);
+            LobbyIndex.Page page = viewing == null ? page(this, "", 1) : page(this, viewing.filter(), viewing.number());
+            try {
+                out.writeObject(ServerResponse.createChoose(message, page.lines()));
+            } catch (IOException e) {
+                // the client has gone, and its thread cleans up
+            }
+        }
+
+        // connect the player to node as the same player ID, and send it command, which leaves CHOOSE
+        private void relay(int node, Command command) throws IOException {
+            final Socket connection;
+            final ObjectInputStream nodeIn;
+            final PrintWriter connectionOut;
+            final ServerResponse welcome;
+            try {
+                connection = new Socket(nodes.get(node).getHostString(), nodes.get(node).getPort());
+            } catch (IOException e) {
+                showLobby("That server is not available, try again later");
+                return;
+            }
+            try {
+                nodeIn = new ObjectInputStream(connection.getInputStream());
+                connectionOut = new PrintWriter(new OutputStreamWriter(connection.getOutputStream(), UTF_8), true);
+                connectionOut.println(playerID);
+                welcome = readResponse(nodeIn);
+            } catch (IOException e) {
+                connection.close();
+                showLobby("That server is not available, try again later");
+                return;
+            }
+            if (welcome.state() == State.START) {
+                connection.close();
+                showLobby(welcome.message());
+                return;
+            }
+            choosing.remove(this);
+            nodeSocket = connection;
+            nodeOut = connectionOut;
+            this.node = node;
+            watching = command.type() == Type.SPECTATE ? command.matchId() : null;
+            metrics.increment("router.relayed");
+            if (welcome.state() == State.CHOOSE) {
+                nodeOut.println(command.input());
+            } else {
+                // the node was holding a match for the player, and put them back in it
+                out.writeObject(welcome.withToken(""));
+            }
+            Thread relay = new Thread(() -> relayResponses(connection, nodeIn), "relay-" + playerID);
+            relay.setDaemon(true);
+            relay.start();
+        }
+
+        // send the node's responses to the client until the node puts the player back in CHOOSE or goes away,
+        // following the player to the node their match moves to
+        private void relayResponses(Socket connection, ObjectInputStream nodeIn) {
+            String message = "";
+            try {
+                while (true) {
+                    ServerResponse response = readResponse(nodeIn);
+                    if (response.state() == State.MOVED) {
+                        nodeIn = follow(connection, nodeIn, response.hasMessage() ? response.message() : "");
+                        synchronized (this) {
+                            connection = nodeSocket;
+                        }
+                        if (nodeIn == null || connection == null) {
+                            return;
+                        }
+                        continue;
+                    }
+                    synchronized (this) {
+                        if (response.state() == State.CHOOSE) {
+                            message = response.hasMessage() ? response.message() : "";
+                            break;
+                        }
+                        out.writeObject(response.withToken(""));
+                    }
+                }
+            } catch (IOException e) {
+                message = "Lost the connection to the server of that match";
+            }
+            synchronized (this) {
+                if (nodeSocket != connection) {
+                    return;
+                }
+                nodeOut.println("EXIT");
+                try {
+                    connection.close();
+                } catch (IOException e) {}
+                nodeSocket = null;
+                nodeOut = null;
+                moving = false;
+                pending.clear();
+                metrics.increment("router.returned");
+                if (!socket.isClosed()) {
+                    showLobby(message);
+                }
+            }
+        }
+
+        /**
+         * Follow the player to the node their match moved to. Stops sending the player's commands to the node
+         * they are connected on, and tells it the player is leaving, after which it sends back the commands it
+         * was sent but did not apply before the match moved; then connects the player to the other node, which
+         * puts them back in the match, and sends it those commands and the ones the client sent meanwhile.
+         *
+         * @param connection  the player's connection to the node their match moved from
+         * @param nodeIn      responses on connection
+         * @param address     HOST:PORT of the node the match moved to, "" for the same node
+         * @return responses on the player's new connection to the other node, which is nodeSocket, or null if
+         *         the client has left
+         * @throws IOException if the player can not be put back in the match on the other node
+         */
+        private ObjectInputStream follow(Socket connection, ObjectInputStream nodeIn, String address)
+                throws IOException {
+            synchronized (this) {
+                if (nodeSocket != connection) {
+                    return null;
+                }
+                moving = true;
+                nodeOut.println("EXIT");
+            }
+            final List<String> unapplied = new ArrayList<>();
+            try {
+                while (true) {
+                    // the node answers each command it was sent with the command, then closes the connection
+                    unapplied.addAll(readResponse(nodeIn).results());
+                }
+            } catch (IOException e) {
+                connection.close();
+            }
+            final int target = address.isEmpty() ? node : nodeAt(address);
+            if (target < 0) {
+                throw new IOException("the match moved to an unknown server " + address);
+            }
+            final Socket next = new Socket(nodes.get(target).getHostString(), nodes.get(target).getPort());
+            try {
+                final PrintWriter nextOut =
+                        new PrintWriter(new OutputStreamWriter(next.getOutputStream(), UTF_8), true);
+                final ObjectInputStream nextIn = new ObjectInputStream(next.getInputStream());
+                nextOut.println(playerID);
+                ServerResponse welcome = readResponse(nextIn);
+                if (welcome.state() == State.CHOOSE && watching != null) {
+                    nextOut.println("SPECTATE " + watching);
+                    // the node may show the spectator its lobby again before it shows them the match
+                    do {
+                        welcome = readResponse(nextIn);
+                    } while (welcome.state() == State.CHOOSE && !welcome.hasMessage());
+                }
+                synchronized (this) {
+                    if (nodeSocket != connection) {
+                        next.close();
+                        return null;
+                    }
+                    if (welcome.state() != State.PLAY && welcome.state() != State.WAIT
+                            && welcome.state() != State.SCORE) {
+                        throw new IOException("the server the match moved to did not take the player back");
+                    }
+                    out.writeObject(welcome.withToken(""));
+                    nodeSocket = next;
+                    nodeOut = nextOut;
+                    node = target;
+                    for (String command : unapplied) {
+                        nodeOut.println(command);
+                    }
+                    for (String command : pending) {
+                        nodeOut.println(command);
+                    }
+                    pending.clear();
+                    moving = false;
+                    metrics.increment("router.followed");
+                }
+                return nextIn;
+            } catch (IOException e) {
+                next.close();
+                throw e;
+            }
+        }
+    }
+
+    // the next response from a node, skipping the START response it greets a new connection with
+    private static ServerResponse readResponse(ObjectInputStream in) throws IOException {
+        try {
+            ServerResponse response = (ServerResponse) in.readObject();
+            while (response.state() == State.START && !response.hasMessage()) {
+                response = (ServerResponse) in.readObject();
+            }
+            return response;
+        } catch (ClassNotFoundException e) {
+            throw new IOException("not a response", e);
+        }
+    }
+}
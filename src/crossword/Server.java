@@ -5,14 +5,27 @@ package crossword;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
-import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FilterOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -21,7 +34,12 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import crossword.Command.Type;
 import crossword.CrosswordBoard.Outcome;
 import crossword.Match.MatchListener;
 import crossword.Match.TooManyPlayersException;
@@ -41,30 +59,117 @@ public class Server {
     }
     
     private static final String STARTING_ID = "!newuser";
-    private static final String PLAY_REGEX = "PLAY [A-Z0-9]+";
-    private static final String NEW_REGEX = "NEW [A-Z0-9]+ [A-Z0-9_()]+ \"[A-Z0-9 ]+\"";
     public static final String ID_REGEX = "[A-Z0-9]+";
+    private static final int TOKEN_BYTES = 16;
+    public static final long DEFAULT_GRACE_SECONDS = 30;
     public static final String IDWORD_REGEX = "[0-9]+(ACROSS|DOWN) [A-Z\\-]+";
     public static final String PUZZLE_EXTENSION = ".puzzle";
     public static final int PORT = 4949;
+    private static final long RELOAD_SETTLE_MILLIS = 200;
+    private static final long SNAPSHOT_MILLIS = 60 * 1000;
+    private static final long TICK_MILLIS = 100;
+    private static final int WHEEL_SLOTS = 512;
+    private static final long MAX_CHECK_MILLIS = 1000;
+    private static final int MAX_BATCH = 64;
+    private static final long MATCHMAKING_BATCH_MILLIS = 5;
+    private static final String QUICK_MATCH_PREFIX = "QUICK";
+    private static final String QUICK_MATCH_DESCRIPTION = "QUICK MATCH";
+    private static final String MOVING = "";
+    private static final int HANDOVER_TIMEOUT_MILLIS = 10 * 1000;
+    // most bytes of an encoded match sent or taken with ADOPT, far more than the largest boards take
+    private static final int MAX_MATCH_BYTES = 16 * 1024 * 1024;
+    private static final String NOT_A_PEER = "Only the router and the other nodes can move matches";
     private final ServerSocket serverSocket;
     private final Map<String, State> playerStates;
     private final Map<String, Match> playerMatches;
+    private final Map<String, Match> spectating;
     private final Map<String, CrosswordBoard> loadedBoards;
     private final Map<String, ChooseUpdateCallBack> inChoose;
+    private final Map<String, String> boardFiles;
+    private final Map<String, Match> heldMatches;
+    private final MatchLog matchLog;
+    private final Path stateFolder;
+    private final Map<String, String> sessions;
+    private final Map<String, Socket> connections;
+    private final Map<String, FrameOutputStream> outputs;
+    private final Map<String, String> movedPlayers;
+    private final Map<String, TimerWheel.Timeout> graceTimers;
+    private final long graceMillis;
+    private final ConnectionTimeouts timeouts;
+    private final TimerWheel timers;
+    private final ExecutorService expiries;
+    private final HintEngine hints;
+    private final Map<String, FrameOutputStream> queued;
+    private final Matchmaker matchmaker;
+    private final AtomicLong quickMatches = new AtomicLong(0);
+    private final LobbyIndex lobby = new LobbyIndex();
+    private final Map<String, LobbyIndex.Page> lobbyPages;
+    private final int shard;
+    private final int shards;
+    private final String peerSecret;
+    private final Metrics metrics = new Metrics();
+    private final Object snapshotLock = new Object();
+    private final SecureRandom random = new SecureRandom();
     
     /*
-     * AF(serverSocket, playerStates, playerMatches, loadedBoards, inChoose) =
+     * AF(serverSocket, playerStates, playerMatches, spectating, loadedBoards, inChoose, boardFiles, heldMatches, 
+     *    matchLog, stateFolder, sessions, connections, outputs, movedPlayers, graceTimers, graceMillis, timeouts, 
+     *    timers, expiries, hints, queued, matchmaker, quickMatches, lobby, lobbyPages, shard, shards, metrics, snapshotLock, 
+     *    random, peerSecret) =
      *      A server operating on the socket ServerSocket
-     *      With connected players playerStates.keys() with their states mapped by playerStates
-     *      With players currently in states WAIT, PLAY, SCORE mapped to their matches by playerMatches
-     *      With inChoose.keys() as players currently in CHOOSE state mapped to callback functions to update their screens
-     *      And the valid loaded game boards loadedBoards
+     *      With connected players playerStates.keys() with their states mapped by playerStates, each 
+     *      connected on the socket connections[id] and sent responses on outputs[id]
+     *      With players currently in states WAIT, PLAY, SCORE mapped to their matches by playerMatches, 
+     *      and clients watching a match without playing in it, who are in the PLAY state, mapped to the 
+     *      match they watch by spectating
+     *      With inChoose.keys() as players currently in CHOOSE state mapped to callback functions to update their screens, 
+     *      where lobbyPages[id] is the page of lobby, which lists the open and live matches and the loaded boards, 
+     *      that was last shown to player id
+     *      And the valid loaded game boards loadedBoards, where the board loaded from the puzzle file
+     *      named f is loadedBoards[boardFiles[f]]
+     *      With players heldMatches.keys() not connected, but in matches heldMatches.values() that they can 
+     *      resume. Players in graceTimers.keys() lost their connection less than graceMillis ago and can 
+     *      only resume by sending RESUME with their session token before graceTimers[id], on timers, has 
+     *      their match ended on expiries. The other held players' matches were recovered from the log, and they resume by 
+     *      connecting with the same player ID
+     *      With sessions[token] the player ID that was given session token token, made from random
+     *      Disconnecting clients that send nothing or stop reading for longer than timeouts allows, which is 
+     *      checked for every connection on timers, and counting what it has done in metrics
+     *      Logging every accepted action in a match to matchLog, and snapshotting the live matches to 
+     *      stateFolder, or not logging if matchLog and stateFolder are null
+     *      Suggesting words to players who ask for a hint with hints, or not giving hints if hints is null
+     *      With players queued.keys() waiting in the WAIT state, without a match, for matchmaker to pair them 
+     *      with an opponent, each connected on queued[id]. quickMatches matches have been started for 
+     *      players matchmaker paired
+     *      As node shard of shards nodes behind a Router, owning the matches whose ID Router.owner() gives 
+     *      to shard, or every match if shards == 1, and taking MIGRATE and ADOPT only from the router and 
+     *      the other nodes, which send peerSecret, or from nobody if peerSecret is null. Only the router, 
+     *      logging in with LOBBY and peerSecret, is connected as Router.LOBBY_ID
+     *      With players movedPlayers.keys() still connected, but whose match was handed over to the server at 
+     *      movedPlayers[id], as HOST:PORT, or is still being handed over if movedPlayers[id] is MOVING
      *                                                                
      * RI:
-     *  - if playerStates[id] == PLAY, WAIT, or SCORE, playerMatches[id] should be a valid match
+     *  - if playerStates[id] == PLAY, WAIT, or SCORE, playerMatches[id] or spectating[id] should be a valid match, 
+     *    except for the players queued.keys(), who are in the WAIT state without a match, and the players 
+     *    movedPlayers.keys(), whose match is no longer on this server
+     *  - playerMatches.keys() and spectating.keys() are disjoint, and spectating[id] has id as a spectator
      *  - if playerStates[id] == CHOOSE, inChoose[id] is valid callback
      *  - players not in those states are not in playerMatches.keys()
+     *  - boardFiles.values() are all keys of loadedBoards
+     *  - heldMatches.keys() and playerStates.keys() are disjoint
+     *  - queued.keys() are all keys of playerStates, and disjoint from playerMatches.keys()
+     *  - lobbyPages.keys() are all keys of playerStates
+     *  - lobby lists every board of loadedBoards, and after syncLobbyMatches() every open and live match of 
+     *    playerMatches
+     *  - graceTimers.keys() are all keys of heldMatches
+     *  - connections.keys() == outputs.keys() == playerStates.keys()
+     *  - movedPlayers.keys() are all keys of playerStates, and disjoint from playerMatches.keys() and 
+     *    spectating.keys()
+     *  - sessions.values() are all keys of playerStates or graceTimers
+     *  - graceMillis >= 0
+     *  - 0 <= shard < shards, and every match started by NEW or QUICKPLAY has an ID this node owns
+     *  - peerSecret is null if shards == 1, otherwise null or a SECRET of the Command grammar
+     *  - Router.LOBBY_ID is not a key of playerMatches, spectating, queued or heldMatches
      * 
      * SRE:
      *  - fields are private and final and client never has access to them (they are instantiated inside the constructor)
@@ -73,29 +178,118 @@ public class Server {
      *  
      *  Thread Safety:
      *   - playerStates, playerMatches, loadedBoards, and inChoose are all thread safe data types
-     *   - methods that change or access the playerMatches, playerStates, inChoose, and loadedBoards are synchronized which will prevent bad interleavings
+     *   - spectating is a thread safe data type. Matches are shown to spectators on the writer threads of 
+     *     SpectatorFeed, which never take the lock on this server, so no move waits for a spectator. 
+     *     Every write to a spectator's stream holds the lock on that stream, and a frame is only written 
+     *     while the spectator is still in spectating, so no frame arrives after they stop watching
+     *   - methods that change or access the playerMatches, playerStates, inChoose, and loadedBoards are synchronized which will prevent bad interleavings, 
+     *     except for moves, see below
+     *   - moves are applied by handlePlay() while holding the lock on their match only, so players in different 
+     *     matches never wait for each other or for the lock on this server. Whether a player is playing a match 
+     *     is read without the lock on this server and checked again while holding the lock on the match; 
+     *     everything that takes a player out of a match or moves them on from PLAY while it is live does so 
+     *     while holding the lock on the match too. Locks are always taken in the order this server, then a 
+     *     match: nothing called while holding the lock on a match (its listeners, getScores(), getClues(), 
+     *     log()) takes the lock on this server. Responses to a player in the PLAY state are only written by 
+     *     their own thread or while holding the lock on their match
      *   - serverSocket is not run or changed on multiple threads so there are not be bad interleavings
+     *   - the puzzle watcher thread parses changed files without holding the server lock and only takes 
+     *     it to swap the finished board into loadedBoards and boardFiles. Matches copy their board when 
+     *     they are created, so swapping a board never changes a match that is already running
+     *   - heldMatches is a thread safe data type only changed by synchronized methods
+     *   - matchLog is threadsafe. Records are appended while holding the lock on their match, in the same 
+     *     synchronized block as the action, so the log holds the actions of each match in the order they were 
+     *     applied to it
+     *   - snapshots encode each match while holding the lock on that match only, so a match's play state and 
+     *     log seq always agree, and no other match is stopped
+     *   - sessions, connections and graceTimers are thread safe data types only changed by synchronized methods, and 
+     *     a grace period ends by calling a synchronized method, which does nothing if the player resumed 
+     *     first. The timers thread never waits for the lock on this server, so it only hands that call to 
+     *     expiries, one thread shared by every held player
+     *   - the moves of a batch of commands a client sends together are applied while holding the lock on their 
+     *     match once, so no other player's move in that match is applied in the middle of them, except where 
+     *     a HINT comes between them: the lock is let go while the hint is found. Every other command is 
+     *     applied while holding the lock on this server
+     *   - timeouts are checked on the timers thread without taking the lock on this server, since a client that 
+     *     stopped reading can block a synchronized method in a write. An expired connection is only closed 
+     *     there; its own thread then cleans up like EXIT while holding the lock. metrics is threadsafe
+     *   - hints is immutable, and each match caches the hints it has found per version of its board, so a 
+     *     hint that has been asked for before costs a lookup, and finding a new one takes no lock at all, so 
+     *     it holds up neither the match nor this server
+     *   - queued is a thread safe data type only changed by synchronized methods. matchmaker is threadsafe, 
+     *     and hands the pairs it makes to a synchronized method once per batch, which checks each player is 
+     *     still in queued, since a player can leave the queue after being paired. quickMatches is atomic
+     *   - outputs and movedPlayers are thread safe data types only changed by synchronized methods. A match is 
+     *     handed over to another server on a thread of its own: its players are taken out of playerMatches 
+     *     while holding the lock on this server, the match is sent without holding it, and the lock is taken 
+     *     again to tell the players where it went or to put them back. Commands from its players wait() on 
+     *     this server, which releases the lock, until then, so none is applied to the match after it was 
+     *     encoded, and each is answered with a MOVED response carrying it once the match is gone
+     *   - snapshots are written one at a time while holding snapshotLock, which is never taken while holding 
+     *     the lock on this server
      * 
      */
     
     /**
      * Start a Crossword Extravaganza server.
-     * @param args The command line arguments should include only the folder where
-     *             the puzzles are located.
-     * @throws IOException if the board is unable to be read or the server cannot start
+     * @param args The command line arguments should include the folder where
+     *             the puzzles are located, optionally followed by the folder where
+     *             matches are logged so they can be recovered after a restart.
+     *             The option --grace=SECONDS sets how long a player's match is held 
+     *             after they lose their connection, DEFAULT_GRACE_SECONDS if not given.
+     *             The options --idle=SECONDS and --idle-STATE=SECONDS set how long a client may 
+     *             send nothing in any state or in the state STATE, and --write-stall=SECONDS how 
+     *             long a write to a client that is not reading may be stuck, before the client is 
+     *             disconnected. 0 means never, and ConnectionTimeouts.DEFAULT is used for the rest.
+     *             The option --words=FILE gives a word index written by WordIndex to suggest words 
+     *             from when a player sends HINT; without it, no hints are given.
+     *             The option --port=PORT listens on PORT instead of the default port, and 
+     *             --shard=I/N runs the server as node I of N nodes behind a Router, numbered from 0. 
+     *             The option --peer-secret=SECRET gives the secret the router and the other nodes send to 
+     *             move matches onto or off this node; without it, no match is moved.
+     * @throws IOException if the board or word index is unable to be read or the server cannot start
      */
     public static void main(String[] args) throws IOException {
-        final List<String> arguments = List.of(args);
+        final List<String> arguments = new ArrayList<>();
+        ServerOptions options = ServerOptions.DEFAULT.withGraceMillis(TimeUnit.SECONDS.toMillis(DEFAULT_GRACE_SECONDS));
+        ConnectionTimeouts timeouts = ConnectionTimeouts.DEFAULT;
+        int port = PORT;
+        for (String arg : args) {
+            if (arg.startsWith("--grace=")) {
+                options = options.withGraceMillis(TimeUnit.SECONDS.toMillis(Long.parseLong(arg.substring("--grace=".length()))));
+            } else if (arg.startsWith("--idle=")) {
+                timeouts = timeouts.withIdle(TimeUnit.SECONDS.toMillis(Long.parseLong(arg.substring("--idle=".length()))));
+            } else if (arg.startsWith("--idle-") && arg.contains("=")) {
+                State state = State.valueOf(arg.substring("--idle-".length(), arg.indexOf('=')).toUpperCase());
+                timeouts = timeouts.withIdle(state, TimeUnit.SECONDS.toMillis(Long.parseLong(arg.substring(arg.indexOf('=') + 1))));
+            } else if (arg.startsWith("--write-stall=")) {
+                timeouts = timeouts.withWriteStall(TimeUnit.SECONDS.toMillis(Long.parseLong(arg.substring("--write-stall=".length()))));
+            } else if (arg.startsWith("--words=")) {
+                options = options.withWords(WordIndex.read(Paths.get(arg.substring("--words=".length()))));
+            } else if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            } else if (arg.startsWith("--shard=") && arg.contains("/")) {
+                options = options.withShard(Integer.parseInt(arg.substring("--shard=".length(), arg.indexOf('/'))), 
+                        Integer.parseInt(arg.substring(arg.indexOf('/') + 1)));
+            } else if (arg.startsWith("--peer-secret=")) {
+                options = options.withPeerSecret(arg.substring("--peer-secret=".length()));
+            } else {
+                arguments.add(arg);
+            }
+        }
         
         if (arguments.size() == 0) {
             throw new IllegalArgumentException("missing folder");
-        } if (arguments.size() > 1) {
-            throw new IllegalArgumentException("Unexpected arguments: "+ arguments.subList(1, arguments.size()).toString());
+        } if (arguments.size() > 2) {
+            throw new IllegalArgumentException("Unexpected arguments: "+ arguments.subList(2, arguments.size()).toString());
         }
         
         final String folder = arguments.get(0);
+        if (arguments.size() > 1) {
+            options = options.withStateFolder(arguments.get(1));
+        }
         
-        new Server(folder, PORT).serve();
+        new Server(folder, port, options.withTimeouts(timeouts)).serve();
     }
     
     /**
@@ -105,39 +299,443 @@ public class Server {
      * @throws IOException if an error occurs opening the server socket
      */
     public Server(String folder, int port) throws IOException {
+        this(folder, port, ServerOptions.DEFAULT);
+    }
+    
+    /**
+     * Make a new text game server using given board, with the settings of options:
+     *  - with a state folder, the server logs every accepted action in a match to it. Matches that were still 
+     *    going on when the server last stopped are rebuilt from the log, and their players can resume them by 
+     *    connecting with the same player ID.
+     *  - with a grace period, the server holds the match of a player who loses their connection while waiting 
+     *    or playing for that long. The player can get back into the match from a new connection by sending 
+     *    RESUME with the session token they were given when they chose their ID.
+     *  - the server disconnects clients that send nothing for longer than their state allows, or stop reading 
+     *    what they are sent, according to the timeouts. A disconnected client is cleaned up the same way as if 
+     *    it had sent EXIT, without holding its match, and is counted in metrics().
+     *  - with words, the server answers a player who sends HINT with a word ID by suggesting words that fit 
+     *    the letters on the board at that word and the words crossing it.
+     *  - as one of several nodes behind a Router, the server only starts matches whose ID Router.owner() gives 
+     *    to it, which are the matches the router sends their players to. With a peer secret, the router and 
+     *    the other nodes can move its matches to and from the other nodes by sending the secret with MIGRATE 
+     *    and ADOPT, and the node refuses both from anyone who does not.
+     * @param folder the folder holding game boards
+     * @param port 
+     * @param options the settings of the server; a peer secret is only allowed for one of several nodes
+     * @throws IOException if an error occurs opening the server socket or the match log
+     */
+    public Server(String folder, int port, ServerOptions options) throws IOException {
+        if (options.peerSecret() != null && options.shards() == 1) {
+            throw new IllegalArgumentException("a server that is not one of several nodes has no peers");
+        }
+        final String stateFolder = options.stateFolder();
+        final WordIndex words = options.words();
         System.out.println("Starting server on:"+port);
         this.serverSocket = new ServerSocket(port);
         this.playerStates = Collections.synchronizedMap(new HashMap<String, ServerResponse.State>());
         this.playerMatches = Collections.synchronizedMap(new HashMap<String, Match>());
+        this.spectating = Collections.synchronizedMap(new HashMap<String, Match>());
         this.loadedBoards = Collections.synchronizedMap(new HashMap<String, CrosswordBoard>());
         this.inChoose = Collections.synchronizedMap(new HashMap<>());
+        this.lobbyPages = Collections.synchronizedMap(new HashMap<>());
+        this.boardFiles = Collections.synchronizedMap(new HashMap<>());
+        this.heldMatches = Collections.synchronizedMap(new HashMap<>());
+        this.sessions = Collections.synchronizedMap(new HashMap<>());
+        this.connections = Collections.synchronizedMap(new HashMap<>());
+        this.outputs = Collections.synchronizedMap(new HashMap<>());
+        this.movedPlayers = Collections.synchronizedMap(new HashMap<>());
+        this.graceTimers = Collections.synchronizedMap(new HashMap<>());
+        this.graceMillis = options.graceMillis();
+        this.shard = options.shard();
+        this.shards = options.shards();
+        this.peerSecret = options.peerSecret();
+        this.timeouts = options.timeouts();
+        this.timers = new TimerWheel("server-timers", TICK_MILLIS, WHEEL_SLOTS);
+        this.expiries = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "server-expiries");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.hints = words == null ? null : new HintEngine(words);
+        this.queued = Collections.synchronizedMap(new HashMap<>());
+        this.matchmaker = new Matchmaker(MATCHMAKING_BATCH_MILLIS, metrics, this::startQuickMatches);
         loadBoards(new File(folder));
+        if (stateFolder != null) {
+            this.stateFolder = Paths.get(stateFolder);
+            List<Match> snapshot = new ArrayList<>();
+            long snapshotSeq = 0;
+            try {
+                snapshotSeq = MatchSnapshot.read(this.stateFolder, loadedBoards, heldListener(), snapshot);
+            } catch (IOException e) {
+                System.out.println("Unable to read snapshot, recovering from the match log only: " + e.getMessage());
+            }
+            this.matchLog = new MatchLog(this.stateFolder, snapshotSeq);
+            recoverMatches(snapshot, snapshotSeq, matchLog.recovered());
+            snapshotMatches();
+        } else {
+            this.stateFolder = null;
+            this.matchLog = null;
+        }
+        lobby.drainChanges(); // nobody is looking at the lobby yet
+        watchBoards(new File(folder));
         checkrep();
     }
     
     private void checkrep() {
         assert serverSocket != null;
+        assert loadedBoards.keySet().containsAll(boardFiles.values());
+        assert Collections.disjoint(heldMatches.keySet(), playerStates.keySet());
+        assert heldMatches.keySet().containsAll(graceTimers.keySet());
+        assert connections.keySet().equals(playerStates.keySet());
+        assert outputs.keySet().equals(playerStates.keySet());
+        assert playerStates.keySet().containsAll(movedPlayers.keySet());
+        assert Collections.disjoint(movedPlayers.keySet(), playerMatches.keySet());
+        assert playerStates.keySet().containsAll(queued.keySet());
+        assert Collections.disjoint(queued.keySet(), playerMatches.keySet());
+        assert playerStates.keySet().containsAll(lobbyPages.keySet());
+        assert graceMillis >= 0;
+        assert 0 <= shard && shard < shards;
+        assert peerSecret == null || (shards > 1 && Command.parse("ADOPT 0 " + peerSecret).type() == Type.ADOPT);
+        assert !playerMatches.containsKey(Router.LOBBY_ID) && !spectating.containsKey(Router.LOBBY_ID);
+        assert !queued.containsKey(Router.LOBBY_ID) && !heldMatches.containsKey(Router.LOBBY_ID);
+    }
+    
+    /**
+     * Rebuild the matches that had not ended when the server stopped, by replaying the log records made 
+     * after the snapshot against the matches in the snapshot and the loaded boards, and hold them for their 
+     * players to resume. A match is rebuilt on the loaded board of the puzzle it was played on, whatever ID 
+     * that board has now; matches whose puzzle is no longer loaded, or has changed, are dropped with the 
+     * records made in them.
+     * 
+     * @param snapshot     matches read from the latest snapshot
+     * @param snapshotSeq  seq of the first record not covered by the snapshot
+     * @param records      every record in the match log, in order
+     */
+    private synchronized void recoverMatches(List<Match> snapshot, long snapshotSeq, List<MatchLog.Record> records) {
+        final MatchListener disconnected = heldListener();
+        Map<String, Match> matches = new HashMap<>();
+        for (Match match : snapshot) {
+            matches.put(match.getMatchId(), match);
+        }
+        int replayed = 0;
+        for (MatchLog.Record record : records) {
+            Match match = matches.get(record.matchID());
+            // skip records the snapshot already covers
+            if (record.seq() < snapshotSeq || (match != null && record.seq() <= match.getLogSeq())) {
+                continue;
+            }
+            replayed++;
+            try {
+                switch (record.type()) {
+                    case NEW:
+                        // board IDs depend on load order and reloads, so the board is found by its puzzle
+                        String boardId = MatchSnapshot.findBoard(loadedBoards, record.first(), record.puzzle());
+                        if (boardId == null) {
+                            System.out.println("Can't recover match " + record.matchID() + ", puzzle " 
+                                    + (record.puzzle().isEmpty() ? record.first() : record.puzzle()) + " of board " 
+                                    + record.first() + " is not loaded");
+                            matches.remove(record.matchID());
+                            break;
+                        }
+                        if (record.puzzle().isEmpty()) {
+                            System.out.println("Recovering match " + record.matchID() + " on board " + boardId 
+                                    + ", which can't be checked to be the puzzle it was played on");
+                        }
+                        match = new Match(record.matchID(), boardId, record.second(), loadedBoards.get(boardId), 
+                                record.maxPlayers(), record.teams());
+                        match.addPlayer(record.playerID(), disconnected);
+                        matches.put(record.matchID(), match);
+                        break;
+                    case JOIN:
+                        if (match != null) {
+                            match.addPlayer(record.playerID(), disconnected);
+                        }
+                        break;
+                    case TRY:
+                        if (match != null && match.tryWord(record.playerID(), record.first(), record.second()) == Outcome.FINISHED) {
+                            matches.remove(record.matchID());
+                        }
+                        break;
+                    case CHALLENGE:
+                        if (match != null && match.tryChallenge(record.playerID(), record.first(), record.second()) == Outcome.FINISHED) {
+                            matches.remove(record.matchID());
+                        }
+                        break;
+                    case EXIT:
+                        matches.remove(record.matchID());
+                        break;
+                    default:
+                        throw new AssertionError("Unexpected record type encountered");
+                }
+            } catch (TooManyPlayersException e) {
+                System.out.println("Can't recover match " + record.matchID() + ", " + e.getMessage());
+                matches.remove(record.matchID());
+            }
+            if (match != null) {
+                match.setLogSeq(record.seq());
+            }
+        }
+        for (Match match : matches.values()) {
+            for (String playerID : match.getPlayerIds()) {
+                heldMatches.put(playerID, match);
+            }
+        }
+        System.out.println("Recovered " + matches.size() + " matches from a snapshot of " + snapshot.size() 
+                + " matches and " + replayed + " log records");
+    }
+    
+    // listener for the players of a recovered match, until they resume it
+    private static MatchListener heldListener() {
+        return new MatchListener() {
+            public void updateMatch(boolean firstCall) {}
+            public void endMatch(String message) {}
+        };
+    }
+    
+    /**
+     * Start a daemon thread that snapshots the live matches every SNAPSHOT_MILLIS, if any action has been 
+     * logged since the last snapshot
+     */
+    private void snapshotMatches() {
+        Thread thread = new Thread(() -> {
+            long lastSeq = matchLog.nextSeq();
+            while (true) {
+                try {
+                    Thread.sleep(SNAPSHOT_MILLIS);
+                    if (matchLog.nextSeq() != lastSeq) {
+                        lastSeq = snapshot();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                } catch (IOException e) {
+                    System.out.println("Unable to snapshot matches: " + e.getMessage());
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Write a snapshot of every live match to the state folder, then trim the match log to the records made 
+     * after it. Each match is copied while holding the lock on that match only, so players can keep playing 
+     * while the snapshot is taken, even in the match being copied once it has been. Snapshots are taken one 
+     * at a time.
+     * 
+     * @return seq of the first log record not covered by the snapshot
+     * @throws IOException if the snapshot could not be written or the log could not be trimmed
+     * @throws IllegalStateException if this server is not logging matches
+     */
+    public long snapshot() throws IOException {
+        if (matchLog == null) {
+            throw new IllegalStateException("matches are not being logged");
+        }
+        synchronized (snapshotLock) {
+            final long seq;
+            final Set<Match> live = new HashSet<>();
+            synchronized (this) {
+                seq = matchLog.nextSeq();
+                live.addAll(playerMatches.values());
+                live.addAll(heldMatches.values());
+            }
+            List<byte[]> encoded = new ArrayList<>();
+            for (Match match : live) {
+                synchronized (match) {
+                    if (!match.isEnded() && match.getNumPlayers() > 0) {
+                        encoded.add(MatchSnapshot.encode(match));
+                    }
+                }
+            }
+            MatchSnapshot.write(stateFolder, seq, encoded);
+            matchLog.trim(seq);
+            return seq;
+        }
+    }
+    
+    /**
+     * append record to the match log, if matches are being logged, and remember its seq in match. Must be 
+     * called while holding the lock on match, in the same synchronized block the action was applied to match 
+     * in, so the records of a match are in the order its actions were applied, and a snapshot of the match 
+     * never falls between an action and its record.
+     * 
+     * @param match   match the action was applied to
+     * @param record  accepted action to log
+     */
+    private void log(Match match, MatchLog.Record record) {
+        assert Thread.holdsLock(match);
+        if (matchLog == null) {
+            return;
+        }
+        try {
+            match.setLogSeq(matchLog.append(record));
+        } catch (IOException e) {
+            System.out.println("Failed to log: " + record);
+        }
     }
     
     private void loadBoards(File folder) {
         List<File> files = Arrays.asList(folder.listFiles());
         for (File file : files) {
-            String fileName = file.getName();
-            if (fileName.endsWith(PUZZLE_EXTENSION)) {
-                try {
-                    CrosswordBoard board = new CrosswordBoard(file.getAbsolutePath());
-                    int i = 2;
-                    String name = board.getName();
-                    while (loadedBoards.containsKey(name)) {
-                        name = board.getName() + "(" + i + ")";
-                        i++;
-                    }
-                    loadedBoards.put(name, board);
-                    System.out.println("Loaded: " + fileName + " as " + name);
-                } catch (Exception e) 
-                    {System.out.println("Failed to Load: " + fileName);}
+            if (file.getName().endsWith(PUZZLE_EXTENSION)) {
+                loadBoard(file);
+            } else if (PuzzleBundleLoader.isBundle(file.toPath())) {
+                loadBundle(file);
+            }
+        }
+    }
+    
+    /**
+     * Parse the puzzle in file and swap it into loadedBoards. If a board was already loaded from a file 
+     * with the same name, the new board replaces it, otherwise it is added under its own name (followed 
+     * by "(i)" if that name is already taken). The file is parsed before the server lock is taken, so 
+     * players are never blocked while a puzzle is being read.
+     * 
+     * @param file  puzzle file to load
+     * @return true iff the file was parsed and its board is now in loadedBoards
+     */
+    private boolean loadBoard(File file) {
+        String fileName = file.getName();
+        final CrosswordBoard board;
+        try {
+            board = new CrosswordBoard(file.getAbsolutePath());
+        } catch (Exception e) {
+            System.out.println("Failed to Load: " + fileName);
+            return false;
+        }
+        String name;
+        synchronized (this) {
+            String previous = boardFiles.remove(fileName);
+            if (previous != null) {
+                loadedBoards.remove(previous);
+                lobby.remove(LobbyIndex.Kind.BOARD, previous);
             }
+            name = addBoard(board);
+            boardFiles.put(fileName, name);
+        }
+        System.out.println("Loaded: " + fileName + " as " + name);
+        return true;
+    }
+    
+    /**
+     * Load every puzzle in a bundle of puzzles, building them on one thread per processor. Boards from 
+     * bundles are not reloaded when the bundle changes.
+     * 
+     * @param file  bundle or archive of puzzles to load
+     */
+    private void loadBundle(File file) {
+        try {
+            int puzzles = PuzzleBundleLoader.load(file.toPath(), Runtime.getRuntime().availableProcessors(), 
+                    new PuzzleBundleLoader.BundleListener() {
+                        public void loaded(String source, CrosswordBoard board) {
+                            System.out.println("Loaded: " + source + " as " + addBoard(board));
+                        }
+                        
+                        public void failed(String source, String problem) {
+                            System.out.println("Failed to Load: " + source);
+                        }
+                    });
+            System.out.println("Read " + puzzles + " puzzles from " + file.getName());
+        } catch (IOException e) {
+            System.out.println("Failed to Load: " + file.getName());
+        }
+    }
+    
+    /**
+     * Add board to loadedBoards under its own name, followed by "(i)" if that name is already taken
+     * 
+     * @param board  board to add
+     * @return the ID board was added under
+     */
+    private synchronized String addBoard(CrosswordBoard board) {
+        int i = 2;
+        String name = board.getName();
+        while (loadedBoards.containsKey(name)) {
+            name = board.getName() + "(" + i + ")";
+            i++;
+        }
+        loadedBoards.put(name, board);
+        lobby.put(LobbyIndex.Kind.BOARD, name, board.getDescription(), "Board: " + name + " \"" + board.getDescription() + "\"");
+        return name;
+    }
+    
+    /**
+     * Remove the board that was loaded from the puzzle file named fileName, if any
+     * 
+     * @param fileName  name of the puzzle file that no longer exists
+     * @return true iff a board was removed from loadedBoards
+     */
+    private synchronized boolean unloadBoard(String fileName) {
+        String name = boardFiles.remove(fileName);
+        if (name == null) {
+            return false;
+        }
+        loadedBoards.remove(name);
+        lobby.remove(LobbyIndex.Kind.BOARD, name);
+        System.out.println("Unloaded: " + fileName + " (was " + name + ")");
+        return true;
+    }
+    
+    /**
+     * Start a daemon thread that watches folder for puzzle files being added, changed or deleted, 
+     * reloads them with loadBoard() and unloadBoard(), and then updates the players in the CHOOSE 
+     * state. Events are collected until the folder has been quiet for RELOAD_SETTLE_MILLIS so a file 
+     * that is still being written is only parsed once.
+     * 
+     * @param folder  the folder holding game boards
+     */
+    private void watchBoards(File folder) {
+        final Path path = folder.toPath();
+        final WatchService watcher;
+        try {
+            watcher = path.getFileSystem().newWatchService();
+            path.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, 
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            System.out.println("Unable to watch " + folder + " for puzzle changes");
+            return;
         }
+        Thread thread = new Thread(() -> {
+            try {
+                while (true) {
+                    Set<String> changed = new HashSet<>();
+                    WatchKey key = watcher.take();
+                    while (key != null) {
+                        for (WatchEvent<?> event : key.pollEvents()) {
+                            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                                // events were lost, so look at every puzzle file we know of
+                                changed.addAll(boardFiles.keySet());
+                                for (File file : folder.listFiles()) {
+                                    changed.add(file.getName());
+                                }
+                            } else {
+                                changed.add(((Path) event.context()).getFileName().toString());
+                            }
+                        }
+                        key.reset();
+                        key = watcher.poll(RELOAD_SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                    }
+                    boolean lobbyChanged = false;
+                    for (String fileName : changed) {
+                        if (!fileName.endsWith(PUZZLE_EXTENSION)) {
+                            continue;
+                        }
+                        File file = new File(folder, fileName);
+                        if (file.isFile()) {
+                            lobbyChanged |= loadBoard(file);
+                        } else {
+                            lobbyChanged |= unloadBoard(fileName);
+                        }
+                    }
+                    if (lobbyChanged) {
+                        updateChoosePlayers();
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return; // stop watching
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
     }
     
     /**
@@ -147,6 +745,21 @@ public class Server {
         return serverSocket.getLocalPort();
     }
     
+    /**
+     * @return counters of what this server has done: connections accepted, connections timed out as 
+     *         "timeouts.idle.STATE" for each state and "timeouts.write_stall", and for QUICKPLAY players 
+     *         joining ("matchmaking.queued") and leaving ("matchmaking.cancelled") the matchmaking queue, the 
+     *         number waiting in it ("matchmaking.depth"), players paired ("matchmaking.paired") and the total 
+     *         time they waited to be paired ("matchmaking.wait_millis"), batches of pairs made 
+     *         ("matchmaking.batches") and matches started for them ("matchmaking.matches"), and for players in 
+     *         the CHOOSE state, how many times a page of the lobby was sent to one of them because it changed 
+     *         ("lobby.updates") or not sent because the changes were not on it ("lobby.unchanged"), and MIGRATE, 
+     *         ADOPT and LOBBY commands refused for not carrying the peer secret ("peers.refused")
+     */
+    public Metrics metrics() {
+        return metrics;
+    }
+    
     /**
      * Run the server, listening for and handling client connections.
      * Never returns normally.
@@ -158,6 +771,8 @@ public class Server {
         while (true) {
             // block until a client connects
             Socket socket = serverSocket.accept();
+            // a response is written in several small pieces, which must not wait for the client to acknowledge the first
+            socket.setTcpNoDelay(true);
             new Thread(new Runnable() {
                 public void run() {
                     try {
@@ -178,10 +793,12 @@ public class Server {
     }
     
     /**
-     * Handle a single client connection. For each state the client is in, it calls the corresponding 
-     * handleStart(), handleChoose, handlePlay(), handleWait(), and handleScore() methods. Reads state 
-     * from playerStates[playerID] or, if the playerID is the original STARTING_ID, the methods knows 
-     * the player is in the START state 
+     * Handle a single client connection. Commands are read in batches of every complete command the client 
+     * has sent, up to MAX_BATCH, and each batch is applied while holding the lock on this server once; in the 
+     * START state commands are read one at a time, and the match following ADOPT is read without the lock. For 
+     * each state the client is in, it calls the corresponding handleStart(), handleChoose, handlePlay(), 
+     * handleWait(), and handleScore() methods. Reads state from playerStates[playerID] or, if the playerID 
+     * is the original STARTING_ID, the methods knows the player is in the START state 
      * 
      * Returns when the client disconnects.
      * 
@@ -189,58 +806,183 @@ public class Server {
      * @throws IOException if the connection encounters an error or closes unexpectedly
      */
     private void handleConnection(Socket socket) throws IOException, TooManyPlayersException {
-        checkrep();
-        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF_8));
-        ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
+        synchronized (this) {
+            checkrep();
+        }
+        metrics.increment("connections.accepted");
+        Watchdog watchdog = new Watchdog(socket);
+        CommandReader in = new CommandReader(socket.getInputStream());
+        FrameOutputStream out = new FrameOutputStream(new StallDetectingOutputStream(socket.getOutputStream(), watchdog));
         String playerID = STARTING_ID;
         try {
             out.writeObject(ServerResponse.createStart()); //Starting message
+            watchdog.start();
             
-            for (String input = in.readLine(); input != null; input = in.readLine()) {
+            // commands are read one at a time in the START state, so bytes following ADOPT are not taken for any
+            for (List<String> lines = in.readBatch(1); !lines.isEmpty(); 
+                    lines = in.readBatch(playerID.equals(STARTING_ID) ? 1 : MAX_BATCH)) {
+                watchdog.lastRead = System.nanoTime();
+                List<Command> batch = new ArrayList<>(lines.size());
+                for (String line : lines) {
+                    batch.add(Command.parse(line));
+                }
+                boolean exited = false;
                 System.out.println(playerStates.keySet());
-                System.out.println(playerID + ":" + input);
-                
-                //START state, check if input is valid id
-                if (playerID.equals(STARTING_ID)) { 
-                    playerID = handleStart(input, out);
-                    continue;
+                int i = 0;
+                while (i < batch.size()) {
+                    // moves are applied without the lock on this server, so matches never wait for each other
+                    Match playing = playingMatch(playerID);
+                    if (playing != null) {
+                        int applied = handlePlay(playerID, playing, batch.subList(i, batch.size()), out);
+                        if (applied > 0) {
+                            i += applied;
+                            continue;
+                        }
+                    }
+                    if (playerID.equals(STARTING_ID) && batch.get(i).type() == Type.ADOPT) {
+                        receiveMatch(batch.get(i), in, out);
+                        watchdog.lastRead = System.nanoTime();
+                        i++;
+                        continue;
+                    }
+                    synchronized (this) {
+                        Command command = batch.get(i);
+                        System.out.println(playerID + ":" + command.input());
+                        
+                        //START state, check if input is valid id
+                        if (playerID.equals(STARTING_ID)) { 
+                            playerID = handleStart(command, out, socket);
+                            watchdog.playerID = playerID;
+                            i++;
+                            continue;
+                        }
+                        
+                        // the player's match was handed over to another server: EXIT ends the connection, and 
+                        // every other command is sent back to be sent on to that server
+                        if (movedPlayers.containsKey(playerID) && awaitHandOver(playerID)) {
+                            if (command.type() == Type.EXIT) {
+                                exited = true;
+                                break;
+                            }
+                            out.writeObject(ServerResponse.createMoved(movedPlayers.get(playerID), List.of(command.input())));
+                            i++;
+                            continue;
+                        }
+                        
+                        if (command.type() == Type.EXIT && 
+                                playerStates.get(playerID) != State.PLAY && 
+                                playerStates.get(playerID) != State.WAIT) { 
+                            exited = true;
+                            break;
+                        }
+                        
+                        // Below code will only run if not in START state
+                        if (spectating.containsKey(playerID)) {
+                            handleSpectate(playerID, command, out);
+                            i++;
+                            continue;
+                        }
+                        switch (playerStates.get(playerID)) {
+                            case CHOOSE:  
+                                handleChoose(playerID, command, out);
+                                i++;
+                                break;
+                            case WAIT:
+                                handleWait(playerID, command, out);
+                                i++;
+                                break;
+                            case PLAY:
+                                if (playerMatches.get(playerID).isEnded()) {
+                                    // the match ended without the player being moved on, so the command is 
+                                    // for the SCORE state, and the loop goes on with it
+                                    playerStates.replace(playerID, State.SCORE);
+                                    break;
+                                }
+                                // only if the player's state changed since playingMatch(); the rest of the batch, 
+                                // as far as it is played before the match ends
+                                i += handlePlay(playerID, playerMatches.get(playerID), batch.subList(i, batch.size()), out);
+                                break;
+                            case SCORE:
+                                handleScore(playerID, command, out);
+                                i++;
+                                break;
+                            default:
+                                throw new AssertionError("Unexpected state encountered");
+                        }
+                    }
                 }
-                
-                if (input.equals("EXIT") && 
-                        playerStates.get(playerID) != State.PLAY && 
-                        playerStates.get(playerID) != State.WAIT) { 
+                if (exited) {
                     break;
                 }
                 
-                // Below code will only run if not in START state
-                switch (playerStates.get(playerID)) {
-                    case CHOOSE:  
-                        handleChoose(playerID, input, out);
-                        break;
-                    case WAIT:
-                        handleWait(playerID, input, out);
-                        break;
-                    case PLAY:
-                        handlePlay(playerID, input, out);
-                        break;
-                    case SCORE:
-                        handleScore(playerID, input, out);
-                        break;
-                    default:
-                        throw new AssertionError("Unexpected state encountered");
+                // wait for this player's actions to be durable before reading their next commands
+                if (matchLog != null) {
+                    try {
+                        matchLog.sync();
+                    } catch (IOException e) {
+                        System.out.println("Failed to write match log");
+                    }
                 }
             }
+        } catch (SocketException e) {
+            if (!watchdog.expired) {
+                throw e;
+            } // otherwise the watchdog closed the socket, and the player is cleaned up below
         } finally {
-            if (playerStates.getOrDefault(playerID, State.START) == State.PLAY) {
-                playerMatches.get(playerID).endGame("");
-            }
-            playerStates.remove(playerID);
-            if (playerMatches.containsKey(playerID))
-                playerMatches.remove(playerID);
-            if (inChoose.containsKey(playerID))
-                inChoose.remove(playerID);
+            watchdog.stop();
+            synchronized (this) {
+                State finalState = playerStates.getOrDefault(playerID, State.START);
+                if (!playerID.equals(STARTING_ID) && connections.get(playerID) != socket) {
+                    // the session was resumed on another connection, which now owns it
+                } else if (movedPlayers.containsKey(playerID)) {
+                    // the player's match is on another server now, or back in heldMatches if it could not be moved
+                    movedPlayers.remove(playerID);
+                    playerStates.remove(playerID);
+                    lobbyPages.remove(playerID);
+                    connections.remove(playerID);
+                    outputs.remove(playerID);
+                    sessions.values().remove(playerID);
+                } else if (spectating.containsKey(playerID)) {
+                    spectating.remove(playerID).removeSpectator(playerID);
+                    playerStates.remove(playerID);
+                    lobbyPages.remove(playerID);
+                    connections.remove(playerID);
+                    outputs.remove(playerID);
+                    sessions.values().remove(playerID);
+                } else if (queued.containsKey(playerID)) {
+                    leaveQueue(playerID);
+                    playerStates.remove(playerID);
+                    lobbyPages.remove(playerID);
+                    connections.remove(playerID);
+                    outputs.remove(playerID);
+                    sessions.values().remove(playerID);
+                } else if (graceMillis > 0 && !watchdog.expired && (finalState == State.PLAY || finalState == State.WAIT) 
+                        && !playerMatches.get(playerID).isEnded()) {
+                    // the loop only stops in the WAIT or PLAY state if the connection was lost
+                    holdMatch(playerID);
+                } else {
+                    if (finalState == State.PLAY || finalState == State.WAIT) {
+                        Match match = playerMatches.get(playerID);
+                        synchronized (match) {
+                            log(match, MatchLog.Record.exit(match.getMatchId(), playerID));
+                            if (finalState == State.PLAY) {
+                                match.endGame(watchdog.expired ? "A player timed out" : "");
+                            }
+                        }
+                    }
+                    playerStates.remove(playerID);
+                    lobbyPages.remove(playerID);
+                    connections.remove(playerID);
+                    outputs.remove(playerID);
+                    sessions.values().remove(playerID);
+                    if (playerMatches.containsKey(playerID))
+                        playerMatches.remove(playerID);
+                    if (inChoose.containsKey(playerID))
+                        inChoose.remove(playerID);
 
-            updateChoosePlayers();
+                    updateChoosePlayers();
+                }
+            }
             
             try {
                 out.close();
@@ -252,31 +994,87 @@ public class Server {
     
     /**
      * If ID is valid, adds player id to playerStates map, updates the playerState to CHOOSE, 
-     * and sends a response to the client that shows the player is now in the CHOOSE state.
+     * and sends a response to the client that shows the player is now in the CHOOSE state, carrying 
+     * a new session token. If the ID belongs to a player whose match was recovered from the match log, 
+     * puts them back into it instead.
+     * If input is RESUME followed by the session token of a player whose match is being held, or who 
+     * is still connected from another socket, moves the player onto this connection.
+     * If input is MIGRATE, which a Router sends, hands a match over to another server with migrateMatch() if 
+     * it carries the peer secret, or refuses it, and the client stays in the START state. ADOPT is not handled 
+     * here but by receiveMatch(), since the match that follows it is read without holding the lock on this 
+     * server.
+     * If input is LOBBY with the peer secret, which a Router sends to follow the lobby, logs the router in as 
+     * Router.LOBBY_ID, without a session token, and sends it the whole lobby as LOBBY does in the CHOOSE state. 
+     * That ID is refused to anyone who sends it as a player ID, or LOBBY without the secret.
      * Otherwise, return original STARTING_ID ID and sends message to client saying the ID was invalid 
-     * because it is already in use or is not alphanumeric
+     * because it is already in use or is not alphanumeric, or that the session has expired
      * 
-     * @param input  input string from client which is the client's proposed player ID
+     * @param command  command from client which is the client's proposed player ID, RESUME and a token, 
+     *                 MIGRATE or LOBBY
      * @param out    output stream that can be used to send response objects to the client
+     * @param socket socket the client is connected on
      * @return       if the client input an unusable player ID (meaning the ID is already in use or 
-     *               the ID is not alphanumeric), this will return STARTING_ID. Otherwise, this will return 
-     *               the valid player ID that was inputed
+     *               the ID is not alphanumeric) or an expired token, this will return STARTING_ID. 
+     *               Otherwise, this will return the valid player ID that was inputed or resumed
      * @throws IOException
      */
-    private synchronized String handleStart(String input, ObjectOutputStream out) throws IOException {
-        if (input.matches(ID_REGEX) && !playerStates.containsKey(input)) {
+    private synchronized String handleStart(Command command, FrameOutputStream out, Socket socket) throws IOException {
+        final String input = command.input();
+        if (command.type() == Type.RESUME) {
+            String token = command.token();
+            String playerID = sessions.get(token);
+            if (playerID == null) {
+                out.writeObject(ServerResponse.createStart("Your session has expired. Please enter a player ID"));
+                return STARTING_ID;
+            }
+            resumeSession(playerID, token, out, socket);
+            return playerID;
+        }
+        else if (command.type() == Type.MIGRATE && !fromPeer(command)) {
+            metrics.increment("peers.refused");
+            out.writeObject(ServerResponse.createStart(NOT_A_PEER));
+            return STARTING_ID;
+        }
+        else if (command.type() == Type.MIGRATE) {
+            migrateMatch(command.matchId(), command.host(), command.port(), out);
+            return STARTING_ID;
+        }
+        else if (command.type() == Type.LOBBY && !command.isPlayerId()) {
+            if (!fromPeer(command)) {
+                metrics.increment("peers.refused");
+                out.writeObject(ServerResponse.createStart("Only the router can follow the lobby"));
+                return STARTING_ID;
+            } else if (playerStates.containsKey(Router.LOBBY_ID)) {
+                out.writeObject(ServerResponse.createStart(Router.LOBBY_ID + " player ID already in use"));
+                return STARTING_ID;
+            }
+            playerStates.put(Router.LOBBY_ID, ServerResponse.State.CHOOSE);
+            connections.put(Router.LOBBY_ID, socket);
+            outputs.put(Router.LOBBY_ID, out);
+            inChoose.put(Router.LOBBY_ID, chooseCallBack(Router.LOBBY_ID, out));
+            out.writeObject(ServerResponse.createChoose(getGames(Router.LOBBY_ID, "", LobbyIndex.EVERY_LINE)));
+            return Router.LOBBY_ID;
+        }
+        else if (input.equals(Router.LOBBY_ID)) {
+            out.writeObject(ServerResponse.createStart(input + " player ID is kept for the router"));
+            return STARTING_ID;
+        }
+        else if (command.isPlayerId() && heldMatches.containsKey(input) && !graceTimers.containsKey(input)) {
+            connections.put(input, socket);
+            outputs.put(input, out);
+            resumeMatch(input, out, newSession(input));
+            return input;
+        }
+        else if (command.isPlayerId() && !playerStates.containsKey(input) && !heldMatches.containsKey(input)) {
             String playerID = input;
             playerStates.put(playerID, ServerResponse.State.CHOOSE);
-            inChoose.put(playerID, () -> {
-                    try {
-                        out.writeObject(ServerResponse.createChoose(getGames()));
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }}); //Makes the choose state callback
-            out.writeObject(ServerResponse.createChoose(getGames()));
+            connections.put(playerID, socket);
+            outputs.put(playerID, out);
+            inChoose.put(playerID, chooseCallBack(playerID, out));
+            out.writeObject(ServerResponse.createChoose(getGames(playerID)).withToken(newSession(playerID)));
             return input;
         }
-        else if (playerStates.containsKey(input)) {
+        else if (playerStates.containsKey(input) || heldMatches.containsKey(input)) {
             out.writeObject(ServerResponse.createStart(input + " player ID already in use"));
             return STARTING_ID;
         }
@@ -286,248 +1084,990 @@ public class Server {
         }
     }
     
+    // true iff command, a MIGRATE, ADOPT or LOBBY with a secret, carries the peer secret, compared in time independent of where it differs
+    private boolean fromPeer(Command command) {
+        return peerSecret != null
+                && MessageDigest.isEqual(peerSecret.getBytes(UTF_8), command.secret().getBytes(UTF_8));
+    }
+    
+    // callback that updates the CHOOSE screen of the client on out
+    private ChooseUpdateCallBack chooseCallBack(String playerID, ObjectOutputStream out) {
+        return () -> {
+            try {
+                out.writeObject(ServerResponse.createChoose(getGames(playerID)));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }}; //Makes the choose state callback
+    }
+    
     /**
-     * Method to handle the CHOOSE state meaning this will allow players to use commands PLAY, 
-     * NEW, and EXIT. If the player uses the PLAY command, they will be added to an existing 
-     * match that already contains another player and the state will switch to PLAY. If the 
-     * player decides to make a NEW match, the player must input a valid puzzleID which will be the key 
-     * for the board in the loadedBoards map. A new match with board corresponding to
-     * the puzzle ID and will be created and this player will be moved to the WAIT state. If the player 
-     * chooses to EXIT, the session will terminate. If the command was not a command following the 6.031 project guidelines, 
-     * a message saying "Couldn't understand command" will be sent
-     * 
-     * @param playerID   ID of the player that is trying to choose between starting a new match or joining a match 
-     *                   with one player
-     * @param input      the player's input command
-     * @param out        output stream that can be used to send response objects to the client
-     * @throws TooManyPlayersException   if a player is trying to be added to a match that already contains 2 players
-     * @throws IOException     if the response could not be sent to the client
+     * @param playerID  ID of a player that is connecting
+     * @return a new session token for playerID, which they can send with RESUME to get back into their 
+     *         match after losing their connection
      */
-    private synchronized void handleChoose(String playerID, String input, ObjectOutputStream out) throws TooManyPlayersException, IOException {
-        if (input.matches(PLAY_REGEX)) {
-            String matchId = input.split(" ")[1];
-            Set<String> openGames = new HashSet<String>();
-            Set<String> allMatchIds = new HashSet<String>();
-            for (Match tempMatch : playerMatches.values()) {
-                if (tempMatch.getNumPlayers() < 2) {
-                    openGames.add(tempMatch.getMatchId());
-                }
-                allMatchIds.add(tempMatch.getMatchId());
-            }
-            if (allMatchIds.contains(matchId) && !openGames.contains(matchId)) {
-                //if the player typed in a valid match id but the game is already full
-                out.writeObject(ServerResponse.createChoose("That match already has two players", getGames()));
-                return;
-            }
-            for (String otherPlayer : playerMatches.keySet()) {
-                Match match = playerMatches.get(otherPlayer);
-                if (match.getMatchId().equals(matchId)){ //match is the match this player wants to join
-                    playerMatches.put(playerID, match);
-                    match.addPlayer(playerID, new MatchListener() {
-                        public void updateMatch(boolean firstCall) {
-                            try {
-                                String message = "";
-                                if (firstCall) {
-                                    message = "You have joined a match with " + otherPlayer;
-                                }
-                                out.writeObject(ServerResponse.createPlay(message, match.getBoard().getPlayBoard(), getClues(match), getScores(match)));
-                                playerStates.replace(playerID, ServerResponse.State.PLAY);
-                            } catch (IOException e) {
-                                e.printStackTrace();
-                            }
-                        }
-
-                        public void endMatch(String message) {
-                            try {
-                                out.writeObject(ServerResponse.createScore(message, getScores(match)));
-                                playerStates.replace(playerID, ServerResponse.State.SCORE);
-                            } catch (IOException e) {
-                                e.printStackTrace();
-                            }
-                            
-                        }
-                        }); //add player to the match object
-                    playerStates.replace(playerID, ServerResponse.State.PLAY); //change this player's state
-                    inChoose.remove(playerID);
-                    updateChoosePlayers();
-                    match.updateGame(true);
-                    return;
-                }
-            }
-            out.writeObject(ServerResponse.createChoose("Couldn't find match by that ID", getGames())); //gets here when there is no match with that match ID 
-        } else if (input.matches(NEW_REGEX)) { 
-            String[] descriptionSplit = input.split("\"");
-            String[] tokens = descriptionSplit[0].split(" ");
-            
-            if (!loadedBoards.containsKey(tokens[2])) {
-                out.writeObject(ServerResponse.createChoose("Couldn't find board by that ID", getGames()));
-                return;
-            }
-            boolean unqName = playerMatches.values().stream().filter(m -> m.getMatchId().equals(tokens[1])).count() == 0;
-            if (!unqName) {
-                out.writeObject(ServerResponse.createChoose("Please specify a unique Match ID", getGames()));
-                return;
-            }
-            
-            CrosswordBoard board = loadedBoards.get(tokens[2]);
-            Match match = new Match(tokens[1], descriptionSplit[1], board);
-            match.addPlayer(playerID, new MatchListener() {
-                public void updateMatch(boolean firstCall) {
-                    try {
-                        for (String otherPlayer : playerMatches.keySet()) {
-                            if (!otherPlayer.equals(playerID) && playerMatches.get(otherPlayer).getMatchId().equals(match.getMatchId())){
-                                String message = "";
-                                if (firstCall) {
-                                    message = otherPlayer + " has joined your match";
-                                }
-                                out.writeObject(ServerResponse.createPlay(message, playerMatches.get(otherPlayer).getBoard().getPlayBoard(), getClues(match), getScores(match)));
-                            }
-                        }
-                        //out.writeObject(ServerResponse.createPlay(board.getPlayBoard(), getClues(match), getScores(match)));
-                        playerStates.replace(playerID, ServerResponse.State.PLAY);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                }
-
-                public void endMatch(String message) {
-                    try {
-                        out.writeObject(ServerResponse.createScore(message, getScores(match)));
-                        playerStates.replace(playerID, ServerResponse.State.SCORE);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                    
-                }
-                });
-            playerMatches.put(playerID, match);
-            inChoose.remove(playerID);
-            updateChoosePlayers();
-            playerStates.replace(playerID, State.WAIT);
-            out.writeObject(ServerResponse.createWait());            
-        } else {
-            out.writeObject(ServerResponse.createChoose("Couldn't understand command", getGames()));
+    private synchronized String newSession(String playerID) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        StringBuilder token = new StringBuilder();
+        for (byte b : bytes) {
+            token.append(String.format("%02X", b));
         }
+        sessions.put(token.toString(), playerID);
+        return token.toString();
     }
     
     /**
-     * Method to handle the WAIT state. It will allow players to write EXIT which will bring the player 
-     * to the CHOOSE state. Otherwise, it will just send a message to the player to wait for another 
-     * player to join. Moving a player from the WAIT state to the PLAY state is not done here, it is done using 
-     * callbacks given as parameters to the Match
+     * Move the session of a player onto a new connection, and send the client a single response with the 
+     * current state of the player's screen. If the player is still connected from another socket, which 
+     * happens when the server has not noticed that the old connection is gone, the old socket is closed.
      * 
-     * @param playerID    ID of player
-     * @param input       string the player had sent server while in WAIT state
-     * @param out         output stream that can be used to send response objects to the client
-     * @throws IOException   if the out has troubles converting and sending the response object
+     * @param playerID  ID of the player, which must be a value of sessions
+     * @param token     the player's session token
+     * @param out       output stream that can be used to send response objects to the client
+     * @param socket    socket the client is now connected on
+     * @throws IOException   if the response could not be sent to the client
      */
-    private synchronized void handleWait(String playerID, String input, ObjectOutputStream out) throws IOException {
-        if (input.equals("EXIT")) {
-            playerMatches.remove(playerID);
-            inChoose.put(playerID, () -> {
-                try {
-                    out.writeObject(ServerResponse.createChoose(getGames()));
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }});
-            playerStates.replace(playerID, ServerResponse.State.CHOOSE);
-            updateChoosePlayers();
-            out.writeObject(ServerResponse.createChoose("You stopped waiting for another player to join. Choose a new option", getGames()));
+    private synchronized void resumeSession(String playerID, String token, FrameOutputStream out, Socket socket) throws IOException {
+        Socket previous = connections.put(playerID, socket);
+        outputs.put(playerID, out);
+        TimerWheel.Timeout timer = graceTimers.remove(playerID);
+        if (timer != null) {
+            timers.cancel(timer);
+            resumeMatch(playerID, out, token);
+            return;
         }
-        else {
-            out.writeObject(ServerResponse.createWait("Please wait for another player to join.")); //Does nothing until another player joins && new message sent w callback
+        try {
+            previous.close();
+        } catch (IOException e) {} //the old connection is being abandoned anyway
+        if (playerStates.get(playerID) == State.CHOOSE) {
+            inChoose.put(playerID, chooseCallBack(playerID, out));
+            out.writeObject(ServerResponse.createChoose("Resumed session", getGames(playerID)).withToken(token));
+        } else if (spectating.containsKey(playerID)) {
+            Match match = spectating.get(playerID);
+            out.writeObject(matchResponse(match, "Resumed watching match " + match.getMatchId()).withToken(token));
+            match.addSpectator(playerID, spectator(playerID, match, out));
+        } else if (queued.containsKey(playerID)) {
+            queued.put(playerID, out);
+            out.writeObject(ServerResponse.createWait("Resumed looking for an opponent").withToken(token));
+        } else {
+            Match match = playerMatches.get(playerID);
+            match.setListener(playerID, playListener(playerID, match, out, false));
+            out.writeObject(matchResponse(match, "Resumed match " + match.getMatchId()).withToken(token));
         }
     }
     
     /**
-     * Method to handle the PLAY state, where the player can make moves by using TRY command (to guess a word) 
-     * or CHALLENGE command (to challenge a word already placed on the board). When the board is completed correctly 
+     * Move a player whose match is being held for them back into it, in the SCORE state if the match has 
+     * ended, in the WAIT state if they are still the only player in the match and in the PLAY state otherwise
+     * 
+     * @param playerID   ID of the player, which must be a key of heldMatches
+     * @param out        output stream that can be used to send response objects to the client
+     * @param token      the player's session token
+     * @throws IOException   if the response could not be sent to the client
+     */
+    private synchronized void resumeMatch(String playerID, FrameOutputStream out, String token) throws IOException {
+        Match match = heldMatches.remove(playerID);
+        playerMatches.put(playerID, match);
+        match.setListener(playerID, playListener(playerID, match, out, false));
+        ServerResponse response = matchResponse(match, "Resumed match " + match.getMatchId());
+        playerStates.put(playerID, response.state());
+        out.writeObject(response.withToken(token));
+        // the match is listed again, or for the first time if it was adopted while its players were away
+        updateChoosePlayers();
+    }
+    
+    /**
+     * @param match    match a player is in
+     * @param message  message to show the player
+     * @return a SCORE response if match has ended, a WAIT response if it only has one player, and a PLAY 
+     *         response with the board, clues and scores otherwise
+     */
+    private synchronized ServerResponse matchResponse(Match match, String message) {
+        if (match.isEnded()) {
+            return ServerResponse.createScore(message, getScores(match));
+        } else if (match.getNumPlayers() < 2) {
+            return ServerResponse.createWait(message);
+        }
+        return ServerResponse.createPlay(message, match.getBoard().getPlayView(), getClues(match), getScores(match));
+    }
+    
+    /**
+     * Hold the match of a player who has lost their connection for graceMillis, so that they can resume 
+     * it by sending RESUME with their session token. Their screen is not updated while they are away.
+     * 
+     * @param playerID  ID of a player in the WAIT or PLAY state
+     */
+    private synchronized void holdMatch(String playerID) {
+        Match match = playerMatches.remove(playerID);
+        playerStates.remove(playerID);
+        lobbyPages.remove(playerID);
+        connections.remove(playerID);
+        outputs.remove(playerID);
+        match.setListener(playerID, heldListener());
+        heldMatches.put(playerID, match);
+        // the grace period ends on expiries, so that the timers thread never waits for the lock on this server
+        graceTimers.put(playerID, timers.schedule(() -> expiries.execute(() -> endGracePeriod(playerID)), graceMillis));
+        updateChoosePlayers();
+        System.out.println("Holding match " + match.getMatchId() + " for " + playerID);
+    }
+    
+    /**
+     * End the match of a held player who did not resume it within the grace period, the same way it 
+     * would have ended if the grace period was 0. Does nothing if the player has resumed.
+     * 
+     * @param playerID  ID of the held player
+     */
+    private synchronized void endGracePeriod(String playerID) {
+        if (graceTimers.remove(playerID) == null) {
+            return;
+        }
+        Match match = heldMatches.remove(playerID);
+        sessions.values().remove(playerID);
+        synchronized (match) {
+            if (!match.isEnded()) {
+                log(match, MatchLog.Record.exit(match.getMatchId(), playerID));
+                if (match.getNumPlayers() > 1) {
+                    match.endGame("");
+                }
+            }
+        }
+        updateChoosePlayers();
+        System.out.println(playerID + " did not resume match " + match.getMatchId());
+    }
+    
+    /**
+     * Hand the live match matchId over to the server at host:port, so that this server can be stopped or 
+     * has fewer matches to run. The match's connected players are taken out of it right away, and the match 
+     * is sent to the other server with ADOPT on a thread of its own. Once the other server has it, each of 
+     * its players and spectators is sent a MOVED response saying where it went, and every command they send 
+     * after that is answered with a MOVED response carrying it, for a Router to send on; the players of the 
+     * match that are not connected can only get back into it on the other server. If the other server does 
+     * not take the match, everything is put back the way it was, except that held players can then only get 
+     * back into it by connecting with the same player ID.
+     * 
+     * @param matchId  ID of the match to hand over
+     * @param host     host of the server to hand it to
+     * @param port     port of the server to hand it to
+     * @param out      output stream the result is sent on: a MOVED response with the address of the other 
+     *                 server if the match was handed over, otherwise a START response saying why not
+     * @throws IOException   if the response could not be sent
+     */
+    private synchronized void migrateMatch(String matchId, String host, int port, FrameOutputStream out) throws IOException {
+        Match match = null;
+        for (Match live : playerMatches.values()) {
+            if (live.getMatchId().equals(matchId) && !live.isEnded()) {
+                match = live;
+            }
+        }
+        for (Match held : heldMatches.values()) {
+            if (match == null && held.getMatchId().equals(matchId) && !held.isEnded()) {
+                match = held;
+            }
+        }
+        if (match == null) {
+            out.writeObject(ServerResponse.createStart("Couldn't find match by that ID"));
+            return;
+        }
+        final byte[] encoded;
+        // while holding the lock on the match, so no move is made between encoding it and taking its players out
+        synchronized (match) {
+            encoded = MatchSnapshot.encode(match);
+            for (String playerID : match.getPlayerIds()) {
+                if (playerMatches.remove(playerID) != null) {
+                    movedPlayers.put(playerID, MOVING);
+                    sessions.values().remove(playerID);
+                } else if (heldMatches.remove(playerID) != null) {
+                    TimerWheel.Timeout timer = graceTimers.remove(playerID);
+                    if (timer != null) {
+                        timers.cancel(timer);
+                    }
+                    sessions.values().remove(playerID);
+                }
+            }
+        }
+        updateChoosePlayers();
+        final Match moving = match;
+        final String address = host + ":" + port;
+        new Thread(() -> {
+            finishMigration(moving, address, handOver(encoded, host, port), out);
+            if (matchLog != null) {
+                try {
+                    matchLog.sync();
+                } catch (IOException e) {
+                    System.out.println("Failed to write match log");
+                }
+            }
+        }, "handover-" + matchId).start();
+    }
+    
+    /**
+     * Send a match to another server with ADOPT and the peer secret, followed by the encoded match
+     * 
+     * @param encoded  the match, encoded by MatchSnapshot.encode()
+     * @param host     host of the server to send it to
+     * @param port     port of the server to send it to
+     * @return null if the other server took the match, otherwise why it did not
+     */
+    private String handOver(byte[] encoded, String host, int port) {
+        if (encoded.length > MAX_MATCH_BYTES) {
+            return "the match is " + encoded.length + " bytes, more than the " + MAX_MATCH_BYTES + " a server adopts";
+        }
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, port), HANDOVER_TIMEOUT_MILLIS);
+            socket.setSoTimeout(HANDOVER_TIMEOUT_MILLIS);
+            ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            in.readObject(); // START
+            out.write(("ADOPT " + encoded.length + " " + peerSecret + "\n").getBytes(UTF_8));
+            out.write(encoded);
+            out.flush();
+            ServerResponse response = (ServerResponse) in.readObject();
+            if (response.state() == State.MOVED) {
+                return null;
+            }
+            return response.hasMessage() ? response.message() : "the server did not take the match";
+        } catch (IOException | ClassNotFoundException e) {
+            return "couldn't reach " + host + ":" + port + " (" + e.getMessage() + ")";
+        }
+    }
+    
+    /**
+     * Finish handing a match over to another server: tell its players and spectators where it went, or put 
+     * its players back into it if the other server did not take it, and wake up the commands waiting for it
+     * 
+     * @param match    match taken out of playerMatches and heldMatches by migrateMatch()
+     * @param address  HOST:PORT of the server it was sent to
+     * @param failure  null if that server took the match, otherwise why it did not
+     * @param out      output stream the result is sent on, see migrateMatch()
+     */
+    private synchronized void finishMigration(Match match, String address, String failure, FrameOutputStream out) {
+        final ServerResponse result;
+        if (failure == null) {
+            Set<String> players = match.getPlayerIds();
+            synchronized (match) {
+                log(match, MatchLog.Record.exit(match.getMatchId(), players.iterator().next()));
+            }
+            for (String playerID : players) {
+                if (MOVING.equals(movedPlayers.get(playerID))) {
+                    movedPlayers.put(playerID, address);
+                    tell(playerID, ServerResponse.createMoved(address));
+                }
+            }
+            for (String spectatorID : new ArrayList<>(spectating.keySet())) {
+                if (spectating.get(spectatorID) == match) {
+                    spectating.remove(spectatorID).removeSpectator(spectatorID);
+                    sessions.values().remove(spectatorID);
+                    movedPlayers.put(spectatorID, address);
+                    tell(spectatorID, ServerResponse.createMoved(address));
+                }
+            }
+            metrics.increment("matches.moved");
+            result = ServerResponse.createMoved(address);
+            System.out.println("Moved match " + match.getMatchId() + " to " + address);
+        } else {
+            for (String playerID : match.getPlayerIds()) {
+                if (MOVING.equals(movedPlayers.get(playerID))) {
+                    movedPlayers.remove(playerID);
+                    playerMatches.put(playerID, match);
+                } else if (!playerStates.containsKey(playerID) && !heldMatches.containsKey(playerID)) {
+                    match.setListener(playerID, heldListener());
+                    heldMatches.put(playerID, match);
+                }
+            }
+            result = ServerResponse.createStart("Couldn't move match " + match.getMatchId() + ", " + failure);
+            System.out.println("Couldn't move match " + match.getMatchId() + " to " + address + ", " + failure);
+        }
+        updateChoosePlayers();
+        notifyAll();
+        try {
+            out.writeObject(result);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        checkrep();
+    }
+    
+    /**
+     * Send a response to a connected player outside of the commands they send, holding the lock on their 
+     * output stream like a spectator's frames do
+     * 
+     * @param playerID  ID of a connected player
+     * @param response  response to send them
+     */
+    private synchronized void tell(String playerID, ServerResponse response) {
+        FrameOutputStream out = outputs.get(playerID);
+        synchronized (out) {
+            try {
+                out.writeObject(response);
+            } catch (IOException e) {
+                e.printStackTrace(); // the player's own thread cleans up
+            }
+        }
+    }
+    
+    /**
+     * Wait until the match of a player in movedPlayers is no longer being handed over
+     * 
+     * @param playerID  ID of a player in movedPlayers
+     * @return true iff the match was handed over, false if the player is back in it
+     * @throws InterruptedIOException  if the thread was interrupted while waiting
+     */
+    private synchronized boolean awaitHandOver(String playerID) throws InterruptedIOException {
+        try {
+            while (MOVING.equals(movedPlayers.get(playerID))) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("interrupted while " + playerID + "'s match was being moved");
+        }
+        return movedPlayers.containsKey(playerID);
+    }
+    
+    /**
+     * Read the match that follows an ADOPT command and take it over with adoptMatch() if the command carries 
+     * the peer secret and the match is at most MAX_MATCH_BYTES, or skip it and refuse it, without holding the 
+     * lock on this server while it arrives. The client stays in the START state.
+     * 
+     * @param command  ADOPT command the client sent in the START state
+     * @param in       reader of the client's commands, which has read command on its own
+     * @param out      output stream the result is sent on, see adoptMatch()
+     * @throws IOException   if the match could not be read or the response could not be sent
+     */
+    private void receiveMatch(Command command, CommandReader in, FrameOutputStream out) throws IOException {
+        if (!fromPeer(command)) {
+            in.skipBytes(command.matchBytes());
+            metrics.increment("peers.refused");
+            out.writeObject(ServerResponse.createStart(NOT_A_PEER));
+        } else if (command.matchBytes() > MAX_MATCH_BYTES) {
+            in.skipBytes(command.matchBytes());
+            out.writeObject(ServerResponse.createStart("Couldn't adopt the match, it is " + command.matchBytes() 
+                    + " bytes, more than " + MAX_MATCH_BYTES));
+        } else {
+            adoptMatch(in.readBytes(command.matchBytes()), out);
+        }
+    }
+    
+    /**
+     * Take over a live match another server is handing over with ADOPT, and hold it for its players, who get 
+     * back into it by connecting with the same player ID, like the players of a match recovered from the match 
+     * log. If matches are being logged, a snapshot is taken right away, since the moves made before the match 
+     * came here are not in this server's log. The match is refused if a match with the same ID is here, or one 
+     * of its players is connected or has a match held here.
+     * 
+     * @param encoded  the match, encoded by MatchSnapshot.encode()
+     * @param out      output stream the result is sent on: a MOVED response if the match was taken, otherwise 
+     *                 a START response saying why not
+     * @throws IOException   if the response could not be sent
+     */
+    private synchronized void adoptMatch(byte[] encoded, FrameOutputStream out) throws IOException {
+        final Match match;
+        try {
+            match = MatchSnapshot.decode(encoded, loadedBoards, heldListener());
+        } catch (IOException e) {
+            out.writeObject(ServerResponse.createStart("Couldn't adopt " + e.getMessage()));
+            return;
+        }
+        if (matchIdInUse(match.getMatchId())) {
+            out.writeObject(ServerResponse.createStart("Couldn't adopt match " + match.getMatchId() + ", that match ID is in use"));
+            return;
+        }
+        for (String playerID : match.getPlayerIds()) {
+            if (playerStates.containsKey(playerID) || heldMatches.containsKey(playerID)) {
+                out.writeObject(ServerResponse.createStart("Couldn't adopt match " + match.getMatchId() + ", " 
+                        + playerID + " player ID already in use"));
+                return;
+            }
+        }
+        // the seqs of the other server's log mean nothing in this one
+        match.setLogSeq(-1);
+        for (String playerID : match.getPlayerIds()) {
+            heldMatches.put(playerID, match);
+        }
+        if (matchLog != null) {
+            new Thread(() -> {
+                try {
+                    snapshot();
+                } catch (IOException e) {
+                    System.out.println("Unable to snapshot matches: " + e.getMessage());
+                }
+            }).start();
+        }
+        metrics.increment("matches.adopted");
+        System.out.println("Adopted match " + match.getMatchId());
+        out.writeObject(ServerResponse.createMoved(""));
+        checkrep();
+    }
+    
+    /**
+     * Make the listener that updates a player's screen during a match. Nothing is sent while the player 
+     * is still waiting for an opponent.
+     * 
+     * @param playerID   ID of the player
+     * @param match      match the player is in
+     * @param out        output stream that can be used to send response objects to the client
+     * @param joining    true iff the player is joining a match another player created
+     * @return listener for playerID to add to match
+     */
+    private MatchListener playListener(String playerID, Match match, FrameOutputStream out, boolean joining) {
+        return new MatchListener() {
+            public void updateMatch(boolean firstCall) {
+                if (match.getNumPlayers() < 2) {
+                    return;
+                }
+                try {
+                    String message = "";
+                    if (firstCall) {
+                        Set<String> opponents = match.getPlayerIds();
+                        opponents.remove(playerID);
+                        String others = String.join(", ", opponents);
+                        message = joining ? "You have joined a match with " + others : others + " has joined your match";
+                    }
+                    // before writing, so the player is in the match's state even if the write fails
+                    playerStates.replace(playerID, ServerResponse.State.PLAY);
+                    if (message.isEmpty()) {
+                        out.writeFrame(match.getPlayFrame());
+                    } else {
+                        out.writeObject(ServerResponse.createPlay(message, match.getBoard().getPlayView(), getClues(match), getScores(match)));
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+
+            public void endMatch(String message) {
+                playerStates.replace(playerID, ServerResponse.State.SCORE);
+                try {
+                    out.writeObject(ServerResponse.createScore(message, getScores(match)));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+    }
+    
+    /**
+     * Method to handle the CHOOSE state meaning this will allow players to use commands PLAY, SPECTATE, 
+     * NEW, QUICKPLAY, LIST and EXIT. If the player uses the PLAY command, they will be added to an existing 
+     * match that already contains another player and the state will switch to PLAY. With SPECTATE, they 
+     * watch a match that two players are playing, or that is held for them until they connect again, in the PLAY 
+     * state, without being able to change it. If the 
+     * player decides to make a NEW match, the player must input a valid puzzleID which will be the key 
+     * for the board in the loadedBoards map. A new match with board corresponding to
+     * the puzzle ID and will be created and this player will be moved to the WAIT state. With QUICKPLAY, 
+     * optionally followed by a puzzle ID, the player waits in the WAIT state for the matchmaker to pair them 
+     * with another player who wants the same board or any board, and a match for the two of them is started 
+     * by startQuickMatches(). LIST shows the player another page of the matches and boards they can choose, 
+     * optionally only those whose ID starts with a filter or whose description contains it, and they keep 
+     * seeing that page until they LIST again. LOBBY, which a Router sends, shows every line of the lobby 
+     * unpaginated, and keeps sending it whenever any line changes. The Router's own ID, Router.LOBBY_ID, only 
+     * follows the lobby: it can only LOBBY, LIST and EXIT. If the player 
+     * chooses to EXIT, the session will terminate. If the command was not a command following the 6.031 project guidelines, 
+     * a message saying "Couldn't understand command" will be sent
+     * 
+     * @param playerID   ID of the player that is trying to choose between starting a new match or joining a match 
+     *                   with one player
+     * @param command    the player's input command
+     * @param out        output stream that can be used to send response objects to the client
+     * @throws TooManyPlayersException   if a player is trying to be added to a match that already contains 2 players
+     * @throws IOException     if the response could not be sent to the client
+     */
+    private synchronized void handleChoose(String playerID, Command command, FrameOutputStream out) throws TooManyPlayersException, IOException {
+        if (playerID.equals(Router.LOBBY_ID) && command.type() != Type.LOBBY && command.type() != Type.LIST) {
+            out.writeObject(ServerResponse.createChoose(playerID + " player ID can only follow the lobby", getGames(playerID)));
+        } else if (command.type() == Type.PLAY) {
+            String matchId = command.matchId();
+            Set<String> openGames = new HashSet<String>();
+            Set<String> allMatchIds = new HashSet<String>();
+            Match full = null;
+            for (Match tempMatch : playerMatches.values()) {
+                if (!tempMatch.isFull() && !tempMatch.isEnded()) {
+                    openGames.add(tempMatch.getMatchId());
+                } else if (tempMatch.getMatchId().equals(matchId)) {
+                    full = tempMatch;
+                }
+                allMatchIds.add(tempMatch.getMatchId());
+            }
+            if (allMatchIds.contains(matchId) && !openGames.contains(matchId)) {
+                //if the player typed in a valid match id but the game is already full
+                String message = full.getMaxPlayers() == 2 ? "That match already has two players" : "That match is full";
+                out.writeObject(ServerResponse.createChoose(message, getGames(playerID)));
+                return;
+            }
+            for (Match match : playerMatches.values()) {
+                if (match.getMatchId().equals(matchId)){ //match is the match this player wants to join
+                    playerMatches.put(playerID, match);
+                    synchronized (match) {
+                        match.addPlayer(playerID, playListener(playerID, match, out, true)); //add player to the match object
+                        log(match, MatchLog.Record.join(matchId, playerID));
+                    }
+                    playerStates.replace(playerID, ServerResponse.State.PLAY); //change this player's state
+                    inChoose.remove(playerID);
+                    updateChoosePlayers();
+                    match.updateGame(true);
+                    return;
+                }
+            }
+            out.writeObject(ServerResponse.createChoose("Couldn't find match by that ID", getGames(playerID))); //gets here when there is no match with that match ID 
+        } else if (command.type() == Type.SPECTATE) {
+            String matchId = command.matchId();
+            // a match handed over from another server is held until its players connect again, and a spectator 
+            // following it there may arrive first
+            List<Match> live = new ArrayList<>(playerMatches.values());
+            live.addAll(heldMatches.values());
+            for (Match match : live) {
+                if (match.getMatchId().equals(matchId) && match.getNumPlayers() >= 2 && !match.isEnded()) {
+                    spectating.put(playerID, match);
+                    playerStates.replace(playerID, State.PLAY);
+                    inChoose.remove(playerID);
+                    match.addSpectator(playerID, spectator(playerID, match, out));
+                    return;
+                }
+            }
+            out.writeObject(ServerResponse.createChoose("Couldn't find a match being played by that ID", getGames(playerID)));
+        } else if (command.type() == Type.NEW) { 
+            final String matchId = command.matchId();
+            final String boardId = command.boardId();
+            
+            if (!loadedBoards.containsKey(boardId)) {
+                out.writeObject(ServerResponse.createChoose("Couldn't find board by that ID", getGames(playerID)));
+                return;
+            }
+            final int maxPlayers = command.maxPlayers();
+            final int teams = command.teams();
+            if (maxPlayers < 2 || maxPlayers > Match.MAX_PLAYERS) {
+                out.writeObject(ServerResponse.createChoose("A match can have 2 to " + Match.MAX_PLAYERS + " players", getGames(playerID)));
+                return;
+            }
+            if (teams != 0 && (teams < 2 || teams > maxPlayers)) {
+                out.writeObject(ServerResponse.createChoose("A match can have 2 to " + maxPlayers + " teams", getGames(playerID)));
+                return;
+            }
+            boolean unqName = playerMatches.values().stream().filter(m -> m.getMatchId().equals(matchId)).count() == 0
+                    && heldMatches.values().stream().filter(m -> m.getMatchId().equals(matchId)).count() == 0;
+            if (!unqName) {
+                out.writeObject(ServerResponse.createChoose("Please specify a unique Match ID", getGames(playerID)));
+                return;
+            }
+            // after the unique check, since a match handed over to this node can have an ID it does not own
+            if (Router.owner(matchId, shards) != shard) {
+                out.writeObject(ServerResponse.createChoose("That match ID belongs to another server", getGames(playerID)));
+                return;
+            }
+            
+            CrosswordBoard board = loadedBoards.get(boardId);
+            Match match = new Match(matchId, boardId, command.description(), board, maxPlayers, teams);
+            synchronized (match) {
+                match.addPlayer(playerID, playListener(playerID, match, out, false));
+                log(match, MatchLog.Record.newMatch(matchId, boardId, board.getPuzzleId(), command.description(), 
+                        playerID, maxPlayers, teams));
+            }
+            playerMatches.put(playerID, match);
+            inChoose.remove(playerID);
+            updateChoosePlayers();
+            playerStates.replace(playerID, State.WAIT);
+            out.writeObject(ServerResponse.createWait());            
+        } else if (command.type() == Type.LOBBY) {
+            out.writeObject(ServerResponse.createChoose(getGames(playerID, "", LobbyIndex.EVERY_LINE)));
+        } else if (command.type() == Type.LIST) {
+            out.writeObject(ServerResponse.createChoose(getGames(playerID, command.filter(), command.page())));
+        } else if (command.type() == Type.QUICKPLAY) {
+            final String boardId = command.boardId();
+            if (!boardId.isEmpty() && !loadedBoards.containsKey(boardId)) {
+                out.writeObject(ServerResponse.createChoose("Couldn't find board by that ID", getGames(playerID)));
+                return;
+            }
+            queued.put(playerID, out);
+            inChoose.remove(playerID);
+            playerStates.replace(playerID, State.WAIT);
+            matchmaker.enqueue(playerID, boardId.isEmpty() ? null : boardId);
+            out.writeObject(ServerResponse.createWait("Looking for an opponent"));
+        } else {
+            out.writeObject(ServerResponse.createChoose("Couldn't understand command", getGames(playerID)));
+        }
+    }
+    
+    /**
+     * Make the spectator that shows a match to a client watching it. Frames are written on the writer threads 
+     * SpectatorFeed shares between matches, and only while the client is still watching the match.
+     * 
+     * @param playerID   ID of the client
+     * @param match      match the client watches
+     * @param out        output stream that can be used to send response objects to the client
+     * @return spectator to add to match
+     */
+    private SpectatorFeed.Spectator spectator(String playerID, Match match, FrameOutputStream out) {
+        return frame -> {
+            synchronized (out) {
+                if (spectating.get(playerID) == match) {
+                    out.writeFrame(frame);
+                }
+            }
+        };
+    }
+    
+    /**
+     * Method to handle a client watching a match. EXIT or NEW MATCH stop watching and bring the client to the 
+     * CHOOSE state; every other command is refused, since spectators can not change the match.
+     * 
+     * @param playerID    ID of the client
+     * @param command     command the client sent while watching
+     * @param out         output stream that can be used to send response objects to the client
+     * @throws IOException   if the out has troubles converting and sending the response object
+     */
+    private synchronized void handleSpectate(String playerID, Command command, FrameOutputStream out) throws IOException {
+        synchronized (out) {
+            if (command.type() == Type.EXIT || command.type() == Type.NEW_MATCH) {
+                spectating.remove(playerID).removeSpectator(playerID);
+                inChoose.put(playerID, chooseCallBack(playerID, out));
+                playerStates.replace(playerID, State.CHOOSE);
+                out.writeObject(ServerResponse.createChoose("You stopped watching the match", getGames(playerID)));
+            } else {
+                Match match = spectating.get(playerID);
+                out.writeObject(matchResponse(match, "You are watching match " + match.getMatchId() 
+                        + ". Send EXIT to stop watching"));
+            }
+        }
+    }
+    
+    /**
+     * Method to handle the WAIT state. It will allow players to write EXIT which will bring the player 
+     * to the CHOOSE state, taking them out of the matchmaking queue if they were waiting in it. Otherwise, it 
+     * will just send a message to the player to wait for another player to join. Moving a player from the WAIT 
+     * state to the PLAY state is not done here, it is done using callbacks given as parameters to the Match, 
+     * and by startQuickMatches() for players in the queue
+     * 
+     * @param playerID    ID of player
+     * @param command     command the player had sent server while in WAIT state
+     * @param out         output stream that can be used to send response objects to the client
+     * @throws IOException   if the out has troubles converting and sending the response object
+     */
+    private synchronized void handleWait(String playerID, Command command, ObjectOutputStream out) throws IOException {
+        if (queued.containsKey(playerID)) {
+            if (command.type() == Type.EXIT) {
+                leaveQueue(playerID);
+                inChoose.put(playerID, chooseCallBack(playerID, out));
+                playerStates.replace(playerID, State.CHOOSE);
+                out.writeObject(ServerResponse.createChoose("You stopped looking for an opponent. Choose a new option", getGames(playerID)));
+            } else {
+                out.writeObject(ServerResponse.createWait("Please wait while an opponent is found."));
+            }
+        }
+        else if (command.type() == Type.EXIT) {
+            Match match = playerMatches.get(playerID);
+            synchronized (match) {
+                log(match, MatchLog.Record.exit(match.getMatchId(), playerID));
+            }
+            playerMatches.remove(playerID);
+            updateChoosePlayers(); // before the player is in inChoose, since they are sent the lobby below
+            inChoose.put(playerID, chooseCallBack(playerID, out));
+            playerStates.replace(playerID, ServerResponse.State.CHOOSE);
+            out.writeObject(ServerResponse.createChoose("You stopped waiting for another player to join. Choose a new option", getGames(playerID)));
+        }
+        else {
+            out.writeObject(ServerResponse.createWait("Please wait for another player to join.")); //Does nothing until another player joins && new message sent w callback
+        }
+    }
+    
+    /**
+     * Start a match for each pair of players the matchmaker has paired, on the board they asked for, or a 
+     * random loaded board if neither asked for one, and move both players to the PLAY state. A player whose 
+     * opponent left the queue after they were paired goes back into the queue. Players whose board is no 
+     * longer loaded go back to the CHOOSE state.
+     * 
+     * @param pairs  players paired by the matchmaker in one batch
+     */
+    private synchronized void startQuickMatches(List<Matchmaker.Pair> pairs) {
+        for (Matchmaker.Pair pair : pairs) {
+            List<String> players = List.of(pair.first(), pair.second());
+            if (!queued.containsKey(pair.first()) || !queued.containsKey(pair.second())) {
+                for (String player : players) {
+                    if (queued.containsKey(player)) {
+                        matchmaker.enqueue(player, pair.boardOf(player));
+                    }
+                }
+                continue;
+            }
+            String boardId = pair.board();
+            if (boardId == null && !loadedBoards.isEmpty()) {
+                List<String> boards = new ArrayList<>(loadedBoards.keySet());
+                boardId = boards.get(random.nextInt(boards.size()));
+            }
+            if (boardId == null || !loadedBoards.containsKey(boardId)) {
+                for (String player : players) {
+                    FrameOutputStream out = leaveQueue(player);
+                    inChoose.put(player, chooseCallBack(player, out));
+                    playerStates.replace(player, State.CHOOSE);
+                    try {
+                        out.writeObject(ServerResponse.createChoose("That board is no longer available", getGames(player)));
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+                continue;
+            }
+            startQuickMatch(pair.first(), pair.second(), boardId);
+        }
+        updateChoosePlayers();
+        checkrep();
+    }
+    
+    /**
+     * Start a match for two players waiting in the queue, as if first had made it with NEW and second had 
+     * joined it with PLAY
+     * 
+     * @param first    ID of a player in queued
+     * @param second   ID of another player in queued
+     * @param boardId  key of the board to play in loadedBoards
+     */
+    private synchronized void startQuickMatch(String first, String second, String boardId) {
+        String matchId = QUICK_MATCH_PREFIX + quickMatches.incrementAndGet();
+        while (matchIdInUse(matchId) || Router.owner(matchId, shards) != shard) {
+            matchId = QUICK_MATCH_PREFIX + quickMatches.incrementAndGet();
+        }
+        FrameOutputStream firstOut = leaveQueue(first);
+        FrameOutputStream secondOut = leaveQueue(second);
+        Match match = new Match(matchId, boardId, QUICK_MATCH_DESCRIPTION, loadedBoards.get(boardId));
+        try {
+            synchronized (match) {
+                match.addPlayer(first, playListener(first, match, firstOut, false));
+                log(match, MatchLog.Record.newMatch(matchId, boardId, match.getBoard().getPuzzleId(), 
+                        QUICK_MATCH_DESCRIPTION, first, 2, 0));
+                playerMatches.put(first, match);
+                playerMatches.put(second, match);
+                match.addPlayer(second, playListener(second, match, secondOut, true));
+                log(match, MatchLog.Record.join(matchId, second));
+            }
+        } catch (TooManyPlayersException e) {
+            throw new AssertionError("a new match has room for two players", e);
+        }
+        playerStates.replace(first, State.PLAY);
+        playerStates.replace(second, State.PLAY);
+        metrics.increment("matchmaking.matches");
+    }
+    
+    /**
+     * @param matchId  a match ID
+     * @return true iff a match being played or held has the ID matchId
+     */
+    private synchronized boolean matchIdInUse(String matchId) {
+        return playerMatches.values().stream().anyMatch(m -> m.getMatchId().equals(matchId))
+                || heldMatches.values().stream().anyMatch(m -> m.getMatchId().equals(matchId));
+    }
+    
+    /**
+     * Take a player out of the matchmaking queue
+     * 
+     * @param playerID  ID of a player in queued
+     * @return the output stream the player is connected on
+     */
+    private synchronized FrameOutputStream leaveQueue(String playerID) {
+        matchmaker.cancel(playerID);
+        return queued.remove(playerID);
+    }
+    
+    /**
+     * Find the match whose moves a player's next commands are, without taking the lock on this server. The 
+     * player's state can change right after, so handlePlay() checks it again while holding the lock on the match.
+     * 
+     * @param playerID  ID of a connected player, or STARTING_ID
+     * @return the live match playerID is playing, or null if their commands are for another state or must be 
+     *         handled while holding the lock on this server
+     */
+    private Match playingMatch(String playerID) {
+        if (playerID.equals(STARTING_ID) || movedPlayers.containsKey(playerID) || spectating.containsKey(playerID) 
+                || playerStates.get(playerID) != State.PLAY) {
+            return null;
+        }
+        Match match = playerMatches.get(playerID);
+        return match == null || match.isEnded() ? null : match;
+    }
+    
+    /**
+     * Method to handle the PLAY state, where the player can make moves by using TRY command (to guess a word) 
+     * or CHALLENGE command (to challenge a word already placed on the board), and ask with the HINT command for 
+     * words that fit a word of the board, which changes nothing. When the board is completed correctly 
      * or either player uses the EXIT command, this method will automatically transition the player from the 
      * PLAY state to the SCORE state.
+     * Commands the player sent together are applied in order until the match ends, and answered with a single 
+     * response showing the board after the last of them, carrying the result of each one if there were several. 
+     * The other players' screens are updated once.
+     * Called without the lock on this server: moves are applied while holding the lock on match only, so moves in 
+     * different matches are made in parallel, and hints are found without holding any lock, so they never hold 
+     * up the moves of the match.
      * 
      * @param playerID   ID of the player that is playing the match 
-     * @param input      the move the player wants to make
+     * @param match      the match playerID was playing when their state was last checked
+     * @param commands   the moves the player wants to make, in the order they were sent, at least one
      * @param out        output stream that can be used to send response objects to the client
+     * @return the number of commands that were applied, at least 1 unless the match had already ended or the 
+     *         player is no longer playing it. The rest were sent after the match ended, or after the player left 
+     *         it while a hint was found, and are for the state the player is in now
      * @throws IOException   if the out has troubles converting and sending the response object
      */
-    private synchronized void handlePlay(String playerID, String input, ObjectOutputStream out) throws IOException {
-        
-        String[] tokens = input.split(" ");
-        Match match = playerMatches.get(playerID);
-        CrosswordBoard board = match.getBoard();
-        if (input.matches("TRY " + IDWORD_REGEX)) {
-            String id = tokens[1];
-            String word = tokens[2];
-            Outcome outcome = board.tryWord(id, word, playerID);
-            match.updateGame(false);
-            System.out.println(outcome);
-            switch (outcome){
-                case SUCCESS:
-                    out.writeObject(ServerResponse.createPlay("successfully placed word "+word,board.getPlayBoard(), getClues(match), getScores(match)));
-                    break;
-                case CONFLICT:
-                    out.writeObject(ServerResponse.createPlay(word+" conflicts with another word already on the board",board.getPlayBoard(), getClues(match), getScores(match)));
-                    break;
-                case WORD_OWNED:
-                    out.writeObject(ServerResponse.createPlay("Opponent has already placed a word at "+ id,board.getPlayBoard(), getClues(match), getScores(match)));
-                    break;
-                case WRONG_LENGTH:
-                    out.writeObject(ServerResponse.createPlay(word + " is incorrect length",board.getPlayBoard(), getClues(match), getScores(match)));
-                    break;
-                case CONFIRMED:
-                    out.writeObject(ServerResponse.createPlay("the word at "+id+" has already been confirmed",board.getPlayBoard(), getClues(match), getScores(match)));
-                    break;
-                case FINISHED:
-                    match.endGame("Congrats! All correct words were placed on the board!");
-                    break;
-                case NONEXISTENT:
-                    out.writeObject(ServerResponse.createPlay(id+" is a nonexistant ID",board.getPlayBoard(), getClues(match), getScores(match)));
-                    break;
-                default:
-                    out.writeObject(ServerResponse.createPlay(""+ id,board.getPlayBoard(), getClues(match), getScores(match)));
-                    break;
-            }            
-        }
-        else if (input.matches("CHALLENGE " + IDWORD_REGEX)){
-            String id = tokens[1];
-            String word = tokens[2];
-            Outcome outcome = board.tryChallenge(id, word, playerID);
-            match.updateGame(false);
-            switch (outcome){
-                case SUCCESS:
-                    out.writeObject(ServerResponse.createPlay("successfully removed previous word and replaced with "+word,board.getPlayBoard(), getClues(match), getScores(match)));
-                    break;
-                case FAILED: 
-                    out.writeObject(ServerResponse.createPlay("your challenge was unsuccesful",board.getPlayBoard(), getClues(match), getScores(match)));
-                    break;
-                case SAME_WORD:
-                    out.writeObject(ServerResponse.createPlay("you challenged with the same word that was on the board",board.getPlayBoard(), getClues(match), getScores(match)));
-                    break;
-                case CANT_CHALLENGE:
-                    out.writeObject(ServerResponse.createPlay("you have challenged your own word or there is no word at "+id,board.getPlayBoard(), getClues(match), getScores(match)));
-                    break;
-                case CONFIRMED:
-                    out.writeObject(ServerResponse.createPlay("the word at "+id+" has already been confirmed",board.getPlayBoard(), getClues(match), getScores(match)));
-                    break;
-                case WRONG_LENGTH:
-                    out.writeObject(ServerResponse.createPlay(word + " is incorrect length",board.getPlayBoard(), getClues(match), getScores(match)));
-                    break;
-                case FINISHED:
-                    match.endGame("Congrats! All correct words were placed on the board!");
-                    break;
-                case NONEXISTENT:
-                    out.writeObject(ServerResponse.createPlay(id+" is a nonexistant ID",board.getPlayBoard(), getClues(match), getScores(match)));
-                    break;
-                default:
-                    out.writeObject(ServerResponse.createPlay("Opponent has already placed a word at "+ id,board.getPlayBoard(), getClues(match), getScores(match)));
-                    break;
+    private int handlePlay(String playerID, Match match, List<Command> commands, ObjectOutputStream out) throws IOException {
+        assert !commands.isEmpty();
+        // results.get(i) is the result of commands.get(i)
+        final List<String> results = new ArrayList<>();
+        boolean moved = false;
+        while (true) {
+            synchronized (match) {
+                // the player may have left the match, or had it handed over, since their state was checked
+                if (playerMatches.get(playerID) != match || playerStates.get(playerID) != State.PLAY) {
+                    return results.size();
+                }
+                moved |= playMoves(playerID, match, commands, results);
+                if (match.isEnded()) {
+                    return results.size();
+                }
+                if (results.size() == commands.size()) {
+                    if (moved) {
+                        match.updateOpponents(playerID);
+                    }
+                    final String result = results.get(results.size() - 1);
+                    final ServerResponse response = ServerResponse.createPlay(result, match.getBoard().getPlayView(), 
+                            getClues(match), getScores(match));
+                    if (results.size() > 1) {
+                        final List<String> lines = new ArrayList<>();
+                        for (int i = 0; i < results.size(); i++) {
+                            lines.add(commands.get(i).input() + ": " + results.get(i));
+                        }
+                        out.writeObject(response.withResults(lines));
+                    } else {
+                        out.writeObject(response);
+                    }
+                    return results.size();
+                }
             }
+            // the next command is a HINT, which changes nothing
+            results.add(hintResult(match, commands.get(results.size()).wordId()));
         }
-        else if (input.equals("EXIT")) {
-            //initiate callback to make all players move to SCORE state
-            match.endGame("A player left the match");
-        } else {
-            out.writeObject(ServerResponse.createPlay("Unparsable command", board.getPlayBoard(), getClues(match), getScores(match)));
+    }
+    
+    /*
+     * Apply commands from the first without a result in results, adding the result of each, until the match ends 
+     * or the next is a HINT. Called while holding the lock on match, and playerID is playing it.
+     * Returns whether any of them was a move on the board.
+     */
+    private boolean playMoves(String playerID, Match match, List<Command> commands, List<String> results) {
+        boolean moved = false;
+        while (results.size() < commands.size() && !match.isEnded()) {
+            Command command = commands.get(results.size());
+            String result = "";
+            if (command.type() == Type.TRY) {
+                String id = command.wordId();
+                String word = command.word();
+                Outcome outcome = match.tryWord(playerID, id, word);
+                if (outcome == Outcome.SUCCESS || outcome == Outcome.FINISHED) {
+                    log(match, MatchLog.Record.tryWord(match.getMatchId(), playerID, id, word));
+                }
+                System.out.println(outcome);
+                moved = true;
+                result = tryResult(outcome, id, word);
+                if (outcome == Outcome.FINISHED) {
+                    match.endGame(result);
+                }
+            }
+            else if (command.type() == Type.CHALLENGE) {
+                String id = command.wordId();
+                String word = command.word();
+                Outcome outcome = match.tryChallenge(playerID, id, word);
+                if (outcome == Outcome.SUCCESS || outcome == Outcome.FAILED || outcome == Outcome.FINISHED) {
+                    log(match, MatchLog.Record.challenge(match.getMatchId(), playerID, id, word));
+                }
+                moved = true;
+                result = challengeResult(outcome, id, word);
+                if (outcome == Outcome.FINISHED) {
+                    match.endGame(result);
+                }
+            }
+            else if (command.type() == Type.HINT) {
+                break;
+            }
+            else if (command.type() == Type.EXIT) {
+                //initiate callback to make all players move to SCORE state
+                log(match, MatchLog.Record.exit(match.getMatchId(), playerID));
+                match.endGame("A player left the match");
+            } else {
+                result = "Unparsable command";
+            }
+            results.add(result);
+        }
+        return moved;
+    }
+    
+    /**
+     * @param outcome  outcome of a TRY command
+     * @param id       word ID the player tried
+     * @param word     word the player tried
+     * @return the message describing outcome to the player
+     */
+    private static String tryResult(Outcome outcome, String id, String word) {
+        switch (outcome){
+            case SUCCESS:
+                return "successfully placed word "+word;
+            case CONFLICT:
+                return word+" conflicts with another word already on the board";
+            case WORD_OWNED:
+                return "Opponent has already placed a word at "+ id;
+            case WRONG_LENGTH:
+                return word + " is incorrect length";
+            case CONFIRMED:
+                return "the word at "+id+" has already been confirmed";
+            case FINISHED:
+                return "Congrats! All correct words were placed on the board!";
+            case NONEXISTENT:
+                return id+" is a nonexistant ID";
+            default:
+                return ""+ id;
+        }
+    }
+    
+    /**
+     * @param match   match the player asking for a hint is playing
+     * @param id      word ID the player asked for a hint for
+     * @return the message showing the player the words that fit id, or why there are none; found without 
+     *         holding any lock, from the board as it is at some point during the call
+     */
+    private String hintResult(Match match, String id) {
+        if (hints == null) {
+            return "hints are not available on this server";
+        } else if (!match.hasWord(id)) {
+            return id+" is a nonexistant ID";
+        }
+        metrics.increment("hints.requested");
+        List<String> words = match.getHints(id, hints);
+        if (words.isEmpty()) {
+            return "no words fit "+id;
+        }
+        return "words that fit "+id+": "+String.join(", ", words);
+    }
+    
+    /**
+     * @param outcome  outcome of a CHALLENGE command
+     * @param id       word ID the player challenged
+     * @param word     word the player challenged with
+     * @return the message describing outcome to the player
+     */
+    private static String challengeResult(Outcome outcome, String id, String word) {
+        switch (outcome){
+            case SUCCESS:
+                return "successfully removed previous word and replaced with "+word;
+            case FAILED: 
+                return "your challenge was unsuccesful";
+            case SAME_WORD:
+                return "you challenged with the same word that was on the board";
+            case CANT_CHALLENGE:
+                return "you have challenged your own word or there is no word at "+id;
+            case CONFIRMED:
+                return "the word at "+id+" has already been confirmed";
+            case WRONG_LENGTH:
+                return word + " is incorrect length";
+            case FINISHED:
+                return "Congrats! All correct words were placed on the board!";
+            case NONEXISTENT:
+                return id+" is a nonexistant ID";
+            default:
+                return "Opponent has already placed a word at "+ id;
         }
     }
     
@@ -536,21 +2076,16 @@ public class Server {
      * the CHOOSE state, or EXIT which will terminate the connection.
      * 
      * @param playerID   id of player playing the match from this connection
-     * @param input      input command of client
+     * @param command    input command of client
      * @param out        output stream that can be used to send response objects to the client
      * @throws IOException   if the out has troubles converting and sending the response object
      */
-    private synchronized void handleScore(String playerID, String input, ObjectOutputStream out) throws IOException {
-        if (input.equals("NEW MATCH")) {
+    private synchronized void handleScore(String playerID, Command command, ObjectOutputStream out) throws IOException {
+        if (command.type() == Type.NEW_MATCH) {
             playerStates.replace(playerID, State.CHOOSE);
             playerMatches.remove(playerID); 
-            inChoose.put(playerID, () -> {
-                try {
-                    out.writeObject(ServerResponse.createChoose(getGames()));
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }});
-            out.writeObject(ServerResponse.createChoose(getGames()));
+            inChoose.put(playerID, chooseCallBack(playerID, out));
+            out.writeObject(ServerResponse.createChoose(getGames(playerID)));
         } else {
             Match match = playerMatches.get(playerID);
             out.writeObject(ServerResponse.createScore("Unknown command", getScores(match)));
@@ -558,65 +2093,243 @@ public class Server {
     }
     
     /**
-     * method to update all players in the CHOOSE state. Used when new matches are created, or when matches reach 
-     * have two players so they can no longer be joined
+     * method to update the players in the CHOOSE state whose page of the lobby has changed. Used when new matches 
+     * are created, when matches reach have two players so they can no longer be joined, and when boards are 
+     * loaded or unloaded. Players viewing a page that none of the changes since the last update show up on 
+     * are not sent anything.
      */
     private synchronized void updateChoosePlayers() {
-        for (ChooseUpdateCallBack c : inChoose.values()) {
-            c.call();
+        syncLobbyMatches();
+        List<LobbyIndex.Listing> changes = lobby.drainChanges();
+        if (changes.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<String, ChooseUpdateCallBack> choosing : inChoose.entrySet()) {
+            LobbyIndex.Page page = lobbyPages.get(choosing.getKey());
+            if (page == null || page.affectedBy(changes)) {
+                metrics.increment("lobby.updates");
+                choosing.getValue().call();
+            } else {
+                metrics.increment("lobby.unchanged");
+            }
         }
     }
     
     /**
-     * method to generate a response for CHOOSE. Will return all available loaded boards in format
-     * "Board: loadedBoards[i] loadedBoard[i].description()" where loadedBoards[i] is the board's name, and all open matches (matches 
-     * with only one player) in the format "Match: matches[i] matches[i].description()" where matches[i] represent the matches 
-     * from the values of playerMatches that contain only one player
-     * 
-     * @return ServerResponse with state = CHOOSE and list of available games & boards
+     * Bring the open and live matches listed in lobby up to date with the matches of playerMatches. Open matches 
+     * (matches that can still be joined) are listed as "Match: matchId "description"". Matches for more than two 
+     * players are open until they are full, and say how many players they have as " (n/max players)" after 
+     * their description. Matches being played by two or more players, which can be watched, are listed as 
+     * "Live: matchId "description" (n watching)"
      */
-    private synchronized List<String> getGames() {
-        List<String> availGames = new ArrayList<String>();
-        for (Match tempMatch: playerMatches.values()) {
-            if (tempMatch.getNumPlayers() == 1) {
-                availGames.add("Match: " + tempMatch.getMatchId() + " \"" + tempMatch.getDescription() + "\"");
+    private synchronized void syncLobbyMatches() {
+        Set<String> open = new HashSet<>();
+        Set<String> live = new HashSet<>();
+        for (Match tempMatch : playerMatches.values()) {
+            String matchId = tempMatch.getMatchId();
+            if (!tempMatch.isFull() && !tempMatch.isEnded() && open.add(matchId)) {
+                String players = tempMatch.getMaxPlayers() == 2 ? "" 
+                        : " (" + tempMatch.getNumPlayers() + "/" + tempMatch.getMaxPlayers() + " players)";
+                lobby.put(LobbyIndex.Kind.OPEN, matchId, tempMatch.getDescription(), 
+                        "Match: " + matchId + " \"" + tempMatch.getDescription() + "\"" + players);
+            }
+            if (tempMatch.getNumPlayers() > 1 && !tempMatch.isEnded() && live.add(matchId)) {
+                lobby.put(LobbyIndex.Kind.LIVE, matchId, tempMatch.getDescription(), "Live: " + matchId + " \"" 
+                        + tempMatch.getDescription() + "\" (" + tempMatch.getNumSpectators() + " watching)");
             }
         }
-        for (String boardID : loadedBoards.keySet()) {
-            availGames.add("Board: " + boardID + " \"" + loadedBoards.get(boardID).getDescription() + "\"");
+        for (String matchId : lobby.ids(LobbyIndex.Kind.OPEN)) {
+            if (!open.contains(matchId)) {
+                lobby.remove(LobbyIndex.Kind.OPEN, matchId);
+            }
+        }
+        for (String matchId : lobby.ids(LobbyIndex.Kind.LIVE)) {
+            if (!live.contains(matchId)) {
+                lobby.remove(LobbyIndex.Kind.LIVE, matchId);
+            }
         }
-        return availGames;
+    }
+    
+    /**
+     * method to generate the list of games for a CHOOSE response: the page of the lobby that playerID last 
+     * asked for with LIST, or the first page of every open match, live match and loaded board if they have 
+     * not asked for one. The page is remembered as the one shown to playerID.
+     * 
+     * @param playerID  ID of a player in the CHOOSE state
+     * @return lines of the page, see LobbyIndex.Page.lines()
+     */
+    private synchronized List<String> getGames(String playerID) {
+        LobbyIndex.Page viewing = lobbyPages.get(playerID);
+        return viewing == null ? getGames(playerID, "", 1) : getGames(playerID, viewing.filter(), viewing.number());
+    }
+    
+    /**
+     * method to generate the list of games for a CHOOSE response from a page of the lobby, and remember it as 
+     * the page shown to playerID
+     * 
+     * @param playerID  ID of a player in the CHOOSE state
+     * @param filter    only list matches and boards whose ID starts with filter or whose description contains 
+     *                  it, "" for all of them
+     * @param number    number of the page, >= 1
+     * @return lines of the page, see LobbyIndex.Page.lines()
+     */
+    private synchronized List<String> getGames(String playerID, String filter, int number) {
+        syncLobbyMatches();
+        LobbyIndex.Page page = lobby.page(filter, number);
+        lobbyPages.put(playerID, page);
+        return page.lines();
     }
     
     /**
      * get the scores of player in match in form [player : score]
      * @param match   match you want to get the player scores from
      * @return  list where each element is the id and score (given in the format above)
-     *          of a player
+     *          of a player, shared by every response until the scores change
      */
-    private synchronized List<String> getScores(Match match) {
-        List<String> scores = new ArrayList<String>();
-        for (String id : playerMatches.keySet()) { 
-            if (playerMatches.get(id).getMatchId() == match.getMatchId()) {
-                scores.add(id + ": "+ match.getBoard().showScore(id));
-            }
-        }
-        return scores;
+    private List<String> getScores(Match match) {
+        return match.getScoreLines();
     }
     
     /**
      * get all the clues as strings for a match in the format [word_ID : clue] for all word IDs
      * 
      * @param match  match that you want to get all the clues for
-     * @return   list of clues where each element is one clue given in format above
+     * @return   list of clues where each element is one clue given in format above, shared by every response
      */
-    private synchronized List<String> getClues(Match match){
-        List<String> clues = new ArrayList<String>();
-        for (String id : match.getBoard().getClues().keySet()) {
-            clues.add(id + ": " + match.getBoard().getClues().get(id));
-        }
-        return clues;
+    private List<String> getClues(Match match){
+        return match.getClueLines();
     }
     
+    /**
+     * Watches one connection on the timers wheel, and closes its socket once the client has sent nothing 
+     * for longer than its state allows or a write to it has been stuck for too long. Checks are rescheduled 
+     * for when the connection could next expire, and at least every MAX_CHECK_MILLIS, since the player's 
+     * state can change without them sending anything.
+     */
+    private class Watchdog {
+        private final Socket socket;
+        private volatile long lastRead = System.nanoTime();
+        private volatile long writeStarted = 0;
+        private volatile String playerID = STARTING_ID;
+        private volatile boolean expired = false;
+        private volatile boolean stopped = false;
+        private TimerWheel.Timeout check;
+        
+        /*
+         * AF(socket, lastRead, writeStarted, playerID, expired, stopped, check) = watches the connection on socket 
+         *      of player playerID, who last sent a command at System.nanoTime() lastRead and has a write stuck 
+         *      since writeStarted, or none in progress if 0. The connection was closed for a timeout iff 
+         *      expired, and is checked by check until stopped.
+         * RI: true
+         * SRE: fields are private and only used by the server
+         * Thread Safety: lastRead, writeStarted and playerID are set by the connection's thread and read by the 
+         *      timers thread, and are volatile. check is only accessed while holding the lock on this
+         */
+        
+        Watchdog(Socket socket) {
+            this.socket = socket;
+        }
+        
+        // start checking the connection, unless no timeout is set
+        synchronized void start() {
+            if (!timeouts.isNone()) {
+                check = timers.schedule(this::check, MAX_CHECK_MILLIS);
+            }
+        }
+        
+        // stop checking the connection
+        synchronized void stop() {
+            stopped = true;
+            if (check != null) {
+                timers.cancel(check);
+            }
+        }
+        
+        // timers thread: close the connection if it has expired, otherwise check again later
+        private synchronized void check() {
+            if (stopped) {
+                return;
+            }
+            final long now = System.nanoTime();
+            final String id = playerID;
+            final State state = id.equals(STARTING_ID) ? State.START : playerStates.getOrDefault(id, State.START);
+            long next = MAX_CHECK_MILLIS;
+            
+            // spectators only watch, so they are never idle
+            final long idle = spectating.containsKey(id) ? 0 : timeouts.idleMillis(state);
+            if (idle > 0) {
+                long idleFor = TimeUnit.NANOSECONDS.toMillis(now - lastRead);
+                if (idleFor >= idle) {
+                    expire("timeouts.idle." + state, id + " sent nothing for " + idleFor + " ms in " + state);
+                    return;
+                }
+                next = Math.min(next, idle - idleFor);
+            }
+            
+            final long stall = timeouts.writeStallMillis();
+            final long started = writeStarted;
+            if (stall > 0 && started != 0) {
+                long stuckFor = TimeUnit.NANOSECONDS.toMillis(now - started);
+                if (stuckFor >= stall) {
+                    expire("timeouts.write_stall", id + " has not read for " + stuckFor + " ms");
+                    return;
+                }
+                next = Math.min(next, stall - stuckFor);
+            }
+            check = timers.schedule(this::check, next);
+        }
+        
+        // close the connection, which makes its thread clean up the player like EXIT
+        private void expire(String counter, String reason) {
+            expired = true;
+            metrics.increment(counter);
+            System.out.println("Timed out: " + reason);
+            try {
+                socket.close();
+            } catch (IOException e) {} //the connection is being abandoned anyway
+        }
+    }
     
+    /**
+     * Output stream that tells a Watchdog when a write to the client starts and finishes, so that a write 
+     * blocked by a client that is not reading can be found
+     */
+    private static class StallDetectingOutputStream extends FilterOutputStream {
+        private final Watchdog watchdog;
+        
+        StallDetectingOutputStream(OutputStream out, Watchdog watchdog) {
+            super(out);
+            this.watchdog = watchdog;
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            watchdog.writeStarted = System.nanoTime();
+            try {
+                out.write(b);
+            } finally {
+                watchdog.writeStarted = 0;
+            }
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            watchdog.writeStarted = System.nanoTime();
+            try {
+                out.write(b, off, len);
+            } finally {
+                watchdog.writeStarted = 0;
+            }
+        }
+        
+        @Override
+        public void flush() throws IOException {
+            watchdog.writeStarted = System.nanoTime();
+            try {
+                out.flush();
+            } finally {
+                watchdog.writeStarted = 0;
+            }
+        }
+    }
 }
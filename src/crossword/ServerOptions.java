@@ -0,0 +1,176 @@
+package crossword;
+
+/**
+ * Immutable settings for a server beyond its puzzle folder and port: where it logs matches, how long it holds
+ * the match of a player who lost their connection, when it gives up on clients, the words it gives hints from,
+ * and which node it is of the nodes behind a Router, with the secret they share. DEFAULT is a server that logs
+ * nothing, holds no match, never times out a client, gives no hints, and is not one of several nodes; each
+ * with method returns the same settings with one of them changed.
+ */
+public class ServerOptions {
+
+    public static final ServerOptions DEFAULT = new ServerOptions(null, 0, ConnectionTimeouts.NONE, null, 0, 1, null);
+
+    private final String stateFolder;
+    private final long graceMillis;
+    private final ConnectionTimeouts timeouts;
+    private final WordIndex words;
+    private final int shard;
+    private final int shards;
+    private final String peerSecret;
+
+    /*
+     * AF(stateFolder, graceMillis, timeouts, words, shard, shards, peerSecret) = a server that logs every
+     *      accepted action of a match to stateFolder, or nothing if it is null, holds the match of a player who
+     *      loses their connection for graceMillis, disconnects clients according to timeouts, suggests words
+     *      from words, or gives no hints if it is null, and runs as node shard of shards nodes behind a Router,
+     *      taking MIGRATE and ADOPT only with peerSecret, or never if it is null
+     * RI: graceMillis >= 0, timeouts != null, 0 <= shard < shards, peerSecret is null or a SECRET of the
+     *     Command grammar
+     * SRE: all fields are private, final and immutable
+     * Thread Safety: immutable
+     */
+
+    private ServerOptions(String stateFolder, long graceMillis, ConnectionTimeouts timeouts, WordIndex words,
+            int shard, int shards, String peerSecret) {
+        this.stateFolder = stateFolder;
+        this.graceMillis = graceMillis;
+        this.timeouts = timeouts;
+        this.words = words;
+        this.shard = shard;
+        this.shards = shards;
+        this.peerSecret = peerSecret;
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert graceMillis >= 0;
+        assert timeouts != null;
+        assert 0 <= shard && shard < shards;
+        assert peerSecret == null || isSecret(peerSecret);
+    }
+
+    // true iff secret is a SECRET of the Command grammar
+    private static boolean isSecret(String secret) {
+        return Command.parse("ADOPT 0 " + secret).type() == Command.Type.ADOPT;
+    }
+
+    /**
+     * @param stateFolder  the folder to log matches to, so they can be recovered after a restart, or null to
+     *                     not log matches
+     * @return the same settings, except for where matches are logged
+     */
+    public ServerOptions withStateFolder(String stateFolder) {
+        return new ServerOptions(stateFolder, graceMillis, timeouts, words, shard, shards, peerSecret);
+    }
+
+    /**
+     * @param graceMillis  how long to hold the match of a disconnected player, 0 to end it immediately
+     * @return the same settings, except for the grace period
+     */
+    public ServerOptions withGraceMillis(long graceMillis) {
+        if (graceMillis < 0) {
+            throw new IllegalArgumentException("grace period must not be negative");
+        }
+        return new ServerOptions(stateFolder, graceMillis, timeouts, words, shard, shards, peerSecret);
+    }
+
+    /**
+     * @param timeouts  when to give up on a client
+     * @return the same settings, except for the timeouts
+     */
+    public ServerOptions withTimeouts(ConnectionTimeouts timeouts) {
+        if (timeouts == null) {
+            throw new IllegalArgumentException("timeouts must be given, ConnectionTimeouts.NONE for none");
+        }
+        return new ServerOptions(stateFolder, graceMillis, timeouts, words, shard, shards, peerSecret);
+    }
+
+    /**
+     * @param words  the words to suggest to a player who sends HINT, or null to not give hints
+     * @return the same settings, except for the words
+     */
+    public ServerOptions withWords(WordIndex words) {
+        return new ServerOptions(stateFolder, graceMillis, timeouts, words, shard, shards, peerSecret);
+    }
+
+    /**
+     * @param shard   number of this node, 0 <= shard < shards
+     * @param shards  number of nodes behind the Router, >= 1
+     * @return the same settings, except for which node the server is
+     */
+    public ServerOptions withShard(int shard, int shards) {
+        if (shard < 0 || shard >= shards) {
+            throw new IllegalArgumentException("node " + shard + " is not one of " + shards + " nodes");
+        }
+        return new ServerOptions(stateFolder, graceMillis, timeouts, words, shard, shards, peerSecret);
+    }
+
+    /**
+     * @param peerSecret  the secret the Router and every node share, as SECRET of the Command grammar, or null
+     *                    to never move matches onto or off the server
+     * @return the same settings, except for the peer secret
+     */
+    public ServerOptions withPeerSecret(String peerSecret) {
+        if (peerSecret != null && !isSecret(peerSecret)) {
+            throw new IllegalArgumentException("the peer secret must be letters, digits, +, / and =");
+        }
+        return new ServerOptions(stateFolder, graceMillis, timeouts, words, shard, shards, peerSecret);
+    }
+
+    /**
+     * @return the folder matches are logged to, or null if they are not logged
+     */
+    public String stateFolder() {
+        return stateFolder;
+    }
+
+    /**
+     * @return how long the match of a disconnected player is held, 0 if it is ended immediately
+     */
+    public long graceMillis() {
+        return graceMillis;
+    }
+
+    /**
+     * @return when the server gives up on a client
+     */
+    public ConnectionTimeouts timeouts() {
+        return timeouts;
+    }
+
+    /**
+     * @return the words suggested for hints, or null if no hints are given
+     */
+    public WordIndex words() {
+        return words;
+    }
+
+    /**
+     * @return number of this node, 0 <= shard() < shards()
+     */
+    public int shard() {
+        return shard;
+    }
+
+    /**
+     * @return number of nodes behind the Router, 1 if the server is not one of several nodes
+     */
+    public int shards() {
+        return shards;
+    }
+
+    /**
+     * @return the secret the Router and the nodes share, or null if matches are never moved
+     */
+    public String peerSecret() {
+        return peerSecret;
+    }
+
+    @Override
+    public String toString() {
+        return "state " + stateFolder + ", grace " + graceMillis + " ms, timeouts " + timeouts + ", "
+                + (words == null ? "no " : "") + "hints, node " + shard + " of " + shards
+                + (peerSecret == null ? "" : " with a peer secret");
+    }
+}
@@ -1,7 +1,7 @@
 package crossword;
 
 import java.io.Serializable;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -10,7 +10,7 @@ import java.util.List;
  * @author tim
  */
 public class ServerResponse implements Serializable {
-    public enum State {START, CHOOSE, WAIT, PLAY, SCORE}
+    public enum State {START, CHOOSE, WAIT, PLAY, SCORE, MOVED}
     
     private final State state;
     
@@ -31,8 +31,16 @@ public class ServerResponse implements Serializable {
     // PLAY, SCORE
     private final List<String> scores;    
     
+    // Token the client can send with RESUME to get back into its match after losing its connection.
+    // "" if the response does not carry one
+    private final String token;
+    
+    // The result of each command the response answers, in order, when it answers several sent together.
+    // empty if the response answers one command or none
+    private final List<String> results;
+    
     /*
-     * AF(state, message, availGames, charBoard, clues, scores) =
+     * AF(state, message, availGames, charBoard, clues, scores, token, results) =
      *      An object holding display data to be displayed by the client.
      *      Data available depends on the state, for each state, 
      *          fields not specified are null, except for state which is always present & nonnull
@@ -47,11 +55,20 @@ public class ServerResponse implements Serializable {
      *          message, charBoard, clues, scores
      *      SCORE 
      *          message, scores
+     *      MOVED
+     *          message, the HOST:PORT of the server the player's match moved to, "" for the same server, 
+     *          and results, the commands the player sent after it moved, which were not applied. Only a 
+     *          Router or a server handing a match over gets MOVED responses, never a client
+     *      In any state, token is the session token given to the client, or "" if none, and results 
+     *      are the results of the commands the response answers
      * RI
      *      For state s all of the fields specified in AF for s are nonnull
+     *      token and results are nonnull
      *      charBoard obeys RI of CrosswordBoard
      * Rep Exposure
-     *      All class variables are private, final and if mutable defensive copied
+     *      All class variables are private, final and if mutable defensive copied. Lists are copied with 
+     *      List.copyOf, which shares lists that are already immutable, such as the clues and scores the 
+     *      server makes once and sends in many responses
      *      
      * Thread Safety
      *      Immutable
@@ -67,12 +84,18 @@ public class ServerResponse implements Serializable {
      * @param scores s
      */
     private ServerResponse(State state, String message, List<String> availGames, List<List<CrosswordCharacter>> charBoard, List<String> clues, List<String> scores) {
+        this(state, message, availGames, charBoard, clues, scores, "", List.of());
+    }
+    
+    private ServerResponse(State state, String message, List<String> availGames, List<List<CrosswordCharacter>> charBoard, List<String> clues, List<String> scores, String token, List<String> results) {
         this.state = state;
         this.message = message;
         this.availGames = availGames;
         this.charBoard = charBoard;
         this.clues = clues;
         this.scores = scores;
+        this.token = token;
+        this.results = results;
     }
     
     /**
@@ -99,7 +122,7 @@ public class ServerResponse implements Serializable {
      * @return the specified CHOOSE response
      */
     public static ServerResponse createChoose(String message, List<String> availGames) {
-        return new ServerResponse(State.CHOOSE, message, new ArrayList<>(availGames), null, null, null);
+        return new ServerResponse(State.CHOOSE, message, List.copyOf(availGames), null, null, null);
     }
     
     /**
@@ -137,7 +160,7 @@ public class ServerResponse implements Serializable {
      * @return the specified PLAY response
      */
     public static ServerResponse createPlay(String message, List<List<CrosswordCharacter>> charBoard, List<String> clues, List<String> scores) {
-        return new ServerResponse(State.PLAY, message, null, charBoard, new ArrayList<>(clues), new ArrayList<>(scores));
+        return new ServerResponse(State.PLAY, message, null, charBoard, List.copyOf(clues), List.copyOf(scores));
     }
     
     /**
@@ -158,7 +181,7 @@ public class ServerResponse implements Serializable {
      * @return the specified SCORE response
      */
     public static ServerResponse createScore(String message, List<String> scores) {
-        return new ServerResponse(State.SCORE, message, null, null, null, new ArrayList<>(scores));
+        return new ServerResponse(State.SCORE, message, null, null, null, List.copyOf(scores));
     }
 
     /**
@@ -170,6 +193,43 @@ public class ServerResponse implements Serializable {
         return createScore("", scores);
     }
     
+    /**
+     * Generates a MOVED response
+     * @param address The HOST:PORT of the server the match moved to, "" for the server sending the response
+     * @param unapplied The commands the player sent after their match moved, which must be sent to that server
+     * @return the specified MOVED response
+     */
+    public static ServerResponse createMoved(String address, List<String> unapplied) {
+        return new ServerResponse(State.MOVED, address, null, null, null, null, "", List.copyOf(unapplied));
+    }
+    
+    /**
+     * Generates a MOVED response
+     * @param address The HOST:PORT of the server the match moved to, "" for the server sending the response
+     * @return the specified MOVED response
+     */
+    public static ServerResponse createMoved(String address) {
+        return createMoved(address, List.of());
+    }
+    
+    /**
+     * Generates a copy of this response carrying a session token
+     * @param token The token the client can send with RESUME after losing its connection
+     * @return the same response with the given token
+     */
+    public ServerResponse withToken(String token) {
+        return new ServerResponse(state, message, availGames, charBoard, clues, scores, token, results);
+    }
+    
+    /**
+     * Generates a copy of this response answering several commands sent together
+     * @param results The result of each command in a human readable format, in the order they were sent
+     * @return the same response with the given results
+     */
+    public ServerResponse withResults(List<String> results) {
+        return new ServerResponse(state, message, availGames, charBoard, clues, scores, token, List.copyOf(results));
+    }
+    
     /**
      * @return the current state
      */
@@ -193,6 +253,31 @@ public class ServerResponse implements Serializable {
         return ! message.equals("");
     }
     
+    /**
+     * @return the session token
+     * @throws NoSuchFieldError if the response does not carry a token
+     */
+    public String token() {
+        if (token.equals(""))
+            throw new NoSuchFieldError("No token present");
+        return token;
+    }
+    
+    /**
+     * @return if the response carries a session token
+     */
+    public boolean hasToken() {
+        return ! token.equals("");
+    }
+    
+    /**
+     * @return the result of each command this response answers, in the order they were sent, or an empty 
+     *         list if it answers one command or none. For MOVED, the commands that were not applied
+     */
+    public List<String> results() {
+        return Collections.unmodifiableList(results);
+    }
+    
     /**
      * @return immutable copy of the available games to join or start
      * @throws NoSuchFieldError if the response is not in the CHOOSE state
@@ -244,7 +329,9 @@ public class ServerResponse implements Serializable {
         return String.format("State: %s \n"
                             + "    Message: %s \n"
                             + "    Games: %s \n"
+                            + "    Board: %s \n"
                             + "    Clues: %s \n"
-                            + "    Scores: %s", state, message, availGames, charBoard, clues, scores);
+                            + "    Scores: %s \n"
+                            + "    Results: %s", state, message, availGames, charBoard, clues, scores, results);
     }
 }
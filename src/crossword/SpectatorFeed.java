@@ -0,0 +1,228 @@
+package crossword;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import crossword.FrameOutputStream.Frame;
+
+/**
+ * Shows a match to its spectators. Publishing a change only hands the feed the frame the match already made and
+ * schedules the work: the frame is handed to every spectator on fan-out threads, so the move that changed the
+ * match does not wait for any spectator, however many are watching.
+ *
+ * Each spectator holds only the newest frame it has not been shown yet. The fan-out threads put frames there,
+ * and a spectator with a frame waiting is scheduled once on a small pool of writer threads shared by every
+ * feed, which shows it the frame. A spectator that falls behind has its waiting frame replaced by each new one,
+ * and since every frame shows the whole match, it still ends up shown the newest. A spectator whose connection
+ * blocks holds one writer thread until it is written to or closed, so the server's write-stall timeout bounds
+ * how long stalled spectators can hold up the others once they take every writer thread.
+ */
+public class SpectatorFeed {
+
+    /**
+     * Someone watching a match
+     */
+    public interface Spectator {
+        /**
+         * Show the spectator the match as it is in frame. Called on a writer thread, one frame at a time, and
+         * may block for as long as the spectator's connection does.
+         *
+         * @param frame  the match as it is now
+         * @throws IOException if the frame could not be shown, which removes the spectator from the feed
+         */
+        void show(Frame frame) throws IOException;
+    }
+
+    private static final int FANOUT_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final Executor FANOUT = Executors.newFixedThreadPool(FANOUT_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "spectator-fanout");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /** Number of threads showing frames to the spectators of every feed */
+    static final int WRITER_THREADS = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    private static final Executor WRITERS = Executors.newFixedThreadPool(WRITER_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "spectator-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** A frame and the number of changes published up to it */
+    private static class Version {
+        private final long seq;
+        private final Frame frame;
+
+        Version(long seq, Frame frame) {
+            this.seq = seq;
+            this.frame = frame;
+        }
+    }
+
+    /** A spectator and the newest frame waiting for it */
+    private class Viewer {
+        private final String id;
+        private final Spectator spectator;
+        private final AtomicReference<Version> waiting = new AtomicReference<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        private volatile boolean closed = false;
+        private long shownSeq = -1;
+
+        Viewer(String id, Spectator spectator) {
+            this.id = id;
+            this.spectator = spectator;
+        }
+
+        // make version the frame waiting, unless a newer one is, and schedule the viewer; never blocks
+        void offer(Version version) {
+            Version replaced = waiting.getAndAccumulate(version,
+                    (old, offered) -> old != null && old.seq >= offered.seq ? old : offered);
+            if (replaced != null && replaced.seq < version.seq) {
+                skipped.incrementAndGet();
+            }
+            schedule();
+        }
+
+        // show the waiting frame on a writer thread, unless the viewer is already scheduled or closed
+        private void schedule() {
+            if (!closed && waiting.get() != null && scheduled.compareAndSet(false, true)) {
+                WRITERS.execute(this::write);
+            }
+        }
+
+        // drop the waiting frame and stop scheduling; a frame already being shown is not stopped
+        void close() {
+            closed = true;
+            waiting.set(null);
+        }
+
+        // show the waiting frame, on a writer thread, then schedule again if a newer one arrived meanwhile
+        private void write() {
+            final Version version = waiting.getAndSet(null);
+            if (version != null && !closed && version.seq > shownSeq) {
+                try {
+                    spectator.show(version.frame);
+                    shownSeq = version.seq;
+                    shown.incrementAndGet();
+                } catch (IOException e) {
+                    viewers.remove(id, this);
+                    close();
+                }
+            }
+            scheduled.set(false);
+            schedule();
+        }
+    }
+
+    private final Map<String, Viewer> viewers = new ConcurrentHashMap<>();
+    private final AtomicReference<Version> latest = new AtomicReference<>();
+    private final AtomicBoolean fanning = new AtomicBoolean(false);
+    private final AtomicLong published = new AtomicLong(0);
+    private final AtomicLong shown = new AtomicLong(0);
+    private final AtomicLong skipped = new AtomicLong(0);
+
+    /*
+     * AF(viewers, latest, fanning, published, shown, skipped) = a feed of the frames of a match to the
+     *      spectators viewers.values(), known by viewers.keys(), after the match has changed published times,
+     *      the newest frame published being latest.frame. A fan-out of latest to every viewer is waiting to run
+     *      iff fanning. shown frames have been shown to spectators, and skipped were replaced by newer ones
+     *      before they were shown. A viewer's frame waiting to be shown is waiting, and a writer thread is
+     *      about to show it, or showing it one, iff scheduled
+     * RI: published, shown, skipped >= 0; latest.seq <= published if latest is set; no viewer in viewers is
+     *     closed
+     * SRE: all fields are private and final, spectators are never given out
+     * Thread Safety: viewers is a thread safe map and every other field is atomic. A viewer's waiting and
+     *      scheduled are atomic and closed is volatile; scheduled lets only one writer thread at a time show
+     *      it frames, which is the only thread that calls its spectator or uses shownSeq, and each writer
+     *      task hands shownSeq to the next through scheduled. Frames are made by the match, under its own
+     *      lock, before they are published, so neither the fan-out nor the writer threads take any lock of
+     *      the match
+     */
+
+    /**
+     * Make a feed with no spectators
+     */
+    public SpectatorFeed() {
+    }
+
+    /**
+     * Add a spectator, and show it the match as it is now. Replaces a spectator that was already added with
+     * the same ID.
+     *
+     * @param id  ID of the spectator
+     * @param spectator  spectator to show the match to
+     * @param current  the match as it is now, which must be at least as new as the last frame published
+     */
+    public void add(String id, Spectator spectator, Frame current) {
+        Viewer viewer = new Viewer(id, spectator);
+        Viewer replaced = viewers.put(id, viewer);
+        if (replaced != null) {
+            replaced.close();
+        }
+        viewer.offer(new Version(published.get(), current));
+    }
+
+    /**
+     * Stop showing the match to a spectator. A frame that is already being shown to it is not stopped.
+     *
+     * @param id  ID of the spectator
+     * @return true iff id was a spectator
+     */
+    public boolean remove(String id) {
+        Viewer viewer = viewers.remove(id);
+        if (viewer == null) {
+            return false;
+        }
+        viewer.close();
+        return true;
+    }
+
+    /**
+     * @return number of spectators
+     */
+    public int size() {
+        return viewers.size();
+    }
+
+    /**
+     * Tell the feed the match has changed, so every spectator is shown frame. Returns without waiting for any
+     * spectator; frames published before an earlier fan-out has started are not all shown, only the newest.
+     * Callers publish the frames of one match in the order it changed, for instance while holding its lock.
+     *
+     * @param frame  the match as it is after the change
+     */
+    public void publish(Frame frame) {
+        latest.set(new Version(published.incrementAndGet(), frame));
+        if (!viewers.isEmpty() && fanning.compareAndSet(false, true)) {
+            FANOUT.execute(this::fanOut);
+        }
+    }
+
+    // hand the newest frame to every viewer, on a fan-out thread
+    private void fanOut() {
+        fanning.set(false);
+        Version version = latest.get();
+        for (Viewer viewer : viewers.values()) {
+            viewer.offer(version);
+        }
+    }
+
+    /**
+     * @return number of frames that have been shown to spectators
+     */
+    public long framesShown() {
+        return shown.get();
+    }
+
+    /**
+     * @return number of frames that were not shown to a spectator because a newer one arrived first
+     */
+    public long framesSkipped() {
+        return skipped.get();
+    }
+}
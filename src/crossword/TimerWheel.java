@@ -0,0 +1,196 @@
+package crossword;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A threadsafe hashed timer wheel: one thread runs every task scheduled on the wheel, however many there are.
+ * Time is divided into ticks of tickMillis, and a task is put in the slot of the tick it is due in, so
+ * scheduling and cancelling take constant time, and a task runs less than two ticks after it is due. Each
+ * slot is a doubly linked list threaded through its tasks, so a cancelled task is unlinked in place.
+ *
+ * Tasks run on the wheel's thread one after another, so they must be short and must not block; a task
+ * that has more to do should hand the work to another thread.
+ */
+public class TimerWheel {
+
+    /**
+     * A task scheduled on a timer wheel
+     */
+    public static class Timeout {
+        private final Runnable task;
+        private long rounds;
+        private boolean cancelled = false;
+        private boolean expired = false;
+        private Timeout prev = this;
+        private Timeout next = this;
+
+        /*
+         * AF(task, rounds, cancelled, expired, prev, next) = task due in rounds full turns of the wheel after
+         *      the wheel next reaches the slot whose list it is in, unless it was cancelled or has already run
+         *      (expired); prev and next are its neighbours in that list, or itself if it is in none. A slot's
+         *      list starts and ends at a Timeout with no task, which is never given out
+         * RI: rounds >= 0, not both cancelled and expired, prev.next == this, next.prev == this
+         * SRE: all fields are private and only changed by the wheel, task is never returned
+         * Thread Safety: all fields except task are only accessed while holding the lock on the wheel
+         */
+
+        private Timeout(Runnable task) {
+            this.task = task;
+        }
+
+        // put this at the end of the list that starts at head
+        private void linkBefore(Timeout head) {
+            prev = head.prev;
+            next = head;
+            head.prev.next = this;
+            head.prev = this;
+        }
+
+        // take this out of its list
+        private void unlink() {
+            prev.next = next;
+            next.prev = prev;
+            prev = this;
+            next = this;
+        }
+    }
+
+    private final long tickMillis;
+    private final Timeout[] slots;
+    private int current = 0;
+    private int pending = 0;
+    private boolean stopped = false;
+
+    /*
+     * AF(tickMillis, slots, current, pending, stopped) = a wheel of slots.length slots of tickMillis each,
+     *      whose hand is on slot current, where the list that starts at slots[i] holds the tasks due when the
+     *      hand next reaches i, or after more turns. pending tasks are in the lists. The wheel's thread has
+     *      stopped turning iff stopped.
+     * RI: tickMillis > 0, 0 <= current < slots.length, slots[i] has no task, every other timeout in the list
+     *     of slots[i] is neither cancelled nor expired, pending is the number of them in all the lists
+     * SRE: all fields are private, and Timeout objects given out can only be used to cancel
+     * Thread Safety: slots, current, pending, stopped and the timeouts in them are only accessed while
+     *     holding the lock on this. Tasks are run by the wheel's thread without holding the lock, so a task
+     *     can schedule or cancel other tasks.
+     */
+
+    /**
+     * Make a timer wheel and start its thread, which is a daemon so it does not keep the program running
+     *
+     * @param name        name of the wheel's thread
+     * @param tickMillis  length of a tick, the precision of the wheel, > 0
+     * @param numSlots    number of slots; tasks due within numSlots ticks need no extra turns, > 0
+     */
+    public TimerWheel(String name, long tickMillis, int numSlots) {
+        if (tickMillis <= 0 || numSlots <= 0) {
+            throw new IllegalArgumentException("tick and number of slots must be positive");
+        }
+        this.tickMillis = tickMillis;
+        this.slots = new Timeout[numSlots];
+        for (int i = 0; i < numSlots; i++) {
+            slots[i] = new Timeout(null);
+        }
+        Thread thread = new Thread(this::turn, name);
+        thread.setDaemon(true);
+        thread.start();
+        checkRep();
+    }
+
+    private synchronized void checkRep() {
+        assert tickMillis > 0;
+        assert 0 <= current && current < slots.length;
+        assert pending >= 0;
+    }
+
+    /**
+     * Run task on the wheel's thread once delayMillis have passed
+     *
+     * @param task         short, non-blocking task to run
+     * @param delayMillis  how long to wait before running it, >= 0
+     * @return handle to cancel the task with
+     */
+    public synchronized Timeout schedule(Runnable task, long delayMillis) {
+        Timeout timeout = new Timeout(task);
+        // the hand may already be part way through the current tick, so wait one more to never run early
+        long ticks = (Math.max(0, delayMillis) + tickMillis - 1) / tickMillis + 1;
+        timeout.rounds = (ticks - 1) / slots.length;
+        timeout.linkBefore(slots[(int) ((current + ticks) % slots.length)]);
+        pending++;
+        return timeout;
+    }
+
+    /**
+     * Stop a task from running, if it has not run yet
+     *
+     * @param timeout  handle of the task
+     * @return true iff the task had not run and now never will
+     */
+    public synchronized boolean cancel(Timeout timeout) {
+        if (timeout.cancelled || timeout.expired) {
+            return false;
+        }
+        timeout.cancelled = true;
+        timeout.unlink();
+        pending--;
+        return true;
+    }
+
+    /**
+     * Stop the wheel's thread. Tasks that have not run never will.
+     */
+    public synchronized void stop() {
+        stopped = true;
+    }
+
+    /**
+     * @return the number of tasks waiting to run
+     */
+    public synchronized int pending() {
+        return pending;
+    }
+
+    // wheel's thread: move the hand one slot every tick and run the tasks that are due
+    private void turn() {
+        long next = System.nanoTime();
+        while (true) {
+            next += tickMillis * 1_000_000;
+            long sleep = (next - System.nanoTime()) / 1_000_000;
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            List<Timeout> due = new ArrayList<>();
+            synchronized (this) {
+                if (stopped) {
+                    return;
+                }
+                current = (current + 1) % slots.length;
+                final Timeout head = slots[current];
+                Timeout timeout = head.next;
+                while (timeout != head) {
+                    final Timeout following = timeout.next;
+                    if (timeout.rounds == 0) {
+                        timeout.expired = true;
+                        timeout.unlink();
+                        pending--;
+                        due.add(timeout);
+                    } else {
+                        timeout.rounds--;
+                    }
+                    timeout = following;
+                }
+            }
+            for (Timeout timeout : due) {
+                try {
+                    timeout.task.run();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
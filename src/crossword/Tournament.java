@@ -0,0 +1,427 @@
+package crossword;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import crossword.Match.MatchListener;
+import crossword.Match.TooManyPlayersException;
+
+/**
+ * A threadsafe knockout tournament of two-player matches on one board. In each round the players still in the
+ * tournament, in the order of their seeds, are paired best against worst, and the winner of each match goes
+ * through to the next round: the player with the higher score on the board when the match ends, or the better
+ * seed if their scores are the same. If an odd number of players are left, the best of them goes through
+ * without playing. The tournament is over when one player is left.
+ *
+ * Every match of a round is made and started at once on the tournament's thread. Each match copies the loaded
+ * board, and the copies share its puzzle, so a round of thousands of matches starts in a fraction of a second.
+ * The tournament hears that a match has ended through the listeners of its players, on whatever thread ended
+ * it; recording the result only updates the standings, which are kept in a concurrent map, and counts the
+ * round down, and the last match of a round wakes the tournament's thread to start the next round, so nobody
+ * playing waits for a round to be made.
+ */
+public class Tournament {
+
+    /**
+     * Shows the matches of a tournament to their players
+     */
+    public interface Host {
+        /**
+         * Called on the tournament's thread for each player of each match of a round, before they are added
+         * to the match.
+         *
+         * @param playerID  ID of a player of the tournament
+         * @param match     the match they are about to play
+         * @return the listener that shows match to the player; the tournament is told when the match ends
+         *         after the listener is
+         */
+        MatchListener listener(String playerID, Match match);
+
+        /**
+         * Called on the tournament's thread once per round, after every match of the round has started
+         *
+         * @param round    number of the round, from 1
+         * @param matches  the matches of the round, which may already have ended
+         */
+        void started(int round, List<Match> matches);
+
+        /**
+         * Called on the tournament's thread once, after the last match of the tournament has ended
+         *
+         * @param winner  the player who won the tournament
+         */
+        void finished(String winner);
+    }
+
+    /**
+     * How far a player has got in the tournament
+     */
+    public static class Standing {
+        private final String player;
+        private final int seed;
+        private final int round;
+        private final int wins;
+        private final long points;
+        private final boolean out;
+
+        /*
+         * AF(player, seed, round, wins, points, out) = player, seeded seed-th from 0, has got to round round,
+         *      0 before the first round has started, and won wins matches, scoring points in all of them; out
+         *      is true iff they have lost a match
+         * RI: seed >= 0, round >= 0, 0 <= wins <= round
+         * SRE: all fields are private, final and immutable
+         * Thread Safety: immutable
+         */
+
+        private Standing(String player, int seed, int round, int wins, long points, boolean out) {
+            this.player = player;
+            this.seed = seed;
+            this.round = round;
+            this.wins = wins;
+            this.points = points;
+            this.out = out;
+            assert seed >= 0 && round >= 0 && 0 <= wins && wins <= round;
+        }
+
+        // the standing after playing a match in round, scoring score and winning it or not
+        private Standing played(int round, int score, boolean won) {
+            return new Standing(player, seed, round, won ? wins + 1 : wins, points + score, !won);
+        }
+
+        // the standing after going through round without playing
+        private Standing passed(int round) {
+            return new Standing(player, seed, round, wins + 1, points, false);
+        }
+
+        /**
+         * @return ID of the player
+         */
+        public String player() {
+            return player;
+        }
+
+        /**
+         * @return the player's place in the seeding, from 0 for the best seed
+         */
+        public int seed() {
+            return seed;
+        }
+
+        /**
+         * @return the last round the player has got to, 0 if the tournament has not started
+         */
+        public int round() {
+            return round;
+        }
+
+        /**
+         * @return the number of rounds the player has gone through, including rounds they went through
+         *         without playing
+         */
+        public int wins() {
+            return wins;
+        }
+
+        /**
+         * @return the player's scores in every match they have played, added up
+         */
+        public long points() {
+            return points;
+        }
+
+        /**
+         * @return true iff the player has lost a match, so they are out of the tournament
+         */
+        public boolean isOut() {
+            return out;
+        }
+
+        @Override public String toString() {
+            return player + ": round " + round + ", " + wins + " wins, " + points + " points" + (out ? ", out" : "");
+        }
+    }
+
+    /** A match of a round */
+    private static class Game {
+        private final Match match;
+        private final String first;
+        private final String second;
+        private final AtomicBoolean ended = new AtomicBoolean(false);
+        private volatile String winner = null;
+
+        /*
+         * AF(match, first, second, ended, winner) = the match between first, the better seed, and second;
+         *      ended is true once its result has been recorded, and winner is the player who went through,
+         *      null until then
+         * RI: first != second, winner is null or first or second
+         * SRE: used only by Tournament, which never gives it out
+         * Thread Safety: ended is atomic, so the result is recorded once, and winner is volatile
+         */
+
+        Game(Match match, String first, String second) {
+            this.match = match;
+            this.first = first;
+            this.second = second;
+        }
+    }
+
+    /** A round of the tournament */
+    private static class Round {
+        private final int number;
+        private final List<Game> games;
+        private final String bye;
+        private final AtomicInteger remaining;
+
+        /*
+         * AF(number, games, bye, remaining) = round number, with the matches games, in which bye, if not null,
+         *      goes through without playing; remaining of the games have not ended yet
+         * RI: number >= 1, 0 <= remaining <= games.size()
+         * SRE: used only by Tournament, which never gives it out
+         * Thread Safety: games is only changed before the round is shared, and remaining is atomic
+         */
+
+        Round(int number, List<Game> games, String bye) {
+            this.number = number;
+            this.games = games;
+            this.bye = bye;
+            this.remaining = new AtomicInteger(games.size());
+        }
+    }
+
+    private final String id;
+    private final String boardId;
+    private final CrosswordBoard board;
+    private final Map<String, Integer> seeds;
+    private final Host host;
+    private final Metrics metrics;
+    private final Map<String, Standing> standings = new ConcurrentHashMap<>();
+    private final Thread thread;
+    private volatile Round current = null;
+    private volatile String winner = null;
+    private volatile boolean stopped = false;
+
+    /*
+     * AF(id, boardId, board, seeds, host, metrics, standings, thread, current, winner, stopped) = the tournament
+     *      id on the board board, loaded as boardId, between the players seeds.keys(), the player p seeded
+     *      seeds[p]-th from 0. Its rounds are played on thread, which shows them to the players through host,
+     *      until one player, winner, is left or the tournament is stopped; current is the round being played,
+     *      null before the first round. standings[p] is how far p has got, and what the tournament has done is
+     *      counted in metrics
+     * RI: seeds.size() >= 2, its values are 0 .. seeds.size() - 1, standings.keys() == seeds.keys(),
+     *     winner is null or in seeds
+     * SRE: all fields are private, and final except current, winner and stopped; standings are immutable, and
+     *      the matches are only given to host
+     * Thread Safety: seeds is never changed after it is made, and standings is a concurrent map, changed only
+     *      with compute, so results recorded at once on different threads are all counted. Rounds are only
+     *      made and started on thread, which parks while the current round has matches left. The thread
+     *      ending the last match of a round unparks it after counting the round down, and an unpark is never
+     *      lost even if it comes before the thread parks. current, winner and stopped are volatile
+     */
+
+    /**
+     * Make a tournament and start its first round on the tournament's thread, which is a daemon so it does not
+     * keep the program running
+     *
+     * @param id        ID of the tournament, which starts the ID of each of its matches; match IDs are
+     *                  id + "R" + round + "M" + number, numbered from 1 in each round
+     * @param boardId   ID the board was loaded as
+     * @param board     the loaded board every match is played on; it is copied, and never played on itself
+     * @param players   IDs of the players, best seed first, at least two and no two the same
+     * @param metrics   where to count what the tournament does, see Server.metrics()
+     * @param host      shows the matches to the players
+     */
+    public Tournament(String id, String boardId, CrosswordBoard board, List<String> players, Metrics metrics,
+            Host host) {
+        if (players.size() < 2 || new HashSet<>(players).size() != players.size()) {
+            throw new IllegalArgumentException("a tournament needs at least two different players");
+        }
+        this.id = id;
+        this.boardId = boardId;
+        this.board = board;
+        this.metrics = metrics;
+        this.host = host;
+        Map<String, Integer> seeding = new HashMap<>();
+        for (String player : players) {
+            standings.put(player, new Standing(player, seeding.size(), 0, 0, 0, false));
+            seeding.put(player, seeding.size());
+        }
+        this.seeds = Collections.unmodifiableMap(seeding);
+        this.thread = new Thread(this::run, "tournament-" + id);
+        thread.setDaemon(true);
+        thread.start();
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert seeds.size() >= 2;
+        assert standings.keySet().equals(seeds.keySet());
+        assert winner == null || seeds.containsKey(winner);
+    }
+
+    /**
+     * @return the ID of the tournament
+     */
+    public String id() {
+        return id;
+    }
+
+    /**
+     * @return the number of the round being played, 0 before the first round has started
+     */
+    public int round() {
+        final Round round = current;
+        return round == null ? 0 : round.number;
+    }
+
+    /**
+     * @return the player who won the tournament, or null if it is not over
+     */
+    public String winner() {
+        return winner;
+    }
+
+    /**
+     * @return how far every player has got, those who have got further first, then those who have won more,
+     *         then those with more points, then the better seeds
+     */
+    public List<Standing> standings() {
+        List<Standing> sorted = new ArrayList<>(standings.values());
+        sorted.sort(Comparator.comparing((Standing s) -> s.out)
+                .thenComparing(Comparator.comparingInt((Standing s) -> s.round).reversed())
+                .thenComparing(Comparator.comparingInt((Standing s) -> s.wins).reversed())
+                .thenComparing(Comparator.comparingLong((Standing s) -> s.points).reversed())
+                .thenComparingInt(s -> s.seed));
+        return sorted;
+    }
+
+    /**
+     * Stop the tournament's thread. Matches already started are not ended, but no other round is started.
+     */
+    public void stop() {
+        stopped = true;
+        LockSupport.unpark(thread);
+    }
+
+    // tournament's thread: start each round once the one before it is over, until one player is left
+    private void run() {
+        List<String> players = new ArrayList<>(seeds.keySet());
+        while (!stopped) {
+            final Round round = current;
+            if (round != null && round.remaining.get() > 0) {
+                LockSupport.park(this);
+                continue;
+            }
+            if (round != null) {
+                players = through(round);
+            }
+            if (players.size() == 1) {
+                winner = players.get(0);
+                checkRep();
+                try {
+                    host.finished(winner);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+                return;
+            }
+            start(round == null ? 1 : round.number + 1, players);
+        }
+    }
+
+    // the players who went through round
+    private static List<String> through(Round round) {
+        List<String> players = new ArrayList<>();
+        if (round.bye != null) {
+            players.add(round.bye);
+        }
+        for (Game game : round.games) {
+            players.add(game.winner);
+        }
+        return players;
+    }
+
+    // make and start the matches of round number between players, best seed against worst
+    private void start(int number, List<String> players) {
+        final long begin = System.nanoTime();
+        final List<String> playing = new ArrayList<>(players);
+        playing.sort(Comparator.comparing(seeds::get));
+        final String bye = playing.size() % 2 == 1 ? playing.remove(0) : null;
+        final String description = "Tournament " + id + " round " + number;
+        final List<Game> games = new ArrayList<>(playing.size() / 2);
+        for (int i = 0; i < playing.size() / 2; i++) {
+            Match match = new Match(id + "R" + number + "M" + (i + 1), boardId, description, board);
+            games.add(new Game(match, playing.get(i), playing.get(playing.size() - 1 - i)));
+        }
+        final Round round = new Round(number, games, bye);
+        if (bye != null) {
+            standings.computeIfPresent(bye, (player, standing) -> standing.passed(number));
+        }
+        current = round;
+        final List<Match> matches = new ArrayList<>(games.size());
+        for (Game game : games) {
+            try {
+                game.match.addPlayer(game.first, listener(round, game, game.first));
+                game.match.addPlayer(game.second, listener(round, game, game.second));
+            } catch (TooManyPlayersException e) {
+                throw new AssertionError("a new match has room for two players", e);
+            }
+            matches.add(game.match);
+        }
+        metrics.increment("tournament.rounds");
+        metrics.add("tournament.matches", games.size());
+        metrics.add("tournament.start_millis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+        try {
+            host.started(number, matches);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // the host's listener for player in game, which also records the result of game once it ends
+    private MatchListener listener(Round round, Game game, String player) {
+        final MatchListener shown = host.listener(player, game.match);
+        return new MatchListener() {
+            public void updateMatch(boolean firstCall) {
+                shown.updateMatch(firstCall);
+            }
+
+            public void endMatch(String message) {
+                shown.endMatch(message);
+                ended(round, game);
+            }
+        };
+    }
+
+    /**
+     * Record the result of a match that has ended, the first time it is called for the match. Called on the
+     * thread ending the match, which may hold the lock on it, so this takes no lock and never waits.
+     *
+     * @param round  the round of game
+     * @param game   a match that has ended
+     */
+    private void ended(Round round, Game game) {
+        if (!game.ended.compareAndSet(false, true)) {
+            return;
+        }
+        final int first = game.match.getBoard().showScore(game.first);
+        final int second = game.match.getBoard().showScore(game.second);
+        final boolean upset = second > first;
+        standings.computeIfPresent(game.first, (player, standing) -> standing.played(round.number, first, !upset));
+        standings.computeIfPresent(game.second, (player, standing) -> standing.played(round.number, second, upset));
+        game.winner = upset ? game.second : game.first;
+        metrics.increment("tournament.results");
+        if (round.remaining.decrementAndGet() == 0) {
+            LockSupport.unpark(thread);
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package crossword;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * An immutable index of a word list that finds every word of a length matching a partial pattern, such as
+ * "c_t__", where '_' stands for any letter the way it does for an empty square of
+ * CrosswordBoard.getPlayBoard().
+ *
+ * The words of each length are held as a directed acyclic word graph: a trie in which every set of equal
+ * endings is stored once, so a million words take a few megabytes. The graph is kept in three flat arrays
+ * rather than in node objects, and can be written to a file and memory-mapped back without copying, so a
+ * server can load a large index at startup in the time it takes to map the file.
+ *
+ * Can also be run from the command line to build an index file from a word list.
+ */
+public class WordIndex {
+
+    public static final char ANY = '_';
+    /** allowed letters of a position that may be any letter, bit c standing for 'a' + c */
+    public static final int ALL_LETTERS = (1 << 26) - 1;
+    private static final int MAGIC = 0x43574931;
+    // words longer than this are skipped
+    private static final int MAX_LENGTH = 64;
+    // the one node with no edges, which every word of every length ends at
+    private static final int END = 0;
+
+    private final int words;
+    private final int[] roots;
+    private final IntBuffer edgeStarts;
+    private final IntBuffer edgeTargets;
+    private final ByteBuffer edgeLetters;
+
+    /*
+     * Abstraction function:
+     *  AF(words, roots, edgeStarts, edgeTargets, edgeLetters) = the words a-z spelled by every path from roots[n]
+     *      to END, for every length n with roots[n] >= 0, where the edges of node v are the indices
+     *      e in [edgeStarts[v], edgeStarts[v + 1]), each leading to node edgeTargets[e] with the letter
+     *      'a' + edgeLetters[e]; words is how many there are
+     * Rep invariant:
+     *  - edgeStarts is non-decreasing, starts at 0 and ends at the number of edges; node END has no edges
+     *  - the letters of the edges of a node are strictly increasing and in [0, 26)
+     *  - roots.length == MAX_LENGTH + 1, roots[0] == -1, and every path from roots[n] >= 0 has n edges and
+     *    ends at END
+     *  - a node's edges only lead to nodes with smaller numbers, so the graph has no cycles
+     * Safety from rep exposure:
+     *  - all fields are private and final, and no array or buffer is ever returned
+     *  - the buffers are read only by absolute index and never written after construction
+     * Thread Safety:
+     *  - immutable after construction; absolute reads of a buffer do not change its position, so any number of
+     *    threads may query the index at once
+     */
+
+    /**
+     * Make an index of a word list.
+     *
+     * @param dictionary  the words to index; case is ignored, and words with characters other than letters,
+     *                    or with more than MAX_LENGTH letters, are skipped
+     */
+    public WordIndex(Collection<String> dictionary) {
+        Map<Integer, TreeSet<String>> byLength = new HashMap<>();
+        for (String entry : dictionary) {
+            String word = entry.toLowerCase();
+            if (!word.isEmpty() && word.length() <= MAX_LENGTH && word.chars().allMatch(c -> c >= 'a' && c <= 'z')) {
+                byLength.computeIfAbsent(word.length(), length -> new TreeSet<>()).add(word);
+            }
+        }
+        Builder builder = new Builder();
+        int[] roots = new int[MAX_LENGTH + 1];
+        Arrays.fill(roots, -1);
+        int count = 0;
+        for (Map.Entry<Integer, TreeSet<String>> words : byLength.entrySet()) {
+            List<String> sorted = new ArrayList<>(words.getValue());
+            roots[words.getKey()] = builder.node(sorted, 0, 0, sorted.size());
+            count += sorted.size();
+        }
+        this.words = count;
+        this.roots = roots;
+        this.edgeStarts = IntBuffer.wrap(builder.starts.stream().mapToInt(Integer::intValue).toArray());
+        this.edgeTargets = IntBuffer.wrap(builder.targets.stream().mapToInt(Integer::intValue).toArray());
+        byte[] letters = new byte[builder.letters.size()];
+        for (int e = 0; e < letters.length; e++) {
+            letters[e] = builder.letters.get(e);
+        }
+        this.edgeLetters = ByteBuffer.wrap(letters);
+        checkRep();
+    }
+
+    // index over a graph read from a file
+    private WordIndex(int words, int[] roots, IntBuffer edgeStarts, IntBuffer edgeTargets, ByteBuffer edgeLetters) {
+        this.words = words;
+        this.roots = roots;
+        this.edgeStarts = edgeStarts;
+        this.edgeTargets = edgeTargets;
+        this.edgeLetters = edgeLetters;
+        checkRep();
+    }
+
+    private void checkRep() {
+        int nodes = edgeStarts.limit() - 1;
+        assert nodes >= 1;
+        assert edgeStarts.get(0) == 0;
+        assert edgeStarts.get(END + 1) == 0;
+        assert edgeStarts.get(nodes) == edgeTargets.limit();
+        assert edgeLetters.limit() == edgeTargets.limit();
+        assert roots.length == MAX_LENGTH + 1 && roots[0] == -1;
+        // only walk every edge, which reads the whole of a mapped file, when assertions are enabled
+        assert edgesOrdered();
+    }
+
+    // true iff every edge leads to a smaller node, and the letters of each node's edges are increasing
+    private boolean edgesOrdered() {
+        for (int v = 0; v < edgeStarts.limit() - 1; v++) {
+            if (edgeStarts.get(v) > edgeStarts.get(v + 1)) {
+                return false;
+            }
+            for (int e = edgeStarts.get(v); e < edgeStarts.get(v + 1); e++) {
+                if (edgeTargets.get(e) >= v || edgeLetters.get(e) < 0 || edgeLetters.get(e) >= 26
+                        || (e > edgeStarts.get(v) && edgeLetters.get(e - 1) >= edgeLetters.get(e))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // builds the graph one length at a time, storing each set of equal endings once
+    private static class Builder {
+        private final List<Integer> starts = new ArrayList<>(List.of(0, 0));
+        private final List<Integer> targets = new ArrayList<>();
+        private final List<Byte> letters = new ArrayList<>();
+        // the node already made for each list of edges, as {letter, target, letter, target, ...}
+        private final Map<List<Integer>, Integer> made = new HashMap<>();
+
+        // the node whose paths spell the endings from position depth of sorted[lo, hi), which share their
+        // letters before depth
+        private int node(List<String> sorted, int depth, int lo, int hi) {
+            if (depth == sorted.get(lo).length()) {
+                return END;
+            }
+            List<Integer> edges = new ArrayList<>();
+            for (int first = lo; first < hi;) {
+                char letter = sorted.get(first).charAt(depth);
+                int last = first + 1;
+                while (last < hi && sorted.get(last).charAt(depth) == letter) {
+                    last++;
+                }
+                edges.add(letter - 'a');
+                edges.add(node(sorted, depth + 1, first, last));
+                first = last;
+            }
+            Integer node = made.get(edges);
+            if (node == null) {
+                for (int k = 0; k < edges.size(); k += 2) {
+                    letters.add((byte) (int) edges.get(k));
+                    targets.add(edges.get(k + 1));
+                }
+                node = starts.size() - 1;
+                starts.add(targets.size());
+                made.put(edges, node);
+            }
+            return node;
+        }
+    }
+
+    /**
+     * @return the number of words in the index
+     */
+    public int size() {
+        return words;
+    }
+
+    /**
+     * @param word  word to look up
+     * @return true iff word, ignoring case, is in the index
+     */
+    public boolean contains(String word) {
+        int length = word.length();
+        if (length == 0 || length > MAX_LENGTH || roots[length] < 0) {
+            return false;
+        }
+        int node = roots[length];
+        for (int i = 0; i < length && node >= 0; i++) {
+            node = edge(node, Character.toLowerCase(word.charAt(i)) - 'a');
+        }
+        return node == END;
+    }
+
+    /**
+     * Find the words matching a pattern, in alphabetical order.
+     *
+     * @param pattern  as many characters as the words to find; each is a letter, which the word must have at
+     *                 that position ignoring case, or ANY, which matches any letter
+     * @return every word matching pattern, in alphabetical order
+     */
+    public List<String> match(String pattern) {
+        return match(pattern, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Find the first words matching a pattern, in alphabetical order.
+     *
+     * @param pattern  as many characters as the words to find; each is a letter, which the word must have at
+     *                 that position ignoring case, or ANY, which matches any letter
+     * @param limit    the most words to find, at least 0
+     * @return the first limit words matching pattern, in alphabetical order
+     */
+    public List<String> match(String pattern, int limit) {
+        int[] allowed = new int[pattern.length()];
+        Arrays.fill(allowed, ALL_LETTERS);
+        return match(pattern, allowed, limit);
+    }
+
+    /**
+     * Find the first words matching a pattern whose unknown letters are narrowed further, in alphabetical
+     * order. Words are pruned letter by letter as the index is walked, so narrowing a position costs nothing
+     * beyond the words it rules out.
+     *
+     * @param pattern  as many characters as the words to find; each is a letter, which the word must have at
+     *                 that position ignoring case, or ANY, which matches any letter allowed there
+     * @param allowed  for each position of pattern, the letters a word may have there if the pattern has ANY
+     *                 there, bit c standing for 'a' + c; ALL_LETTERS allows any letter
+     * @param limit    the most words to find, at least 0
+     * @return the first limit words matching pattern and allowed, in alphabetical order
+     */
+    public List<String> match(String pattern, int[] allowed, int limit) {
+        List<String> matches = new ArrayList<>();
+        int length = pattern.length();
+        if (length == 0 || length > MAX_LENGTH || roots[length] < 0 || limit <= 0) {
+            return matches;
+        }
+        char[] wanted = pattern.toLowerCase().toCharArray();
+        match(roots[length], wanted, allowed, new char[length], 0, matches, limit);
+        return matches;
+    }
+
+    // add to matches the words that follow the letters in word[0, depth) from node and match wanted[depth...]
+    // and allowed[depth...], stopping at limit words; returns false iff the limit has been reached
+    private boolean match(int node, char[] wanted, int[] allowed, char[] word, int depth, List<String> matches,
+            int limit) {
+        if (node == END) {
+            matches.add(new String(word));
+            return matches.size() < limit;
+        }
+        if (wanted[depth] != ANY) {
+            int next = edge(node, wanted[depth] - 'a');
+            word[depth] = wanted[depth];
+            return next < 0 || match(next, wanted, allowed, word, depth + 1, matches, limit);
+        }
+        for (int e = edgeStarts.get(node); e < edgeStarts.get(node + 1); e++) {
+            int letter = edgeLetters.get(e);
+            if ((allowed[depth] & (1 << letter)) == 0) {
+                continue;
+            }
+            word[depth] = (char) ('a' + letter);
+            if (!match(edgeTargets.get(e), wanted, allowed, word, depth + 1, matches, limit)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // the node the edge from node with letter leads to, or -1 if there is none
+    private int edge(int node, int letter) {
+        if (letter < 0 || letter >= 26) {
+            return -1;
+        }
+        int lo = edgeStarts.get(node);
+        int hi = edgeStarts.get(node + 1) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int found = edgeLetters.get(mid);
+            if (found < letter) {
+                lo = mid + 1;
+            } else if (found > letter) {
+                hi = mid - 1;
+            } else {
+                return edgeTargets.get(mid);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Write the index to a file that read() maps back, replacing the file atomically once it is complete.
+     *
+     * @param file  file to write
+     * @throws IOException if the file can not be written
+     */
+    public void write(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(words);
+            out.writeInt(edgeStarts.limit() - 1);
+            out.writeInt(edgeTargets.limit());
+            for (int root : roots) {
+                out.writeInt(root);
+            }
+            for (int v = 0; v < edgeStarts.limit(); v++) {
+                out.writeInt(edgeStarts.get(v));
+            }
+            for (int e = 0; e < edgeTargets.limit(); e++) {
+                out.writeInt(edgeTargets.get(e));
+            }
+            for (int e = 0; e < edgeLetters.limit(); e++) {
+                out.writeByte(edgeLetters.get(e));
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Map an index written by write() into memory. The file is not read up front: its pages are loaded as
+     * queries reach them, and stay shared with every other process mapping the same file.
+     *
+     * @param file  file to map, which must not be changed while the index is in use
+     * @return the index in file
+     * @throws IOException if the file can not be read or does not hold an index
+     */
+    public static WordIndex read(Path file) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int header = 4 + MAX_LENGTH + 1;
+        if (mapped.limit() < Integer.BYTES * header || mapped.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a word index");
+        }
+        int words = mapped.getInt(Integer.BYTES);
+        int nodes = mapped.getInt(Integer.BYTES * 2);
+        int edges = mapped.getInt(Integer.BYTES * 3);
+        long size = Integer.BYTES * ((long) header + nodes + 1 + edges) + edges;
+        if (words < 0 || nodes < 1 || edges < 0 || mapped.limit() != size) {
+            throw new IOException(file + " is not a complete word index");
+        }
+        int[] roots = new int[MAX_LENGTH + 1];
+        for (int n = 0; n <= MAX_LENGTH; n++) {
+            roots[n] = mapped.getInt(Integer.BYTES * (4 + n));
+            if (roots[n] >= nodes) {
+                throw new IOException(file + " is not a complete word index");
+            }
+        }
+        IntBuffer starts = mapped.position(Integer.BYTES * header).slice().asIntBuffer();
+        starts.limit(nodes + 1);
+        IntBuffer targets = mapped.position(Integer.BYTES * (header + nodes + 1)).slice().asIntBuffer();
+        targets.limit(edges);
+        ByteBuffer letters = mapped.position(Integer.BYTES * (header + nodes + 1 + edges)).slice();
+        return new WordIndex(words, roots, starts, targets, letters);
+    }
+
+    /**
+     * Build an index file from a word list from the command line, then print how many words it holds, how
+     * large it is, and the words matching each pattern given.
+     *
+     * @param args  a word list with one word per line, the index file to write, and optionally patterns to
+     *              look up in the new index
+     * @throws IOException if the word list can not be read or the index can not be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("expected a word list and an index file");
+        }
+        Path file = Paths.get(args[1]);
+        new WordIndex(Files.readAllLines(Paths.get(args[0]))).write(file);
+        WordIndex index = read(file);
+        System.out.println(index.size() + " words in " + Files.size(file) + " bytes");
+        for (int i = 2; i < args.length; i++) {
+            List<String> matches = index.match(args[i]);
+            System.out.println(args[i] + ": " + matches.size() + " words " + matches.subList(0,
+                    Math.min(20, matches.size())));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package crossword;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class CommandReaderTest {
+
+    /*
+     * Partition:
+     *   - complete commands available: 0, 1, more than max
+     *   - line endings: \n, \r\n, none before the client closes
+     *   - a partial command after the complete ones
+     *   - command longer than MAX_LINE_BYTES
+     *   - bytes after a command: read or skipped, partly or wholly read with it, more than MAX_LINE_BYTES, 
+     *     cut short by the client closing
+     */
+
+    @Test public void testAssertionsEnabled() {
+        assertThrows(AssertionError.class, () -> {
+            assert false;
+        }, "make sure assertions are enabled with VM argument '-ea'");
+    }
+
+    // covers 1 and more than max commands available, \n, \r\n and no line ending
+    @Test
+    public void testReadBatch() throws IOException {
+        final InputStream stream = new ByteArrayInputStream("TATUM\r\nTRY 1DOWN CAT\nTRY 1ACROSS CAB\nEXIT".getBytes(UTF_8));
+        final CommandReader reader = new CommandReader(stream);
+        assertEquals(List.of("TATUM", "TRY 1DOWN CAT"), reader.readBatch(2));
+        assertEquals("TRY 1ACROSS CAB", reader.readLine());
+        assertEquals(List.of("EXIT"), reader.readBatch(2), "last command should be returned once the client closed");
+        assertEquals(List.of(), reader.readBatch(2));
+        assertEquals(null, reader.readLine());
+    }
+
+    // covers 0 commands available, a partial command after complete ones
+    @Test
+    public void testPartialCommand() throws IOException {
+        final PipedOutputStream client = new PipedOutputStream();
+        final CommandReader reader = new CommandReader(new PipedInputStream(client));
+        client.write("TRY 1DOWN CAT\nTRY 1ACR".getBytes(UTF_8));
+        assertEquals(List.of("TRY 1DOWN CAT"), reader.readBatch(10), "should not wait for the partial command");
+
+        new Thread(() -> {
+            try {
+                Thread.sleep(100);
+                client.write("OSS CAB\nEXIT\n".getBytes(UTF_8));
+            } catch (IOException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }).start();
+        assertEquals(List.of("TRY 1ACROSS CAB", "EXIT"), reader.readBatch(10), "should wait for a complete command");
+        client.close();
+        assertEquals(List.of(), reader.readBatch(10));
+    }
+
+    // covers command longer than MAX_LINE_BYTES
+    @Test
+    public void testTooLong() {
+        final byte[] line = new byte[CommandReader.MAX_LINE_BYTES + 1];
+        Arrays.fill(line, (byte) 'A');
+        final CommandReader reader = new CommandReader(new ByteArrayInputStream(line));
+        assertThrows(IOException.class, () -> reader.readBatch(1));
+    }
+
+    // covers bytes after a command read and skipped, partly read with the command, more than MAX_LINE_BYTES, cut short
+    @Test
+    public void testReadBytes() throws IOException {
+        final byte[] match = new byte[3 * CommandReader.MAX_LINE_BYTES];
+        for (int i = 0; i < match.length; i++) {
+            match[i] = (byte) (i % 251); // holds newlines, which are not taken for the ends of commands
+        }
+        final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        sent.write(("ADOPT " + match.length + " K\n").getBytes(UTF_8));
+        sent.write(match);
+        sent.write("ADOPT 5 K\n12345EXIT\nADOPT 9 K\nabc".getBytes(UTF_8));
+        final CommandReader reader = new CommandReader(new ByteArrayInputStream(sent.toByteArray()));
+        
+        assertEquals("ADOPT " + match.length + " K", reader.readLine());
+        assertArrayEquals(match, reader.readBytes(match.length));
+        assertEquals("ADOPT 5 K", reader.readLine());
+        reader.skipBytes(5);
+        assertEquals(List.of("EXIT", "ADOPT 9 K"), reader.readBatch(2));
+        assertThrows(EOFException.class, () -> reader.readBytes(9), "should fail once the client closed");
+    }
+}
@@ -0,0 +1,200 @@
+package crossword;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import crossword.Command.Type;
+
+public class CommandTest {
+
+    /*
+     * Partition:
+     *   - type: PLAY, SPECTATE, NEW, QUICKPLAY, LIST, LOBBY, TRY, CHALLENGE, HINT, NEW_MATCH, EXIT, RESUME, MIGRATE,
+     *     ADOPT, UNKNOWN
+     *   - input is a player ID: yes (including EXIT and bare keywords), no
+     *   - UNKNOWN input: empty, keyword without arguments, bad argument characters, missing or extra parts,
+     *     lower case
+     *   - NEW players and teams: neither, players only, both, out of range count, missing count
+     *   - LIST page and filter: neither, page only, filter only, both, page 0 or too long
+     *   - MIGRATE and ADOPT secret: given, missing, empty, bad characters, followed by more
+     *   - ADOPT bytes: 0, many, more than 9 digits, not a number
+     *   - LOBBY secret: none, given, empty, bad characters, followed by more
+     *   - argument accessor for the wrong type
+     */
+
+    // the regular expressions the server used to match commands with
+    private static final String ID_REGEX = "[A-Z0-9]+";
+    private static final String PLAY_REGEX = "PLAY [A-Z0-9]+";
+    private static final String SPECTATE_REGEX = "SPECTATE [A-Z0-9]+";
+    private static final String NEW_REGEX = "NEW [A-Z0-9]+ [A-Z0-9_()]+ \"[A-Z0-9 ]+\"( PLAYERS [0-9]{1,2}( TEAMS [0-9]{1,2})?)?";
+    private static final String IDWORD_REGEX = "[0-9]+(ACROSS|DOWN) [A-Z\\-]+";
+    private static final String RESUME_REGEX = "RESUME [0-9A-F]+";
+    private static final String HINT_REGEX = "HINT [0-9]+(ACROSS|DOWN)";
+    private static final String QUICKPLAY_REGEX = "QUICKPLAY( [A-Z0-9_()]+)?";
+    private static final String LIST_REGEX = "LIST( [1-9][0-9]{0,3})?( \"[A-Z0-9_() ]+\")?";
+    private static final String MIGRATE_REGEX = "MIGRATE [A-Z0-9]+ [A-Za-z0-9.\\-]+:[0-9]{1,5} [A-Za-z0-9+/=]+";
+    private static final String ADOPT_REGEX = "ADOPT [0-9]{1,9} [A-Za-z0-9+/=]+";
+    private static final String LOBBY_REGEX = "LOBBY( [A-Za-z0-9+/=]+)?";
+
+    @Test public void testAssertionsEnabled() {
+        assertThrows(AssertionError.class, () -> {
+            assert false;
+        }, "make sure assertions are enabled with VM argument '-ea'");
+    }
+
+    // covers every type, player ID yes and no, every kind of UNKNOWN input
+    @Test
+    public void testParseAgreesWithRegex() {
+        final List<String> inputs = List.of("", "TATUM", "BOB2", "EXIT", "PLAY", "NEW", "TRY", "tatum", "TAT UM",
+                "PLAY MATCH1", "PLAY ", "PLAY MATCH 1", "PLAY match1", "PLAY MATCH1 ",
+                "SPECTATE MATCH1", "SPECTATE ", "SPECTATE", "SPECTATE MATCH1 X",
+                "NEW MATCH1 SIMPLE_PUZZLE \"TEST\"", "NEW MATCH1 ANIMALS(2) \"A B C\"", "NEW MATCH1 SIMPLE_PUZZLE \"\"",
+                "NEW MATCH1 SIMPLE_PUZZLE TEST", "NEW MATCH1 SIMPLE_PUZZLE \"TEST", "NEW MATCH1 \"TEST\"",
+                "NEW MATCH1 SIMPLE_PUZZLE \"TEST\" ", "NEW MATCH", "NEW MATCH ", "NEW  MATCH",
+                "NEW MATCH1 SIMPLE_PUZZLE \"TEST\" PLAYERS 8", "NEW MATCH1 SIMPLE_PUZZLE \"TEST\" PLAYERS 12 TEAMS 3",
+                "NEW MATCH1 SIMPLE_PUZZLE \"TEST\" PLAYERS", "NEW MATCH1 SIMPLE_PUZZLE \"TEST\" PLAYERS 100",
+                "NEW MATCH1 SIMPLE_PUZZLE \"TEST\" TEAMS 2", "NEW MATCH1 SIMPLE_PUZZLE \"TEST\" PLAYERS 4 TEAMS ",
+                "QUICKPLAY", "QUICKPLAY SIMPLE_PUZZLE", "QUICKPLAY ANIMALS(2)", "QUICKPLAY ", "QUICKPLAY A B",
+                "QUICKPLAY simple", "QUICKPLAYX",
+                "LIST", "LIST 2", "LIST 9999", "LIST 10000", "LIST 0", "LIST 02", "LIST \"CAT\"", "LIST 3 \"ANIMALS(2)\"",
+                "LIST \"A B\"", "LIST 3\"CAT\"", "LIST \"\"", "LIST \"CAT", "LIST \"cat\"", "LIST ", "LIST 2 ", "LIST X",
+                "LOBBY", "LOBBY ", "LOBBY 2", "LOBBY S3cr+t", "LOBBY S3cr!t", "LOBBY K L",
+                "TRY 1DOWN CAT", "TRY 12ACROSS CAT-NAP", "TRY DOWN CAT", "TRY 1SIDEWAYS CAT", "TRY 1DOWN", "TRY 1DOWN ",
+                "TRY 1DOWN cat", "TRY 1DOWN CAT DOG", "TRY 1DOWNCAT",
+                "CHALLENGE 3ACROSS DOG", "CHALLENGE 3ACROSS", "CHALLENGE 3ACROSS D0G",
+                "HINT 1DOWN", "HINT 12ACROSS", "HINT DOWN", "HINT 1DOWN CAT", "HINT 1down", "HINT ", "HINT",
+                "RESUME 0A1B2C3D4E5F", "RESUME 0a1b", "RESUME G1", "RESUME ", "EXIT ", "EXIT NOW",
+                "MIGRATE MATCH1 localhost:4949 S3cr+t", "MIGRATE MATCH1 10.0.0.2:1 K", "MIGRATE MATCH1 node-2.Example:4949 K",
+                "MIGRATE MATCH1 localhost:4949", "MIGRATE MATCH1 localhost:4949 ", "MIGRATE MATCH1 localhost:4949 K!",
+                "MIGRATE MATCH1 localhost:4949 K L", "MIGRATE MATCH1 localhost K", "MIGRATE MATCH1 localhost: K",
+                "MIGRATE MATCH1 localhost:123456 K", "MIGRATE match1 localhost:4949 K", "MIGRATE MATCH1 local_host:4949 K",
+                "MIGRATE MATCH1", "MIGRATE ",
+                "ADOPT 47321 S3cr+t", "ADOPT 0 K", "ADOPT 999999999 K", "ADOPT 1000000000 K", "ADOPT 47321",
+                "ADOPT 12 ", "ADOPT ", "ADOPT 12 BB CC", "ADOPT AAECAw== K", "ADOPT 12! K", "ADOPT 12 K!", "ADOPT -1 K");
+        for (String input : inputs) {
+            final Command command = Command.parse(input);
+            final Type expected;
+            if (input.equals("EXIT")) {
+                expected = Type.EXIT;
+            } else if (input.matches(LOBBY_REGEX)) {
+                expected = Type.LOBBY;
+            } else if (input.equals("NEW MATCH")) {
+                expected = Type.NEW_MATCH;
+            } else if (input.matches(PLAY_REGEX)) {
+                expected = Type.PLAY;
+            } else if (input.matches(SPECTATE_REGEX)) {
+                expected = Type.SPECTATE;
+            } else if (input.matches(NEW_REGEX)) {
+                expected = Type.NEW;
+            } else if (input.matches(QUICKPLAY_REGEX)) {
+                expected = Type.QUICKPLAY;
+            } else if (input.matches(LIST_REGEX)) {
+                expected = Type.LIST;
+            } else if (input.matches("TRY " + IDWORD_REGEX)) {
+                expected = Type.TRY;
+            } else if (input.matches("CHALLENGE " + IDWORD_REGEX)) {
+                expected = Type.CHALLENGE;
+            } else if (input.matches(HINT_REGEX)) {
+                expected = Type.HINT;
+            } else if (input.matches(RESUME_REGEX)) {
+                expected = Type.RESUME;
+            } else if (input.matches(MIGRATE_REGEX)) {
+                expected = Type.MIGRATE;
+            } else if (input.matches(ADOPT_REGEX)) {
+                expected = Type.ADOPT;
+            } else {
+                expected = Type.UNKNOWN;
+            }
+            assertEquals(expected, command.type(), "type of \"" + input + "\"");
+            assertEquals(input.matches(ID_REGEX), command.isPlayerId(), "player ID \"" + input + "\"");
+            assertEquals(input, command.input());
+        }
+    }
+
+    // covers the arguments of PLAY, NEW, QUICKPLAY, LIST, TRY, CHALLENGE, HINT, RESUME, MIGRATE, ADOPT
+    @Test
+    public void testArguments() {
+        final Command play = Command.parse("PLAY MATCH1");
+        assertEquals("MATCH1", play.matchId());
+        assertFalse(play.isPlayerId());
+        assertEquals("MATCH1", Command.parse("SPECTATE MATCH1").matchId());
+
+        final Command newMatch = Command.parse("NEW MATCH1 ANIMALS(2) \"END OF SEMESTER\"");
+        assertEquals(Type.NEW, newMatch.type());
+        assertEquals("MATCH1", newMatch.matchId());
+        assertEquals("ANIMALS(2)", newMatch.boardId());
+        assertEquals("END OF SEMESTER", newMatch.description());
+        assertEquals(2, newMatch.maxPlayers());
+        assertEquals(0, newMatch.teams());
+
+        final Command teamMatch = Command.parse("NEW MATCH1 ANIMALS(2) \"END OF SEMESTER\" PLAYERS 12 TEAMS 3");
+        assertEquals("END OF SEMESTER", teamMatch.description());
+        assertEquals(12, teamMatch.maxPlayers());
+        assertEquals(3, teamMatch.teams());
+        assertEquals(8, Command.parse("NEW MATCH1 ANIMALS(2) \"A\" PLAYERS 08").maxPlayers());
+
+        assertEquals("ANIMALS(2)", Command.parse("QUICKPLAY ANIMALS(2)").boardId());
+        assertEquals("", Command.parse("QUICKPLAY").boardId());
+        assertTrue(Command.parse("QUICKPLAY").isPlayerId(), "QUICKPLAY is also a valid player ID");
+
+        assertEquals(1, Command.parse("LIST").page());
+        assertEquals("", Command.parse("LIST").filter());
+        assertEquals(9999, Command.parse("LIST 9999").page());
+        assertEquals("", Command.parse("LIST 9999").filter());
+        assertEquals(1, Command.parse("LIST \"A B\"").page());
+        assertEquals("A B", Command.parse("LIST \"A B\"").filter());
+        assertEquals(3, Command.parse("LIST 3 \"ANIMALS(2)\"").page());
+        assertEquals("ANIMALS(2)", Command.parse("LIST 3 \"ANIMALS(2)\"").filter());
+
+        final Command tryWord = Command.parse("TRY 12ACROSS CAT-NAP");
+        assertEquals("12ACROSS", tryWord.wordId());
+        assertEquals("CAT-NAP", tryWord.word());
+
+        final Command challenge = Command.parse("CHALLENGE 3DOWN DOG");
+        assertEquals(Type.CHALLENGE, challenge.type());
+        assertEquals("3DOWN", challenge.wordId());
+        assertEquals("DOG", challenge.word());
+
+        assertEquals("12ACROSS", Command.parse("HINT 12ACROSS").wordId());
+
+        assertEquals("0A1B", Command.parse("RESUME 0A1B").token());
+
+        final Command migrate = Command.parse("MIGRATE MATCH1 node-2.example:4949 S3cr+t");
+        assertEquals("MATCH1", migrate.matchId());
+        assertEquals("node-2.example", migrate.host());
+        assertEquals(4949, migrate.port());
+        assertEquals("S3cr+t", migrate.secret());
+        assertEquals("S3cr+t", Command.parse("LOBBY S3cr+t").secret());
+        final Command adopt = Command.parse("ADOPT 47321 K3y=");
+        assertEquals(47321, adopt.matchBytes());
+        assertEquals("K3y=", adopt.secret());
+        assertTrue(Command.parse("EXIT").isPlayerId(), "EXIT is also a valid player ID");
+    }
+
+    // covers argument accessor for the wrong type
+    @Test
+    public void testWrongArguments() {
+        assertThrows(IllegalStateException.class, () -> Command.parse("TRY 1DOWN CAT").matchId());
+        assertThrows(IllegalStateException.class, () -> Command.parse("PLAY MATCH1").boardId());
+        assertThrows(IllegalStateException.class, () -> Command.parse("PLAY MATCH1").wordId());
+        assertThrows(IllegalStateException.class, () -> Command.parse("EXIT").token());
+        assertThrows(IllegalStateException.class, () -> Command.parse("TRY 1DOWN").word());
+        assertThrows(IllegalStateException.class, () -> Command.parse("HINT 1DOWN").word());
+        assertThrows(IllegalStateException.class, () -> Command.parse("PLAY MATCH1").maxPlayers());
+        assertThrows(IllegalStateException.class, () -> Command.parse("NEW MATCH").teams());
+        assertThrows(IllegalStateException.class, () -> Command.parse("QUICKPLAY").matchId());
+        assertThrows(IllegalStateException.class, () -> Command.parse("QUICKPLAY").page());
+        assertThrows(IllegalStateException.class, () -> Command.parse("EXIT").filter());
+        assertThrows(IllegalStateException.class, () -> Command.parse("PLAY MATCH1").host());
+        assertThrows(IllegalStateException.class, () -> Command.parse("ADOPT 12 K").port());
+        assertThrows(IllegalStateException.class, () -> Command.parse("MIGRATE MATCH1 localhost:1 K").matchBytes());
+        assertThrows(IllegalStateException.class, () -> Command.parse("RESUME 0A1B").secret());
+        assertThrows(IllegalStateException.class, () -> Command.parse("LOBBY").secret());
+    }
+}
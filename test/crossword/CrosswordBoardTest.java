@@ -8,16 +8,30 @@ package crossword;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.awt.Dimension;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
 
 import org.junit.jupiter.api.Test;
 
 import crossword.CrosswordBoard.Outcome;
 import crossword.Entry.Direction;
+import edu.mit.eecs.parserlib.UnableToParseException;
 
 public class CrosswordBoardTest {
 
@@ -32,6 +46,12 @@ public class CrosswordBoardTest {
      * location
      * --two words going in different directions are overlapping and have different
      * characters
+     * -word IDs and cells: puzzles in puzzles/, a generated grid of thousands of
+     * words, words crossing and not crossing another
+     * 
+     * String getPuzzleId()-
+     * - the same puzzle loaded twice, copied, loaded from another source, a
+     * different puzzle with the same name
      * 
      * Outcome tryWord(String wordID, String wordEntered, String playerID)-
      * - wordID is/is not in the CrosswordBoard
@@ -39,6 +59,8 @@ public class CrosswordBoardTest {
      * -- word was already confirmed
      * -- same as word already there
      * -- word not of correct length
+     * - crossing words owned by nobody, the player, another player; replacing a
+     * crossing word clears its letters that no other owned word holds
      * - return CONFIRMED, WORD_OWNED, CONFLICT, SUCCESS, WRONG_LENGTH, NONEXISTENT,
      * FINISHED
      * 
@@ -66,6 +88,19 @@ public class CrosswordBoardTest {
      * Map<String, String> getClues()- (never changes, so only need to test once)
      * - makes sure that getClues is a deep copy of original rep
      * 
+     * tryWord, tryChallenge from many threads at once-
+     * - words that cross, words that do not cross, the move that finishes the board
+     * - the same word, crossing words with different letters, random moves
+     * on every word
+     * 
+     * writeState(DataOutput out), readState(DataInput in)-
+     * - state has 0, 1+ owned words, confirmed words, scores, is/is not finished
+     * - state read into a board of the same puzzle, a different puzzle, a puzzle
+     * of the same size and words with letters where this one has none
+     * 
+     * CrosswordBoard(CrosswordBoard other)-
+     * - copies of the same board share the puzzle but not what is played on it
+     * 
      * String getName() - (never changes, so only need to test once)
      * - return the name of the puzzle from the file
      * 
@@ -341,6 +376,102 @@ public class CrosswordBoardTest {
         assertEquals(Outcome.CONFIRMED, okBoard.tryChallenge("2down", "market", "p1"));
     }
 
+    // the cells of each word of puzzle, numbering words by the order their starting locations first appear
+    private static Map<String, List<Integer>> expectedCells(CrosswordFile puzzle) {
+        int width = 0;
+        for (Entry entry : puzzle.getEntries()) {
+            if (entry.getDirection() == Direction.ACROSS) {
+                width = Math.max(width, entry.getCol() + entry.getWord().length());
+            }
+        }
+        List<Dimension> starts = new ArrayList<>();
+        Map<String, List<Integer>> cells = new HashMap<>();
+        for (Entry entry : puzzle.getEntries()) {
+            Dimension start = new Dimension(entry.getRow(), entry.getCol());
+            if (!starts.contains(start)) {
+                starts.add(start);
+            }
+            List<Integer> word = new ArrayList<>();
+            for (int i = 0; i < entry.getWord().length(); i++) {
+                word.add(entry.getDirection() == Direction.ACROSS
+                        ? entry.getRow() * width + entry.getCol() + i
+                        : (entry.getRow() + i) * width + entry.getCol());
+            }
+            cells.put((starts.indexOf(start) + 1) + entry.getDirection().toString(), word);
+        }
+        return cells;
+    }
+
+    // a size by size grid of five letter words: ACROSS on even rows every six columns, DOWN on every third
+    // column every six rows, so each DOWN word crosses up to three ACROSS words
+    static CrosswordFile grid(int size) {
+        List<Entry> entries = new ArrayList<>();
+        for (int row = 0; row < size; row += 2) {
+            for (int col = 0; col + 5 <= size; col += 6) {
+                entries.add(new Entry(gridWord(row, col, 0, 1), "\"across\"", Direction.ACROSS, row, col));
+            }
+        }
+        for (int col = 1; col < size; col += 3) {
+            for (int row = 0; row + 5 <= size; row += 6) {
+                entries.add(new Entry(gridWord(row, col, 1, 0), "\"down\"", Direction.DOWN, row, col));
+            }
+        }
+        return new CrosswordFile("\"Grid\"", "\"generated\"", entries);
+    }
+
+    // the five letters of the grid from (row, col) on, one step of (down, across) at a time
+    private static String gridWord(int row, int col, int down, int across) {
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < 5; i++) {
+            word.append((char) ('a' + ((row + i * down) * 7 + (col + i * across) * 13) % 26));
+        }
+        return word.toString();
+    }
+
+    // covers word IDs and cells of puzzles in puzzles/ and of a generated grid, words crossing and not crossing
+    @Test public void testWordIDsAndCells() throws IOException, UnableToParseException {
+        for (String filename : List.of("puzzles/simple.puzzle", "puzzles/test.puzzle", "puzzles/test_duplicate.puzzle",
+                "puzzles/multipleConfirmed.puzzle", "puzzles/sameStartingLocation.puzzle")) {
+            String contents = new String(Files.readAllBytes(Paths.get(filename)));
+            CrosswordFile puzzle = CrosswordParser.parse(contents.substring(0, contents.length() - 1));
+            assertEquals(expectedCells(puzzle), new CrosswordBoard(filename).getWordCells(), filename);
+        }
+        assertEquals(List.of(1, 4, 7), new CrosswordBoard("puzzles/test.puzzle").getWordCells().get("1DOWN"));
+        assertEquals(List.of(3, 4, 5), new CrosswordBoard("puzzles/test.puzzle").getWordCells().get("2ACROSS"));
+
+        CrosswordFile puzzle = grid(203);
+        assertTrue(puzzle.getEntries().size() > 5000, "expected thousands of words");
+        CrosswordBoard board = new CrosswordBoard(puzzle);
+        assertEquals(expectedCells(puzzle), board.getWordCells());
+        // 1ACROSS at (0, 0) is crossed at (0, 1) by the first DOWN word, so p2 can not change that letter
+        // every ACROSS word starts somewhere no other word does, and all come before the DOWN words
+        String downID = (puzzle.getEntries().stream().filter(entry -> entry.getDirection() == Direction.ACROSS)
+                .count() + 1) + "DOWN";
+        assertEquals(List.of(1, 204, 407, 610, 813), board.getWordCells().get(downID));
+        String down = gridWord(0, 1, 1, 0);
+        assertEquals(Outcome.SUCCESS, board.tryWord("1ACROSS", gridWord(0, 0, 0, 1), "p1"));
+        assertEquals(Outcome.CONFLICT, board.tryWord(downID, "z" + down.substring(1), "p2"));
+        assertEquals(Outcome.SUCCESS, board.tryWord(downID, down, "p2"));
+    }
+
+    // covers every partition of getPuzzleId
+    @Test public void testPuzzleId() throws IOException {
+        CrosswordBoard board = new CrosswordBoard("puzzles/test.puzzle");
+        assertTrue(board.getPuzzleId().startsWith("test.puzzle#"), board.getPuzzleId());
+        assertEquals(board.getPuzzleId(), new CrosswordBoard("puzzles/test.puzzle").getPuzzleId());
+        assertEquals(board.getPuzzleId(), new CrosswordBoard(board).getPuzzleId());
+        assertEquals(board.getName(), new CrosswordBoard("puzzles/test_duplicate.puzzle").getName());
+        String hash = board.getPuzzleId().substring("test.puzzle".length());
+        assertFalse(new CrosswordBoard("puzzles/test_duplicate.puzzle").getPuzzleId().endsWith(hash),
+                "expected a different puzzle to hash differently");
+        CrosswordFile parsed = new CrosswordFile("\"Animals\"", "\"One particular animal\"",
+                List.of(new Entry("bat", "\"winged mammal\"", Direction.DOWN, 0, 1),
+                        new Entry("cat", "\"feline companion\"", Direction.ACROSS, 1, 0)));
+        // the same puzzle as test.puzzle, from a bundle
+        assertEquals("bundle.puzzles:3" + hash, new CrosswordBoard(parsed, "bundle.puzzles:3").getPuzzleId());
+        assertTrue(new CrosswordBoard(parsed).getPuzzleId().startsWith("#"));
+    }
+
     /*
      * tryWord-
      * - wordID is in the CrosswordBoard
@@ -394,4 +525,245 @@ public class CrosswordBoardTest {
         assertEquals(2, okBoard.showScore("p1"));
         assertEquals(-1, okBoard.showScore("p2"));
     }
+
+    // a word that conflicts with the player's own crossing word clears it, leaving only the letters of other
+    // owned words, and owners are the same in the play board and in a copy of the board
+    @Test
+    public void testClearCrossingWord() throws IOException {
+        CrosswordBoard board = new CrosswordBoard("puzzles/simple.puzzle");
+        assertEquals(Outcome.SUCCESS, board.tryWord("2DOWN", "marker", "p1"));
+        assertEquals(Outcome.SUCCESS, board.tryWord("3ACROSS", "kettle", "p1"));
+        assertEquals(Outcome.CONFLICT, board.tryWord("6ACROSS", "treasure", "p2"));
+        assertEquals(Outcome.SUCCESS, board.tryWord("6ACROSS", "treasure", "p1"));
+        List<List<CrosswordCharacter>> play = board.getPlayBoard();
+        String column = "";
+        for (List<CrosswordCharacter> row : play) {
+            column += row.get(2).getChar();
+        }
+        assertEquals("___k_t ", column, "expected only the letters of owned words to stay");
+        assertEquals("", play.get(3).get(2).getOwnerOf("2DOWN"));
+        assertEquals("p1", play.get(3).get(2).getOwnerOf("3ACROSS"));
+        assertEquals("p1", play.get(5).get(2).getOwnerOf("6ACROSS"));
+        CrosswordBoard copy = new CrosswordBoard(board);
+        assertEquals(Outcome.WORD_OWNED, copy.tryWord("3ACROSS", "settle", "p2"));
+        assertEquals(Outcome.SUCCESS, copy.tryWord("2DOWN", "market", "p2"));
+        assertEquals("p2", copy.getPlayBoard().get(0).get(2).getOwnerOf("2DOWN"));
+        assertEquals(Outcome.CONFLICT, board.tryWord("2DOWN", "marker", "p2"));
+    }
+
+    // owned, confirmed and cleared words with scores, read into the same puzzle and a different one
+    @Test
+    public void testWriteReadState() throws IOException {
+        CrosswordBoard board = new CrosswordBoard("puzzles/multipleConfirmed.puzzle");
+        CrosswordBoard empty = new CrosswordBoard(board);
+        ByteArrayOutputStream emptyState = new ByteArrayOutputStream();
+        board.writeState(new DataOutputStream(emptyState));
+
+        assertEquals(Outcome.SUCCESS, board.tryWord("1across", "car", "p1"));
+        assertEquals(Outcome.FAILED, board.tryChallenge("1across", "cat", "p2"));
+        assertEquals(Outcome.SUCCESS, board.tryWord("2across", "mat", "p2"));
+        ByteArrayOutputStream state = new ByteArrayOutputStream();
+        board.writeState(new DataOutputStream(state));
+
+        CrosswordBoard restored = new CrosswordBoard(empty);
+        restored.readState(new DataInputStream(new ByteArrayInputStream(state.toByteArray())));
+        assertEquals(board.toString(), restored.toString());
+        assertEquals(0, restored.showScore("p1"));
+        assertEquals(-1, restored.showScore("p2"));
+        assertEquals(Outcome.CONFIRMED, restored.tryChallenge("1across", "cat", "p2"));
+        assertEquals(Outcome.WORD_OWNED, restored.tryWord("2across", "mat", "p1"));
+        assertEquals(Outcome.SUCCESS, restored.tryWord("2across", "mat", "p2"));
+
+        CrosswordBoard reset = new CrosswordBoard(board);
+        reset.readState(new DataInputStream(new ByteArrayInputStream(emptyState.toByteArray())));
+        assertEquals(empty.toString(), reset.toString());
+        assertEquals(0, reset.showScore("p1"));
+
+        CrosswordBoard other = new CrosswordBoard("puzzles/simple.puzzle");
+        assertThrows(IOException.class, () -> {
+            other.readState(new DataInputStream(new ByteArrayInputStream(state.toByteArray())));
+        });
+    }
+
+    // copies of a loaded board share its puzzle, but moves on one copy show on neither the loaded board nor the
+    // other copies, and a state with letters where the puzzle has none can not change the cells they share
+    @Test
+    public void testCopiesSharePuzzle() throws IOException {
+        CrosswordBoard loaded = new CrosswordBoard("puzzles/test.puzzle");
+        CrosswordBoard first = new CrosswordBoard(loaded);
+        CrosswordBoard second = new CrosswordBoard(loaded);
+        assertTrue(first.getWordCells() == second.getWordCells(), "expected copies to share the puzzle");
+        assertEquals(Outcome.SUCCESS, first.tryWord("1DOWN", "bat", "p1"));
+        assertEquals(loaded.toString(), second.toString());
+        assertEquals(Outcome.SUCCESS, second.tryWord("1DOWN", "bat", "p2"));
+        assertEquals(Outcome.FINISHED, second.tryWord("2ACROSS", "cat", "p2"));
+        assertEquals(0, first.showScore("p2"));
+        assertEquals(Outcome.SUCCESS, new CrosswordBoard(loaded).tryWord("2ACROSS", "cat", "p1"));
+
+        ByteArrayOutputStream state = new ByteArrayOutputStream();
+        first.writeState(new DataOutputStream(state));
+        CrosswordBoard shifted = new CrosswordBoard(new CrosswordFile("\"Shifted\"", "\"Same size and words\"",
+                List.of(new Entry("bat", "\"winged mammal\"", Direction.DOWN, 0, 0),
+                        new Entry("tan", "\"brown\"", Direction.ACROSS, 2, 0))));
+        CrosswordBoard copy = new CrosswordBoard(shifted);
+        assertThrows(IOException.class, () -> {
+            copy.readState(new DataInputStream(new ByteArrayInputStream(state.toByteArray())));
+        });
+        assertEquals(shifted.toString(), new CrosswordBoard(shifted).toString());
+        assertEquals(' ', new CrosswordBoard(shifted).getPlayBoard().get(0).get(1).getChar());
+    }
+
+    // many threads placing crossing and non-crossing words at once, one of them finishing the board
+    @Test
+    public void testConcurrentMoves() throws IOException, InterruptedException {
+        final List<String> words = List.of("1ACROSS", "2DOWN", "3ACROSS", "4DOWN", "5ACROSS", "6ACROSS", "7ACROSS", "8DOWN");
+        final List<String> answers = List.of("star", "market", "kettle", "extra", "bee", "treasure", "troll", "loss");
+        final CrosswordBoard solution = new CrosswordBoard("puzzles/simple.puzzle");
+        for (int i = 0; i < words.size(); i++) {
+            solution.tryWord(words.get(i), answers.get(i), "p" + i);
+        }
+        for (int round = 0; round < 50; round++) {
+            final CrosswordBoard board = new CrosswordBoard("puzzles/simple.puzzle");
+            final Outcome[] outcomes = new Outcome[words.size()];
+            final CountDownLatch start = new CountDownLatch(1);
+            final List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < words.size(); i++) {
+                final int player = i;
+                Thread thread = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    outcomes[player] = board.tryWord(words.get(player), answers.get(player), "p" + player);
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            int finished = 0;
+            for (Outcome outcome : outcomes) {
+                assertTrue(outcome == Outcome.SUCCESS || outcome == Outcome.FINISHED, "unexpected outcome " + outcome);
+                finished += outcome == Outcome.FINISHED ? 1 : 0;
+            }
+            assertEquals(1, finished, "expected exactly one move to finish the board");
+            assertEquals(solution.toString(), board.toString());
+            for (int i = 0; i < words.size(); i++) {
+                assertEquals(1, board.showScore("p" + i), "expected p" + i + " to score their word");
+            }
+        }
+    }
+
+    // run move(i) on threads threads at once, returning the outcome of each
+    private static Outcome[] race(int threads, IntFunction<Outcome> move) throws InterruptedException {
+        final Outcome[] outcomes = new Outcome[threads];
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> running = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            final int player = i;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                outcomes[player] = move.apply(player);
+            });
+            thread.start();
+            running.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : running) {
+            thread.join();
+        }
+        return outcomes;
+    }
+
+    // the same word from many threads, crossing words with different letters
+    @Test
+    public void testContendedWords() throws IOException, InterruptedException {
+        for (int round = 0; round < 50; round++) {
+            final CrosswordBoard board = new CrosswordBoard("puzzles/simple.puzzle");
+            final Outcome[] same = race(16, player -> board.tryWord("2DOWN", "market", "p" + player));
+            int placed = 0;
+            for (Outcome outcome : same) {
+                assertTrue(outcome == Outcome.SUCCESS || outcome == Outcome.WORD_OWNED, "unexpected outcome " + outcome);
+                placed += outcome == Outcome.SUCCESS ? 1 : 0;
+            }
+            assertEquals(1, placed, "expected exactly one player to place the word");
+
+            // 4DOWN and 7ACROSS cross at (4, 5), where they want different letters
+            final CrosswordBoard crossing = new CrosswordBoard("puzzles/simple.puzzle");
+            final Outcome[] crossed = race(2, player -> player == 0
+                    ? crossing.tryWord("4DOWN", "extza", "p0")
+                    : crossing.tryWord("7ACROSS", "troll", "p1"));
+            assertTrue((crossed[0] == Outcome.SUCCESS && crossed[1] == Outcome.CONFLICT)
+                    || (crossed[0] == Outcome.CONFLICT && crossed[1] == Outcome.SUCCESS),
+                    "expected exactly one of the crossing words to be placed, was " + List.of(crossed));
+            char letter = crossing.getPlayBoard().get(4).get(5).getChar();
+            assertEquals(crossed[0] == Outcome.SUCCESS ? 'z' : 'r', letter, "expected the placed word's letter");
+        }
+    }
+
+    // random moves on every word from many threads, which never finish the board
+    @Test
+    public void testRandomMovesStress() throws IOException, InterruptedException {
+        final List<String> words = List.of("1ACROSS", "2DOWN", "3ACROSS", "4DOWN", "5ACROSS", "6ACROSS", "7ACROSS", "8DOWN");
+        // nobody ever places the last letter of loss, so the board is never finished
+        final List<List<String>> guesses = List.of(List.of("star", "stir", "starry"), List.of("market", "marker", "mark"),
+                List.of("kettle", "settle", "kettles"), List.of("extra", "extol", "ex"), List.of("bee", "bet", "be"),
+                List.of("treasure", "pleasure", "treasures"), List.of("troll", "trolls", "droll"),
+                List.of("losx", "lost", "lo"));
+        final CrosswordBoard board = new CrosswordBoard("puzzles/simple.puzzle");
+        final int threads = 8;
+        final AtomicInteger challengesWon = new AtomicInteger(0);
+        final AtomicInteger challengesLost = new AtomicInteger(0);
+        final Outcome[] last = race(threads, player -> {
+            Random random = new Random(player);
+            Outcome outcome = null;
+            for (int i = 0; i < 2000; i++) {
+                int word = random.nextInt(words.size());
+                String guess = guesses.get(word).get(random.nextInt(3));
+                if (random.nextBoolean()) {
+                    outcome = board.tryWord(words.get(word), guess, "p" + player);
+                    assertTrue(outcome != Outcome.FAILED && outcome != Outcome.SAME_WORD
+                            && outcome != Outcome.CANT_CHALLENGE, "unexpected try outcome " + outcome);
+                } else {
+                    outcome = board.tryChallenge(words.get(word), guess, "p" + player);
+                    assertTrue(outcome != Outcome.WORD_OWNED && outcome != Outcome.CONFLICT,
+                            "unexpected challenge outcome " + outcome);
+                    challengesWon.addAndGet(outcome == Outcome.SUCCESS ? 1 : 0);
+                    challengesLost.addAndGet(outcome == Outcome.FAILED ? 1 : 0);
+                }
+                assertTrue(outcome != Outcome.FINISHED && outcome != Outcome.NONEXISTENT, "unexpected outcome " + outcome);
+            }
+            return outcome;
+        });
+        for (Outcome outcome : last) {
+            assertTrue(outcome != null, "expected every thread to finish its moves");
+        }
+
+        // every point given or taken by a challenge is counted exactly once
+        int total = 0;
+        for (int i = 0; i < threads; i++) {
+            total += board.showScore("p" + i);
+        }
+        assertEquals(2 * challengesWon.get() - challengesLost.get(), total);
+
+        // a letter stays on the board only while one of its words is owned or confirmed
+        for (List<CrosswordCharacter> row : board.getPlayBoard()) {
+            for (CrosswordCharacter cell : row) {
+                if (cell.isBlack() || cell.isEmpty() || cell.isConfirmed()) {
+                    continue;
+                }
+                String first = cell.other("");
+                String second = cell.other(first);
+                assertTrue(!cell.getOwnerOf(first).equals("") || !cell.getOwnerOf(second).equals(""),
+                        "expected a letter to belong to an owned word");
+            }
+        }
+    }
 }
@@ -0,0 +1,69 @@
+package crossword;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import crossword.FrameOutputStream.Frame;
+
+public class FrameOutputStreamTest {
+
+    /*
+     * Partition:
+     *   - frame written: first on the stream, after an object, before an object, twice in a row
+     *   - frame written to one stream, several streams
+     *   - objects written around a frame refer to the same objects as the frame: yes, no
+     */
+
+    @Test public void testAssertionsEnabled() {
+        assertThrows(AssertionError.class, () -> {
+            assert false;
+        }, "make sure assertions are enabled with VM argument '-ea'");
+    }
+
+    // covers frame first, after and before an object, twice in a row, objects sharing the frame's objects
+    @Test
+    public void testFramesBetweenObjects() throws IOException, ClassNotFoundException {
+        final List<String> scores = List.of("TIM: 1", "TUYET: 2");
+        final Frame frame = Frame.encode(ServerResponse.createScore("frame", scores));
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final FrameOutputStream out = new FrameOutputStream(bytes);
+        out.writeFrame(frame);
+        out.writeObject(ServerResponse.createScore("object", scores));
+        out.writeFrame(frame);
+        out.writeFrame(frame);
+        out.writeObject(ServerResponse.createScore("object", scores));
+        out.flush();
+
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (String message : List.of("frame", "object", "frame", "frame", "object")) {
+            final ServerResponse response = (ServerResponse) in.readObject();
+            assertEquals(message, response.message());
+            assertEquals(scores, response.scores());
+        }
+    }
+
+    // covers frame written to several streams
+    @Test
+    public void testSameFrameToSeveralStreams() throws IOException, ClassNotFoundException {
+        final Frame frame = Frame.encode(ServerResponse.createWait("shared"));
+        assertTrue(frame.size() > 0, "expected frame to have bytes");
+        assertEquals("shared", frame.response().message());
+        for (int i = 0; i < 3; i++) {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final FrameOutputStream out = new FrameOutputStream(bytes);
+            out.writeFrame(frame);
+            out.flush();
+            final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+            assertEquals("shared", ((ServerResponse) in.readObject()).message());
+        }
+    }
+}
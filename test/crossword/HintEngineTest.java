@@ -0,0 +1,86 @@
+package crossword;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import crossword.CrosswordBoard.Outcome;
+import crossword.Entry.Direction;
+
+public class HintEngineTest {
+
+    /*
+     * Partitions -
+     * List<String> hints(view, wordCells, wordID)-
+     * - word is empty, partly filled, full
+     * - a crossing word is empty, has letters outside the shared square, has the shared square
+     * - more words fit than MAX_HINTS, none fit
+     *
+     * List<String> Match.getHints(String wordID, HintEngine engine)-
+     * - asked again at the same version, after a move; word does not exist
+     */
+
+    private static final WordIndex WORDS = new WordIndex(List.of("cat", "cot", "hat", "hot", "ash", "ant", "art",
+            "cow", "how", "wig", "ah"));
+
+    @Test public void testAssertionsEnabled() {
+        assertThrows(AssertionError.class, () -> {
+            assert false;
+        }, "make sure assertions are enabled with VM argument '-ea'");
+    }
+
+    // 1ACROSS and 1DOWN start in the top left square, and 2ACROSS crosses the bottom of 1DOWN
+    private static CrosswordBoard board() throws IOException {
+        return new CrosswordBoard(new CrosswordFile("\"Corner\"", "\"three words\"",
+                List.of(new Entry("cat", "\"feline\"", Direction.ACROSS, 0, 0),
+                        new Entry("cow", "\"says moo\"", Direction.DOWN, 0, 0),
+                        new Entry("wig", "\"false hair\"", Direction.ACROSS, 2, 0))));
+    }
+
+    // every word of the length when nothing is on the board, at most MAX_HINTS
+    @Test public void testEmptyBoard() throws IOException {
+        CrosswordBoard board = board();
+        HintEngine engine = new HintEngine(WORDS);
+        List<String> hints = engine.hints(board.getPlayView(), board.getWordCells(), "1ACROSS");
+        assertEquals(HintEngine.MAX_HINTS, hints.size());
+        assertEquals(List.of("ANT", "ART", "ASH", "CAT", "COT"), hints.subList(0, 5));
+        assertFalse(hints.contains("AH"));
+    }
+
+    // a letter in the word's own square, and a crossing word narrowed by a letter outside the shared square
+    @Test public void testLettersAndCrossings() throws IOException {
+        CrosswordBoard board = board();
+        HintEngine engine = new HintEngine(WORDS);
+        assertEquals(Outcome.SUCCESS, board.tryWord("2ACROSS", "hot", "P1"));
+        // 1DOWN must end in h, and only ash does, so 1ACROSS must start with a
+        assertEquals(List.of("ASH"), engine.hints(board.getPlayView(), board.getWordCells(), "1DOWN"));
+        assertEquals(List.of("ANT", "ART", "ASH"), engine.hints(board.getPlayView(), board.getWordCells(), "1ACROSS"));
+        assertEquals(Outcome.SUCCESS, board.tryWord("1ACROSS", "cat", "P1"));
+        // 1DOWN is now c_h, which no word fits
+        assertEquals(List.of(), engine.hints(board.getPlayView(), board.getWordCells(), "1DOWN"));
+        assertEquals(List.of("CAT"), engine.hints(board.getPlayView(), board.getWordCells(), "1ACROSS"));
+    }
+
+    // hints are shared until a move changes the board
+    @Test public void testMatchCachesHints() throws IOException {
+        Match match = new Match("MATCH1", "CORNER", "hints", board());
+        HintEngine engine = new HintEngine(WORDS);
+        List<String> hints = match.getHints("1DOWN", engine);
+        assertSame(hints, match.getHints("1DOWN", engine));
+        assertTrue(match.hasWord("2ACROSS"));
+        assertEquals(Outcome.SUCCESS, match.getBoard().tryWord("2ACROSS", "how", "P1"));
+        List<String> after = match.getHints("1DOWN", engine);
+        assertNotSame(hints, after);
+        assertEquals(List.of("ASH"), after);
+        assertFalse(match.hasWord("3DOWN"));
+        assertThrows(IllegalArgumentException.class, () -> match.getHints("3DOWN", engine));
+    }
+}
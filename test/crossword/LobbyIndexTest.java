@@ -0,0 +1,128 @@
+package crossword;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public class LobbyIndexTest {
+
+    /*
+     * Partition:
+     *   - lines: none, fewer than a page, exactly a page, several pages; of one kind, of every kind
+     *   - page: first, middle, last, past the last, every line
+     *   - filter: none, ID prefix, description substring, lower case, matching nothing
+     *   - put: new line, same line again, changed line; remove: a listed line, a line not listed
+     *   - affectedBy: no changes, a change before the end of the page, after it, not matching the filter,
+     *     on a page with nothing after it
+     */
+
+    @Test public void testAssertionsEnabled() {
+        assertThrows(AssertionError.class, () -> {
+            assert false;
+        }, "make sure assertions are enabled with VM argument '-ea'");
+    }
+
+    // index of boards B00..B(n-1), described as "ANIMALS" or "PLANTS" alternately
+    private static LobbyIndex boards(int n) {
+        LobbyIndex lobby = new LobbyIndex();
+        for (int i = 0; i < n; i++) {
+            String id = String.format("B%02d", i);
+            String description = i % 2 == 0 ? "Animals" : "Plants";
+            lobby.put(LobbyIndex.Kind.BOARD, id, description, "Board: " + id + " \"" + description + "\"");
+        }
+        return lobby;
+    }
+
+    // covers no lines, fewer than a page, every kind, first page, past the last page
+    @Test
+    public void testKinds() {
+        LobbyIndex lobby = new LobbyIndex();
+        assertEquals(List.of(), lobby.page("", 1).lines());
+        lobby.put(LobbyIndex.Kind.BOARD, "SIMPLE", "Simple", "Board: SIMPLE \"Simple\"");
+        lobby.put(LobbyIndex.Kind.LIVE, "M2", "GAME", "Live: M2 \"GAME\" (0 watching)");
+        lobby.put(LobbyIndex.Kind.OPEN, "M1", "GAME", "Match: M1 \"GAME\"");
+        assertEquals(List.of("Match: M1 \"GAME\"", "Live: M2 \"GAME\" (0 watching)", "Board: SIMPLE \"Simple\""),
+                lobby.page("", 1).lines());
+        assertEquals(List.of("Page 2"), lobby.page("", 2).lines());
+        assertEquals(Set.of("M1"), lobby.ids(LobbyIndex.Kind.OPEN));
+        assertEquals(Set.of("SIMPLE"), lobby.ids(LobbyIndex.Kind.BOARD));
+        assertThrows(IllegalArgumentException.class, () -> lobby.page("", -1));
+    }
+
+    // covers exactly a page, several pages, first, middle and last page, every line
+    @Test
+    public void testPages() {
+        assertEquals(LobbyIndex.PAGE_SIZE, boards(LobbyIndex.PAGE_SIZE).page("", 1).lines().size());
+        LobbyIndex lobby = boards(LobbyIndex.PAGE_SIZE * 2 + 5);
+        List<String> seen = new ArrayList<>();
+        for (int number = 1; number <= 3; number++) {
+            List<String> lines = lobby.page("", number).lines();
+            seen.addAll(lines.subList(0, lines.size() - 1));
+            assertTrue(lines.get(lines.size() - 1).startsWith("Page " + number), "expected the page number");
+        }
+        assertEquals("Page 1, LIST 2 for the next", lobby.page("", 1).lines().get(LobbyIndex.PAGE_SIZE));
+        assertEquals("Page 3", lobby.page("", 3).lines().get(5));
+        assertEquals(LobbyIndex.PAGE_SIZE * 2 + 5, seen.size());
+        assertEquals("Board: B00 \"Animals\"", seen.get(0));
+        assertEquals("Board: B44 \"Animals\"", seen.get(seen.size() - 1));
+        assertEquals(seen, lobby.page("", LobbyIndex.EVERY_LINE).lines());
+    }
+
+    // covers ID prefix, description substring, lower case, matching nothing
+    @Test
+    public void testFilter() {
+        LobbyIndex lobby = boards(LobbyIndex.PAGE_SIZE * 3);
+        assertEquals(List.of("Board: B10 \"Animals\"", "Board: B11 \"Plants\""),
+                lobby.page("B1", 1).lines().subList(0, 2));
+        assertEquals(10, lobby.page("B1", 1).lines().size());
+        List<String> plants = lobby.page("lant", 1).lines();
+        assertEquals("Page 1, LIST 2 \"LANT\" for the next", plants.get(LobbyIndex.PAGE_SIZE));
+        for (String line : plants.subList(0, LobbyIndex.PAGE_SIZE)) {
+            assertTrue(line.endsWith("\"Plants\""), "expected only plants, was " + line);
+        }
+        assertEquals(10, lobby.page("PLANTS", 2).lines().size() - 1);
+        assertEquals(List.of(), lobby.page("TREES", 1).lines());
+    }
+
+    // covers new line, same line again, changed line, removing listed and unlisted lines, and every kind of
+    // change a page can see
+    @Test
+    public void testChanges() {
+        LobbyIndex lobby = boards(LobbyIndex.PAGE_SIZE * 2 + 5);
+        lobby.drainChanges();
+        LobbyIndex.Page first = lobby.page("", 1);
+        LobbyIndex.Page last = lobby.page("", 3);
+        LobbyIndex.Page animals = lobby.page("ANIMALS", 1);
+        assertFalse(first.affectedBy(lobby.drainChanges()), "expected no changes");
+
+        lobby.put(LobbyIndex.Kind.BOARD, "B31", "Plants", "Board: B31 \"Plants\"");
+        lobby.remove(LobbyIndex.Kind.BOARD, "NOPE");
+        List<LobbyIndex.Listing> changes = lobby.drainChanges();
+        assertEquals(List.of(), changes);
+
+        lobby.put(LobbyIndex.Kind.BOARD, "B33", "Plants", "Board: B33 \"Plants!\"");
+        changes = lobby.drainChanges();
+        assertEquals(1, changes.size());
+        assertFalse(first.affectedBy(changes), "expected a change after the first page not to change it");
+        assertTrue(last.affectedBy(changes), "expected a change before the end of the last page to change it");
+        assertFalse(animals.affectedBy(changes), "expected a change to plants not to change the animals");
+
+        lobby.remove(LobbyIndex.Kind.BOARD, "B02");
+        changes = lobby.drainChanges();
+        assertTrue(first.affectedBy(changes), "expected a removal on the first page to change it");
+        assertTrue(animals.affectedBy(changes), "expected a removed animal to change the animals");
+        assertEquals("Board: B03 \"Plants\"", lobby.page("", 1).lines().get(2));
+
+        lobby.put(LobbyIndex.Kind.BOARD, "C00", "Plants", "Board: C00 \"Plants\"");
+        changes = lobby.drainChanges();
+        assertFalse(first.affectedBy(changes), "expected a line after the first page not to change it");
+        assertTrue(last.affectedBy(changes), "expected a line added after the last page to change it");
+    }
+}
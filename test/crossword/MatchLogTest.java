@@ -0,0 +1,157 @@
+package crossword;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class MatchLogTest {
+
+    /*
+     * Partitions -
+     * MatchLog(Path directory), recovered() -
+     * - directory has no log, an empty log, a log with records
+     * - last record is complete, cut off part way through
+     * long append(Record record), sync() -
+     * - appended from 1, 1+ threads
+     * - NEW for two players, for more players and teams, with and without its puzzle
+     * - log is open, closed
+     * trim(long seq) -
+     * - seq is the first record, in the middle, nextSeq()
+     * - records appended while trimming
+     */
+
+    @Test public void testAssertionsEnabled() {
+        assertThrows(AssertionError.class, () -> {
+            assert false;
+        }, "make sure assertions are enabled with VM argument '-ea'");
+    }
+
+    // no log, records appended from 1 thread, log reopened
+    @Test public void testReopen() throws IOException {
+        Path directory = Files.createTempDirectory("matchlog");
+        MatchLog log = new MatchLog(directory);
+        assertEquals(List.of(), log.recovered());
+        assertEquals(0, log.append(MatchLog.Record.newMatch("m1", "Easy", "first match", "alice")));
+        assertEquals(1, log.append(MatchLog.Record.join("m1", "bob")));
+        assertEquals(2, log.append(MatchLog.Record.tryWord("m1", "alice", "1 ACROSS", "cat")));
+        assertEquals(3, log.append(MatchLog.Record.newMatch("m2", "Easy", "teams", "carol", 8, 2)));
+        assertEquals(4, log.append(MatchLog.Record.newMatch("m3", "Easy(2)", "easy.puzzle#ab12", "", "dan", 2, 0)));
+        log.close();
+        assertThrows(IOException.class, () -> log.append(MatchLog.Record.exit("m1", "bob")));
+
+        MatchLog reopened = new MatchLog(directory);
+        List<MatchLog.Record> records = reopened.recovered();
+        assertEquals(5, records.size());
+        assertEquals(MatchLog.Record.Type.NEW, records.get(0).type());
+        assertEquals("Easy", records.get(0).first());
+        assertEquals("first match", records.get(0).second());
+        assertEquals(2, records.get(0).maxPlayers());
+        assertEquals(0, records.get(0).teams());
+        assertEquals("bob", records.get(1).playerID());
+        assertEquals(MatchLog.Record.Type.TRY, records.get(2).type());
+        assertEquals("1 ACROSS", records.get(2).first());
+        assertEquals("cat", records.get(2).second());
+        assertEquals("teams", records.get(3).second());
+        assertEquals(8, records.get(3).maxPlayers());
+        assertEquals(2, records.get(3).teams());
+        assertEquals("", records.get(3).puzzle());
+        assertEquals("Easy(2)", records.get(4).first());
+        assertEquals("easy.puzzle#ab12", records.get(4).puzzle());
+        assertEquals(2, records.get(4).maxPlayers());
+        assertEquals(5, reopened.append(MatchLog.Record.exit("m1", "bob")));
+        reopened.close();
+    }
+
+    // last record cut off part way through, new records written after the complete ones
+    @Test public void testTornTail() throws IOException {
+        Path directory = Files.createTempDirectory("matchlog");
+        MatchLog log = new MatchLog(directory);
+        log.append(MatchLog.Record.newMatch("m1", "Easy", "", "alice"));
+        log.append(MatchLog.Record.challenge("m1", "bob", "2 DOWN", "dog"));
+        log.close();
+        Path file = directory.resolve(MatchLog.LOG_FILE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(file) - 3);
+        }
+
+        MatchLog reopened = new MatchLog(directory);
+        assertEquals(1, reopened.recovered().size());
+        assertEquals(1, reopened.append(MatchLog.Record.exit("m1", "alice")));
+        reopened.close();
+        List<MatchLog.Record> records = new ArrayList<>();
+        assertEquals(Files.size(file), MatchLog.read(file, records));
+        assertEquals(2, records.size());
+        assertEquals(MatchLog.Record.Type.EXIT, records.get(1).type());
+    }
+
+    // records appended from 1+ threads, synced in batches
+    @Test public void testConcurrentAppend() throws IOException, InterruptedException {
+        Path directory = Files.createTempDirectory("matchlog");
+        MatchLog log = new MatchLog(directory);
+        final int threads = 4;
+        final int perThread = 50;
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final String player = "p" + t;
+            Thread writer = new Thread(() -> {
+                try {
+                    for (int i = 0; i < perThread; i++) {
+                        log.append(MatchLog.Record.tryWord("m", player, i + " ACROSS", "word"));
+                        log.sync();
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            writers.add(writer);
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertTrue(log.commits() <= threads * perThread);
+        log.close();
+        List<MatchLog.Record> records = new MatchLog(directory).recovered();
+        assertEquals(threads * perThread, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(i, records.get(i).seq());
+        }
+    }
+
+    // trimmed in the middle and to nothing, reopened with a first seq after the trimmed records
+    @Test public void testTrim() throws IOException {
+        Path directory = Files.createTempDirectory("matchlog");
+        MatchLog log = new MatchLog(directory);
+        for (int i = 0; i < 10; i++) {
+            log.append(MatchLog.Record.tryWord("m1", "alice", i + "ACROSS", "cat"));
+        }
+        log.trim(0);
+        log.trim(6);
+        log.append(MatchLog.Record.exit("m1", "alice"));
+        log.close();
+
+        MatchLog reopened = new MatchLog(directory);
+        List<MatchLog.Record> records = reopened.recovered();
+        assertEquals(5, records.size());
+        assertEquals(6, records.get(0).seq());
+        assertEquals(MatchLog.Record.Type.EXIT, records.get(4).type());
+        assertEquals(11, reopened.nextSeq());
+        reopened.trim(reopened.nextSeq());
+        reopened.close();
+
+        MatchLog trimmed = new MatchLog(directory, 11);
+        assertEquals(List.of(), trimmed.recovered());
+        assertEquals(11, trimmed.append(MatchLog.Record.join("m2", "bob")));
+        trimmed.close();
+    }
+}
@@ -1,12 +1,17 @@
 package crossword;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
+import java.util.List;
 
 import org.junit.jupiter.api.Test;
 
+import crossword.CrosswordBoard.Outcome;
 import crossword.Match.MatchListener;
 import crossword.Match.TooManyPlayersException;
 
@@ -17,7 +22,9 @@ public class MatchTest {
      *  - add one player
      *  - add two players
      *  - add three players
+     *  - more than two players: free-for-all, teams, added to a full match
      *  - use all helper methods
+     *  - score and clue lines: asked for again with no change, after a move, after a player joins
      */
     
     // create match with no players
@@ -106,6 +113,79 @@ public class MatchTest {
         }
     }
     
+    // score and clue lines asked for again with no change, after a move, after a player joins
+    @Test
+    public void testSharedLines() throws IOException, TooManyPlayersException {
+        Match match = new Match("TEST", "THIS IS TO TEST THE MATCH OBJECT", new CrosswordBoard("puzzles/simple.puzzle"));
+        MatchListener listener = new MatchListener() {
+            public void updateMatch(boolean firstCall) {return;}
+            public void endMatch(String message) {return;}
+        };
+        match.addPlayer("TIM", listener);
+        List<String> clues = match.getClueLines();
+        List<String> scores = match.getScoreLines();
+        assertEquals(List.of("TIM: 0"), scores);
+        assertSame(clues, match.getClueLines(), "expected clues to be shared");
+        assertSame(scores, match.getScoreLines(), "expected unchanged scores to be shared");
+        
+        match.addPlayer("TUYET", listener);
+        List<String> joined = match.getScoreLines();
+        assertTrue(scores != joined, "expected new scores after a player joins");
+        assertEquals(2, joined.size());
+        
+        match.getBoard().tryWord("2down", "market", "TIM");
+        assertTrue(joined != match.getScoreLines(), "expected new scores after a move");
+        assertSame(clues, match.getClueLines(), "expected clues to be shared");
+    }
+    
+    // more than two players playing for themselves, added to a full match
+    @Test
+    public void testFreeForAll() throws IOException, TooManyPlayersException {
+        Match match = new Match("TEST", "SIMPLE", "FOUR PLAYERS", new CrosswordBoard("puzzles/simple.puzzle"), 4, 0);
+        MatchListener listener = new MatchListener() {
+            public void updateMatch(boolean firstCall) {return;}
+            public void endMatch(String message) {return;}
+        };
+        for (String player : List.of("TIM", "TUYET", "TATUM", "BOB")) {
+            assertFalse(match.isFull(), "expected room for " + player);
+            match.addPlayer(player, listener);
+        }
+        assertTrue(match.isFull());
+        assertThrows(TooManyPlayersException.class, () -> match.addPlayer("ALICE", listener));
+        assertEquals(List.of("TIM", "TUYET", "TATUM", "BOB"), List.copyOf(match.getPlayerIds()));
+        
+        assertEquals(Outcome.SUCCESS, match.tryWord("TATUM", "2down", "market"));
+        assertEquals(Outcome.WORD_OWNED, match.tryWord("BOB", "2down", "marker"));
+        assertEquals(Outcome.FAILED, match.tryChallenge("BOB", "2down", "marker"));
+        assertEquals(List.of("TIM: 0", "TUYET: 0", "TATUM: 0", "BOB: -1"), match.getScoreLines());
+    }
+    
+    // more than two players split into teams
+    @Test
+    public void testTeams() throws IOException, TooManyPlayersException {
+        Match match = new Match("TEST", "SIMPLE", "TWO TEAMS", new CrosswordBoard("puzzles/simple.puzzle"), 5, 2);
+        MatchListener listener = new MatchListener() {
+            public void updateMatch(boolean firstCall) {return;}
+            public void endMatch(String message) {return;}
+        };
+        match.addPlayer("TIM", listener);
+        assertEquals(List.of("TEAM1 (TIM): 0"), match.getScoreLines());
+        for (String player : List.of("TUYET", "TATUM", "BOB")) {
+            match.addPlayer(player, listener);
+        }
+        assertEquals("TEAM1", match.getSide("TATUM"));
+        assertEquals("TEAM2", match.getSide("BOB"));
+        assertThrows(IllegalArgumentException.class, () -> match.getSide("ALICE"));
+        
+        assertEquals(Outcome.SUCCESS, match.tryWord("TIM", "2down", "marker"));
+        // a teammate can change the team's word, the other team has to challenge it
+        assertEquals(Outcome.SUCCESS, match.tryWord("TATUM", "2down", "market"));
+        assertEquals(Outcome.WORD_OWNED, match.tryWord("TUYET", "2down", "marker"));
+        assertEquals(Outcome.CANT_CHALLENGE, match.tryChallenge("TIM", "2down", "marker"));
+        assertEquals(Outcome.FAILED, match.tryChallenge("BOB", "2down", "marker"));
+        assertEquals(List.of("TEAM1 (TIM, TATUM): 0", "TEAM2 (TUYET, BOB): -1"), match.getScoreLines());
+    }
+    
     //helper methods getNumPlayers(), getMatchID(), and getDescription() already tested above
     //methods endGame() and updateMatch() tested in server tests
     
@@ -0,0 +1,165 @@
+package crossword;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class MatchmakerTest {
+
+    /*
+     * Partition:
+     *   - enqueue: a board, any board, a player already waiting, a player joining again while being paired
+     *   - pairing: two players for the same board, a board and any board, two for any board, an odd player
+     *     left waiting; one batch, several batches
+     *   - cancel: a waiting player, a player not waiting
+     *   - players joining from many threads at once
+     *   - metrics: queued, cancelled, depth, paired, wait, batches
+     */
+
+    private static final long BATCH_MILLIS = 5;
+
+    @Test public void testAssertionsEnabled() {
+        assertThrows(AssertionError.class, () -> {
+            assert false;
+        }, "make sure assertions are enabled with VM argument '-ea'");
+    }
+
+    // takes the next pair handed over, failing if none is within a few seconds
+    private static Matchmaker.Pair nextPair(BlockingQueue<Matchmaker.Pair> pairs) throws InterruptedException {
+        Matchmaker.Pair pair = pairs.poll(5, TimeUnit.SECONDS);
+        assertTrue(pair != null, "expected a pair");
+        return pair;
+    }
+
+    // covers two players for the same board, a board and any board, an odd player left waiting, several batches
+    @Test
+    public void testPairsByBoard() throws InterruptedException {
+        final BlockingQueue<Matchmaker.Pair> pairs = new LinkedBlockingQueue<>();
+        final Metrics metrics = new Metrics();
+        final Matchmaker matchmaker = new Matchmaker(BATCH_MILLIS, metrics, pairs::addAll);
+        matchmaker.enqueue("TIM", "SIMPLE");
+        matchmaker.enqueue("BOB", "OTHER");
+        matchmaker.enqueue("TATUM", "SIMPLE");
+        Matchmaker.Pair pair = nextPair(pairs);
+        assertEquals("TIM", pair.first());
+        assertEquals("TATUM", pair.second());
+        assertEquals("SIMPLE", pair.board());
+        assertTrue(matchmaker.isWaiting("BOB"), "expected BOB to wait for an opponent");
+        assertEquals(1, matchmaker.size());
+
+        matchmaker.enqueue("TUYET", null);
+        pair = nextPair(pairs);
+        assertEquals("BOB", pair.first());
+        assertEquals("TUYET", pair.second());
+        assertEquals("OTHER", pair.board());
+        assertEquals("OTHER", pair.boardOf("BOB"));
+        assertNull(pair.boardOf("TUYET"));
+        assertEquals(0, matchmaker.size());
+        assertEquals(0, metrics.get("matchmaking.depth"));
+        assertEquals(4, metrics.get("matchmaking.queued"));
+        assertEquals(4, metrics.get("matchmaking.paired"));
+        assertEquals(2, metrics.get("matchmaking.batches"));
+        assertTrue(metrics.get("matchmaking.wait_millis") >= BATCH_MILLIS, "expected players to wait for a batch");
+        matchmaker.stop();
+    }
+
+    // covers two for any board, cancel a waiting player and one not waiting, a player already waiting
+    @Test
+    public void testCancelAndAnyBoard() throws InterruptedException {
+        final BlockingQueue<Matchmaker.Pair> pairs = new LinkedBlockingQueue<>();
+        final Metrics metrics = new Metrics();
+        final Matchmaker matchmaker = new Matchmaker(BATCH_MILLIS, metrics, pairs::addAll);
+        matchmaker.enqueue("TIM", null);
+        assertTrue(matchmaker.cancel("TIM"), "expected TIM to leave the queue");
+        assertFalse(matchmaker.cancel("TIM"), "expected TIM to no longer be waiting");
+        matchmaker.enqueue("BOB", "SIMPLE");
+        matchmaker.enqueue("BOB", null);
+        assertEquals(1, matchmaker.size());
+        matchmaker.enqueue("TATUM", null);
+        Matchmaker.Pair pair = nextPair(pairs);
+        assertEquals("BOB", pair.first());
+        assertEquals("TATUM", pair.second());
+        assertNull(pair.board());
+        Thread.sleep(BATCH_MILLIS * 4);
+        assertTrue(pairs.isEmpty(), "expected no other pairs, was " + pairs);
+        assertEquals(1, metrics.get("matchmaking.cancelled"));
+        assertEquals(0, metrics.get("matchmaking.depth"));
+        matchmaker.stop();
+    }
+
+    // covers players joining from many threads at once, every one paired exactly once
+    @Test
+    public void testManyPlayers() throws InterruptedException {
+        final BlockingQueue<Matchmaker.Pair> pairs = new LinkedBlockingQueue<>();
+        final Matchmaker matchmaker = new Matchmaker(BATCH_MILLIS, new Metrics(), pairs::addAll);
+        final int threads = 8;
+        final int perThread = 250;
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> running = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            running.add(new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    matchmaker.enqueue("P" + thread + "X" + i, i % 3 == 0 ? null : "SIMPLE");
+                }
+            }));
+            running.get(t).start();
+        }
+        start.countDown();
+        for (Thread thread : running) {
+            thread.join();
+        }
+        final Set<String> paired = new HashSet<>();
+        while (paired.size() < threads * perThread) {
+            Matchmaker.Pair pair = nextPair(pairs);
+            assertTrue(paired.add(pair.first()), "paired twice: " + pair.first());
+            assertTrue(paired.add(pair.second()), "paired twice: " + pair.second());
+            for (String player : List.of(pair.first(), pair.second())) {
+                assertTrue(pair.boardOf(player) == null || pair.boardOf(player).equals(pair.board()),
+                        "expected " + player + " to get the board they asked for");
+            }
+        }
+        assertEquals(0, matchmaker.size());
+        matchmaker.stop();
+    }
+
+    // covers a player joining again while being paired, for any board and for a board
+    @Test
+    public void testJoinAgainWhilePairing() throws InterruptedException {
+        final BlockingQueue<Matchmaker.Pair> pairs = new LinkedBlockingQueue<>();
+        final Matchmaker matchmaker = new Matchmaker(1, new Metrics(), pairs::addAll);
+        final long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+        for (int i = 0; System.nanoTime() < end; i++) {
+            matchmaker.enqueue("TIM", i % 2 == 0 ? null : "SIMPLE");
+            if (i % 16 == 0) {
+                Thread.yield();
+            }
+        }
+        assertEquals(List.of(), new ArrayList<>(pairs), "expected a player alone never to be paired");
+        matchmaker.cancel("TIM");
+        matchmaker.enqueue("BOB", null);
+        matchmaker.enqueue("TUYET", null);
+        Matchmaker.Pair pair = nextPair(pairs);
+        assertEquals("BOB", pair.first());
+        assertEquals("TUYET", pair.second());
+        matchmaker.stop();
+    }
+}
@@ -0,0 +1,104 @@
+package crossword;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+import crossword.PuzzleBundleLoader.BundleListener;
+
+public class PuzzleBundleLoaderTest {
+
+    /*
+     * Partitions -
+     * int load(Path bundle, int workers, BundleListener listener)-
+     * - bundle is a concatenated file, a zip archive
+     * - bundle holds 0, 1, 1+ puzzles
+     * - puzzles are valid, can not be parsed, are inconsistent
+     * - text before the first header / blank lines between puzzles
+     * - workers = 1, 1+
+     */
+
+    @Test public void testAssertionsEnabled() {
+        assertThrows(AssertionError.class, () -> {
+            assert false;
+        }, "make sure assertions are enabled with VM argument '-ea'");
+    }
+
+    // concatenated file with valid and invalid puzzles, text before the first header
+    @Test public void testConcatenatedBundle() throws IOException {
+        Path bundle = Files.createTempFile("puzzles", PuzzleBundleLoader.BUNDLE_EXTENSION);
+        Files.writeString(bundle, "// bundle of puzzles\n"
+                + Files.readString(Paths.get("puzzles/simple.puzzle")) + "\n\n"
+                + Files.readString(Paths.get("puzzles/inconsistent.puzzle")) + "\n"
+                + ">> \"Broken\" \"missing a parenthesis\"\n(cat, \"feline\", DOWN, 0, 0\n"
+                + Files.readString(Paths.get("puzzles/test.puzzle")));
+        Map<String, String> loaded = Collections.synchronizedMap(new HashMap<>());
+        Map<String, String> failed = Collections.synchronizedMap(new HashMap<>());
+        assertEquals(4, PuzzleBundleLoader.load(bundle, 3, recorder(loaded, failed)));
+        assertEquals(2, loaded.size(), "loaded " + loaded);
+        assertEquals(2, failed.size(), "failed " + failed);
+        assertTrue(loaded.containsValue("MEDIUM"));
+        assertTrue(loaded.containsValue("ANIMALS"));
+        for (String source : loaded.keySet()) {
+            assertTrue(source.startsWith(bundle.getFileName() + ":"), source);
+        }
+    }
+
+    // zip archive of single puzzle files, one worker
+    @Test public void testArchive() throws IOException {
+        Path archive = Files.createTempFile("puzzles", PuzzleBundleLoader.ARCHIVE_EXTENSION);
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+            for (String name : new String[] {"simple.puzzle", "badOverlap.puzzle", "multipleConfirmed.puzzle"}) {
+                zip.putNextEntry(new ZipEntry(name));
+                zip.write(Files.readAllBytes(Paths.get("puzzles", name)));
+                zip.closeEntry();
+            }
+        }
+        Map<String, String> loaded = Collections.synchronizedMap(new HashMap<>());
+        Map<String, String> failed = Collections.synchronizedMap(new HashMap<>());
+        assertEquals(3, PuzzleBundleLoader.load(archive, 1, recorder(loaded, failed)));
+        assertEquals(2, loaded.size(), "loaded " + loaded);
+        assertEquals(1, failed.size(), "failed " + failed);
+        String source = archive.getFileName() + "!badOverlap.puzzle:1";
+        assertTrue(failed.get(source).contains("going the same direction"), failed.toString());
+    }
+
+    // empty bundle
+    @Test public void testEmptyBundle() throws IOException {
+        Path bundle = Files.createTempFile("puzzles", PuzzleBundleLoader.BUNDLE_EXTENSION);
+        try (OutputStream out = Files.newOutputStream(bundle)) {
+            out.write("// nothing here\n".getBytes());
+        }
+        Map<String, String> loaded = Collections.synchronizedMap(new HashMap<>());
+        Map<String, String> failed = Collections.synchronizedMap(new HashMap<>());
+        assertEquals(0, PuzzleBundleLoader.load(bundle, 2, recorder(loaded, failed)));
+        assertEquals(0, loaded.size());
+        assertEquals(0, failed.size());
+    }
+
+    // listener recording the name of each loaded board and the problem with each failed one by source
+    private static BundleListener recorder(Map<String, String> loaded, Map<String, String> failed) {
+        return new BundleListener() {
+            public void loaded(String source, CrosswordBoard board) {
+                loaded.put(source, board.getName());
+            }
+
+            public void failed(String source, String problem) {
+                failed.put(source, problem);
+            }
+        };
+    }
+}
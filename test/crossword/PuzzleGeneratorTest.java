@@ -0,0 +1,98 @@
+package crossword;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import crossword.Entry.Direction;
+import edu.mit.eecs.parserlib.UnableToParseException;
+
+public class PuzzleGeneratorTest {
+
+    /*
+     * Partitions -
+     * CrosswordFile generate(String name, String description, int count, long seed)-
+     * - words all cross, some can not cross any other, none cross
+     * - count < words, >= words, < 2
+     * - words or clues that can not be written, words of other case
+     * - name is valid, has a quotation mark
+     * - pool has 1, 1+ threads
+     *
+     * String format(CrosswordFile puzzle)-
+     * - puzzle has ACROSS words, DOWN words
+     */
+
+    private static final Map<String, String> CLUES = Map.of("star", "twinkle twinkle", "market", "Farmers ______",
+            "kettle", "It's tea time!", "extra", "more", "bee", "Everyone loves honey", "treasure",
+            "Every pirate's dream", "troll", "Everyone's favorite twitter pastime", "loss", "This is not a gain");
+
+    @Test public void testAssertionsEnabled() {
+        assertThrows(AssertionError.class, () -> {
+            assert false;
+        }, "make sure assertions are enabled with VM argument '-ea'");
+    }
+
+    // every word chosen, the puzzle builds, and format() writes text the parser reads back as the same puzzle
+    @Test public void testGenerateAndFormat() throws IOException, UnableToParseException {
+        CrosswordFile puzzle = new PuzzleGenerator(CLUES).generate("Medium", "Slightly difficult", 20, 1);
+        assertEquals("Medium", puzzle.getName());
+        assertEquals("Slightly difficult", puzzle.getDescription());
+        assertTrue(puzzle.getEntries().size() >= 2);
+        Set<Direction> directions = new HashSet<>();
+        for (Entry entry : puzzle.getEntries()) {
+            assertEquals(CLUES.get(entry.getWord()), entry.getClue(), entry.getWord());
+            directions.add(entry.getDirection());
+        }
+        assertEquals(Set.of(Direction.ACROSS, Direction.DOWN), directions);
+        String text = PuzzleGenerator.format(puzzle);
+        assertTrue(text.startsWith(">> \"Medium\" \"Slightly difficult\"\n"), text);
+        assertTrue(text.endsWith(")\n"), text);
+        CrosswordFile parsed = CrosswordParser.parse(text.substring(0, text.length() - 1));
+        assertEquals(puzzle.getEntries(), parsed.getEntries());
+        new CrosswordBoard(parsed);
+    }
+
+    // fewer words than there are, on one thread, the same puzzle from the same seed
+    @Test public void testGenerateSomeWords() throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(1);
+        PuzzleGenerator generator = new PuzzleGenerator(CLUES, pool);
+        CrosswordFile puzzle = generator.generate("Some", "four words", 4, 7);
+        assertTrue(puzzle.getEntries().size() >= 2 && puzzle.getEntries().size() <= 4);
+        assertEquals(puzzle.getEntries(), generator.generate("Some", "four words", 4, 7).getEntries());
+        pool.shutdown();
+        new CrosswordBoard(puzzle);
+    }
+
+    // words that share no letter with any other are left out, and words that can not be written are skipped
+    @Test public void testSkipsWords() throws IOException {
+        Map<String, String> clues = new HashMap<>(Map.of("CAT", "feline", "bat", "winged mammal", "xyz", "no vowels",
+                "dog", "say \"woof\"", "it's", "contraction"));
+        PuzzleGenerator generator = new PuzzleGenerator(clues);
+        assertEquals(3, generator.size());
+        CrosswordFile puzzle = generator.generate("Animals", "cats and bats", 3, 0);
+        assertEquals(2, puzzle.getEntries().size());
+        Set<String> words = new HashSet<>();
+        puzzle.getEntries().forEach(entry -> words.add(entry.getWord()));
+        assertEquals(Set.of("cat", "bat"), words);
+        new CrosswordBoard(puzzle);
+    }
+
+    // no two words cross, too few words, and a name that can not be written
+    @Test public void testCanNotGenerate() {
+        PuzzleGenerator apart = new PuzzleGenerator(Map.of("abc", "first", "xyz", "last"));
+        assertThrows(IllegalArgumentException.class, () -> apart.generate("Apart", "no shared letters", 2, 0));
+        assertThrows(IllegalArgumentException.class, () -> apart.generate("Apart", "one word", 1, 0));
+        PuzzleGenerator generator = new PuzzleGenerator(CLUES);
+        assertThrows(IllegalArgumentException.class, () -> generator.generate("\"Quoted\"", "description", 4, 0));
+        assertEquals(0, new PuzzleGenerator(Map.of("it's", "contraction")).size());
+    }
+}
@@ -0,0 +1,119 @@
+package crossword;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import crossword.Entry.Direction;
+
+public class PuzzleSolverTest {
+
+    /*
+     * Partitions -
+     * Result solve(CrosswordBoard board)-
+     * - dictionary holds the board's answers, only other words, words of other case or with other characters
+     * - board has 1, 1+ fills; no fill because a length has no words, because crossings can not agree,
+     * because words would repeat
+     * - pool has 1, 1+ threads
+     *
+     * Map<String, List<Integer>> CrosswordBoard.getWordCells()-
+     * - word is ACROSS, DOWN
+     */
+
+    @Test public void testAssertionsEnabled() {
+        assertThrows(AssertionError.class, () -> {
+            assert false;
+        }, "make sure assertions are enabled with VM argument '-ea'");
+    }
+
+    // cells run along the row for ACROSS words and down the column for DOWN words
+    @Test public void testWordCells() throws IOException {
+        Map<String, List<Integer>> cells = new CrosswordBoard("puzzles/simple.puzzle").getWordCells();
+        assertEquals(8, cells.size());
+        // the board is 10 columns wide
+        assertEquals(List.of(10, 11, 12, 13), cells.get("1ACROSS"));
+        assertEquals(List.of(2, 12, 22, 32, 42, 52), cells.get("2DOWN"));
+    }
+
+    // answers and decoys: any fill found uses dictionary words that agree where they cross
+    @Test public void testSolvesWithAnswers() throws IOException {
+        CrosswordBoard board = new CrosswordBoard("puzzles/simple.puzzle");
+        Set<String> dictionary = Set.of("star", "market", "kettle", "extra", "bee", "treasure", "troll", "loss",
+                "stop", "marble", "bottle", "bea", "trolls", "lose");
+        PuzzleSolver.Result result = new PuzzleSolver(dictionary).solve(board);
+        assertTrue(result.isSolved(), result.toString());
+        assertTrue(result.getNodes() > 0);
+        assertFilled(board, dictionary, result.getWords());
+    }
+
+    // only words the puzzle does not use, in upper case and mixed with words that can not be placed
+    @Test public void testSolvesWithOtherWords() throws IOException {
+        CrosswordBoard board = new CrosswordBoard(new CrosswordFile("\"Animals\"", "\"One particular animal\"",
+                List.of(new Entry("bat", "\"winged mammal\"", Direction.DOWN, 0, 1),
+                        new Entry("cat", "\"feline companion\"", Direction.ACROSS, 1, 0))));
+        PuzzleSolver.Result result = new PuzzleSolver(List.of("DOG", "Ton", "o-k", "it's")).solve(board);
+        assertTrue(result.isSolved(), result.toString());
+        Map<String, String> words = result.getWords();
+        assertEquals(2, words.size());
+        assertEquals(words.get("1DOWN").charAt(1), words.get("2ACROSS").charAt(1));
+        assertEquals(Set.of("dog", "ton"), new HashSet<>(words.values()));
+    }
+
+    // no words of one of the lengths
+    @Test public void testMissingLength() throws IOException {
+        CrosswordBoard board = new CrosswordBoard("puzzles/simple.puzzle");
+        PuzzleSolver.Result result = new PuzzleSolver(List.of("star", "market", "kettle", "extra", "bee",
+                "troll", "loss")).solve(board);
+        assertFalse(result.isSolved());
+        assertEquals(Map.of(), result.getWords());
+    }
+
+    // every length has words, but the crossings can not agree, searched on one thread
+    @Test public void testCrossingsDisagree() throws IOException {
+        CrosswordBoard board = new CrosswordBoard("puzzles/simple.puzzle");
+        ForkJoinPool pool = new ForkJoinPool(1);
+        PuzzleSolver.Result result = new PuzzleSolver(List.of("star", "market", "kettle", "extra", "bee",
+                "treasure", "troll", "lots"), pool).solve(board);
+        pool.shutdown();
+        assertFalse(result.isSolved());
+    }
+
+    // two words of the same length may not be filled with the same word
+    @Test public void testNoRepeatedWords() throws IOException {
+        CrosswordBoard board = new CrosswordBoard(new CrosswordFile("\"Corner\"", "\"two words from one square\"",
+                List.of(new Entry("cat", "\"feline companion\"", Direction.ACROSS, 0, 0),
+                        new Entry("cow", "\"says moo\"", Direction.DOWN, 0, 0))));
+        assertFalse(new PuzzleSolver(List.of("cat")).solve(board).isSolved());
+        PuzzleSolver.Result result = new PuzzleSolver(List.of("cat", "cot")).solve(board);
+        assertTrue(result.isSolved(), result.toString());
+        assertEquals(Set.of("cat", "cot"), new HashSet<>(result.getWords().values()));
+    }
+
+    // every word of the board is filled with a distinct word of dictionary, and crossing words agree
+    private static void assertFilled(CrosswordBoard board, Set<String> dictionary, Map<String, String> words) {
+        Map<String, List<Integer>> cells = board.getWordCells();
+        assertEquals(cells.keySet(), words.keySet());
+        assertEquals(words.size(), new HashSet<>(words.values()).size(), "repeated word in " + words);
+        Map<Integer, Character> letters = new HashMap<>();
+        for (Map.Entry<String, String> word : words.entrySet()) {
+            assertTrue(dictionary.contains(word.getValue()), word.toString());
+            List<Integer> wordCells = cells.get(word.getKey());
+            assertEquals(wordCells.size(), word.getValue().length(), word.toString());
+            for (int i = 0; i < wordCells.size(); i++) {
+                Character previous = letters.put(wordCells.get(i), word.getValue().charAt(i));
+                assertTrue(previous == null || previous == word.getValue().charAt(i), "crossing at " + word);
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package crossword;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Paths;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import crossword.Entry.Direction;
+
+public class PuzzleValidatorTest {
+
+    /*
+     * Partitions -
+     * List<String> validate(CrosswordFile puzzle)-
+     * - puzzle is valid, with/without words crossing
+     * - puzzle has 1, 1+ problems
+     * - problem is: word runs off the board, crossing words have different letters,
+     * words overlap going the same direction, words start at the same location
+     * going the same direction
+     * 
+     * List<String> validateFile(Path file)-
+     * - file is valid, invalid, can not be parsed, does not exist
+     */
+
+    @Test public void testAssertionsEnabled() {
+        assertThrows(AssertionError.class, () -> {
+            assert false;
+        }, "make sure assertions are enabled with VM argument '-ea'");
+    }
+
+    // valid puzzle with crossing words
+    @Test public void testValidPuzzle() {
+        CrosswordFile puzzle = new CrosswordFile("\"Animals\"", "\"One particular animal\"",
+                List.of(new Entry("bat", "\"winged mammal\"", Direction.DOWN, 0, 1),
+                        new Entry("cat", "\"feline companion\"", Direction.ACROSS, 1, 0)));
+        assertEquals(List.of(), PuzzleValidator.validate(puzzle));
+    }
+
+    // crossing words with different letters
+    @Test public void testConflictingLetters() {
+        CrosswordFile puzzle = new CrosswordFile("\"Bad\"", "\"conflict\"",
+                List.of(new Entry("bat", "\"winged mammal\"", Direction.DOWN, 0, 1),
+                        new Entry("cot", "\"bed\"", Direction.ACROSS, 1, 0)));
+        List<String> problems = PuzzleValidator.validate(puzzle);
+        assertEquals(1, problems.size());
+        assertTrue(problems.get(0).contains("entry 2 (cot, ACROSS, 1, 0)"), problems.get(0));
+        assertTrue(problems.get(0).contains("entry 1 (bat, DOWN, 0, 1)"), problems.get(0));
+    }
+
+    // word running off the board, since a DOWN word alone does not make the board wider
+    @Test public void testOutOfBounds() {
+        CrosswordFile puzzle = new CrosswordFile("\"Bad\"", "\"bounds\"",
+                List.of(new Entry("cat", "\"feline companion\"", Direction.ACROSS, 0, 0),
+                        new Entry("dog", "\"canine companion\"", Direction.DOWN, 0, 5)));
+        List<String> problems = PuzzleValidator.validate(puzzle);
+        assertEquals(1, problems.size());
+        assertTrue(problems.get(0).contains("runs off"), problems.get(0));
+    }
+
+    // several problems in one puzzle are all reported
+    @Test public void testAllProblemsReported() {
+        CrosswordFile puzzle = new CrosswordFile("\"Bad\"", "\"many problems\"",
+                List.of(new Entry("there", "\"fine\"", Direction.ACROSS, 0, 0),
+                        new Entry("real", "\"same direction overlap\"", Direction.ACROSS, 0, 3),
+                        new Entry("tab", "\"fine\"", Direction.DOWN, 0, 0),
+                        new Entry("toe", "\"same start and direction\"", Direction.DOWN, 0, 0),
+                        new Entry("hot", "\"conflicts with real\"", Direction.DOWN, 0, 4)));
+        List<String> problems = PuzzleValidator.validate(puzzle);
+        assertEquals(3, problems.size(), problems.toString());
+        assertTrue(problems.get(0).contains("going the same direction"), problems.get(0));
+        assertTrue(problems.get(1).contains("starts at the same location and direction"), problems.get(1));
+        assertTrue(problems.get(2).contains("has 'h' at (0, 4)"), problems.get(2));
+    }
+
+    // files from the puzzles folder
+    @Test public void testValidateFile() {
+        assertEquals(List.of(), PuzzleValidator.validateFile(Paths.get("puzzles/simple.puzzle")));
+        assertEquals(2, PuzzleValidator.validateFile(Paths.get("puzzles/badOverlap.puzzle")).size());
+        assertEquals(1, PuzzleValidator.validateFile(Paths.get("puzzles/sameStartSameDirection.puzzle")).size());
+        assertEquals(1, PuzzleValidator.validateFile(Paths.get("puzzles/inconsistent.puzzle")).size());
+        assertEquals(1, PuzzleValidator.validateFile(Paths.get("puzzles/doesNotExist.puzzle")).size());
+    }
+}
@@ -0,0 +1,474 @@
+package crossword;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import crossword.ServerResponse.State;
+
+public class RouterTest {
+
+    /*
+     * Partition:
+     *   - owner(): every node owns some IDs, the same ID always has the same owner
+     *   - START: a new player ID, one in use, the router's own ID, not a player ID
+     *   - CHOOSE: the lobby lists matches of every node; NEW and PLAY relayed to the node owning the match;
+     *     LIST; a command the router does not understand
+     *   - relayed: moves reach the node, the node puts the player back in CHOOSE (EXIT while waiting, a match
+     *     that does not exist), the node refuses the player
+     *   - following a node's lobby: lost and followed again while a match moved to the node is played there
+     *   - migrate(): a live match, with a move sent while it moves, moves after it moved, joining and watching
+     *     it on its new node; a match that does not exist, to the node it is on; a router with the wrong peer
+     *     secret
+     *   - the router's ID on a node: asked for by a client before the router follows the node
+     *   - drain(): a node with no matches, a node with waiting and live matches
+     */
+
+    private static final int NODES = 2;
+    private static final int TIMEOUT_MILLIS = 10 * 1000;
+    private static final String PEER_SECRET = "N0desOnly=";
+
+    @Test public void testAssertionsEnabled() {
+        assertThrows(AssertionError.class, () -> {
+            assert false;
+        }, "make sure assertions are enabled with VM argument '-ea'");
+    }
+
+    /** A client connected to the router */
+    private static class TestClient {
+        private final Socket socket;
+        private final ObjectInputStream in;
+        private final PrintWriter out;
+
+        TestClient(Router router) throws IOException {
+            socket = new Socket("localhost", router.port());
+            socket.setSoTimeout(TIMEOUT_MILLIS);
+            in = new ObjectInputStream(socket.getInputStream());
+            out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8), true);
+            assertEquals(State.START, read().state());
+        }
+
+        // send a command and read the response to it
+        ServerResponse send(String command) throws IOException {
+            out.println(command);
+            return read();
+        }
+
+        ServerResponse read() throws IOException {
+            try {
+                return (ServerResponse) in.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+        }
+
+        // read responses until one that expected accepts, skipping lobby pages the router sends in between
+        ServerResponse readUntil(Predicate<ServerResponse> expected) throws IOException {
+            ServerResponse response = read();
+            while (!expected.test(response)) {
+                response = read();
+            }
+            return response;
+        }
+
+        // send a command that leaves CHOOSE and read the first response that is not a lobby page
+        ServerResponse leaveLobby(String command) throws IOException {
+            out.println(command);
+            return readUntil(r -> r.state() != State.CHOOSE || r.hasMessage());
+        }
+
+        // send a command and read the first response with a message
+        ServerResponse sendForMessage(String command) throws IOException {
+            out.println(command);
+            return readUntil(ServerResponse::hasMessage);
+        }
+    }
+
+    // start NODES nodes and a router for them, returning the router
+    private static Router startCluster() throws IOException {
+        return startRouter(startNodes(), PEER_SECRET);
+    }
+
+    // start NODES nodes, returning their addresses
+    private static List<InetSocketAddress> startNodes() throws IOException {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (int i = 0; i < NODES; i++) {
+            Server node = new Server("puzzles", 0, ServerOptions.DEFAULT.withShard(i, NODES).withPeerSecret(PEER_SECRET));
+            addresses.add(new InetSocketAddress("localhost", node.port()));
+            start(() -> {
+                node.serve();
+                return null;
+            });
+        }
+        return addresses;
+    }
+
+    // start a router for the nodes at addresses with peerSecret, returning it once it follows the lobby of every node
+    private static Router startRouter(List<InetSocketAddress> addresses, String peerSecret) throws IOException {
+        Router router = new Router(0, addresses, peerSecret);
+        start(() -> {
+            router.serve();
+            return null;
+        });
+        // a player in CHOOSE when the first lobbies arrive is sent the lobby again, between replies
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (router.metrics().get("router.lobbies") < NODES) {
+            assertTrue(System.currentTimeMillis() < deadline, "expected the router to follow the lobby of every node");
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }
+        return router;
+    }
+
+    private static void start(Callable<Void> serve) {
+        Thread thread = new Thread(() -> {
+            try {
+                serve.call();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Forwards connections to a node, any of which can be cut */
+    private static class Proxy {
+        private final ServerSocket serverSocket;
+        private final List<Socket> accepted = new CopyOnWriteArrayList<>();
+
+        Proxy(InetSocketAddress node) throws IOException {
+            serverSocket = new ServerSocket(0);
+            start(() -> {
+                while (true) {
+                    Socket client = serverSocket.accept();
+                    Socket server = new Socket(node.getHostString(), node.getPort());
+                    accepted.add(client);
+                    forward(client, server);
+                    forward(server, client);
+                }
+            });
+        }
+
+        InetSocketAddress address() {
+            return new InetSocketAddress("localhost", serverSocket.getLocalPort());
+        }
+
+        // close the connection accepted index-th, on both sides
+        void cut(int index) throws IOException {
+            accepted.get(index).close();
+        }
+
+        // copy from to to until either is closed, then close both
+        private static void forward(Socket from, Socket to) {
+            start(() -> {
+                try (from; to) {
+                    from.getInputStream().transferTo(to.getOutputStream());
+                } catch (IOException e) {
+                    // the other direction closed the sockets
+                }
+                return null;
+            });
+        }
+    }
+
+    // a match ID that node owns
+    private static String idOwnedBy(int node) {
+        for (int i = 1; ; i++) {
+            if (Router.owner("MATCH" + i, NODES) == node) {
+                return "MATCH" + i;
+            }
+        }
+    }
+
+    // covers every node owning some IDs, the same ID always having the same owner
+    @Test
+    public void testOwner() {
+        assertNotEquals(idOwnedBy(0), idOwnedBy(1));
+        assertEquals(Router.owner("MATCH1", 3), Router.owner("MATCH1", 3));
+        assertEquals(0, Router.owner("MATCH1", 1));
+    }
+
+    // covers every kind of START, a lobby listing the matches of every node, NEW and PLAY relayed, moves
+    @Test @Tag("no-didit")
+    public void testMatchesOnEveryNode() throws IOException {
+        final Router router = startCluster();
+        final String first = idOwnedBy(0);
+        final String second = idOwnedBy(1);
+
+        TestClient tatum = new TestClient(router);
+        assertEquals(State.START, tatum.send("TA TUM").state());
+        assertEquals(State.CHOOSE, tatum.send("TATUM").state());
+        assertEquals(State.WAIT, tatum.send("NEW " + first + " SIMPLE_PUZZLE \"FIRST\"").state());
+
+        TestClient tim = new TestClient(router);
+        assertEquals(State.CHOOSE, tim.send("TIM").state());
+        assertEquals(State.WAIT, tim.send("NEW " + second + " SIMPLE_PUZZLE \"SECOND\"").state());
+
+        TestClient bob = new TestClient(router);
+        ServerResponse response = bob.send("TATUM");
+        assertEquals(State.START, response.state());
+        assertEquals("TATUM player ID already in use", response.message());
+        assertEquals(State.START, bob.send(Router.LOBBY_ID).state());
+        assertEquals(State.CHOOSE, bob.send("BOB").state());
+        bob.out.println("LIST");
+        response = bob.readUntil(r -> r.availGames().contains("Match: " + second + " \"SECOND\"")
+                && r.availGames().contains("Match: " + first + " \"FIRST\""));
+        assertEquals(State.CHOOSE, response.state());
+
+        assertEquals(State.PLAY, bob.send("PLAY " + second).state());
+        assertEquals(State.PLAY, tim.read().state());
+        // the node may still be sending BOB the match as it was when they joined
+        response = bob.send("TRY 1DOWN CAT");
+        while (response.charBoard().get(0).get(0).getChar() != 'c') {
+            assertEquals(State.PLAY, response.state());
+            response = bob.read();
+        }
+        assertEquals(3, router.metrics().get("router.relayed"));
+        for (TestClient client : List.of(tatum, tim, bob)) {
+            client.socket.close();
+        }
+    }
+
+    // covers the node putting the player back in CHOOSE, LIST, a command the router does not understand
+    @Test @Tag("no-didit")
+    public void testBackToLobby() throws IOException {
+        final Router router = startCluster();
+        TestClient tatum = new TestClient(router);
+        assertEquals(State.CHOOSE, tatum.send("TATUM").state());
+        ServerResponse response = tatum.send("HELLO");
+        assertEquals(State.CHOOSE, response.state());
+        assertEquals("Couldn't understand command", response.message());
+
+        assertEquals(State.WAIT, tatum.send("NEW " + idOwnedBy(1) + " SIMPLE_PUZZLE \"TEST\"").state());
+        response = tatum.sendForMessage("EXIT");
+        assertEquals(State.CHOOSE, response.state());
+        assertEquals("You stopped waiting for another player to join. Choose a new option", response.message());
+
+        response = tatum.sendForMessage("PLAY NOSUCHMATCH");
+        assertEquals(State.CHOOSE, response.state());
+        assertEquals("Couldn't find match by that ID", response.message());
+        final List<String> simple = List.of("Board: SIMPLE_PUZZLE \"A trivial puzzle designed to show how puzzles work\"");
+        tatum.out.println("LIST \"SIMPLE\"");
+        assertEquals(simple, tatum.readUntil(r -> r.availGames().equals(simple)).availGames());
+        assertEquals(2, router.metrics().get("router.returned"));
+        tatum.socket.close();
+    }
+
+    // read responses until the board shows c at row, column
+    private static ServerResponse readUntilLetter(TestClient client, int row, int column, char c) throws IOException {
+        return client.readUntil(r -> r.state() == State.PLAY && r.charBoard().get(row).get(column).getChar() == c);
+    }
+
+    // covers migrate() of a live match with a move sent while it moves, moves after, watching it on its new
+    // node, a match that does not exist and one already on the node
+    @Test @Tag("no-didit")
+    public void testMigrate() throws IOException {
+        final Router router = startCluster();
+        final String id = idOwnedBy(0);
+        TestClient tatum = new TestClient(router);
+        assertEquals(State.CHOOSE, tatum.send("TATUM").state());
+        assertEquals(State.WAIT, tatum.leaveLobby("NEW " + id + " MEDIUM \"MOVING\"").state());
+        TestClient tim = new TestClient(router);
+        assertEquals(State.CHOOSE, tim.send("TIM").state());
+        assertEquals(State.PLAY, tim.leaveLobby("PLAY " + id).state());
+        tatum.out.println("TRY 1ACROSS STAR");
+        readUntilLetter(tatum, 1, 0, 's');
+
+        tim.out.println("TRY 2DOWN MARKET");
+        assertTrue(router.migrate(id, 1), "expected the match to move");
+        ServerResponse response = readUntilLetter(tim, 0, 2, 'm');
+        assertEquals('s', response.charBoard().get(1).get(0).getChar());
+        readUntilLetter(tatum, 0, 2, 'm');
+
+        TestClient bob = new TestClient(router);
+        assertEquals(State.CHOOSE, bob.send("BOB").state());
+        assertEquals(State.PLAY, bob.leaveLobby("SPECTATE " + id).state());
+        assertFalse(router.migrate(id, 1), "expected the match to already be on node 1");
+        assertTrue(router.migrate(id, 0), "expected the match to move back");
+        tatum.out.println("TRY 3ACROSS KETTLE");
+        readUntilLetter(tim, 3, 4, 't');
+        assertEquals('m', readUntilLetter(bob, 3, 4, 't').charBoard().get(0).get(2).getChar());
+
+        assertFalse(router.migrate("NOSUCHMATCH", 1 - Router.owner("NOSUCHMATCH", NODES)),
+                "expected no match to move");
+        assertThrows(IllegalArgumentException.class, () -> router.migrate(id, NODES));
+        assertEquals(2, router.metrics().get("router.migrations"));
+        assertTrue(router.metrics().get("router.followed") >= 4, "expected both players to follow the match twice");
+        for (TestClient client : List.of(tatum, tim, bob)) {
+            client.socket.close();
+        }
+    }
+
+    // covers a client taking the router's ID on a node before the router, and migrate() with the wrong secret
+    @Test @Tag("no-didit")
+    public void testPeerSecret() throws IOException {
+        final List<InetSocketAddress> nodes = startNodes();
+        final Socket squatter = new Socket(nodes.get(0).getHostString(), nodes.get(0).getPort());
+        final ObjectInputStream squatterIn = new ObjectInputStream(squatter.getInputStream());
+        final PrintWriter squatterOut = new PrintWriter(new OutputStreamWriter(squatter.getOutputStream(), UTF_8), true);
+        squatterOut.println(Router.LOBBY_ID);
+        squatterOut.println("LOBBY");
+        try {
+            ServerResponse response = (ServerResponse) squatterIn.readObject();
+            while (!response.hasMessage()) {
+                response = (ServerResponse) squatterIn.readObject();
+            }
+            assertEquals(State.START, response.state(), "expected the node to keep the router's ID");
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+        // follows the lobby of every node, including the one the client tried to take its ID on
+        final Router router = startRouter(nodes, PEER_SECRET);
+        final String id = idOwnedBy(0);
+        TestClient tatum = new TestClient(router);
+        assertEquals(State.CHOOSE, tatum.send("TATUM").state());
+        assertEquals(State.WAIT, tatum.leaveLobby("NEW " + id + " MEDIUM \"STAYING\"").state());
+
+        // migrate() does not need the router to be serving, nor to follow the lobbies
+        assertThrows(IllegalArgumentException.class, () -> new Router(0, nodes, null));
+        final Router guessing = new Router(0, nodes, "Gue55ed");
+        assertFalse(guessing.migrate(id, 1), "expected the node to refuse the wrong secret");
+        assertEquals(0, guessing.metrics().get("router.migrations"));
+        assertTrue(router.migrate(id, 1), "expected the match to still be on node 0");
+        tatum.socket.close();
+        squatter.close();
+    }
+
+    // covers drain() of a node with no matches and of a node with waiting and live matches
+    @Test @Tag("no-didit")
+    public void testDrain() throws IOException {
+        final Router router = startCluster();
+        assertEquals(0, router.drain(1));
+        final String live = idOwnedBy(0);
+        TestClient tatum = new TestClient(router);
+        assertEquals(State.CHOOSE, tatum.send("TATUM").state());
+        assertEquals(State.WAIT, tatum.leaveLobby("NEW " + live + " SIMPLE_PUZZLE \"LIVE\"").state());
+        TestClient tim = new TestClient(router);
+        assertEquals(State.CHOOSE, tim.send("TIM").state());
+        assertEquals(State.PLAY, tim.leaveLobby("PLAY " + live).state());
+
+        String waiting = live;
+        for (int i = 1; waiting.equals(live) || Router.owner(waiting, NODES) != 0; i++) {
+            waiting = "WAITING" + i;
+        }
+        TestClient bob = new TestClient(router);
+        assertEquals(State.CHOOSE, bob.send("BOB").state());
+        assertEquals(State.WAIT, bob.leaveLobby("NEW " + waiting + " SIMPLE_PUZZLE \"WAITING\"").state());
+        TestClient tuyet = new TestClient(router);
+        assertEquals(State.CHOOSE, tuyet.send("TUYET").state());
+        tuyet.out.println("LIST");
+        final String listed = waiting;
+        tuyet.readUntil(r -> r.state() == State.CHOOSE
+                && r.availGames().contains("Live: " + live + " \"LIVE\" (0 watching)")
+                && r.availGames().contains("Match: " + listed + " \"WAITING\""));
+
+        assertEquals(2, router.drain(0));
+        tim.out.println("TRY 1DOWN CAT");
+        readUntilLetter(tatum, 0, 0, 'c');
+        // the router shows TUYET the lobby again as the matches move
+        tuyet.out.println("PLAY " + waiting);
+        assertEquals(State.PLAY, tuyet.readUntil(r -> r.state() != State.CHOOSE).state());
+        assertEquals(State.PLAY, bob.readUntil(r -> r.state() == State.PLAY).state());
+        for (TestClient client : List.of(tatum, tim, bob, tuyet)) {
+            client.socket.close();
+        }
+    }
+
+    // covers the node refusing the player, who stays in CHOOSE and can try again
+    @Test @Tag("no-didit")
+    public void testRelayRefused() throws IOException, InterruptedException {
+        final List<InetSocketAddress> nodes = startNodes();
+        final Router router = startRouter(nodes, PEER_SECRET);
+        final String id = idOwnedBy(1);
+        final Socket direct = new Socket(nodes.get(1).getHostString(), nodes.get(1).getPort());
+        final ObjectInputStream directIn = new ObjectInputStream(direct.getInputStream());
+        final PrintWriter directOut = new PrintWriter(new OutputStreamWriter(direct.getOutputStream(), UTF_8), true);
+        directOut.println("TATUM");
+        try {
+            while (((ServerResponse) directIn.readObject()).state() != State.CHOOSE) {
+                continue;
+            }
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+
+        TestClient tatum = new TestClient(router);
+        assertEquals(State.CHOOSE, tatum.send("TATUM").state());
+        ServerResponse response = tatum.leaveLobby("NEW " + id + " SIMPLE_PUZZLE \"TEST\"");
+        assertEquals(State.CHOOSE, response.state());
+        assertEquals("TATUM player ID already in use", response.message());
+
+        directOut.println("EXIT");
+        direct.close();
+        // the node may not have let go of TATUM yet
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        response = tatum.leaveLobby("NEW " + id + " SIMPLE_PUZZLE \"TEST\"");
+        while (response.state() == State.CHOOSE && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            response = tatum.leaveLobby("NEW " + id + " SIMPLE_PUZZLE \"TEST\"");
+        }
+        assertEquals(State.WAIT, response.state());
+        tatum.socket.close();
+    }
+
+    // true iff response is a lobby page listing matchId as live
+    private static boolean listsLive(ServerResponse response, String matchId) {
+        return response.state() == State.CHOOSE
+                && response.availGames().stream().anyMatch(line -> line.startsWith("Live: " + matchId + " "));
+    }
+
+    // covers the lobby of a node lost and followed again while a match moved to the node is played there
+    @Test @Tag("no-didit")
+    public void testLobbyLostKeepsMovedMatch() throws IOException {
+        final List<InetSocketAddress> nodes = new ArrayList<>(startNodes());
+        final Proxy proxy = new Proxy(nodes.get(1));
+        nodes.set(1, proxy.address());
+        final Router router = startRouter(nodes, PEER_SECRET);
+        final String id = idOwnedBy(0);
+        TestClient tatum = new TestClient(router);
+        assertEquals(State.CHOOSE, tatum.send("TATUM").state());
+        assertEquals(State.WAIT, tatum.leaveLobby("NEW " + id + " SIMPLE_PUZZLE \"MOVING\"").state());
+        TestClient tim = new TestClient(router);
+        assertEquals(State.CHOOSE, tim.send("TIM").state());
+        assertEquals(State.PLAY, tim.leaveLobby("PLAY " + id).state());
+        assertTrue(router.migrate(id, 1), "expected the match to move");
+        tatum.out.println("TRY 1DOWN CAT");
+        readUntilLetter(tim, 0, 0, 'c');
+
+        TestClient bob = new TestClient(router);
+        assertEquals(State.CHOOSE, bob.send("BOB").state());
+        bob.out.println("LIST");
+        bob.readUntil(r -> listsLive(r, id));
+        // the first connection through the proxy is the router following the lobby of node 1
+        proxy.cut(0);
+        bob.readUntil(r -> r.state() == State.CHOOSE && !listsLive(r, id));
+        bob.readUntil(r -> listsLive(r, id));
+        assertEquals(State.PLAY, bob.leaveLobby("SPECTATE " + id).state(), "expected the match to be found on node 1");
+        for (TestClient client : List.of(tatum, tim, bob)) {
+            client.socket.close();
+        }
+    }
+}
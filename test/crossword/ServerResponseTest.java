@@ -3,6 +3,7 @@ package crossword;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.List;
 
@@ -15,6 +16,8 @@ public class ServerResponseTest {
      * Partitions
      *      Each of the states: START, CHOOSE, WAIT, PLAY, SCORE
      *      Has message: Y/N
+     *      Has token: Y/N
+     *      Has results: Y/N
      */
     
     //Start tests
@@ -74,4 +77,33 @@ public class ServerResponseTest {
         assertEquals(List.of("s1", "s2"), mess.scores());
         assertEquals("mess", mess.message());
     }
+    
+    //token tests
+    @Test
+    public void testToken() {
+        ServerResponse noToken = ServerResponse.createChoose("t", List.of("g1"));
+        assertFalse(noToken.hasToken());
+        assertThrows(NoSuchFieldError.class, () -> {noToken.token();});
+        
+        ServerResponse token = noToken.withToken("ABC123");
+        assertTrue(token.hasToken());
+        assertEquals("ABC123", token.token());
+        assertEquals(State.CHOOSE, token.state());
+        assertEquals("t", token.message());
+        assertEquals(List.of("g1"), token.availGames());
+    }
+    
+    //results tests
+    @Test
+    public void testResults() {
+        ServerResponse single = ServerResponse.createScore("done", List.of("p1: 1"));
+        assertEquals(List.of(), single.results());
+        
+        ServerResponse batch = single.withToken("ABC123").withResults(List.of("TRY 1ACROSS CAR: placed", "TRY 2DOWN X: wrong"));
+        assertEquals(List.of("TRY 1ACROSS CAR: placed", "TRY 2DOWN X: wrong"), batch.results());
+        assertEquals("ABC123", batch.token());
+        assertEquals("done", batch.message());
+        assertEquals(List.of("p1: 1"), batch.scores());
+        assertThrows(UnsupportedOperationException.class, () -> {batch.results().add("x");});
+    }
 }
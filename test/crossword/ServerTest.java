@@ -7,6 +7,7 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
@@ -15,12 +16,20 @@ import java.io.PrintWriter;
 import java.net.ConnectException;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 
+import crossword.Match.MatchListener;
+import crossword.Match.TooManyPlayersException;
+
 
 public class ServerTest {
     
@@ -30,13 +39,27 @@ public class ServerTest {
      *      - enter valid player ID
      *      - enter already used player ID
      *      - enter invalid player ID (contains new lines, or empty string)
+     *      - RESUME with the token of a player whose match is held, whose grace period has ended
+     *      - enter the ID of a player whose match is held
+     *      - send nothing until the START idle timeout
+     *      - MIGRATE or ADOPT with the peer secret, a wrong one, or on a server that is not one of several nodes
+     *      - MIGRATE of a match on a board whose encoding is longer than a command
      *      
      *   - CHOOSE state
      *      - start a new match from a loaded board
      *      - select a non-existant board (use incorrect puzzle id)
      *      - join an existing match
+     *      - start a match for more than two players, or too many, and join it until it is full
      *      - try to join match with non-existant match ID
      *      - exit
+     *      - puzzle file added to the puzzle folder while in CHOOSE
+     *      - player ID with a match recovered from the match log
+     *      - player ID with a match recovered from a snapshot and the match log
+     *      - match recovered on its puzzle loaded under another board ID, not recovered as its puzzle changed
+     *      - QUICKPLAY for a loaded board, any board, a board that is not loaded, then EXIT or be paired
+     *      - LIST with a filter matching some lines, none; players whose page a new match is or is not on
+     *      - the router's ID: refused as a player ID, and to LOBBY without the peer secret or with a wrong one; 
+     *        taken with it once, following the lobby, NEW, PLAY, SPECTATE and QUICKPLAY refused
      *      
      *   - WAIT state
      *      - add another player to match you are waiting for
@@ -48,6 +71,14 @@ public class ServerTest {
      *      - challenge an incorrect word
      *      - try and challenge using nonexistant id
      *      - exit
+     *      - lose connection and resume within the grace period, or not
+     *      - send nothing until the PLAY idle timeout, with a grace period
+     *      - several commands sent together, the match ending in the middle of them or not
+     *      - ask for a hint for a word with letters on the board, a nonexistant id, on a server without words
+     *      - move made while another thread holds the lock on the server
+     *      - move made by the opponent while a hint is being found
+     *      - watch a match held for its players after it was handed over from another server, and see it listed 
+     *        once one of them is back
      *      
      *   - SCORE state
      *      - show score
@@ -58,6 +89,8 @@ public class ServerTest {
     
     private static final String LOCALHOST = "127.0.0.1";
     private static final int MAX_CONNECTION_ATTEMPTS = 5;
+    private static final String PEER_SECRET = "N0desOnly=";
+    private static final int LARGE_BOARD_TIMEOUT_MILLIS = 30 * 1000;
     
     @Test public void testAssertionsEnabled() {
         assertThrows(AssertionError.class, () -> {
@@ -255,6 +288,77 @@ public class ServerTest {
         socket.close(); 
     }
     
+    //puzzle file added to the folder while a player is in the CHOOSE state
+    @Test @Tag("no-didit")
+    public void testChooseHotReloadNewPuzzle() throws IOException {
+        final Path folder = Files.createTempDirectory("puzzles");
+        Files.copy(Paths.get("puzzles/simple.puzzle"), folder.resolve("simple.puzzle"));
+        final Server s = new Server(folder.toString(), 0);
+        
+        final Socket socket = connectToServer(startServer(s), s);
+        final ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+        final PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8), true);
+
+        //add TATUM as id
+        out.println("TATUM");
+        assertTrue(expectedOutput(in, ServerResponse.State.CHOOSE), "Did not change to state CHOOSE");
+        
+        //add a new puzzle, which should be pushed to TATUM's CHOOSE screen
+        Files.copy(Paths.get("puzzles/test.puzzle"), folder.resolve("test.puzzle"));
+        assertTrue(expectedBoard(in, "ANIMALS"), "new puzzle should have been loaded and sent to CHOOSE players");
+        
+        //new board can be used to start a match
+        out.println("NEW MATCH1 ANIMALS \"NEW PUZZLE\"");
+        assertTrue(expectedOutput(in, ServerResponse.State.WAIT), "should have moved to WAIT state after creating new match");
+        out.println("EXIT");
+        out.println("EXIT");
+        socket.close();
+    }
+    
+    //new match for more than two players, joined by two more, with too many players
+    @Test @Tag("no-didit")
+    public void testChooseMultiplayerMatch() throws IOException {
+        final Server s = new Server("puzzles", 0);
+        final Thread serverThread = startServer(s);
+        
+        final Socket socket = connectToServer(serverThread, s);
+        final ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+        final PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8), true);
+        final Socket socket2 = connectToServer(serverThread, s);
+        final ObjectInputStream in2 = new ObjectInputStream(socket2.getInputStream());
+        final PrintWriter out2 = new PrintWriter(new OutputStreamWriter(socket2.getOutputStream(), UTF_8), true);
+        final Socket socket3 = connectToServer(serverThread, s);
+        final ObjectInputStream in3 = new ObjectInputStream(socket3.getInputStream());
+        final PrintWriter out3 = new PrintWriter(new OutputStreamWriter(socket3.getOutputStream(), UTF_8), true);
+        
+        out.println("TATUM");
+        assertTrue(expectedOutput(in, ServerResponse.State.CHOOSE), "should choose after entering an ID");
+        out.println("NEW MATCH1 SIMPLE_PUZZLE \"TEST\" PLAYERS 40");
+        final ServerResponse tooMany = readResponse(in);
+        assertEquals(ServerResponse.State.CHOOSE, tooMany.state());
+        assertEquals("A match can have 2 to 32 players", tooMany.message());
+        out.println("NEW MATCH1 SIMPLE_PUZZLE \"TEST\" PLAYERS 3");
+        assertTrue(expectedOutput(in, ServerResponse.State.WAIT), "should be waiting after creating new match");
+        
+        out2.println("BOB");
+        final ServerResponse open = readResponse(in2);
+        assertTrue(open.availGames().contains("Match: MATCH1 \"TEST\" (1/3 players)"), "should list the match as open");
+        out2.println("PLAY MATCH1");
+        assertTrue(expectedOutput(in2, ServerResponse.State.PLAY), "should have moved to PLAY state after joined match");
+        
+        out3.println("ALICE");
+        final ServerResponse stillOpen = readResponse(in3);
+        assertTrue(stillOpen.availGames().contains("Match: MATCH1 \"TEST\" (2/3 players)"), "should still list the match as open");
+        out3.println("PLAY MATCH1");
+        final ServerResponse joined = readResponse(in3);
+        assertEquals(ServerResponse.State.PLAY, joined.state());
+        assertEquals(3, joined.scores().size(), "should show every player's score");
+        
+        socket.close();
+        socket2.close();
+        socket3.close();
+    }
+    
     //exit in CHOOSE state
     @Test @Tag("no-didit")
     public void testChooseExit() throws IOException {
@@ -274,6 +378,162 @@ public class ServerTest {
     }
     
     
+    //connect and never choose an ID
+    @Test @Tag("no-didit")
+    public void testStartIdleTimeout() throws IOException {
+        final Server s = new Server("puzzles", 0, ServerOptions.DEFAULT.withTimeouts(
+                ConnectionTimeouts.NONE.withIdle(ServerResponse.State.START, 300)));
+        final Thread serverThread = startServer(s);
+        
+        final Socket socket = connectToServer(serverThread, s);
+        final ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+        assertTrue(expectedOutput(in, ServerResponse.State.START), "should be asked for an ID");
+        assertEquals(null, readResponse(in), "connection should be closed after the idle timeout");
+        assertEquals(1, s.metrics().get("timeouts.idle.START"), "timeout should be counted");
+        
+        //a client that keeps sending is not timed out
+        final Socket socket2 = connectToServer(serverThread, s);
+        final ObjectInputStream in2 = new ObjectInputStream(socket2.getInputStream());
+        final PrintWriter out2 = new PrintWriter(new OutputStreamWriter(socket2.getOutputStream(), UTF_8), true);
+        for (int i = 0; i < 4; i++) {
+            try { Thread.sleep(150); } catch (InterruptedException ie) { }
+            out2.println("BAD-ID");
+            assertEquals(ServerResponse.State.START, readResponse(in2).state(), "should still be connected");
+        }
+        out2.println("TATUM");
+        assertTrue(expectedOutput(in2, ServerResponse.State.CHOOSE), "should have moved to CHOOSE");
+        assertEquals(1, s.metrics().get("timeouts.idle.START"), "only the idle client should be timed out");
+        socket2.close();
+    }
+    
+    //match recovered from the match log, resumed by both players
+    @Test @Tag("no-didit")
+    public void testStartResumeRecoveredMatch() throws IOException {
+        final Path state = Files.createTempDirectory("state");
+        final MatchLog log = new MatchLog(state);
+        log.append(MatchLog.Record.newMatch("MATCH1", "SIMPLE_PUZZLE", "TEST", "TATUM"));
+        log.append(MatchLog.Record.join("MATCH1", "BOB"));
+        log.append(MatchLog.Record.tryWord("MATCH1", "BOB", "1DOWN", "CAT"));
+        log.close();
+        
+        final Server s = new Server("puzzles", 0, ServerOptions.DEFAULT.withStateFolder(state.toString()));
+        final Thread serverThread = startServer(s);
+        
+        final Socket socket = connectToServer(serverThread, s);
+        final ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+        final PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8), true);
+        
+        //TATUM goes straight back into the match, with BOB's word on the board
+        out.println("TATUM");
+        assertTrue(expectedOutput(in, ServerResponse.State.PLAY), "should have resumed the recovered match");
+        out.println("TRY 1DOWN CAT");
+        ServerResponse response = lastServerResponse(in);
+        assertFalse(response == null, "an exception occured while waiting for the Server to return a play object");
+        assertEquals('c', response.charBoard().get(0).get(0).getChar(), "should have recovered BOB's word");
+        
+        //a new match can't reuse the recovered match's ID while BOB has not resumed it
+        final Socket socket2 = connectToServer(serverThread, s);
+        final ObjectInputStream in2 = new ObjectInputStream(socket2.getInputStream());
+        final PrintWriter out2 = new PrintWriter(new OutputStreamWriter(socket2.getOutputStream(), UTF_8), true);
+        out2.println("ALICE");
+        out2.println("NEW MATCH1 SIMPLE_PUZZLE \"TEST\"");
+        assertFalse(expectedOutput(in2, ServerResponse.State.WAIT), "should not create a match with a recovered match's ID");
+        
+        out.println("EXIT");
+        assertTrue(expectedOutput(in, ServerResponse.State.SCORE), "should have moved to the SCORE state after exit");
+        socket.close();
+        socket2.close();
+    }
+    
+    //matches recovered on the board of the puzzle they were played on, whatever its ID is now, and dropped 
+    //with their records if that puzzle changed
+    @Test @Tag("no-didit")
+    public void testRecoverByPuzzle() throws IOException {
+        final Path state = Files.createTempDirectory("state");
+        final MatchLog log = new MatchLog(state);
+        final String simple = new CrosswordBoard("puzzles/sameStartingLocation.puzzle").getPuzzleId();
+        log.append(MatchLog.Record.newMatch("MATCH1", "OLD_NAME", simple, "TEST", "TATUM", 2, 0));
+        log.append(MatchLog.Record.join("MATCH1", "BOB"));
+        log.append(MatchLog.Record.tryWord("MATCH1", "BOB", "1DOWN", "CAT"));
+        log.append(MatchLog.Record.newMatch("MATCH2", "SIMPLE_PUZZLE", "sameStartingLocation.puzzle#00", "TEST", 
+                "ALICE", 2, 0));
+        log.append(MatchLog.Record.join("MATCH2", "CAROL"));
+        log.close();
+        
+        final Server s = new Server("puzzles", 0, ServerOptions.DEFAULT.withStateFolder(state.toString()));
+        final Thread serverThread = startServer(s);
+        
+        final Socket socket = connectToServer(serverThread, s);
+        final ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+        final PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8), true);
+        out.println("TATUM");
+        assertTrue(expectedOutput(in, ServerResponse.State.PLAY), "should have resumed the match on SIMPLE_PUZZLE");
+        out.println("TRY 1ACROSS CAR");
+        final ServerResponse response = lastServerResponse(in);
+        assertFalse(response == null, "an exception occured while waiting for the Server to return a play object");
+        assertEquals('c', response.charBoard().get(0).get(0).getChar(), "should have recovered BOB's word");
+        
+        final Socket socket2 = connectToServer(serverThread, s);
+        final ObjectInputStream in2 = new ObjectInputStream(socket2.getInputStream());
+        final PrintWriter out2 = new PrintWriter(new OutputStreamWriter(socket2.getOutputStream(), UTF_8), true);
+        out2.println("ALICE");
+        assertTrue(expectedOutput(in2, ServerResponse.State.CHOOSE), "should not have recovered a match on a changed puzzle");
+        
+        out.println("EXIT");
+        assertTrue(expectedOutput(in, ServerResponse.State.SCORE), "should have moved to the SCORE state after exit");
+        socket.close();
+        socket2.close();
+    }
+    
+    //match snapshotted part way through, recovered from the snapshot and the rest of the log
+    @Test @Tag("no-didit")
+    public void testStartResumeSnapshottedMatch() throws IOException {
+        final Path state = Files.createTempDirectory("state");
+        final Server s = new Server("puzzles", 0, ServerOptions.DEFAULT.withStateFolder(state.toString()));
+        final Thread serverThread = startServer(s);
+        
+        final Socket socket = connectToServer(serverThread, s);
+        final ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+        final PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8), true);
+        final Socket socket2 = connectToServer(serverThread, s);
+        final ObjectInputStream in2 = new ObjectInputStream(socket2.getInputStream());
+        final PrintWriter out2 = new PrintWriter(new OutputStreamWriter(socket2.getOutputStream(), UTF_8), true);
+        
+        out.println("TATUM");
+        out.println("NEW MATCH1 SIMPLE_PUZZLE \"TEST\"");
+        assertTrue(expectedOutput(in, ServerResponse.State.WAIT), "should be waiting after creating new match");
+        out2.println("BOB");
+        out2.println("PLAY MATCH1");
+        assertTrue(expectedOutput(in2, ServerResponse.State.PLAY), "should have moved to PLAY state after joined match");
+        out2.println("TRY 1DOWN CAT");
+        assertFalse(lastServerResponse(in2) == null, "should have placed CAT");
+        
+        final long seq = s.snapshot();
+        assertTrue(Files.exists(state.resolve(MatchSnapshot.SNAPSHOT_FILE)), "should have written a snapshot");
+        
+        out2.println("TRY 1ACROSS CAR");
+        assertFalse(lastServerResponse(in2) == null, "should have placed CAR");
+        
+        //a second server recovers from the snapshot and the moves made after it
+        final Server recovered = new Server("puzzles", 0, ServerOptions.DEFAULT.withStateFolder(state.toString()));
+        final Thread recoveredThread = startServer(recovered);
+        final Socket socket3 = connectToServer(recoveredThread, recovered);
+        final ObjectInputStream in3 = new ObjectInputStream(socket3.getInputStream());
+        final PrintWriter out3 = new PrintWriter(new OutputStreamWriter(socket3.getOutputStream(), UTF_8), true);
+        out3.println("BOB");
+        assertTrue(expectedOutput(in3, ServerResponse.State.PLAY), "should have resumed the snapshotted match");
+        out3.println("TRY 1DOWN CAT");
+        final ServerResponse response = lastServerResponse(in3);
+        assertFalse(response == null, "an exception occured while waiting for the Server to return a play object");
+        assertEquals('c', response.charBoard().get(0).get(0).getChar(), "should have recovered the word in the snapshot");
+        assertTrue(seq > 0, "snapshot should cover the moves before it");
+        
+        out.println("EXIT");
+        socket.close();
+        socket2.close();
+        socket3.close();
+    }
+    
     //PLAY state
     
     //test guessing correct word (no confirmation yet)
@@ -317,6 +577,558 @@ public class ServerTest {
         out.println("EXIT"); 
     }
     
+    //moves are answered without the lock on the server, so a thread holding it does not stop them
+    @Test @Tag("no-didit")
+    public void testPlayWhileServerLocked() throws IOException {
+        final Server s = new Server("puzzles", 0);
+        final Thread serverThread = startServer(s);
+        
+        final Socket socket = connectToServer(serverThread, s);
+        final ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+        final PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8), true);
+        final Socket socket2 = connectToServer(serverThread, s);
+        final ObjectInputStream in2 = new ObjectInputStream(socket2.getInputStream());
+        final PrintWriter out2 = new PrintWriter(new OutputStreamWriter(socket2.getOutputStream(), UTF_8), true);
+        
+        out.println("TATUM");
+        out.println("NEW MATCH1 SIMPLE_PUZZLE \"TEST\"");
+        assertTrue(expectedOutput(in, ServerResponse.State.WAIT), "should be waiting after creating new match");
+        out2.println("BOB");
+        out2.println("PLAY MATCH1");
+        assertTrue(expectedOutput(in2, ServerResponse.State.PLAY), "should have moved to PLAY state after joined match");
+        assertTrue(expectedOutput(in, ServerResponse.State.PLAY), "should have moved to PLAY state after other player entered");
+        
+        synchronized (s) {
+            out2.println("TRY 1DOWN CAT");
+            final ServerResponse response = readReply(in2);
+            assertFalse(response == null, "should have been answered while the server is locked");
+            assertEquals(ServerResponse.State.PLAY, response.state());
+            assertEquals('c', response.charBoard().get(0).get(0).getChar(), "should have placed CAT");
+            ServerResponse update = readResponse(in);
+            while (update != null && update.charBoard().get(0).get(0).getChar() != 'c') {
+                update = readResponse(in);
+            }
+            assertFalse(update == null, "the opponent should have been shown CAT while the server is locked");
+            
+            out.println("TRY 1ACROSS CAR");
+            final ServerResponse second = readResponse(in);
+            assertFalse(second == null, "should have been answered while the server is locked");
+            assertEquals("successfully placed word CAR", second.message());
+            assertEquals('r', second.charBoard().get(0).get(2).getChar(), "should have placed CAR");
+        }
+        
+        out.println("EXIT");
+        assertTrue(expectedOutput(in2, ServerResponse.State.SCORE), "should have moved to the SCORE state after exit");
+        socket.close();
+        socket2.close();
+    }
+    
+    //ask for a hint that takes until the opponent has made a move
+    @Test @Tag("no-didit")
+    public void testMoveWhileFindingHint() throws IOException, InterruptedException {
+        final CountDownLatch finding = new CountDownLatch(1);
+        final CountDownLatch moved = new CountDownLatch(1);
+        final WordIndex slow = new WordIndex(List.of("cab", "cat", "car")) {
+            @Override public List<String> match(String pattern, int[] allowed, int limit) {
+                finding.countDown();
+                try {
+                    assertTrue(moved.await(10, TimeUnit.SECONDS), "the opponent's move should not wait for the hint");
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                return super.match(pattern, allowed, limit);
+            }
+        };
+        final Server s = new Server("puzzles", 0, ServerOptions.DEFAULT.withWords(slow));
+        final Thread serverThread = startServer(s);
+        
+        final Socket socket = connectToServer(serverThread, s);
+        final ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+        final PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8), true);
+        final Socket socket2 = connectToServer(serverThread, s);
+        final ObjectInputStream in2 = new ObjectInputStream(socket2.getInputStream());
+        final PrintWriter out2 = new PrintWriter(new OutputStreamWriter(socket2.getOutputStream(), UTF_8), true);
+        
+        out.println("TATUM");
+        out.println("NEW MATCH1 SIMPLE_PUZZLE \"TEST\"");
+        assertTrue(expectedOutput(in, ServerResponse.State.WAIT), "should be waiting after creating new match");
+        out2.println("BOB");
+        out2.println("PLAY MATCH1");
+        assertTrue(expectedOutput(in2, ServerResponse.State.PLAY), "should have moved to PLAY state after joined match");
+        assertTrue(expectedOutput(in, ServerResponse.State.PLAY), "should have moved to PLAY state after other player entered");
+        
+        out2.println("HINT 1ACROSS");
+        assertTrue(finding.await(10, TimeUnit.SECONDS), "should have started finding the hint");
+        out.println("TRY 1DOWN CAT");
+        //the update showing the player joined may still arrive before the reply
+        ServerResponse response = readResponse(in);
+        while (!response.hasMessage() || response.message().endsWith("has joined your match")) {
+            response = readResponse(in);
+        }
+        assertEquals("successfully placed word CAT", response.message());
+        moved.countDown();
+        //the updates showing the player joined and the opponent's move arrive before the reply
+        ServerResponse hint = readResponse(in2);
+        while (!hint.hasMessage() || hint.message().startsWith("You have joined")) {
+            hint = readResponse(in2);
+        }
+        assertEquals("words that fit 1ACROSS: CAB, CAR, CAT", hint.message());
+        
+        out.println("EXIT");
+        assertTrue(expectedOutput(in2, ServerResponse.State.SCORE), "should have moved to the SCORE state after exit");
+        socket.close();
+        socket2.close();
+    }
+    
+    //lose connection during PLAY, resume on a new connection within the grace period
+    @Test @Tag("no-didit")
+    public void testPlayResumeAfterDisconnect() throws IOException {
+        final Server s = new Server("puzzles", 0, ServerOptions.DEFAULT.withGraceMillis(10 * 1000));
+        final Thread serverThread = startServer(s);
+        
+        final Socket socket = connectToServer(serverThread, s);
+        final ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+        final PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8), true);
+        final Socket socket2 = connectToServer(serverThread, s);
+        final ObjectInputStream in2 = new ObjectInputStream(socket2.getInputStream());
+        final PrintWriter out2 = new PrintWriter(new OutputStreamWriter(socket2.getOutputStream(), UTF_8), true);
+        
+        out.println("TATUM");
+        out.println("NEW MATCH1 SIMPLE_PUZZLE \"TEST\"");
+        assertTrue(expectedOutput(in, ServerResponse.State.WAIT), "should be waiting after creating new match");
+        out2.println("BOB");
+        final String token = sessionToken(in2);
+        assertFalse(token == null, "should have been given a session token");
+        out2.println("PLAY MATCH1");
+        assertTrue(expectedOutput(in2, ServerResponse.State.PLAY), "should have moved to PLAY state after joined match");
+        assertTrue(expectedOutput(in, ServerResponse.State.PLAY), "should have moved to PLAY state after other player entered");
+        
+        //BOB's connection drops, TATUM keeps playing
+        socket2.close();
+        out.println("TRY 1DOWN CAT");
+        final ServerResponse played = lastServerResponse(in);
+        assertFalse(played == null, "should still be playing");
+        assertEquals(ServerResponse.State.PLAY, played.state(), "match should be held for BOB");
+        
+        //BOB's ID is still taken, but BOB can resume with the token
+        final Socket socket3 = connectToServer(serverThread, s);
+        final ObjectInputStream in3 = new ObjectInputStream(socket3.getInputStream());
+        final PrintWriter out3 = new PrintWriter(new OutputStreamWriter(socket3.getOutputStream(), UTF_8), true);
+        out3.println("BOB");
+        final ServerResponse inUse = readResponse(in3);
+        assertEquals(ServerResponse.State.START, inUse.state(), "BOB's ID should still be in use");
+        out3.println("RESUME " + token);
+        final ServerResponse resumed = readResponse(in3);
+        assertFalse(resumed == null, "should have resumed the match");
+        assertEquals(ServerResponse.State.PLAY, resumed.state(), "should be back in the PLAY state");
+        assertEquals('c', resumed.charBoard().get(0).get(0).getChar(), "should see TATUM's word placed while away");
+        
+        out3.println("EXIT");
+        assertTrue(expectedOutput(in, ServerResponse.State.SCORE), "should have moved to the SCORE state after exit");
+        socket.close();
+        socket3.close();
+    }
+    
+    //lose connection during PLAY and do not come back within the grace period
+    @Test @Tag("no-didit")
+    public void testPlayGracePeriodEnds() throws IOException {
+        final Server s = new Server("puzzles", 0, ServerOptions.DEFAULT.withGraceMillis(200));
+        final Thread serverThread = startServer(s);
+        
+        final Socket socket = connectToServer(serverThread, s);
+        final ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+        final PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8), true);
+        final Socket socket2 = connectToServer(serverThread, s);
+        final ObjectInputStream in2 = new ObjectInputStream(socket2.getInputStream());
+        final PrintWriter out2 = new PrintWriter(new OutputStreamWriter(socket2.getOutputStream(), UTF_8), true);
+        
+        out.println("TATUM");
+        out.println("NEW MATCH1 SIMPLE_PUZZLE \"TEST\"");
+        assertTrue(expectedOutput(in, ServerResponse.State.WAIT), "should be waiting after creating new match");
+        out2.println("BOB");
+        final String token = sessionToken(in2);
+        out2.println("PLAY MATCH1");
+        assertTrue(expectedOutput(in, ServerResponse.State.PLAY), "should have moved to PLAY state after other player entered");
+        
+        socket2.close();
+        assertTrue(expectedOutput(in, ServerResponse.State.SCORE), "match should end once the grace period is over");
+        
+        final Socket socket3 = connectToServer(serverThread, s);
+        final ObjectInputStream in3 = new ObjectInputStream(socket3.getInputStream());
+        final PrintWriter out3 = new PrintWriter(new OutputStreamWriter(socket3.getOutputStream(), UTF_8), true);
+        out3.println("RESUME " + token);
+        final ServerResponse expired = readResponse(in3);
+        assertEquals(ServerResponse.State.START, expired.state(), "session should have expired");
+        out3.println("BOB");
+        assertTrue(expectedOutput(in3, ServerResponse.State.CHOOSE), "BOB's ID should be free again");
+        
+        socket.close();
+        socket3.close();
+    }
+    
+    //watch a match handed over from another server before its players have connected again
+    @Test @Tag("no-didit")
+    public void testSpectateAdoptedMatch() throws IOException, TooManyPlayersException {
+        final Server s = new Server("puzzles", 0, ServerOptions.DEFAULT.withShard(0, 2).withPeerSecret(PEER_SECRET));
+        final Thread serverThread = startServer(s);
+        
+        final Socket peer = connectToServer(serverThread, s);
+        final ObjectInputStream peerIn = new ObjectInputStream(peer.getInputStream());
+        final PrintWriter peerOut = new PrintWriter(new OutputStreamWriter(peer.getOutputStream(), UTF_8), true);
+        adopt(peer, encodedMatch(), PEER_SECRET);
+        assertEquals(ServerResponse.State.MOVED, readResponse(peerIn).state(), "should have adopted the match");
+        
+        final Socket socket = connectToServer(serverThread, s);
+        final ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+        final PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8), true);
+        out.println("TIM");
+        out.println("SPECTATE MATCH1");
+        ServerResponse watching = readResponse(in);
+        while (watching != null && watching.state() == ServerResponse.State.CHOOSE && !watching.hasMessage()) {
+            watching = readResponse(in);
+        }
+        assertFalse(watching == null, "should have been shown the match");
+        assertEquals(ServerResponse.State.PLAY, watching.state(), "should watch the match while it is held");
+        assertEquals('c', watching.charBoard().get(0).get(0).getChar(), "should see the moves made before it moved");
+        
+        //the match is listed once a player is back
+        final Socket socket2 = connectToServer(serverThread, s);
+        final ObjectInputStream in2 = new ObjectInputStream(socket2.getInputStream());
+        final PrintWriter out2 = new PrintWriter(new OutputStreamWriter(socket2.getOutputStream(), UTF_8), true);
+        out2.println("TUYET");
+        assertTrue(expectedOutput(in2, ServerResponse.State.CHOOSE), "should be choosing");
+        final Socket socket3 = connectToServer(serverThread, s);
+        final ObjectInputStream in3 = new ObjectInputStream(socket3.getInputStream());
+        final PrintWriter out3 = new PrintWriter(new OutputStreamWriter(socket3.getOutputStream(), UTF_8), true);
+        out3.println("TATUM");
+        assertTrue(expectedOutput(in3, ServerResponse.State.PLAY), "should be back in the match");
+        ServerResponse lobby = readResponse(in2);
+        while (lobby != null && !lobby.availGames().contains("Live: MATCH1 \"TEST\" (1 watching)")) {
+            lobby = readResponse(in2);
+        }
+        assertFalse(lobby == null, "should have been shown the match in the lobby");
+        
+        peer.close();
+        socket.close();
+        socket2.close();
+        socket3.close();
+    }
+    
+    //move a match onto or off a server without the peer secret
+    @Test @Tag("no-didit")
+    public void testMoveWithoutPeerSecret() throws IOException, TooManyPlayersException {
+        assertThrows(IllegalArgumentException.class, () -> new Server("puzzles", 0, 
+                ServerOptions.DEFAULT.withPeerSecret(PEER_SECRET)), "a server that is not a node should have no peer secret");
+        final Server alone = new Server("puzzles", 0);
+        final Thread aloneThread = startServer(alone);
+        final Server node = new Server("puzzles", 0, ServerOptions.DEFAULT.withShard(0, 2).withPeerSecret(PEER_SECRET));
+        final Thread nodeThread = startServer(node);
+        
+        final Socket socket = connectToServer(aloneThread, alone);
+        final ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+        final PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8), true);
+        adopt(socket, encodedMatch(), PEER_SECRET);
+        ServerResponse refused = readResponse(in);
+        assertEquals(ServerResponse.State.START, refused.state(), "a server that is not a node should not adopt");
+        assertEquals("Only the router and the other nodes can move matches", refused.message());
+        
+        final Socket socket2 = connectToServer(nodeThread, node);
+        final ObjectInputStream in2 = new ObjectInputStream(socket2.getInputStream());
+        final PrintWriter out2 = new PrintWriter(new OutputStreamWriter(socket2.getOutputStream(), UTF_8), true);
+        adopt(socket2, encodedMatch(), "N0desOnly");
+        assertEquals(ServerResponse.State.START, readResponse(in2).state(), "should not adopt with the wrong secret");
+        out2.println("MIGRATE MATCH1 localhost:" + alone.port() + " Gue55ed");
+        assertEquals(ServerResponse.State.START, readResponse(in2).state(), "should not migrate with the wrong secret");
+        adopt(socket2, encodedMatch(), PEER_SECRET);
+        assertEquals(ServerResponse.State.MOVED, readResponse(in2).state(), "should adopt with the secret");
+        assertEquals(1, alone.metrics().get("peers.refused"));
+        assertEquals(2, node.metrics().get("peers.refused"));
+        
+        socket.close();
+        socket2.close();
+    }
+    
+    // MATCH1 of TATUM and BOB on SIMPLE_PUZZLE, with CAT tried at 1DOWN, as a server hands it over with ADOPT
+    private static byte[] encodedMatch() throws IOException, TooManyPlayersException {
+        final MatchListener quiet = new MatchListener() {
+            public void updateMatch(boolean firstCall) {}
+            public void endMatch(String message) {}
+        };
+        final Match match = new Match("MATCH1", "SIMPLE_PUZZLE", "TEST",
+                new CrosswordBoard(new File("puzzles", "sameStartingLocation.puzzle").getAbsolutePath()));
+        match.addPlayer("TATUM", quiet);
+        match.addPlayer("BOB", quiet);
+        match.tryWord("TATUM", "1DOWN", "cat");
+        return MatchSnapshot.encode(match);
+    }
+    
+    // send ADOPT with secret and the encoded match on socket, as a server handing a match over does
+    private static void adopt(Socket socket, byte[] encoded, String secret) throws IOException {
+        socket.getOutputStream().write(("ADOPT " + encoded.length + " " + secret + "\n").getBytes(UTF_8));
+        socket.getOutputStream().write(encoded);
+        socket.getOutputStream().flush();
+    }
+    
+    //take over a match on a board too large for one command, hand it over to another node, and play it there
+    @Test @Tag("no-didit")
+    public void testMigrateLargeMatch() throws IOException, TooManyPlayersException {
+        final CrosswordFile grid = CrosswordBoardTest.grid(257);
+        final Path folder = Files.createTempDirectory("puzzles");
+        Files.write(folder.resolve("grid.puzzle"), PuzzleGenerator.format(grid).getBytes(UTF_8));
+        final MatchListener quiet = new MatchListener() {
+            public void updateMatch(boolean firstCall) {}
+            public void endMatch(String message) {}
+        };
+        final Match match = new Match("MATCH1", "GRID", "BIG", new CrosswordBoard(folder.resolve("grid.puzzle").toString()));
+        match.addPlayer("TATUM", quiet);
+        match.addPlayer("BOB", quiet);
+        final String word = grid.getEntries().get(0).getWord();
+        match.tryWord("TATUM", "1ACROSS", word);
+        final byte[] encoded = MatchSnapshot.encode(match);
+        assertTrue(encoded.length > CommandReader.MAX_LINE_BYTES, "the match should not fit in one command");
+        
+        final Server node = new Server(folder.toString(), 0, ServerOptions.DEFAULT.withShard(0, 2).withPeerSecret(PEER_SECRET));
+        final Thread nodeThread = startServer(node);
+        final Server other = new Server(folder.toString(), 0, ServerOptions.DEFAULT.withShard(1, 2).withPeerSecret(PEER_SECRET));
+        final Thread otherThread = startServer(other);
+        
+        final Socket peer = connectToServer(nodeThread, node);
+        final ObjectInputStream peerIn = new ObjectInputStream(peer.getInputStream());
+        final PrintWriter peerOut = new PrintWriter(new OutputStreamWriter(peer.getOutputStream(), UTF_8), true);
+        adopt(peer, encoded, PEER_SECRET);
+        final ServerResponse adopted = readResponse(peerIn);
+        assertEquals(ServerResponse.State.MOVED, adopted.state(), "should have adopted the match: " 
+                + (adopted.hasMessage() ? adopted.message() : ""));
+        peerOut.println("MIGRATE MATCH1 localhost:" + other.port() + " " + PEER_SECRET);
+        final ServerResponse moved = readResponse(peerIn);
+        assertEquals(ServerResponse.State.MOVED, moved.state(), "should have handed the match over: " 
+                + (moved.hasMessage() ? moved.message() : ""));
+        assertEquals(1, other.metrics().get("matches.adopted"));
+        
+        final Socket socket = connectToServer(otherThread, other);
+        // a frame of a board this size shows tens of thousands of cells
+        socket.setSoTimeout(LARGE_BOARD_TIMEOUT_MILLIS);
+        final ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+        final PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8), true);
+        out.println("BOB");
+        final ServerResponse back = readResponse(in);
+        assertEquals(ServerResponse.State.PLAY, back.state(), "should be back in the match on the other node");
+        assertEquals(257, back.charBoard().size());
+        assertEquals(word.charAt(0), back.charBoard().get(0).get(0).getChar(), "should see the moves made before it moved");
+        
+        peer.close();
+        socket.close();
+    }
+    
+    //send several commands at once during PLAY
+    @Test @Tag("no-didit")
+    public void testPlayPipelinedCommands() throws IOException {
+        final Server s = new Server("puzzles", 0);
+        final Thread serverThread = startServer(s);
+        
+        final Socket socket = connectToServer(serverThread, s);
+        final ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+        final PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8), true);
+        final Socket socket2 = connectToServer(serverThread, s);
+        final ObjectInputStream in2 = new ObjectInputStream(socket2.getInputStream());
+        final PrintWriter out2 = new PrintWriter(new OutputStreamWriter(socket2.getOutputStream(), UTF_8), true);
+        
+        out.println("TATUM");
+        out.println("NEW MATCH1 SIMPLE_PUZZLE \"TEST\"");
+        assertTrue(expectedOutput(in, ServerResponse.State.WAIT), "should be waiting after creating new match");
+        out2.println("BOB");
+        out2.println("PLAY MATCH1");
+        assertTrue(expectedOutput(in2, ServerResponse.State.PLAY), "should have moved to PLAY state after joined match");
+        assertTrue(expectedOutput(in, ServerResponse.State.PLAY), "should have moved to PLAY state after other player entered");
+        //joining a match shows it on both screens twice
+        assertTrue(expectedOutput(in2, ServerResponse.State.PLAY));
+        assertTrue(expectedOutput(in, ServerResponse.State.PLAY));
+        
+        //three moves in one write get one response with every result
+        out2.print("TRY 1DOWN CAT\nTRY 1ACROSS CABS\nTRY 9DOWN X\n");
+        out2.flush();
+        final ServerResponse batch = readResponse(in2);
+        assertEquals(ServerResponse.State.PLAY, batch.state());
+        assertEquals(List.of("TRY 1DOWN CAT: successfully placed word CAT", 
+                "TRY 1ACROSS CABS: CABS is incorrect length", 
+                "TRY 9DOWN X: 9DOWN is a nonexistant ID"), batch.results());
+        assertEquals("9DOWN is a nonexistant ID", batch.message(), "message should be the result of the last move");
+        assertEquals('t', batch.charBoard().get(2).get(0).getChar(), "should show the board after every move");
+        
+        //the opponent's screen is updated once
+        final ServerResponse update = readResponse(in);
+        assertEquals(ServerResponse.State.PLAY, update.state());
+        assertEquals('t', update.charBoard().get(2).get(0).getChar(), "opponent should see the board after every move");
+        socket.setSoTimeout(500);
+        assertEquals(null, readResponse(in), "opponent should only be updated once");
+        
+        //commands after the move that ends the match are handled in the SCORE state
+        out2.print("TRY 1ACROSS CAB\nNEW MATCH\n");
+        out2.flush();
+        assertEquals(ServerResponse.State.SCORE, readResponse(in2).state(), "match should end after finishing the board");
+        assertEquals(ServerResponse.State.CHOOSE, readResponse(in2).state(), "should choose a new match after the match ended");
+        
+        socket.close();
+        socket2.close();
+    }
+    
+    //watch a match, see a move, get refused a move, and stop watching
+    @Test @Tag("no-didit")
+    public void testPlaySpectate() throws IOException {
+        final Server s = new Server("puzzles", 0);
+        final Thread serverThread = startServer(s);
+        
+        final Socket socket = connectToServer(serverThread, s);
+        final ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+        final PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8), true);
+        final Socket socket2 = connectToServer(serverThread, s);
+        final ObjectInputStream in2 = new ObjectInputStream(socket2.getInputStream());
+        final PrintWriter out2 = new PrintWriter(new OutputStreamWriter(socket2.getOutputStream(), UTF_8), true);
+        final Socket socket3 = connectToServer(serverThread, s);
+        final ObjectInputStream in3 = new ObjectInputStream(socket3.getInputStream());
+        final PrintWriter out3 = new PrintWriter(new OutputStreamWriter(socket3.getOutputStream(), UTF_8), true);
+        
+        out.println("TATUM");
+        out.println("NEW MATCH1 SIMPLE_PUZZLE \"TEST\"");
+        assertTrue(expectedOutput(in, ServerResponse.State.WAIT), "should be waiting after creating new match");
+        out3.println("VIEWER");
+        assertTrue(expectedOutput(in3, ServerResponse.State.CHOOSE), "should choose after entering an ID");
+        out3.println("SPECTATE MATCH1");
+        final ServerResponse notStarted = readResponse(in3);
+        assertEquals(ServerResponse.State.CHOOSE, notStarted.state());
+        assertTrue(notStarted.message().startsWith("Couldn't find a match being played"), "should not watch a match still waiting");
+        out2.println("BOB");
+        out2.println("PLAY MATCH1");
+        assertTrue(expectedOutput(in2, ServerResponse.State.PLAY), "should have moved to PLAY state after joined match");
+        assertTrue(expectedOutput(in, ServerResponse.State.PLAY), "should have moved to PLAY state after other player entered");
+        
+        out3.println("SPECTATE MATCH1");
+        assertTrue(expectedOutput(in3, ServerResponse.State.PLAY), "should see the match after SPECTATE");
+        out2.println("TRY 1DOWN CAT");
+        ServerResponse update = readResponse(in3);
+        while (update != null && update.charBoard().get(2).get(0).getChar() != 't') {
+            update = readResponse(in3);
+        }
+        assertTrue(update != null, "spectator should see the move");
+        
+        out3.println("TRY 1ACROSS CAB");
+        //frames showing the match may still arrive before the reply
+        ServerResponse refused = readResponse(in3);
+        while (refused != null && !refused.hasMessage()) {
+            refused = readResponse(in3);
+        }
+        assertEquals(ServerResponse.State.PLAY, refused.state());
+        assertTrue(refused.message().startsWith("You are watching match MATCH1"), "spectator should not be able to move");
+        assertEquals('_', refused.charBoard().get(0).get(1).getChar(), "spectator's move should not change the board");
+        
+        out3.println("EXIT");
+        assertTrue(expectedOutput(in3, ServerResponse.State.CHOOSE), "should choose again after they stop watching");
+        
+        socket.close();
+        socket2.close();
+        socket3.close();
+    }
+    
+    //ask for hints before and after a move, for a nonexistant id, and on a server without words
+    @Test @Tag("no-didit")
+    public void testPlayHint() throws IOException {
+        final Server s = new Server("puzzles", 0, ServerOptions.DEFAULT.withWords(
+                new WordIndex(List.of("cab", "cat", "cob", "cot", "dog", "bat"))));
+        final Thread serverThread = startServer(s);
+        
+        final Socket socket = connectToServer(serverThread, s);
+        final ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+        final PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8), true);
+        final Socket socket2 = connectToServer(serverThread, s);
+        final ObjectInputStream in2 = new ObjectInputStream(socket2.getInputStream());
+        final PrintWriter out2 = new PrintWriter(new OutputStreamWriter(socket2.getOutputStream(), UTF_8), true);
+        
+        out.println("TATUM");
+        out.println("NEW MATCH1 SIMPLE_PUZZLE \"TEST\"");
+        assertTrue(expectedOutput(in, ServerResponse.State.WAIT), "should be waiting after creating new match");
+        out2.println("BOB");
+        out2.println("PLAY MATCH1");
+        assertTrue(expectedOutput(in2, ServerResponse.State.PLAY), "should have moved to PLAY state after joined match");
+        assertTrue(expectedOutput(in, ServerResponse.State.PLAY), "should have moved to PLAY state after other player entered");
+        
+        out2.println("HINT 1ACROSS");
+        //the update showing the player joined may still arrive before the reply
+        assertEquals("words that fit 1ACROSS: BAT, CAB, CAT, COB, COT, DOG", readReply(in2).message());
+        out2.println("TRY 1DOWN COT");
+        readResponse(in2);
+        out2.println("HINT 1ACROSS");
+        assertEquals("words that fit 1ACROSS: CAB, CAT, COB, COT", readResponse(in2).message());
+        out2.println("HINT 9DOWN");
+        assertEquals("9DOWN is a nonexistant ID", readResponse(in2).message());
+        
+        socket.close();
+        socket2.close();
+        
+        final Server noWords = new Server("puzzles", 0);
+        final Thread noWordsThread = startServer(noWords);
+        final Socket socket3 = connectToServer(noWordsThread, noWords);
+        final ObjectInputStream in3 = new ObjectInputStream(socket3.getInputStream());
+        final PrintWriter out3 = new PrintWriter(new OutputStreamWriter(socket3.getOutputStream(), UTF_8), true);
+        final Socket socket4 = connectToServer(noWordsThread, noWords);
+        final ObjectInputStream in4 = new ObjectInputStream(socket4.getInputStream());
+        final PrintWriter out4 = new PrintWriter(new OutputStreamWriter(socket4.getOutputStream(), UTF_8), true);
+        out3.println("TATUM");
+        out3.println("NEW MATCH1 SIMPLE_PUZZLE \"TEST\"");
+        assertTrue(expectedOutput(in3, ServerResponse.State.WAIT), "should be waiting after creating new match");
+        out4.println("BOB");
+        out4.println("PLAY MATCH1");
+        assertTrue(expectedOutput(in4, ServerResponse.State.PLAY), "should have moved to PLAY state after joined match");
+        out4.println("HINT 1ACROSS");
+        assertEquals("hints are not available on this server", readReply(in4).message());
+        
+        socket3.close();
+        socket4.close();
+    }
+    
+    //stop sending during PLAY, the match is not held even with a grace period
+    @Test @Tag("no-didit")
+    public void testPlayIdleTimeout() throws IOException {
+        final Server s = new Server("puzzles", 0, ServerOptions.DEFAULT.withGraceMillis(10 * 1000)
+                .withTimeouts(ConnectionTimeouts.NONE.withIdle(ServerResponse.State.PLAY, 500)));
+        final Thread serverThread = startServer(s);
+        
+        final Socket socket = connectToServer(serverThread, s);
+        final ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+        final PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8), true);
+        final Socket socket2 = connectToServer(serverThread, s);
+        final ObjectInputStream in2 = new ObjectInputStream(socket2.getInputStream());
+        final PrintWriter out2 = new PrintWriter(new OutputStreamWriter(socket2.getOutputStream(), UTF_8), true);
+        
+        out.println("TATUM");
+        out.println("NEW MATCH1 SIMPLE_PUZZLE \"TEST\"");
+        assertTrue(expectedOutput(in, ServerResponse.State.WAIT), "should be waiting after creating new match");
+        out2.println("BOB");
+        out2.println("PLAY MATCH1");
+        assertTrue(expectedOutput(in2, ServerResponse.State.PLAY), "should have moved to PLAY state after joined match");
+        assertTrue(expectedOutput(in, ServerResponse.State.PLAY), "should have moved to PLAY state after other player entered");
+        
+        //TATUM keeps playing, BOB sends nothing
+        for (int i = 0; i < 4; i++) {
+            try { Thread.sleep(200); } catch (InterruptedException ie) { }
+            out.println("TRY 5DOWN X");
+        }
+        final ServerResponse ended = lastServerResponse(in);
+        assertEquals(ServerResponse.State.SCORE, ended.state(), "match should end when BOB times out");
+        assertEquals("A player timed out", ended.message());
+        assertEquals(1, s.metrics().get("timeouts.idle.PLAY"), "timeout should be counted");
+        
+        //BOB's ID is free again, without waiting for the grace period
+        final Socket socket3 = connectToServer(serverThread, s);
+        final ObjectInputStream in3 = new ObjectInputStream(socket3.getInputStream());
+        final PrintWriter out3 = new PrintWriter(new OutputStreamWriter(socket3.getOutputStream(), UTF_8), true);
+        out3.println("BOB");
+        assertTrue(expectedOutput(in3, ServerResponse.State.CHOOSE), "BOB's ID should be free again");
+        
+        socket.close();
+        socket2.close();
+        socket3.close();
+    }
+    
     //test confirming incorrect word
     @Test @Tag("no-didit")
     public void testPlayConfirmIncorrectWord() throws IOException {
@@ -711,6 +1523,158 @@ public class ServerTest {
         assertEquals(0, in.available(), "should have closed connection");
     }
     
+    // only the router, with the peer secret, gets the router's ID, which can follow the lobby and LIST, but 
+    // never start, join, watch or queue for a match
+    @Test @Tag("no-didit")
+    public void testChooseRouterId() throws IOException {
+        final Server s = new Server("puzzles", 0, ServerOptions.DEFAULT.withShard(0, 2).withPeerSecret(PEER_SECRET));
+        final Thread serverThread = startServer(s);
+        final Socket socket = connectToServer(serverThread, s);
+        final ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+        final PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8), true);
+        final Socket socket2 = connectToServer(serverThread, s);
+        final ObjectInputStream in2 = new ObjectInputStream(socket2.getInputStream());
+        final PrintWriter out2 = new PrintWriter(new OutputStreamWriter(socket2.getOutputStream(), UTF_8), true);
+        final Socket socket3 = connectToServer(serverThread, s);
+        final ObjectInputStream in3 = new ObjectInputStream(socket3.getInputStream());
+        final PrintWriter out3 = new PrintWriter(new OutputStreamWriter(socket3.getOutputStream(), UTF_8), true);
+        
+        out.println(Router.LOBBY_ID);
+        ServerResponse start = readResponse(in);
+        assertEquals(ServerResponse.State.START, start.state(), "a client should not get the router's ID");
+        assertEquals(Router.LOBBY_ID + " player ID is kept for the router", start.message());
+        out.println("LOBBY Gue55ed");
+        start = readResponse(in);
+        assertEquals(ServerResponse.State.START, start.state(), "should not follow the lobby with the wrong secret");
+        assertEquals("Only the router can follow the lobby", start.message());
+        out.println("LOBBY " + PEER_SECRET);
+        ServerResponse lobby = readResponse(in);
+        assertEquals(ServerResponse.State.CHOOSE, lobby.state());
+        assertTrue(lobby.availGames().contains("Board: SIMPLE_PUZZLE \"A trivial puzzle designed to show how puzzles work\""), 
+                "should be shown the lobby");
+        assertEquals(1, s.metrics().get("peers.refused"));
+        out3.println("LOBBY " + PEER_SECRET);
+        assertEquals(Router.LOBBY_ID + " player ID already in use", readResponse(in3).message());
+        
+        String matchId = "MATCH1";
+        for (int i = 2; Router.owner(matchId, 2) != 0; i++) {
+            matchId = "MATCH" + i;
+        }
+        out2.println("TATUM");
+        out2.println("NEW " + matchId + " SIMPLE_PUZZLE \"TEST\"");
+        assertTrue(expectedOutput(in2, ServerResponse.State.WAIT), "should be waiting after creating new match");
+        
+        for (String command : List.of("NEW " + matchId + "X SIMPLE_PUZZLE \"TEST\"", "PLAY " + matchId, 
+                "SPECTATE " + matchId, "QUICKPLAY")) {
+            out.println(command);
+            ServerResponse refused = readResponse(in);
+            while (refused != null && !refused.hasMessage()) {
+                refused = readResponse(in);
+            }
+            assertFalse(refused == null, "should have been answered");
+            assertEquals(ServerResponse.State.CHOOSE, refused.state(), command + " should be refused");
+            assertEquals(Router.LOBBY_ID + " player ID can only follow the lobby", refused.message());
+        }
+        
+        socket.close();
+        socket2.close();
+        socket3.close();
+    }
+    
+    // QUICKPLAY pairs players who want the same board or any board into a new match, and EXIT leaves the queue
+    @Test @Tag("no-didit")
+    public void testQuickPlay() throws IOException {
+        final Server s = new Server("puzzles", 0);
+        final Thread thread = startServer(s);
+        final Socket socket = connectToServer(thread, s);
+        final ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+        final PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8), true);
+        final Socket socket2 = connectToServer(thread, s);
+        final ObjectInputStream in2 = new ObjectInputStream(socket2.getInputStream());
+        final PrintWriter out2 = new PrintWriter(new OutputStreamWriter(socket2.getOutputStream(), UTF_8), true);
+
+        out.println("TATUM");
+        assertTrue(expectedOutput(in, ServerResponse.State.CHOOSE), "should be choosing after entering an ID");
+        out.println("QUICKPLAY NOSUCHBOARD");
+        ServerResponse response = readResponse(in);
+        assertEquals(ServerResponse.State.CHOOSE, response.state());
+        assertEquals("Couldn't find board by that ID", response.message());
+
+        // waiting alone, then leaving the queue
+        out.println("QUICKPLAY SIMPLE_PUZZLE");
+        response = readResponse(in);
+        assertEquals(ServerResponse.State.WAIT, response.state());
+        out.println("EXIT");
+        response = readResponse(in);
+        assertEquals(ServerResponse.State.CHOOSE, response.state());
+        assertEquals("You stopped looking for an opponent. Choose a new option", response.message());
+
+        // one player wants the board, the other any board
+        out.println("QUICKPLAY SIMPLE_PUZZLE");
+        assertTrue(expectedOutput(in, ServerResponse.State.WAIT), "should be waiting for an opponent");
+        out2.println("BOB");
+        assertTrue(expectedOutput(in2, ServerResponse.State.CHOOSE), "should be choosing after entering an ID");
+        out2.println("QUICKPLAY");
+        assertTrue(expectedOutput(in2, ServerResponse.State.PLAY), "should be playing once paired");
+        response = readResponse(in);
+        assertEquals(ServerResponse.State.PLAY, response.state());
+        assertEquals("BOB has joined your match", response.message());
+        out2.println("TRY 1DOWN CAT");
+        response = readReply(in2);
+        assertEquals(ServerResponse.State.PLAY, response.state());
+        assertEquals('c', response.charBoard().get(0).get(0).getChar());
+
+        assertEquals(3, s.metrics().get("matchmaking.queued"));
+        assertEquals(1, s.metrics().get("matchmaking.cancelled"));
+        assertEquals(2, s.metrics().get("matchmaking.paired"));
+        assertEquals(1, s.metrics().get("matchmaking.matches"));
+        assertEquals(0, s.metrics().get("matchmaking.depth"));
+        socket.close();
+        socket2.close();
+    }
+    
+    // LIST filters the lobby, and only players whose page a new match shows up on are sent the new page
+    @Test @Tag("no-didit")
+    public void testListLobby() throws IOException {
+        final Server s = new Server("puzzles", 0);
+        final Thread thread = startServer(s);
+        final List<Socket> sockets = new ArrayList<>();
+        final List<ObjectInputStream> ins = new ArrayList<>();
+        final List<PrintWriter> outs = new ArrayList<>();
+        for (String player : List.of("TATUM", "BOB", "TIM")) {
+            final Socket socket = connectToServer(thread, s);
+            sockets.add(socket);
+            ins.add(new ObjectInputStream(socket.getInputStream()));
+            outs.add(new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8), true));
+            outs.get(outs.size() - 1).println(player);
+            assertTrue(expectedOutput(ins.get(ins.size() - 1), ServerResponse.State.CHOOSE), "should be choosing");
+        }
+        
+        outs.get(1).println("LIST \"SIMPLE\"");
+        ServerResponse response = readResponse(ins.get(1));
+        assertEquals(ServerResponse.State.CHOOSE, response.state());
+        assertEquals(List.of("Board: SIMPLE_PUZZLE \"A trivial puzzle designed to show how puzzles work\""), response.availGames());
+        outs.get(2).println("LIST 1 \"NOTHING\"");
+        response = readResponse(ins.get(2));
+        assertEquals(List.of(), response.availGames());
+        
+        // BOB's page of simple puzzles does not show the match, TIM's page of nothing does not either
+        outs.get(0).println("NEW MATCH1 SIMPLE_PUZZLE \"TEST\"");
+        assertTrue(expectedOutput(ins.get(0), ServerResponse.State.WAIT), "should be waiting after a NEW match");
+        assertEquals(0, s.metrics().get("lobby.updates"));
+        assertEquals(2, s.metrics().get("lobby.unchanged"));
+        
+        outs.get(1).println("LIST");
+        response = readResponse(ins.get(1));
+        assertEquals("Match: MATCH1 \"TEST\"", response.availGames().get(0));
+        outs.get(2).println("LIST \"TE\"");
+        response = readResponse(ins.get(2));
+        assertTrue(response.availGames().contains("Match: MATCH1 \"TEST\""), "should list the match by description");
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+    }
+    
     /**
      * 
      * @param in               stream to receive ServerResponse objects from server
@@ -734,6 +1698,76 @@ public class ServerTest {
     }
     
     
+    /**
+     * 
+     * @param in    stream to receive ServerResponse objects from server
+     * @return      the session token carried by the first response that has one, null if none is received
+     */
+    private String sessionToken(ObjectInputStream in) {
+        try {
+            while (true) {
+                ServerResponse response = (ServerResponse) in.readObject();
+                if (response.hasToken()) {
+                    return response.token();
+                }
+            }
+        }
+        catch (Exception e) {
+            return null;
+        }
+    }
+    
+    /* Read responses until one that is not the update showing that a player joined, null if none arrives. */
+    private ServerResponse readReply(ObjectInputStream in) {
+        ServerResponse response = readResponse(in);
+        while (response != null && response.message().startsWith("You have joined")) {
+            response = readResponse(in);
+        }
+        return response;
+    }
+    
+    /**
+     * 
+     * @param in    stream to receive ServerResponse objects from server
+     * @return      the next response skipping the START response, null if none is received
+     */
+    private ServerResponse readResponse(ObjectInputStream in) {
+        try {
+            ServerResponse response = (ServerResponse) in.readObject();
+            while (response.state() == ServerResponse.State.START && !response.hasMessage()) {
+                response = (ServerResponse) in.readObject();
+            }
+            return response;
+        }
+        catch (Exception e) {
+            return null;
+        }
+    }
+    
+    /**
+     * 
+     * @param in         stream to receive ServerResponse objects from server
+     * @param boardID    ID of the board the client is expecting to be able to choose
+     * @return     true if a CHOOSE ServerResponse listing boardID is received, false otherwise
+     */
+    private boolean expectedBoard(ObjectInputStream in, String boardID) {
+        try {
+            while (true) {
+                ServerResponse response = (ServerResponse) in.readObject();
+                if (response.state() == ServerResponse.State.CHOOSE) {
+                    for (String game : response.availGames()) {
+                        if (game.startsWith("Board: " + boardID + " ")) {
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        catch (Exception e) {
+            return false;
+        }
+    }
+    
     /**
      * 
      * @param in    stream to receive ServerResponse objects from server
@@ -0,0 +1,160 @@
+package crossword;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import crossword.FrameOutputStream.Frame;
+
+public class SpectatorFeedTest {
+
+    /*
+     * Partition:
+     *   - spectator: shown every change, still being shown a frame when changes are published, fails to be shown
+     *   - spectators still being shown a frame: one, all writer threads but one
+     *   - publish: no spectators, one spectator, many spectators
+     *   - remove: a spectator that was added, an ID that was never added
+     *   - writer threads: shared by more spectators than there are writer threads
+     */
+
+    @Test public void testAssertionsEnabled() {
+        assertThrows(AssertionError.class, () -> {
+            assert false;
+        }, "make sure assertions are enabled with VM argument '-ea'");
+    }
+
+    // the frame of a WAIT response with the number of changes as its message
+    private static Frame frame(int changes) {
+        return Frame.encode(ServerResponse.createWait(String.valueOf(changes)));
+    }
+
+    // waits until the last frame shown has message expected
+    private static void awaitLast(List<String> shown, String expected) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            if (!shown.isEmpty() && shown.get(shown.size() - 1).equals(expected)) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("expected " + expected + " to be shown last, was shown " + shown);
+    }
+
+    // covers spectator shown every change, publish with no spectators and one spectator, remove
+    @Test
+    public void testShowsChanges() throws InterruptedException {
+        final SpectatorFeed feed = new SpectatorFeed();
+        feed.publish(frame(1));
+        final List<String> shown = new CopyOnWriteArrayList<>();
+        feed.add("TIM", frame -> shown.add(frame.response().message()), frame(1));
+        assertEquals(1, feed.size());
+        awaitLast(shown, "1");
+        feed.publish(frame(2));
+        awaitLast(shown, "2");
+        assertTrue(feed.remove("TIM"));
+        assertFalse(feed.remove("TUYET"));
+        assertEquals(0, feed.size());
+        feed.publish(frame(3));
+        Thread.sleep(100);
+        assertEquals("2", shown.get(shown.size() - 1), "expected a removed spectator not to be shown changes");
+    }
+
+    // covers writer threads shared by more spectators than there are writer threads
+    @Test
+    public void testSharesWriterThreads() throws InterruptedException {
+        final SpectatorFeed feed = new SpectatorFeed();
+        final int spectators = 10 * SpectatorFeed.WRITER_THREADS;
+        final List<List<String>> shown = new ArrayList<>();
+        for (int i = 0; i < spectators; i++) {
+            final List<String> frames = new CopyOnWriteArrayList<>();
+            shown.add(frames);
+            feed.add("VIEWER" + i, frame -> frames.add(frame.response().message()), frame(0));
+        }
+        for (int i = 1; i <= 10; i++) {
+            feed.publish(frame(i));
+        }
+        for (List<String> frames : shown) {
+            awaitLast(frames, "10");
+        }
+        final long writers = Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().startsWith("spectator-")).count();
+        assertTrue(writers <= SpectatorFeed.WRITER_THREADS + Runtime.getRuntime().availableProcessors() + 2,
+                "expected spectators to share the feed's threads, found " + writers);
+    }
+
+    // covers all writer threads but one showing a frame to a blocked spectator
+    @Test
+    public void testBlockedSpectatorsDoNotHoldUpOthers() throws InterruptedException {
+        final SpectatorFeed feed = new SpectatorFeed();
+        final int blocked = SpectatorFeed.WRITER_THREADS - 1;
+        final CountDownLatch showing = new CountDownLatch(blocked);
+        final CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < blocked; i++) {
+            feed.add("BLOCKED" + i, frame -> {
+                showing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }, frame(0));
+        }
+        assertTrue(showing.await(5, TimeUnit.SECONDS), "expected every blocked spectator to be shown a frame");
+        final List<String> fast = new CopyOnWriteArrayList<>();
+        feed.add("FAST", frame -> fast.add(frame.response().message()), frame(0));
+        for (int i = 1; i <= 10; i++) {
+            feed.publish(frame(i));
+        }
+        awaitLast(fast, "10");
+        release.countDown();
+        for (int i = 0; i < blocked; i++) {
+            assertTrue(feed.remove("BLOCKED" + i));
+        }
+    }
+
+    // covers spectator still being shown a frame when changes are published, many spectators, failing spectator
+    @Test
+    public void testSlowSpectatorSkips() throws InterruptedException {
+        final SpectatorFeed feed = new SpectatorFeed();
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> slow = new CopyOnWriteArrayList<>();
+        final List<String> fast = new CopyOnWriteArrayList<>();
+        feed.add("SLOW", frame -> {
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            slow.add(frame.response().message());
+        }, frame(0));
+        feed.add("FAST", frame -> fast.add(frame.response().message()), frame(0));
+        feed.add("BROKEN", frame -> {
+            throw new IOException("connection lost");
+        }, frame(0));
+        assertTrue(blocked.await(5, TimeUnit.SECONDS), "expected slow spectator to be shown the first frame");
+
+        final long start = System.nanoTime();
+        for (int i = 1; i <= 100; i++) {
+            feed.publish(frame(i));
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000,
+                "expected publishing not to wait for the slow spectator");
+        awaitLast(fast, "100");
+        release.countDown();
+        awaitLast(slow, "100");
+        assertTrue(slow.size() <= 3, "expected slow spectator to skip to the newest frame, was shown " + slow);
+        assertEquals(2, feed.size(), "expected the spectator that failed to be removed");
+    }
+}
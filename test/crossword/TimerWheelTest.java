@@ -0,0 +1,99 @@
+package crossword;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class TimerWheelTest {
+
+    /*
+     * Partition:
+     *   - delay: 0, within one turn of the wheel, more than one turn
+     *   - task: runs, cancelled before it runs, cancelled after it ran
+     *   - cancel: the first, a middle and the last task of a slot, every task of a crowded slot
+     *   - task schedules another task
+     */
+
+    @Test public void testAssertionsEnabled() {
+        assertThrows(AssertionError.class, () -> {
+            assert false;
+        }, "make sure assertions are enabled with VM argument '-ea'");
+    }
+
+    // covers delay 0, within one turn and more than one turn, task runs, task schedules another task
+    @Test
+    public void testScheduleRuns() throws InterruptedException {
+        final TimerWheel wheel = new TimerWheel("test-timers", 10, 8);
+        final CountDownLatch done = new CountDownLatch(3);
+        final long start = System.nanoTime();
+        final long[] ranAfter = new long[3];
+        wheel.schedule(() -> {
+            ranAfter[0] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            done.countDown();
+        }, 0);
+        wheel.schedule(() -> {
+            ranAfter[1] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            done.countDown();
+            wheel.schedule(done::countDown, 30);
+        }, 50);
+        wheel.schedule(() -> {
+            ranAfter[2] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }, 250);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS), "tasks should have run");
+        assertTrue(ranAfter[1] >= 50, "task should not run early, ran after " + ranAfter[1]);
+        Thread.sleep(400);
+        assertTrue(ranAfter[2] >= 250, "task due after more than a turn should not run early, ran after " + ranAfter[2]);
+        assertEquals(0, wheel.pending(), "every task should have run");
+        wheel.stop();
+    }
+
+    // covers cancelled before it runs, cancelled after it ran
+    @Test
+    public void testCancel() throws InterruptedException {
+        final TimerWheel wheel = new TimerWheel("test-timers", 10, 8);
+        final AtomicInteger runs = new AtomicInteger();
+        final TimerWheel.Timeout cancelled = wheel.schedule(runs::incrementAndGet, 50);
+        final TimerWheel.Timeout ran = wheel.schedule(runs::incrementAndGet, 10);
+        assertEquals(2, wheel.pending());
+        assertTrue(wheel.cancel(cancelled), "task should be cancelled before it runs");
+        assertFalse(wheel.cancel(cancelled), "task should only be cancelled once");
+
+        Thread.sleep(200);
+        assertEquals(1, runs.get(), "only the task that was not cancelled should run");
+        assertFalse(wheel.cancel(ran), "task that ran can not be cancelled");
+        assertEquals(0, wheel.pending());
+        wheel.stop();
+    }
+
+    // covers cancelling the first, a middle and the last task of a slot, and every task of a crowded slot
+    @Test
+    public void testCancelInSlot() throws InterruptedException {
+        final TimerWheel wheel = new TimerWheel("test-timers", 10, 8);
+        final AtomicInteger runs = new AtomicInteger(0);
+        final int tasks = 100_000;
+        final TimerWheel.Timeout[] timeouts = new TimerWheel.Timeout[tasks];
+        for (int i = 0; i < tasks; i++) {
+            timeouts[i] = wheel.schedule(runs::incrementAndGet, 200);
+        }
+        assertEquals(tasks, wheel.pending());
+        assertTrue(wheel.cancel(timeouts[0]), "first task of the slot should be cancelled");
+        assertTrue(wheel.cancel(timeouts[tasks / 2]), "middle task of the slot should be cancelled");
+        assertTrue(wheel.cancel(timeouts[tasks - 1]), "last task of the slot should be cancelled");
+        assertEquals(tasks - 3, wheel.pending());
+        for (int i = 1; i < tasks - 1; i += 2) {
+            wheel.cancel(timeouts[i]);
+        }
+        Thread.sleep(500);
+        assertEquals(tasks / 2 - 2, runs.get(), "only the tasks that were not cancelled should run");
+        assertEquals(0, wheel.pending());
+        wheel.stop();
+    }
+}
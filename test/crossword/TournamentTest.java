@@ -0,0 +1,212 @@
+package crossword;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import crossword.Match.MatchListener;
+
+public class TournamentTest {
+
+    /*
+     * Partition:
+     *   - players: fewer than two, the same player twice, two, an odd number, many
+     *   - rounds: with and without a player going through without playing
+     *   - result: better seed scores more, worse seed scores more, same scores
+     *   - matches of a round: ended on one thread, ended on many threads at once, ended more than once
+     *   - standings: before the first round, during a round, after the tournament is over
+     */
+
+    @Test public void testAssertionsEnabled() {
+        assertThrows(AssertionError.class, () -> {
+            assert false;
+        }, "make sure assertions are enabled with VM argument '-ea'");
+    }
+
+    private static final long TIMEOUT = 10;
+
+    /** Host that shows nothing and queues the rounds and the winner */
+    private static class QueueHost implements Tournament.Host {
+        private final BlockingQueue<List<Match>> rounds = new LinkedBlockingQueue<>();
+        private final BlockingQueue<String> winners = new LinkedBlockingQueue<>();
+
+        @Override public MatchListener listener(String playerID, Match match) {
+            return new MatchListener() {
+                public void updateMatch(boolean firstCall) {}
+                public void endMatch(String message) {}
+            };
+        }
+
+        @Override public void started(int round, List<Match> matches) {
+            rounds.add(matches);
+        }
+
+        @Override public void finished(String winner) {
+            winners.add(winner);
+        }
+
+        List<Match> nextRound() throws InterruptedException {
+            List<Match> matches = rounds.poll(TIMEOUT, TimeUnit.SECONDS);
+            assertNotNull(matches, "expected a round to start");
+            return matches;
+        }
+
+        String winner() throws InterruptedException {
+            String winner = winners.poll(TIMEOUT, TimeUnit.SECONDS);
+            assertNotNull(winner, "expected the tournament to finish");
+            return winner;
+        }
+    }
+
+    // the players of match, in the order they were added
+    private static List<String> players(Match match) {
+        return new ArrayList<>(match.getPlayerIds());
+    }
+
+    // end match with player solving the whole puzzle, or with nobody scoring if player is null
+    private static void finish(Match match, String player) {
+        if (player != null) {
+            match.tryWord(player, "1DOWN", "bat");
+            match.tryWord(player, "2ACROSS", "cat");
+        }
+        match.endGame("");
+    }
+
+    private static List<String> seeds(int n) {
+        List<String> players = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            players.add("P" + i);
+        }
+        return players;
+    }
+
+    // covers fewer than two players, the same player twice
+    @Test
+    public void testTooFewPlayers() throws IOException {
+        CrosswordBoard board = new CrosswordBoard("puzzles/test.puzzle");
+        assertThrows(IllegalArgumentException.class,
+                () -> new Tournament("T", "ANIMALS", board, List.of("A"), new Metrics(), new QueueHost()));
+        assertThrows(IllegalArgumentException.class,
+                () -> new Tournament("T", "ANIMALS", board, List.of("A", "B", "A"), new Metrics(), new QueueHost()));
+    }
+
+    // covers two players, worse seed scoring more
+    @Test
+    public void testTwoPlayers() throws IOException, InterruptedException {
+        QueueHost host = new QueueHost();
+        Metrics metrics = new Metrics();
+        Tournament tournament = new Tournament("T", "ANIMALS", new CrosswordBoard("puzzles/test.puzzle"),
+                List.of("A", "B"), metrics, host);
+        List<Match> round = host.nextRound();
+        assertEquals(1, round.size());
+        assertEquals("TR1M1", round.get(0).getMatchId());
+        assertEquals(List.of("A", "B"), players(round.get(0)));
+        assertNull(tournament.winner());
+        finish(round.get(0), "B");
+        assertEquals("B", host.winner());
+        assertEquals("B", tournament.winner());
+        List<Tournament.Standing> standings = tournament.standings();
+        assertEquals("B", standings.get(0).player());
+        assertEquals(1, standings.get(0).wins());
+        assertEquals(2, standings.get(0).points());
+        assertTrue(standings.get(1).isOut(), "expected A to be out");
+        assertEquals(1, metrics.get("tournament.rounds"));
+        assertEquals(1, metrics.get("tournament.results"));
+    }
+
+    // covers an odd number of players, a round with and without a bye, better seed scoring more,
+    // same scores, a match ended more than once, standings during a round and at the end
+    @Test
+    public void testByesAndTies() throws IOException, InterruptedException {
+        QueueHost host = new QueueHost();
+        Metrics metrics = new Metrics();
+        Tournament tournament = new Tournament("T", "ANIMALS", new CrosswordBoard("puzzles/test.puzzle"),
+                seeds(5), metrics, host);
+
+        // P0 goes through without playing, P1 plays P4 and P2 plays P3
+        List<Match> first = host.nextRound();
+        assertEquals(2, first.size());
+        assertEquals(List.of("P1", "P4"), players(first.get(0)));
+        assertEquals(List.of("P2", "P3"), players(first.get(1)));
+        assertEquals(1, tournament.round());
+        finish(first.get(0), "P4");
+        finish(first.get(0), "P1");
+        assertEquals("P4", tournament.standings().get(0).player());
+        finish(first.get(1), null);
+
+        // P0, P4 and P2 are left: P0 goes through again and P2 plays P4
+        List<Match> second = host.nextRound();
+        assertEquals(1, second.size());
+        assertEquals("TR2M1", second.get(0).getMatchId());
+        assertEquals(List.of("P2", "P4"), players(second.get(0)));
+        finish(second.get(0), "P2");
+
+        List<Match> last = host.nextRound();
+        assertEquals(List.of("P0", "P2"), players(last.get(0)));
+        finish(last.get(0), null);
+        assertEquals("P0", host.winner());
+
+        List<String> order = new ArrayList<>();
+        for (Tournament.Standing standing : tournament.standings()) {
+            order.add(standing.player());
+        }
+        assertEquals(List.of("P0", "P2", "P4", "P1", "P3"), order);
+        assertEquals(3, tournament.standings().get(0).wins());
+        assertEquals(4, metrics.get("tournament.matches"));
+        assertEquals(4, metrics.get("tournament.results"));
+    }
+
+    // covers many players, matches ended on many threads at once
+    @Test
+    public void testManyPlayers() throws IOException, InterruptedException {
+        final int players = 200;
+        QueueHost host = new QueueHost();
+        Metrics metrics = new Metrics();
+        Tournament tournament = new Tournament("T", "ANIMALS", new CrosswordBoard("puzzles/test.puzzle"),
+                seeds(players), metrics, host);
+        int rounds = 0;
+        while (true) {
+            List<Match> matches = host.nextRound();
+            rounds++;
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                final int offset = t;
+                threads.add(new Thread(() -> {
+                    for (int i = offset; i < matches.size(); i += 4) {
+                        Match match = matches.get(i);
+                        finish(match, i % 3 == 0 ? players(match).get(1) : null);
+                    }
+                }));
+            }
+            threads.forEach(Thread::start);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            if (matches.size() == 1) {
+                break;
+            }
+        }
+        String winner = host.winner();
+        assertEquals(8, rounds);
+        int wins = 0;
+        for (Tournament.Standing standing : tournament.standings()) {
+            wins += standing.wins();
+        }
+        // 200, 100, 50, 25, 13, 7, 4 and 2 players: every match has one winner, and 25, 13 and 7 leave one
+        // player out
+        assertEquals(players - 1, metrics.get("tournament.matches"));
+        assertEquals(players - 1 + 3, wins);
+        assertEquals(winner, tournament.standings().get(0).player());
+    }
+}
@@ -0,0 +1,97 @@
+package crossword;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class WordIndexTest {
+
+    /*
+     * Partitions -
+     * List<String> match(String pattern, int limit)-
+     * - pattern is all letters, all ANY, mixed; upper case
+     * - pattern matches 0, 1, 1+ words; no words of its length; empty
+     * - limit < matches, >= matches, 0
+     * - index is built, read from a file
+     *
+     * boolean contains(String word)-
+     * - word is in the index, a prefix of a word, longer than every word, has other characters
+     *
+     * WordIndex read(Path file)-
+     * - file was written by write(), is not an index, is cut short
+     */
+
+    private static final List<String> WORDS = List.of("cat", "cot", "cut", "coat", "cart", "dog", "CATER", "cater",
+            "water", "later", "it's", "");
+
+    @Test public void testAssertionsEnabled() {
+        assertThrows(AssertionError.class, () -> {
+            assert false;
+        }, "make sure assertions are enabled with VM argument '-ea'");
+    }
+
+    // letters, ANY and both, in alphabetical order, ignoring case
+    @Test public void testMatch() {
+        WordIndex index = new WordIndex(WORDS);
+        assertEquals(9, index.size());
+        assertEquals(List.of("cat", "cot", "cut"), index.match("c_t"));
+        assertEquals(List.of("cart", "coat"), index.match("____"));
+        assertEquals(List.of("cater", "later", "water"), index.match("_ATER"));
+        assertEquals(List.of("dog"), index.match("dog"));
+        assertEquals(List.of(), index.match("d_t"));
+        assertEquals(List.of(), index.match("______"));
+        assertEquals(List.of(), index.match(""));
+    }
+
+    // fewer words than match, as many, none
+    @Test public void testMatchLimit() {
+        WordIndex index = new WordIndex(WORDS);
+        assertEquals(List.of("cat", "cot"), index.match("___", 2));
+        assertEquals(List.of("cat", "cot", "cut", "dog"), index.match("___", 4));
+        assertEquals(List.of(), index.match("___", 0));
+    }
+
+    @Test public void testContains() {
+        WordIndex index = new WordIndex(WORDS);
+        assertTrue(index.contains("cat"));
+        assertTrue(index.contains("Water"));
+        assertFalse(index.contains("ca"));
+        assertFalse(index.contains("caters"));
+        assertFalse(index.contains("it's"));
+        assertFalse(index.contains("c_t"));
+    }
+
+    // an index written and mapped back answers the same queries
+    @Test public void testWriteRead() throws IOException {
+        Path file = Files.createTempFile("words", ".index");
+        new WordIndex(WORDS).write(file);
+        WordIndex index = WordIndex.read(file);
+        assertEquals(9, index.size());
+        assertEquals(List.of("cart", "coat"), index.match("c__t"));
+        assertEquals(List.of("cater", "later", "water"), index.match("_a_er"));
+        assertTrue(index.contains("dog"));
+        assertFalse(index.contains("dot"));
+        Files.delete(file);
+    }
+
+    // not an index, and an index cut short
+    @Test public void testReadInvalid() throws IOException {
+        Path file = Files.createTempFile("words", ".index");
+        Files.writeString(file, "not an index");
+        assertThrows(IOException.class, () -> WordIndex.read(file));
+        new WordIndex(WORDS).write(file);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));
+        assertThrows(IOException.class, () -> WordIndex.read(file));
+        Files.delete(file);
+    }
+}